@@ -16,7 +16,6 @@
 package nl.inl.blacklab.analysis;
 
 import java.io.IOException;
-import java.util.regex.Pattern;
 
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
@@ -30,9 +29,6 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
  * * apostrophes at the beginning or end of a token are removed (e.g. multiple words in single quotes)
  */
 public class BLDutchTokenFilter extends TokenFilter {
-	final static Pattern removePattern = Pattern.compile("[\\.\\(\\)\\[\\]]|^'|'$");
-
-	final static Pattern anyLetterPattern = Pattern.compile("[\\p{L}\\d]");
 
 	/**
 	 * Perform filtering on the input string
@@ -40,7 +36,42 @@ public class BLDutchTokenFilter extends TokenFilter {
 	 * @return same string with periods, parens, brackets and apostrophes at beginning/end removed
 	 */
 	public static String process(String input) {
-		return removePattern.matcher(input).replaceAll("");
+		char[] buffer = input.toCharArray();
+		int length = process(buffer, buffer.length);
+		return length == buffer.length ? input : new String(buffer, 0, length);
+	}
+
+	/**
+	 * Perform filtering on a term buffer, in place
+	 * @param buffer the term
+	 * @param length length of the term
+	 * @return new length of the term
+	 */
+	private static int process(char[] buffer, int length) {
+		int j = 0;
+		for (int i = 0; i < length; i++) {
+			char c = buffer[i];
+			boolean remove = c == '.' || c == '(' || c == ')' || c == '[' || c == ']'
+					|| c == '\'' && (i == 0 || i == length - 1);
+			if (!remove)
+				buffer[j++] = c;
+		}
+		return j;
+	}
+
+	/**
+	 * Does the term contain any letters or digits?
+	 * @param buffer the term
+	 * @param length length of the term
+	 * @return true if it does
+	 */
+	private static boolean containsLetterOrDigit(char[] buffer, int length) {
+		for (int i = 0; i < length; i++) {
+			char c = buffer[i];
+			if (c >= '0' && c <= '9' || Character.isLetter(Character.codePointAt(buffer, i, length)))
+				return true;
+		}
+		return false;
 	}
 
 	private CharTermAttribute termAtt;
@@ -56,16 +87,12 @@ public class BLDutchTokenFilter extends TokenFilter {
 	@Override
 	final public boolean incrementToken() throws IOException {
 		while (input.incrementToken()) {
-			String t = new String(termAtt.buffer(), 0, termAtt.length());
-
 			// Filter out some characters
-			t = process(t);
+			termAtt.setLength(process(termAtt.buffer(), termAtt.length()));
 
 			// Output if there's any letters in it
-			if (anyLetterPattern.matcher(t).find()) {
-				termAtt.copyBuffer(t.toCharArray(), 0, t.length());
+			if (containsLetterOrDigit(termAtt.buffer(), termAtt.length()))
 				return true;
-			}
 		}
 		return false;
 	}
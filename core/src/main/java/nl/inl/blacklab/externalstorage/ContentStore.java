@@ -18,6 +18,7 @@ package nl.inl.blacklab.externalstorage;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import nl.inl.util.VersionFile;
 
@@ -29,6 +30,39 @@ public abstract class ContentStore {
 
 	static final Charset DEFAULT_CHARSET = Charset.forName("utf-8");
 
+	/** Bytes read by all content stores (for monitoring) */
+	private static final AtomicLong bytesRead = new AtomicLong();
+
+	/** Time spent reading by all content stores, in nanoseconds (for monitoring) */
+	private static final AtomicLong readNanos = new AtomicLong();
+
+	/**
+	 * Record a read (called by the implementations' retrieveParts()).
+	 *
+	 * @param bytes number of bytes read from disk
+	 * @param startNanos value of System.nanoTime() when the read started
+	 */
+	protected static void addReadStatistics(long bytes, long startNanos) {
+		bytesRead.addAndGet(bytes);
+		readNanos.addAndGet(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Get the number of bytes read by all content stores since startup.
+	 * @return number of bytes read
+	 */
+	public static long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/**
+	 * Get the time spent reading by all content stores since startup.
+	 * @return time in nanoseconds
+	 */
+	public static long getReadNanos() {
+		return readNanos.get();
+	}
+
 	/**
 	 * Store a document.
 	 *
@@ -338,6 +338,7 @@ public class ContentStoreDir extends ContentStoreDirAbstract {
 	 */
 	@Override
 	public synchronized String[] retrieveParts(int contentId, int[] start, int[] end) {
+		long readStart = System.nanoTime();
 		try {
 			TocEntry e = toc.get(contentId);
 			if (e == null || e.deleted)
@@ -347,6 +348,7 @@ public class ContentStoreDir extends ContentStoreDirAbstract {
 			if (n != end.length)
 				throw new IllegalArgumentException("start and end must be of equal length");
 			String[] result = new String[n];
+			long totalBytesRead = 0;
 
 			File f = getContentFile(e.fileId);
 			try (FileInputStream fileInputStream = new FileInputStream(f)) {
@@ -376,6 +378,7 @@ public class ContentStoreDir extends ContentStoreDirAbstract {
 						int bytesToRead = (end[i] - start[i]) * BYTES_PER_CHAR;
 						ByteBuffer buffer = ByteBuffer.allocate(bytesToRead);
 						int bytesRead = fileChannel.read(buffer, startOffsetBytes);
+						totalBytesRead += bytesRead;
 						if (bytesRead < bytesToRead)
 							throw new RuntimeException("Not enough bytes read, " + bytesRead + " < "
 									+ bytesToRead);
@@ -383,6 +386,7 @@ public class ContentStoreDir extends ContentStoreDirAbstract {
 					}
 				}
 			}
+			addReadStatistics(totalBytesRead, readStart);
 			return result;
 		} catch (Exception e) {
 			throw ExUtil.wrapRuntimeException(e);
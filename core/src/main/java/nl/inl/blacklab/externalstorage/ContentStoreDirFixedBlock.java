@@ -670,6 +670,7 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 	 */
 	@Override
 	public synchronized String[] retrieveParts(int contentId, int[] start, int[] end) {
+		long readStart = System.nanoTime();
 		try {
 			// Find the correct TOC entry
 			TocEntry e = toc.get(contentId);
@@ -683,6 +684,7 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 
 			// Create array for results
 			String[] result = new String[n];
+			long totalBytesRead = 0;
 
 			// Open the file
 			try (FileInputStream fileInputStream = new FileInputStream(contentsFile)) {
@@ -737,6 +739,7 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 							int bytesToRead = BLOCK_SIZE_BYTES;
 							ByteBuffer buffer = ByteBuffer.allocate(bytesToRead);
 							int bytesRead = fileChannel.read(buffer, readStartOffset);
+							totalBytesRead += bytesRead;
 							if (bytesRead < bytesToRead) {
 								// Apparently, something went wrong.
 								throw new RuntimeException("Not enough bytes read, " + bytesRead
@@ -752,6 +755,7 @@ public class ContentStoreDirFixedBlock extends ContentStoreDirAbstract {
 					}
 				}
 			}
+			addReadStatistics(totalBytesRead, readStart);
 			return result;
 		} catch (Exception e) {
 			throw ExUtil.wrapRuntimeException(e);
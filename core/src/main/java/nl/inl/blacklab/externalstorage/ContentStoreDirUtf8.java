@@ -700,6 +700,7 @@ public class ContentStoreDirUtf8 extends ContentStoreDirAbstract {
 	 */
 	@Override
 	public synchronized String[] retrieveParts(int contentId, int[] start, int[] end) {
+		long readStart = System.nanoTime();
 		try {
 			// Find the correct TOC entry
 			TocEntry e = toc.get(contentId);
@@ -713,6 +714,7 @@ public class ContentStoreDirUtf8 extends ContentStoreDirAbstract {
 
 			// Create array for results
 			String[] result = new String[n];
+			long totalBytesRead = 0;
 
 			// Open the correct file
 			try (FileInputStream fileInputStream = new FileInputStream(getContentFile(e.fileId))) {
@@ -752,6 +754,7 @@ public class ContentStoreDirUtf8 extends ContentStoreDirAbstract {
 							int bytesToRead = (int) (e.getBlockEndOffset(j) - readStartOffset);
 							ByteBuffer buffer = ByteBuffer.allocate(bytesToRead);
 							int bytesRead = fileChannel.read(buffer, readStartOffset);
+							totalBytesRead += bytesRead;
 							if (bytesRead < bytesToRead) {
 								// Apparently, something went wrong.
 								throw new RuntimeException("Not enough bytes read, " + bytesRead
@@ -775,6 +778,7 @@ public class ContentStoreDirUtf8 extends ContentStoreDirAbstract {
 					}
 				}
 			}
+			addReadStatistics(totalBytesRead, readStart);
 			return result;
 		} catch (Exception e) {
 			throw ExUtil.wrapRuntimeException(e);
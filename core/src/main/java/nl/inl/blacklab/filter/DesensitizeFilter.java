@@ -17,7 +17,6 @@ package nl.inl.blacklab.filter;
 
 import java.io.IOException;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
@@ -27,16 +26,13 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
  *
  * NOTE: Lucene includes ASCIIFoldingFilter, but this works with non-ASCII characters too.
  *
- * Uses Normalizer, so Java 1.6+ is needed. If this is not available, use an approach such as
- * RemoveDutchAccentsFilter.
+ * Works on the term buffer in place (see Desensitizer).
  */
 public class DesensitizeFilter extends TokenFilter {
 
 	private CharTermAttribute termAtt;
 
-	private boolean lowerCase;
-
-	private boolean removeAccents;
+	private Desensitizer desensitizer;
 
 	/**
 	 * @param input the token stream to desensitize
@@ -44,21 +40,24 @@ public class DesensitizeFilter extends TokenFilter {
 	 * @param removeAccents whether to remove accents
 	 */
 	public DesensitizeFilter(TokenStream input, boolean lowerCase, boolean removeAccents) {
+		this(input, new Desensitizer(lowerCase, removeAccents));
+	}
+
+	/**
+	 * @param input the token stream to desensitize
+	 * @param desensitizer how to desensitize tokens (may be shared between
+	 *   filters used by the same thread, so its memo is reused)
+	 */
+	public DesensitizeFilter(TokenStream input, Desensitizer desensitizer) {
 		super(input);
-		this.lowerCase = lowerCase;
-		this.removeAccents = removeAccents;
+		this.desensitizer = desensitizer;
 		termAtt = addAttribute(CharTermAttribute.class);
 	}
 
 	@Override
 	final public boolean incrementToken() throws IOException {
 		if (input.incrementToken()) {
-			String t = new String(termAtt.buffer(), 0, termAtt.length());
-			if (removeAccents)
-				t = StringUtils.stripAccents(t);
-			if (lowerCase)
-				t = t.toLowerCase();
-			termAtt.copyBuffer(t.toCharArray(), 0, t.length());
+			desensitizer.desensitize(termAtt);
 			return true;
 		}
 		return false;
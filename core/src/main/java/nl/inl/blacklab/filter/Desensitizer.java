@@ -0,0 +1,161 @@
+package nl.inl.blacklab.filter;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArrayMap;
+
+/**
+ * Lowercases and/or removes accents from terms, in place.
+ *
+ * Gives the same results as StringUtils.stripAccents() followed by
+ * String.toLowerCase(), but without creating any objects for the vast
+ * majority of terms. We precalculate what happens to each (BMP) character
+ * and apply that to the term buffer directly. Terms that are already
+ * desensitized (e.g. lowercase ASCII) are only read, not written.
+ *
+ * A few characters can't be handled one at a time: characters that
+ * decompose into several characters, combining marks that aren't removed
+ * (Unicode normalization may reorder them) and characters whose lowercase
+ * depends on context (e.g. final sigma). Terms containing these are
+ * desensitized the slow way; the results are remembered in a (bounded)
+ * memo, because the same terms tend to occur again and again.
+ *
+ * Not thread-safe: use one instance per thread.
+ */
+public class Desensitizer {
+
+	/** Maximum number of terms to remember; we clear the memo when it's full */
+	private static final int MAX_MEMO_SIZE = 10000;
+
+	/** Table value for a character we can't handle on its own (surrogates never map to themselves) */
+	private static final char COMPLEX = '\uD800';
+
+	/** Table value for a character that should be removed */
+	private static final char REMOVE = '\uDC00';
+
+	/** Folding tables for the different modes (see getTable()) */
+	private static char[][] tables = new char[4][];
+
+	/**
+	 * Get the folding table for a mode, calculating it if necessary.
+	 *
+	 * @param lowerCase whether to lower case
+	 * @param removeAccents whether to remove accents
+	 * @return the table, indexed by character
+	 */
+	private static synchronized char[] getTable(boolean lowerCase, boolean removeAccents) {
+		int mode = (lowerCase ? 1 : 0) | (removeAccents ? 2 : 0);
+		if (tables[mode] == null) {
+			char[] table = new char[Character.MAX_VALUE + 1];
+			for (int i = 0; i <= Character.MAX_VALUE; i++) {
+				char c = (char) i;
+				int type = Character.getType(c);
+				boolean isMark = type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+						|| type == Character.COMBINING_SPACING_MARK;
+				if (Character.isSurrogate(c) || lowerCase && c == '\u03A3') {
+					table[i] = COMPLEX;
+					continue;
+				}
+				String folded = desensitize(String.valueOf(c), lowerCase, removeAccents);
+				if (folded.isEmpty())
+					table[i] = REMOVE;
+				else if (folded.length() == 1 && !isMark)
+					table[i] = folded.charAt(0);
+				else
+					table[i] = COMPLEX;
+			}
+			tables[mode] = table;
+		}
+		return tables[mode];
+	}
+
+	/**
+	 * Desensitize a string the slow way.
+	 *
+	 * @param term the term
+	 * @param lowerCase whether to lower case
+	 * @param removeAccents whether to remove accents
+	 * @return the desensitized term
+	 */
+	public static String desensitize(String term, boolean lowerCase, boolean removeAccents) {
+		if (removeAccents)
+			term = StringUtils.stripAccents(term);
+		if (lowerCase)
+			term = term.toLowerCase();
+		return term;
+	}
+
+	/** Whether to lower case */
+	private boolean lowerCase;
+
+	/** Whether to remove accents */
+	private boolean removeAccents;
+
+	/** What to do with each character */
+	private char[] table;
+
+	/** Terms we've had to desensitize the slow way, and the results */
+	private CharArrayMap<char[]> memo = new CharArrayMap<>(16, false);
+
+	/**
+	 * @param lowerCase whether to lower case
+	 * @param removeAccents whether to remove accents
+	 */
+	public Desensitizer(boolean lowerCase, boolean removeAccents) {
+		this.lowerCase = lowerCase;
+		this.removeAccents = removeAccents;
+		table = getTable(lowerCase, removeAccents);
+	}
+
+	/**
+	 * Desensitize a term in place.
+	 *
+	 * @param termAtt the term
+	 */
+	public void desensitize(CharTermAttribute termAtt) {
+		char[] buffer = termAtt.buffer();
+		int length = termAtt.length();
+
+		// See if we need to change anything, and if we can do it one character at a time
+		boolean changed = false;
+		for (int i = 0; i < length; i++) {
+			char c = buffer[i];
+			char f = table[c];
+			if (f == COMPLEX) {
+				desensitizeSlow(termAtt);
+				return;
+			}
+			if (f != c)
+				changed = true;
+		}
+		if (!changed)
+			return;
+
+		// Fold the characters (this can only make the term shorter)
+		int j = 0;
+		for (int i = 0; i < length; i++) {
+			char f = table[buffer[i]];
+			if (f != REMOVE)
+				buffer[j++] = f;
+		}
+		termAtt.setLength(j);
+	}
+
+	/**
+	 * Desensitize a term we can't handle one character at a time.
+	 *
+	 * @param termAtt the term
+	 */
+	private void desensitizeSlow(CharTermAttribute termAtt) {
+		char[] folded = memo.get(termAtt.buffer(), 0, termAtt.length());
+		if (folded == null) {
+			String term = new String(termAtt.buffer(), 0, termAtt.length());
+			folded = desensitize(term, lowerCase, removeAccents).toCharArray();
+			if (memo.size() >= MAX_MEMO_SIZE)
+				memo.clear();
+			memo.put(term, folded);
+		}
+		termAtt.copyBuffer(folded, 0, folded.length);
+	}
+
+}
@@ -17,7 +17,6 @@ package nl.inl.blacklab.filter;
 
 import java.io.IOException;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
@@ -27,13 +26,14 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
  *
  * NOTE: Lucene includes ASCIIFoldingFilter, but this works with non-ASCII characters too.
  *
- * Uses Normalizer, so Java 1.6+ is needed. If this is not available, use an approach such as
- * RemoveDutchAccentsFilter.
+ * Works on the term buffer in place (see Desensitizer).
  */
 public class RemoveAllAccentsFilter extends TokenFilter {
 
 	private CharTermAttribute termAtt;
 
+	private Desensitizer desensitizer = new Desensitizer(false, true);
+
 	/**
 	 * @param input the token stream from which to remove accents
 	 */
@@ -45,9 +45,7 @@ public class RemoveAllAccentsFilter extends TokenFilter {
 	@Override
 	final public boolean incrementToken() throws IOException {
 		if (input.incrementToken()) {
-			String t = new String(termAtt.buffer(), 0, termAtt.length());
-			t = StringUtils.stripAccents(t);
-			termAtt.copyBuffer(t.toCharArray(), 0, t.length());
+			desensitizer.desensitize(termAtt);
 			return true;
 		}
 		return false;
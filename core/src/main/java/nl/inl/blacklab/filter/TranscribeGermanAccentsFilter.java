@@ -17,6 +17,7 @@ package nl.inl.blacklab.filter;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.Arrays;
 
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
@@ -36,15 +37,78 @@ public class TranscribeGermanAccentsFilter extends TokenFilter {
 	 * @return the string with accents transcribed to ASCII characters
 	 */
 	public static String process(String input) {
-		// NOTE: could be sped up by looping over a char[]
-		input = input.replaceAll("ö", "oe");
-		input = input.replaceAll("ü", "ue");
-		input = input.replaceAll("ä", "ae");
-		input = input.replaceAll("Ö", "Oe");
-		input = input.replaceAll("Ü", "Ue");
-		input = input.replaceAll("Ä", "Ae");
-		input = input.replaceAll("ß", "ss");
-		return input;
+		char[] buffer = input.toCharArray();
+		int length = transcribedLength(buffer, buffer.length);
+		if (length == buffer.length)
+			return input;
+		char[] result = Arrays.copyOf(buffer, length);
+		transcribe(result, buffer.length, length);
+		return new String(result);
+	}
+
+	/**
+	 * Get the transcription of a character.
+	 *
+	 * @param c the character
+	 * @return the transcription, or null if the character stays the same
+	 */
+	private static String transcription(char c) {
+		switch (c) {
+		case 'ö':
+			return "oe";
+		case 'ü':
+			return "ue";
+		case 'ä':
+			return "ae";
+		case 'Ö':
+			return "Oe";
+		case 'Ü':
+			return "Ue";
+		case 'Ä':
+			return "Ae";
+		case 'ß':
+			return "ss";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Calculate the length of a term after transcribing.
+	 *
+	 * @param buffer the term
+	 * @param length length of the term
+	 * @return the length after transcribing
+	 */
+	private static int transcribedLength(char[] buffer, int length) {
+		int newLength = length;
+		for (int i = 0; i < length; i++) {
+			if (buffer[i] >= 'Ä' && transcription(buffer[i]) != null)
+				newLength++;
+		}
+		return newLength;
+	}
+
+	/**
+	 * Transcribe a term in place.
+	 *
+	 * Works from back to front, so the buffer only has to be large enough for the result.
+	 *
+	 * @param buffer the term, with room for the result
+	 * @param length length of the term
+	 * @param newLength length after transcribing (see transcribedLength())
+	 */
+	private static void transcribe(char[] buffer, int length, int newLength) {
+		int j = newLength;
+		for (int i = length - 1; i >= 0; i--) {
+			String t = transcription(buffer[i]);
+			if (t == null) {
+				buffer[--j] = buffer[i];
+			} else {
+				buffer[--j] = t.charAt(1);
+				buffer[--j] = t.charAt(0);
+			}
+		}
 	}
 
 	/**
@@ -76,9 +140,12 @@ public class TranscribeGermanAccentsFilter extends TokenFilter {
 	@Override
 	final public boolean incrementToken() throws IOException {
 		if (input.incrementToken()) {
-			String t = new String(termAtt.buffer(), 0, termAtt.length());
-			t = process(t);
-			termAtt.copyBuffer(t.toCharArray(), 0, t.length());
+			int length = termAtt.length();
+			int newLength = transcribedLength(termAtt.buffer(), length);
+			if (newLength != length) {
+				transcribe(termAtt.resizeBuffer(newLength), length, newLength);
+				termAtt.setLength(newLength);
+			}
 			return true;
 		}
 		return false;
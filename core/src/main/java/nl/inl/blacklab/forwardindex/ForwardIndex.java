@@ -1,10 +1,24 @@
 package nl.inl.blacklab.forwardindex;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.index.IndexReader;
 
@@ -20,8 +34,45 @@ public abstract class ForwardIndex {
 	 * 1. Initial version.
 	 * 2. Added sort index to terms file.
 	 * 3. New terms and docs file format; added reverse sort index and case-insensitive index to terms file.
+	 * 4. Large terms file support.
+	 * 5. Collator version 2 (doesn't ignore dash and space).
+	 * 6. Compressed tokens file (tokens.cmp and docs.cmp); term ids remapped by frequency rank
+	 *    and bit-packed in blocks (see ForwardIndexImplV4).
 	 */
 
+	/** Bytes read by all forward indexes (for monitoring) */
+	private static final AtomicLong bytesRead = new AtomicLong();
+
+	/** Time spent reading by all forward indexes, in nanoseconds (for monitoring) */
+	private static final AtomicLong readNanos = new AtomicLong();
+
+	/**
+	 * Record a read (called by the implementations' retrievePartsInt()).
+	 *
+	 * @param bytes number of bytes read from the tokens file
+	 * @param startNanos value of System.nanoTime() when the read started
+	 */
+	protected static void addReadStatistics(long bytes, long startNanos) {
+		bytesRead.addAndGet(bytes);
+		readNanos.addAndGet(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Get the number of bytes read by all forward indexes since startup.
+	 * @return number of bytes read
+	 */
+	public static long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/**
+	 * Get the time spent reading by all forward indexes since startup.
+	 * @return time in nanoseconds
+	 */
+	public static long getReadNanos() {
+		return readNanos.get();
+	}
+
 	/**
 	 * Indicate how to translate Lucene document ids to forward index ids
 	 * (by looking them up in the index).
@@ -171,6 +222,200 @@ public abstract class ForwardIndex {
 	 */
 	public abstract List<int[]> retrievePartsInt(int fiid, int[] start, int[] end);
 
+	/**
+	 * Retrieve parts of many documents at once.
+	 *
+	 * The parts are read in the order they're stored in the tokens file
+	 * instead of the order they were requested in, so reading the KWICs or
+	 * context for a page of hits becomes (mostly) sequential I/O. For larger
+	 * batches, a background thread reads ahead of us so the operating system
+	 * can load the next documents while we decode the current one.
+	 *
+	 * Like retrievePartsInt(), this updates start and end: -1 values are
+	 * replaced by the actual positions and end is clipped to the document
+	 * length.
+	 *
+	 * @param fiid forward index document id per part
+	 * @param start start position per part (-1 for start of document)
+	 * @param end end position (first token beyond) per part (-1 for end of document)
+	 * @param result where to store the parts; an existing array of the right
+	 *   length is reused, otherwise a new array is stored. Parts of deleted
+	 *   documents are set to null.
+	 */
+	public void retrievePartsIntBatch(final int[] fiid, final int[] start, final int[] end, int[][] result) {
+		int n = fiid.length;
+		if (start.length != n || end.length != n || result.length < n)
+			throw new IllegalArgumentException("fiid, start, end and result must be of equal length");
+		if (n == 0)
+			return;
+
+		// Sort the parts by position in the tokens file
+		final long[] docOffsets = new long[n];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			docOffsets[i] = getDocumentOffset(fiid[i]);
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int cmp = Long.compare(docOffsets[a], docOffsets[b]);
+				if (cmp == 0)
+					cmp = Integer.compare(fiid[a], fiid[b]);
+				return cmp == 0 ? Integer.compare(start[a], start[b]) : cmp;
+			}
+		});
+
+		// Where does each document's group of parts start?
+		int[] groupStart = new int[n + 1];
+		int numberOfGroups = 0;
+		for (int i = 0; i < n; i++) {
+			if (i == 0 || fiid[order[i]] != fiid[order[i - 1]])
+				groupStart[numberOfGroups++] = i;
+		}
+		groupStart[numberOfGroups] = n;
+
+		Future<?> prefetch = null;
+		if (numberOfGroups >= PREFETCH_MIN_DOCS && !getMappedBuffers().isEmpty())
+			prefetch = startPrefetch(fiid, start, end, order, groupStart, numberOfGroups);
+		try {
+			for (int g = 0; g < numberOfGroups; g++) {
+				int groupSize = groupStart[g + 1] - groupStart[g];
+				int[] groupStarts = new int[groupSize];
+				int[] groupEnds = new int[groupSize];
+				for (int j = 0; j < groupSize; j++) {
+					int i = order[groupStart[g] + j];
+					groupStarts[j] = start[i];
+					groupEnds[j] = end[i];
+				}
+				List<int[]> parts = retrievePartsInt(fiid[order[groupStart[g]]], groupStarts, groupEnds);
+				for (int j = 0; j < groupSize; j++) {
+					int i = order[groupStart[g] + j];
+					start[i] = groupStarts[j];
+					end[i] = groupEnds[j];
+					int[] part = parts == null ? null : parts.get(j);
+					if (part != null && result[i] != null && result[i].length == part.length)
+						System.arraycopy(part, 0, result[i], 0, part.length);
+					else
+						result[i] = part;
+				}
+			}
+		} finally {
+			if (prefetch != null)
+				prefetch.cancel(true);
+		}
+	}
+
+	/**
+	 * Start reading the parts of a batch ahead of retrievePartsIntBatch().
+	 *
+	 * @return the prefetch task, so it can be cancelled
+	 */
+	private Future<?> startPrefetch(final int[] fiid, final int[] start, final int[] end, final Integer[] order,
+			final int[] groupStart, final int numberOfGroups) {
+		return getPrefetchPool().submit(new Runnable() {
+			@Override
+			public void run() {
+				for (int g = 0; g < numberOfGroups; g++) {
+					if (Thread.currentThread().isInterrupted())
+						return;
+					int i = order[groupStart[g]];
+					int from = start[i], to = end[i];
+					for (int j = groupStart[g] + 1; j < groupStart[g + 1]; j++) {
+						int k = order[j];
+						from = from < 0 || start[k] < 0 ? -1 : Math.min(from, start[k]);
+						to = to < 0 || end[k] < 0 ? -1 : Math.max(to, end[k]);
+					}
+					prefetch(fiid[i], from, to);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Get the position of a document in the tokens file.
+	 *
+	 * Used to sort batched reads. Implementations that don't know the
+	 * position return the forward index id, which is usually a good guess.
+	 *
+	 * @param fiid forward index document id
+	 * @return (relative) position of the document in the tokens file
+	 */
+	protected long getDocumentOffset(int fiid) {
+		return fiid;
+	}
+
+	/**
+	 * Make sure part of a document is loaded into memory.
+	 *
+	 * Called from a background thread while a batch is being read, so
+	 * implementations should only touch the mapped buffers (using absolute
+	 * gets). The default implementation does nothing.
+	 *
+	 * @param fiid forward index document id
+	 * @param start start position of the part (-1 for start of document)
+	 * @param end end position of the part (-1 for end of document)
+	 */
+	protected void prefetch(int fiid, int start, int end) {
+		// (nothing to do)
+	}
+
+	/**
+	 * Move a newly written file over the file it replaces, atomically if possible,
+	 * so processes reading the old file never see a missing or partial file.
+	 *
+	 * @param newFile the new file
+	 * @param file the file to replace
+	 * @throws IOException on error
+	 */
+	protected static void replaceFile(File newFile, File file) throws IOException {
+		try {
+			Files.move(newFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(newFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Touch one byte per page in part of a mapped buffer, so the operating
+	 * system loads those pages.
+	 *
+	 * @param buffer the buffer
+	 * @param from first byte to touch
+	 * @param to end of the range (exclusive)
+	 */
+	protected static void touchPages(ByteBuffer buffer, int from, int to) {
+		to = Math.min(to, buffer.capacity());
+		for (int offset = from; offset < to; offset += WARM_UP_PAGE_SIZE) {
+			buffer.get(offset); // (absolute get, so it's safe to share the buffer)
+		}
+		if (to > from)
+			buffer.get(to - 1);
+	}
+
+	/** Minimum number of documents in a batch before we start reading ahead in the background */
+	private static final int PREFETCH_MIN_DOCS = 8;
+
+	/** Number of threads reading ahead for batches */
+	private static final int PREFETCH_THREADS = 2;
+
+	/** Threads reading ahead for batches (created when first needed) */
+	private static ExecutorService prefetchPool;
+
+	private static synchronized ExecutorService getPrefetchPool() {
+		if (prefetchPool == null) {
+			prefetchPool = Executors.newFixedThreadPool(PREFETCH_THREADS, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ForwardIndexPrefetch");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return prefetchPool;
+	}
+
 	/**
 	 * Get the Terms object in order to translate ids to token strings
 	 * @return the Terms object
@@ -209,6 +454,28 @@ public abstract class ForwardIndex {
 	 */
 	private static final String CURRENT_VERSION = "5";
 
+	/**
+	 * Forward index format version with a compressed tokens file (see ForwardIndexImplV4)
+	 */
+	private static final String COMPRESSED_VERSION = "6";
+
+	/** Create new forward indices with a compressed tokens file? */
+	private static boolean createCompressed = false;
+
+	/**
+	 * Should new forward indices be created with a compressed tokens file?
+	 *
+	 * The compressed format (version 6) takes less disk space and memory, but
+	 * decoding tokens costs some CPU time, and it can't be read by older
+	 * BlackLab versions. Default is false. Existing forward indices are
+	 * opened in the format they were created in.
+	 *
+	 * @param createCompressed true iff new forward indices should be compressed
+	 */
+	public static void setCreateCompressed(boolean createCompressed) {
+		ForwardIndex.createCompressed = createCompressed;
+	}
+
 	/** Different versions of insensitive collator */
 	public static enum CollatorVersion {
 		V1,  // ignored dash and space
@@ -241,7 +508,9 @@ public abstract class ForwardIndex {
 		if (!indexMode || !create) {
 			// We're opening an existing forward index. Check version.
 			if (!VersionFile.isTypeVersion(dir, "fi", CURRENT_VERSION)) {
-				if (VersionFile.isTypeVersion(dir, "fi", "4")) {
+				if (VersionFile.isTypeVersion(dir, "fi", COMPRESSED_VERSION)) {
+					version = COMPRESSED_VERSION;
+				} else if (VersionFile.isTypeVersion(dir, "fi", "4")) {
 					version = "4";
 				} else if (VersionFile.isTypeVersion(dir, "fi", "3")) {
 					version = "3";
@@ -254,7 +523,9 @@ public abstract class ForwardIndex {
 			}
 		} else {
 			// We're creating a forward index. Write version.
-			VersionFile.write(dir, "fi", CURRENT_VERSION);
+			if (createCompressed)
+				version = COMPRESSED_VERSION;
+			VersionFile.write(dir, "fi", version);
 		}
 
 		ForwardIndex fi;
@@ -272,6 +543,9 @@ public abstract class ForwardIndex {
 			break;
 		case "5":
 			break;
+		case "6":
+			// Compressed tokens file
+			return new ForwardIndexImplV4(dir, indexMode, new Collators(collator, collVersion), create);
 		}
 		Collators collators = new Collators(collator, collVersion);
 		fi = new ForwardIndexImplV3(dir, indexMode, collators, create, largeTermsFileSupport);
@@ -304,4 +578,95 @@ public abstract class ForwardIndex {
 	}
 
 	public abstract boolean canDoNfaMatching();
+
+	/**
+	 * Rewrite the forward index without gaps and without terms that no
+	 * longer occur.
+	 *
+	 * After many deletes and (re-)adds, the tokens file contains gaps and
+	 * documents are no longer stored in a sensible order, which turns
+	 * sequential access (e.g. forEachDocument) into random I/O.
+	 * Compacting doesn't change the forward index ids of the documents,
+	 * but it does change the term ids.
+	 *
+	 * Only available in index mode.
+	 *
+	 * @param order forward index ids in the order their documents should be
+	 *   stored (e.g. Lucene document order), or null for forward index id order.
+	 *   Documents not in the array are stored after these, in forward index id order.
+	 *   Implementations that always store documents in forward index id order ignore this.
+	 */
+	public void compact(int[] order) {
+		throw new UnsupportedOperationException("Compacting not supported by " + getClass().getSimpleName());
+	}
+
+	/** Distance between the bytes we touch when warming up (the usual OS page size) */
+	private static final int WARM_UP_PAGE_SIZE = 4096;
+
+	/**
+	 * Get the memory-mapped parts of the forward index.
+	 *
+	 * Only the tokens file is mapped, and only in search mode.
+	 *
+	 * @return the mapped buffers, or an empty list if nothing is mapped
+	 */
+	protected List<ByteBuffer> getMappedBuffers() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Get the total size of the memory-mapped parts of the forward index.
+	 *
+	 * @return number of mapped bytes
+	 */
+	public long getMappedSize() {
+		long size = 0;
+		for (ByteBuffer buffer: getMappedBuffers()) {
+			size += buffer.capacity();
+		}
+		return size;
+	}
+
+	/**
+	 * Sequentially read the memory-mapped parts of the forward index, so
+	 * the operating system loads them into memory.
+	 *
+	 * Without this, a freshly opened forward index is loaded page by page
+	 * (in random order) by the first searches, which makes them slow.
+	 *
+	 * Stops early if the current thread is interrupted.
+	 *
+	 * @param bytesDone if not null, incremented with the number of bytes
+	 *   read as we go, so others can monitor our progress
+	 * @return true if we're done, false if we were interrupted
+	 */
+	public boolean warmUp(AtomicLong bytesDone) {
+		for (ByteBuffer buffer: getMappedBuffers()) {
+			int size = buffer.capacity();
+			for (int offset = 0; offset < size; offset += WARM_UP_PAGE_SIZE) {
+				buffer.get(offset); // (absolute get, so it's safe to share the buffer)
+				if (bytesDone != null)
+					bytesDone.addAndGet(Math.min(WARM_UP_PAGE_SIZE, size - offset));
+				if ((offset & 0xFFFFF) == 0 && Thread.currentThread().isInterrupted())
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Are all memory-mapped parts of the forward index resident in memory?
+	 *
+	 * This is a hint only (see MappedByteBuffer.isLoaded()); pages may be
+	 * swapped out at any time.
+	 *
+	 * @return true if all mapped buffers are probably in memory
+	 */
+	public boolean isResident() {
+		for (ByteBuffer buffer: getMappedBuffers()) {
+			if (buffer instanceof MappedByteBuffer && !((MappedByteBuffer) buffer).isLoaded())
+				return false;
+		}
+		return true;
+	}
 }
@@ -15,7 +15,10 @@
  *******************************************************************************/
 package nl.inl.blacklab.forwardindex;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
@@ -26,6 +29,7 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -129,6 +133,9 @@ class ForwardIndexImplV3 extends ForwardIndex {
 	/** If true, our Terms can be used for NFA matching (Collator is consistent with other comparisons) */
 	private boolean canDoNfaMatching;
 
+	/** Collators to use for terms (needed when rebuilding the terms while compacting) */
+	private Collators collators;
+
 	@Override
 	public void setIdTranslateInfo(IndexReader reader, String lucenePropFieldName) {
 		fiidLookup = new FiidLookup(reader, lucenePropFieldName);
@@ -141,6 +148,7 @@ class ForwardIndexImplV3 extends ForwardIndex {
 
 	ForwardIndexImplV3(File dir, boolean indexMode, Collators collators, boolean create, boolean largeTermsFileSupport) {
 		canDoNfaMatching = collators.getVersion() != CollatorVersion.V1;
+		this.collators = collators;
 
 		if (!indexMode && create) {
 			throw new IllegalArgumentException("Tried to create new forward index, but not in index mode");
@@ -225,29 +233,30 @@ class ForwardIndexImplV3 extends ForwardIndex {
 			tokensFileChunkOffsetBytes = new ArrayList<>();
 			long mappedBytes = 0;
 			long tokenFileEndBytes = tokenFileEndPosition * SIZEOF_INT;
+
+			// Document start offsets, sorted (documents are not necessarily
+			// stored in fiid order, e.g. after re-using gaps or compacting)
+			long[] docStartBytes = new long[toc.size()];
+			for (int i = 0; i < docStartBytes.length; i++) {
+				docStartBytes[i] = toc.get(i).offset * SIZEOF_INT;
+			}
+			Arrays.sort(docStartBytes);
+
 			while (mappedBytes < tokenFileEndBytes) {
 				// Find the last TOC entry start point that's also in the previous mapping
 				// (or right the first byte after the previous mapping).
-
 				// Look for the largest entryOffset that's no larger than mappedBytes.
-				TocEntry mapNextChunkFrom = null;
-				for (TocEntry e: toc) {
-					if (e.offset <= mappedBytes && (mapNextChunkFrom == null || e.offset > mapNextChunkFrom.offset))
-						mapNextChunkFrom = e;
-				}
-
 				// Uses binary search.
-				int min = 0, max = toc.size();
+				int min = 0, max = docStartBytes.length;
 				while (max - min > 1) {
 					int middle = (min + max) / 2;
-					long middleVal = toc.get(middle).offset * SIZEOF_INT;
-					if (middleVal <= mappedBytes) {
+					if (docStartBytes[middle] <= mappedBytes) {
 						min = middle;
 					} else {
 						max = middle;
 					}
 				}
-				long startOfNextMappingBytes = toc.get(min).offset * SIZEOF_INT;
+				long startOfNextMappingBytes = docStartBytes[min] <= mappedBytes ? docStartBytes[min] : 0;
 
 				// Map this chunk
 				long sizeBytes = tokenFileEndBytes - startOfNextMappingBytes;
@@ -552,6 +561,7 @@ class ForwardIndexImplV3 extends ForwardIndex {
 
 	@Override
 	public synchronized List<int[]> retrievePartsInt(int fiid, int[] start, int[] end) {
+		long readStart = System.nanoTime();
 		try {
 			TocEntry e = toc.get(fiid);
 			if (e == null || e.deleted)
@@ -562,6 +572,7 @@ class ForwardIndexImplV3 extends ForwardIndex {
 				throw new IllegalArgumentException("start and end must be of equal length");
 			List<int[]> result = new ArrayList<>(n);
 
+			long totalBytesRead = 0;
 			for (int i = 0; i < n; i++) {
 				if (start[i] == -1)
 					start[i] = 0;
@@ -636,8 +647,10 @@ class ForwardIndexImplV3 extends ForwardIndex {
 				}
 				ib.get(snippet);
 				result.add(snippet);
+				totalBytesRead += snippetLength * SIZEOF_INT;
 			}
 
+			addReadStatistics(totalBytesRead, readStart);
 			return result;
 		} catch (Exception e) {
 			throw ExUtil.wrapRuntimeException(e);
@@ -792,6 +805,121 @@ class ForwardIndexImplV3 extends ForwardIndex {
 		};
 	}
 
+	@Override
+	public synchronized void compact(int[] order) {
+		if (!indexMode)
+			throw new RuntimeException("Cannot compact, not in index mode");
+		try {
+			// Determine the order to write the documents in
+			int n = toc.size();
+			int[] fiidOrder = new int[n];
+			boolean[] placed = new boolean[n];
+			int numPlaced = 0;
+			if (order != null) {
+				for (int fiid: order) {
+					if (fiid >= 0 && fiid < n && !placed[fiid]) {
+						placed[fiid] = true;
+						fiidOrder[numPlaced++] = fiid;
+					}
+				}
+			}
+			for (int fiid = 0; fiid < n; fiid++) {
+				if (!placed[fiid])
+					fiidOrder[numPlaced++] = fiid;
+			}
+
+			// Rewrite the tokens file, assigning new term ids in order of
+			// first occurrence (so terms that no longer occur are dropped)
+			Terms newTerms = Terms.open(true, collators, null, true);
+			newTerms.setBlockBasedFile(useBlockBasedTermsFile);
+			int[] oldToNewTermId = new int[terms.numberOfTerms()];
+			Arrays.fill(oldToNewTermId, -1);
+			long[] newOffset = new long[n];
+			long offset = 0;
+			File newTokensFile = new File(tokensFile.getPath() + ".new");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newTokensFile)))) {
+				for (int fiid: fiidOrder) {
+					TocEntry e = toc.get(fiid);
+					if (e.deleted || e.length == 0)
+						continue;
+					newOffset[fiid] = offset;
+					for (int termId: retrievePartsInt(fiid, new int[] {-1}, new int[] {-1}).get(0)) {
+						int newTermId = oldToNewTermId[termId];
+						if (newTermId < 0) {
+							newTermId = newTerms.indexOf(terms.get(termId));
+							oldToNewTermId[termId] = newTermId;
+						}
+						out.writeInt(newTermId);
+					}
+					offset += e.length;
+				}
+			}
+
+			// Replace the tokens file and update the table of contents
+			writeBuffer = null;
+			writeTokensFileChannel.close();
+			writeTokensFp.close();
+			replaceFile(newTokensFile, tokensFile);
+			openTokensFileForWriting();
+			deletedTocEntries.clear();
+			for (int fiid = 0; fiid < n; fiid++) {
+				TocEntry e = toc.get(fiid);
+				if (e.deleted) {
+					// Keep the entry (so forward index ids don't change), but without space
+					e.offset = offset;
+					e.length = 0;
+					deletedTocEntries.add(e);
+				} else if (e.length == 0) {
+					// Live empty document; leave it alone
+					e.offset = offset;
+				} else {
+					e.offset = newOffset[fiid];
+				}
+			}
+			tokenFileEndPosition = offset;
+			terms = newTerms;
+			tocModified = true;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	protected List<ByteBuffer> getMappedBuffers() {
+		if (tokensFileChunks == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(tokensFileChunks);
+	}
+
+	@Override
+	protected long getDocumentOffset(int fiid) {
+		TocEntry e = toc.get(fiid);
+		return e == null ? fiid : e.offset;
+	}
+
+	@Override
+	protected void prefetch(int fiid, int start, int end) {
+		List<ByteBuffer> chunks = tokensFileChunks;
+		List<Long> chunkOffsets = tokensFileChunkOffsetBytes;
+		TocEntry e = toc.get(fiid);
+		if (chunks == null || e == null || e.deleted)
+			return;
+		if (start < 0)
+			start = 0;
+		if (end < 0 || end > e.length)
+			end = e.length;
+		long fromBytes = (e.offset + start) * SIZEOF_INT;
+		long toBytes = (e.offset + end) * SIZEOF_INT;
+		for (int j = 0; j < chunkOffsets.size(); j++) {
+			long offsetBytes = chunkOffsets.get(j);
+			ByteBuffer buffer = chunks.get(j);
+			if (offsetBytes <= fromBytes && offsetBytes + buffer.capacity() >= toBytes) {
+				touchPages(buffer, (int) (fromBytes - offsetBytes), (int) (toBytes - offsetBytes));
+				return;
+			}
+		}
+	}
+
 	@Override
 	public boolean canDoNfaMatching() {
 		return canDoNfaMatching;
@@ -0,0 +1,896 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+
+import nl.inl.util.ExUtil;
+
+/**
+ * Forward index that stores its tokens in compressed form, so it takes up
+ * much less disk space and fits in the page cache more easily.
+ *
+ * Term ids are remapped to codes by frequency rank (the most frequent term
+ * gets code 0), and the codes are stored in blocks of BLOCK_SIZE tokens, each
+ * block bit-packed using the number of bits needed for the largest code in
+ * the block. Each document starts with an index of its block offsets, so we
+ * can retrieve parts of a document by decoding only the blocks touched.
+ *
+ * In index mode, new documents are compressed and appended to the tokens file;
+ * terms that didn't occur before get the next free code. Deleting a document
+ * only marks it as deleted. The tokens file is never changed in place, so
+ * other processes can keep reading it (they only see the documents in the
+ * table of contents they read). compact() rewrites the whole file, dropping
+ * deleted documents and reassigning the codes by frequency.
+ */
+class ForwardIndexImplV4 extends ForwardIndex {
+
+	protected static final Logger logger = LogManager.getLogger(ForwardIndexImplV4.class);
+
+	/** Number of tokens per block */
+	static final int BLOCK_SIZE = 128;
+
+	/** Size of a long in bytes. */
+	private static final int SIZEOF_LONG = Long.SIZE / Byte.SIZE;
+
+	/** Size of an int in bytes. */
+	private static final int SIZEOF_INT = Integer.SIZE / Byte.SIZE;
+
+	/** The compressed table of contents file (also contains the code to term id mapping) */
+	private File tocFile;
+
+	/** The compressed tokens file */
+	private File tokensFile;
+
+	/** The terms file (stores unique terms, same as ForwardIndexImplV3) */
+	private File termsFile;
+
+	/** Are we in index mode (i.e. writing to forward index) or not? */
+	private boolean indexMode;
+
+	/** Collators to use for terms (needed to create new Terms when compacting) */
+	private Collators collators;
+
+	/** Index mode only: did we add or delete any documents? */
+	private boolean modified = false;
+
+	/** Index mode only: where we append new documents to the tokens file */
+	private DataOutputStream tokensOut;
+
+	/** The unique terms in our index */
+	private Terms terms;
+
+	/** Term id for each code */
+	private int[] codeToTermId;
+
+	/** Number of codes in use */
+	private int numCodes;
+
+	/** Index mode only: code for each term id (-1 if the term has no code yet) */
+	private int[] termIdToCode;
+
+	/** Byte offset of each document in the tokens file, followed by the end of the last document */
+	private long[] docOffset;
+
+	/** Length of each document in tokens (including deleted documents that still take up space) */
+	private int[] docLength;
+
+	/** Has each document been deleted? */
+	private boolean[] docDeleted;
+
+	/** Number of documents (including deleted ones) */
+	private int numDocs;
+
+	/** Number of deleted documents */
+	private int numDeleted;
+
+	/** Total number of tokens in our (non-deleted) documents */
+	private long totalTokens;
+
+	/** Number of tokens in deleted documents that still take up space (until we compact) */
+	private long freeTokens;
+
+	/** Mappings into the tokens file */
+	private ByteBuffer[] tokensFileChunks;
+
+	/** Offsets of the mappings into the tokens file */
+	private long[] tokensFileChunkOffsetBytes;
+
+	/** Index mode only: how much of the tokens file we've mapped */
+	private long mappedEnd;
+
+	/** How we look up forward index id in the index. */
+	private FiidLookup fiidLookup;
+
+	/** If true, our Terms can be used for NFA matching (Collator is consistent with other comparisons) */
+	private boolean canDoNfaMatching;
+
+	ForwardIndexImplV4(File dir, boolean indexMode, Collators collators, boolean create) {
+		canDoNfaMatching = collators.getVersion() != CollatorVersion.V1;
+		this.indexMode = indexMode;
+		this.collators = collators;
+
+		if (!indexMode && create) {
+			throw new IllegalArgumentException("Tried to create new forward index, but not in index mode");
+		}
+
+		if (!dir.exists()) {
+			if (!create)
+				throw new IllegalArgumentException("ForwardIndex doesn't exist: " + dir);
+			dir.mkdir();
+		}
+
+		termsFile = new File(dir, "terms.dat");
+		tocFile = new File(dir, "docs.cmp");
+		tokensFile = new File(dir, "tokens.cmp");
+		try {
+			if (create) {
+				deleteIfExists(tocFile);
+				deleteIfExists(tokensFile);
+				deleteIfExists(termsFile);
+			}
+			if (tocFile.exists()) {
+				readToc();
+				terms = Terms.open(indexMode, collators, termsFile, true);
+			} else {
+				if (!indexMode)
+					throw new IllegalArgumentException("No TOC found, and not in index mode!");
+				codeToTermId = new int[0];
+				numCodes = 0;
+				numDocs = 0;
+				docOffset = new long[1];
+				docLength = new int[0];
+				docDeleted = new boolean[0];
+				terms = Terms.open(true, collators, null, true);
+				modified = true;
+			}
+			if (indexMode)
+				openTokensFileForWriting();
+			openTokensFileForReading();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void deleteIfExists(File file) {
+		if (file.exists() && !file.delete())
+			throw new RuntimeException("Could not delete " + file);
+	}
+
+	/**
+	 * Read the table of contents (and code to term id mapping) from the file
+	 */
+	private void readToc() {
+		try (RandomAccessFile raf = new RandomAccessFile(tocFile, "r");
+			FileChannel fc = raf.getChannel()) {
+			MappedByteBuffer buf = fc.map(MapMode.READ_ONLY, 0, tocFile.length());
+			numCodes = buf.getInt();
+			codeToTermId = new int[numCodes];
+			IntBuffer ib = buf.asIntBuffer();
+			ib.get(codeToTermId);
+			buf.position(buf.position() + SIZEOF_INT * numCodes);
+			int n = buf.getInt();
+			numDocs = n;
+			docOffset = new long[n + 1];
+			docLength = new int[n];
+			docDeleted = new boolean[n];
+			LongBuffer lb = buf.asLongBuffer();
+			lb.get(docOffset);
+			buf.position(buf.position() + SIZEOF_LONG * (n + 1));
+			ib = buf.asIntBuffer();
+			ib.get(docLength);
+			buf.position(buf.position() + SIZEOF_INT * n);
+			numDeleted = 0;
+			totalTokens = 0;
+			freeTokens = 0;
+			for (int i = 0; i < n; i++) {
+				docDeleted[i] = buf.get() != 0;
+				if (docDeleted[i]) {
+					numDeleted++;
+					freeTokens += docLength[i];
+				} else {
+					totalTokens += docLength[i];
+				}
+			}
+		} catch (Exception e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Write the table of contents (and code to term id mapping) to the file.
+	 *
+	 * We write to a temporary file and move that over the old one, so processes
+	 * that are reading the old file aren't affected.
+	 *
+	 * @throws IOException on error
+	 */
+	private void writeToc() throws IOException {
+		File newTocFile = new File(tocFile.getPath() + ".new");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newTocFile)))) {
+			out.writeInt(numCodes);
+			for (int code = 0; code < numCodes; code++) {
+				out.writeInt(codeToTermId[code]);
+			}
+			out.writeInt(numDocs);
+			for (int fiid = 0; fiid <= numDocs; fiid++) {
+				out.writeLong(docOffset[fiid]);
+			}
+			for (int fiid = 0; fiid < numDocs; fiid++) {
+				out.writeInt(docLength[fiid]);
+			}
+			for (int fiid = 0; fiid < numDocs; fiid++) {
+				out.writeByte(docDeleted[fiid] ? 1 : 0);
+			}
+		}
+		replaceFile(newTocFile, tocFile);
+	}
+
+	/**
+	 * Open the tokens file for appending documents.
+	 *
+	 * If we were interrupted while indexing before, the file may contain
+	 * documents that aren't in the table of contents; we get rid of those.
+	 *
+	 * @throws IOException on error
+	 */
+	private void openTokensFileForWriting() throws IOException {
+		long end = docOffset[numDocs];
+		try (RandomAccessFile raf = new RandomAccessFile(tokensFile, "rw")) {
+			if (raf.length() > end)
+				raf.setLength(end);
+		}
+		tokensOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tokensFile, true)));
+
+		// Codes for the terms we already have
+		termIdToCode = new int[Math.max(16, terms == null ? 0 : terms.numberOfTerms())];
+		Arrays.fill(termIdToCode, -1);
+		for (int code = 0; code < numCodes; code++) {
+			setTermIdCode(codeToTermId[code], code);
+		}
+	}
+
+	private void setTermIdCode(int termId, int code) {
+		if (termId >= termIdToCode.length) {
+			int oldLength = termIdToCode.length;
+			termIdToCode = Arrays.copyOf(termIdToCode, Math.max(termId + 1, oldLength * 2));
+			Arrays.fill(termIdToCode, oldLength, termIdToCode.length, -1);
+		}
+		termIdToCode[termId] = code;
+	}
+
+	/**
+	 * Get the code for a term id, assigning the next free code if it doesn't have one yet.
+	 * @param termId the term id
+	 * @return the code
+	 */
+	private int codeForTermId(int termId) {
+		int code = termId < termIdToCode.length ? termIdToCode[termId] : -1;
+		if (code < 0) {
+			code = numCodes;
+			if (numCodes == codeToTermId.length)
+				codeToTermId = Arrays.copyOf(codeToTermId, Math.max(16, numCodes * 2));
+			codeToTermId[numCodes] = termId;
+			numCodes++;
+			setTermIdCode(termId, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Memory-map the tokens file for reading.
+	 *
+	 * Like ForwardIndexImplV3, we map the file in chunks that start at a document
+	 * start, so each document can be read from a single chunk.
+	 *
+	 * @throws IOException
+	 */
+	private void openTokensFileForReading() throws IOException {
+		long fileEnd = docOffset[numDocs];
+		List<ByteBuffer> chunks = new ArrayList<>();
+		List<Long> chunkOffsets = new ArrayList<>();
+		if (fileEnd > 0) {
+			try (RandomAccessFile tokensFp = new RandomAccessFile(tokensFile, "r");
+					FileChannel tokensFileChannel = tokensFp.getChannel()) {
+				long chunkStart = 0;
+				while (chunkStart < fileEnd) {
+					long sizeBytes = Math.min(fileEnd - chunkStart, ForwardIndexImplV3.preferredChunkSizeBytes);
+					chunks.add(tokensFileChannel.map(MapMode.READ_ONLY, chunkStart, sizeBytes));
+					chunkOffsets.add(chunkStart);
+					long chunkEnd = chunkStart + sizeBytes;
+					if (chunkEnd >= fileEnd)
+						break;
+					// Next chunk starts at the last document start inside (or right after) this chunk
+					int doc = lastDocStartingAtOrBefore(chunkEnd);
+					if (docOffset[doc] <= chunkStart)
+						throw new RuntimeException("Document too large to map: " + doc);
+					chunkStart = docOffset[doc];
+				}
+			}
+		}
+		tokensFileChunks = chunks.toArray(new ByteBuffer[0]);
+		tokensFileChunkOffsetBytes = new long[chunkOffsets.size()];
+		for (int i = 0; i < tokensFileChunkOffsetBytes.length; i++) {
+			tokensFileChunkOffsetBytes[i] = chunkOffsets.get(i);
+		}
+		mappedEnd = fileEnd;
+	}
+
+	/**
+	 * Index mode only: make sure a document we appended can be read.
+	 *
+	 * @param fiid the document
+	 * @throws IOException on error
+	 */
+	private void ensureMapped(int fiid) throws IOException {
+		if (docOffset[fiid + 1] > mappedEnd) {
+			tokensOut.flush();
+			openTokensFileForReading();
+		}
+	}
+
+	/**
+	 * Find the last document that starts at or before the specified offset.
+	 * @param offset byte offset in the tokens file
+	 * @return the document's fiid
+	 */
+	private int lastDocStartingAtOrBefore(long offset) {
+		int min = 0, max = numDocs - 1;
+		while (min < max) {
+			int middle = (min + max + 1) / 2;
+			if (docOffset[middle] <= offset)
+				min = middle;
+			else
+				max = middle - 1;
+		}
+		return min;
+	}
+
+	/**
+	 * Find the chunk a document starts in.
+	 * @param offset document offset in the tokens file
+	 * @return index of the chunk
+	 */
+	private int chunkForOffset(long offset) {
+		int i = Arrays.binarySearch(tokensFileChunkOffsetBytes, offset);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	@Override
+	public void setIdTranslateInfo(IndexReader reader, String lucenePropFieldName) {
+		fiidLookup = new FiidLookup(reader, lucenePropFieldName);
+	}
+
+	@Override
+	public int luceneDocIdToFiid(int docId) {
+		return (int)fiidLookup.get(docId);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (!indexMode)
+			return;
+		try {
+			if (tokensOut != null) {
+				tokensOut.close();
+				tokensOut = null;
+			}
+			if (modified) {
+				terms.write(termsFile);
+				writeToc();
+				modified = false;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public synchronized int addDocument(List<String> content, List<Integer> posIncr) {
+		if (!indexMode)
+			throw new RuntimeException("Cannot add document, not in index mode");
+
+		// Determine the codes to store (1 per position, like ForwardIndexImplV3)
+		int[] codes = new int[content.size()];
+		int numberOfTokens = 0;
+		Iterator<String> contentIt = content.iterator();
+		Iterator<Integer> posIncrIt = posIncr == null ? null : posIncr.iterator();
+		int emptyStringCode = posIncrIt != null ? codeForTermId(terms.indexOf("")) : -1;
+		while (contentIt.hasNext()) {
+			String token = contentIt.next();
+			int pi = posIncrIt == null ? 1 : posIncrIt.next();
+			if (pi == 0)
+				continue; // we only store the first token at any position
+			if (numberOfTokens + pi > codes.length)
+				codes = Arrays.copyOf(codes, Math.max(numberOfTokens + pi, codes.length * 2));
+			for (int i = 0; i < pi - 1; i++) {
+				// Skipped a few tokens; add empty tokens for these positions
+				codes[numberOfTokens++] = emptyStringCode;
+			}
+			codes[numberOfTokens++] = codeForTermId(terms.indexOf(token));
+		}
+		if (numberOfTokens < codes.length)
+			codes = Arrays.copyOf(codes, numberOfTokens);
+
+		// Append the document to the tokens file and update the table of contents
+		try {
+			long bytesWritten = writeDocument(tokensOut, codes);
+			int fiid = numDocs;
+			if (fiid == docLength.length) {
+				int newSize = Math.max(16, fiid * 2);
+				docLength = Arrays.copyOf(docLength, newSize);
+				docDeleted = Arrays.copyOf(docDeleted, newSize);
+				docOffset = Arrays.copyOf(docOffset, newSize + 1);
+			}
+			docLength[fiid] = numberOfTokens;
+			docDeleted[fiid] = false;
+			docOffset[fiid + 1] = docOffset[fiid] + bytesWritten;
+			numDocs++;
+			totalTokens += numberOfTokens;
+			modified = true;
+			return fiid;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public synchronized void deleteDocument(int fiid) {
+		if (!indexMode)
+			throw new RuntimeException("Cannot delete document, not in index mode");
+		if (docDeleted[fiid])
+			return;
+		docDeleted[fiid] = true;
+		numDeleted++;
+		totalTokens -= docLength[fiid];
+		freeTokens += docLength[fiid];
+		modified = true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The compressed tokens file is always rewritten in forward index id
+	 * order, so the order is ignored here. We get rid of deleted documents
+	 * and terms that no longer occur, and reassign the codes by frequency.
+	 */
+	@Override
+	public synchronized void compact(int[] order) {
+		if (!indexMode)
+			throw new RuntimeException("Cannot compact, not in index mode");
+		try {
+			tokensOut.close();
+			tokensOut = null;
+			openTokensFileForReading();
+
+			// Assign new term ids in order of first occurrence (so terms that no
+			// longer occur are dropped), and count their frequencies
+			Terms newTerms = Terms.open(true, collators, null, true);
+			int[] oldToNewTermId = new int[terms.numberOfTerms()];
+			Arrays.fill(oldToNewTermId, -1);
+			int[] freq = new int[0];
+			for (int fiid = 0; fiid < numDocs; fiid++) {
+				if (docDeleted[fiid] || docLength[fiid] == 0)
+					continue;
+				for (int termId: retrievePartsIntInternal(fiid, new int[] {-1}, new int[] {-1}).get(0)) {
+					int newTermId = oldToNewTermId[termId];
+					if (newTermId < 0) {
+						newTermId = newTerms.indexOf(terms.get(termId));
+						oldToNewTermId[termId] = newTermId;
+					}
+					if (newTermId >= freq.length)
+						freq = Arrays.copyOf(freq, Math.max(newTermId + 1, freq.length * 2));
+					freq[newTermId]++;
+				}
+			}
+
+			// Assign codes by frequency rank
+			final int[] termFreq = freq;
+			List<Integer> occurringTermIds = new ArrayList<>();
+			for (int i = 0; i < termFreq.length; i++) {
+				if (termFreq[i] > 0)
+					occurringTermIds.add(i);
+			}
+			Integer[] byFrequency = occurringTermIds.toArray(new Integer[0]);
+			Arrays.sort(byFrequency, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					int cmp = Integer.compare(termFreq[b], termFreq[a]);
+					return cmp == 0 ? Integer.compare(a, b) : cmp;
+				}
+			});
+			int[] newTermIdToCode = new int[termFreq.length];
+			int[] newCodeToTermId = new int[byFrequency.length];
+			for (int code = 0; code < byFrequency.length; code++) {
+				newTermIdToCode[byFrequency[code]] = code;
+				newCodeToTermId[code] = byFrequency[code];
+			}
+
+			// Write the new tokens file
+			long[] newOffset = new long[numDocs + 1];
+			File newTokensFile = new File(tokensFile.getPath() + ".new");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newTokensFile)))) {
+				long offset = 0;
+				for (int fiid = 0; fiid < numDocs; fiid++) {
+					newOffset[fiid] = offset;
+					if (docDeleted[fiid] || docLength[fiid] == 0)
+						continue;
+					int[] codes = retrievePartsIntInternal(fiid, new int[] {-1}, new int[] {-1}).get(0);
+					for (int i = 0; i < codes.length; i++) {
+						codes[i] = newTermIdToCode[oldToNewTermId[codes[i]]];
+					}
+					offset += writeDocument(out, codes);
+				}
+				newOffset[numDocs] = offset;
+			}
+
+			// Update our state (deleted documents keep their entry, so forward index ids don't change)
+			for (int fiid = 0; fiid < numDocs; fiid++) {
+				if (docDeleted[fiid])
+					docLength[fiid] = 0;
+			}
+			docOffset = newOffset;
+			codeToTermId = newCodeToTermId;
+			numCodes = newCodeToTermId.length;
+			freeTokens = 0;
+			terms = newTerms;
+			replaceFile(newTokensFile, tokensFile);
+			terms.write(termsFile);
+			writeToc();
+			openTokensFileForWriting();
+			openTokensFileForReading();
+			modified = false;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public List<int[]> retrievePartsInt(int fiid, int[] start, int[] end) {
+		if (indexMode) {
+			synchronized (this) {
+				if (docDeleted[fiid])
+					return null;
+				try {
+					ensureMapped(fiid);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				return retrievePartsIntInternal(fiid, start, end);
+			}
+		}
+		return retrievePartsIntInternal(fiid, start, end);
+	}
+
+	private List<int[]> retrievePartsIntInternal(int fiid, int[] start, int[] end) {
+		if (docDeleted[fiid])
+			return null;
+		long readStart = System.nanoTime();
+		long totalBytesRead = 0;
+		int length = docLength[fiid];
+		int n = start.length;
+		if (n != end.length)
+			throw new IllegalArgumentException("start and end must be of equal length");
+		List<int[]> result = new ArrayList<>(n);
+		ByteBuffer buf = null;
+		int docStart = 0;
+		int[] block = new int[BLOCK_SIZE];
+		for (int i = 0; i < n; i++) {
+			if (start[i] == -1)
+				start[i] = 0;
+			if (end[i] == -1)
+				end[i] = length;
+			if (start[i] < 0 || end[i] < 0) {
+				throw new IllegalArgumentException("Illegal values, start = " + start[i] + ", end = "
+						+ end[i]);
+			}
+			if (end[i] > length) // Can happen while making KWICs because we don't know the
+									// doc length until here
+				end[i] = length;
+			if (start[i] > length) {
+				throw new IllegalArgumentException("Value(s) out of range, start = " + start[i]
+						+ ", end = " + end[i] + ", content length = " + length);
+			}
+			if (end[i] <= start[i]) {
+				throw new IllegalArgumentException(
+						"Tried to read empty or negative length snippet (from " + start[i]
+								+ " to " + end[i] + ")");
+			}
+			if (buf == null) {
+				int chunk = chunkForOffset(docOffset[fiid]);
+				buf = tokensFileChunks[chunk];
+				docStart = (int)(docOffset[fiid] - tokensFileChunkOffsetBytes[chunk]);
+			}
+
+			// Decode only the blocks this part touches
+			int[] snippet = new int[end[i] - start[i]];
+			int firstBlock = start[i] / BLOCK_SIZE;
+			int lastBlock = (end[i] - 1) / BLOCK_SIZE;
+			for (int b = firstBlock; b <= lastBlock; b++) {
+				int blockFirstToken = b * BLOCK_SIZE;
+				int tokensInBlock = Math.min(BLOCK_SIZE, length - blockFirstToken);
+				totalBytesRead += SIZEOF_INT + decodeBlock(buf, docStart + buf.getInt(docStart + b * SIZEOF_INT), tokensInBlock, block);
+				int from = Math.max(start[i], blockFirstToken);
+				int to = Math.min(end[i], blockFirstToken + tokensInBlock);
+				for (int j = from; j < to; j++) {
+					snippet[j - start[i]] = codeToTermId[block[j - blockFirstToken]];
+				}
+			}
+			result.add(snippet);
+		}
+		addReadStatistics(totalBytesRead, readStart);
+		return result;
+	}
+
+	@Override
+	public int getToken(int fiid, int pos) {
+		if (indexMode) {
+			synchronized (this) {
+				try {
+					ensureMapped(fiid);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				return getTokenInternal(fiid, pos);
+			}
+		}
+		return getTokenInternal(fiid, pos);
+	}
+
+	private int getTokenInternal(int fiid, int pos) {
+		if (pos < 0 || pos >= docLength[fiid])
+			throw new IllegalArgumentException("Position out of range: " + pos + ", content length = " + docLength[fiid]);
+		int chunk = chunkForOffset(docOffset[fiid]);
+		ByteBuffer buf = tokensFileChunks[chunk];
+		int docStart = (int)(docOffset[fiid] - tokensFileChunkOffsetBytes[chunk]);
+		int blockStart = docStart + buf.getInt(docStart + (pos / BLOCK_SIZE) * SIZEOF_INT);
+		int bitWidth = buf.get(blockStart) & 0xFF;
+		if (bitWidth == 0)
+			return codeToTermId[0];
+		long bitPos = (long)(pos % BLOCK_SIZE) * bitWidth;
+		int p = blockStart + 1 + (int)(bitPos / 8);
+		int shift = (int)(bitPos % 8);
+		long acc = 0;
+		for (int bits = 0; bits < shift + bitWidth; bits += 8) {
+			acc |= (long)(buf.get(p++) & 0xFF) << bits;
+		}
+		return codeToTermId[(int)((acc >>> shift) & mask(bitWidth))];
+	}
+
+	@Override
+	public Terms getTerms() {
+		return terms;
+	}
+
+	@Override
+	public int getNumDocs() {
+		return numDocs;
+	}
+
+	@Override
+	public int getDocLength(int fiid) {
+		return docLength[fiid];
+	}
+
+	@Override
+	public long getFreeSpace() {
+		return freeTokens;
+	}
+
+	@Override
+	public synchronized int getFreeBlocks() {
+		int freeBlocks = 0;
+		for (int fiid = 0; fiid < numDocs; fiid++) {
+			if (docDeleted[fiid] && docLength[fiid] > 0)
+				freeBlocks++;
+		}
+		return freeBlocks;
+	}
+
+	@Override
+	public long getTotalSize() {
+		return totalTokens + freeTokens;
+	}
+
+	@Override
+	protected void setLargeTermsFileSupport(boolean b) {
+		if (!b)
+			throw new UnsupportedOperationException("Compressed forward index always uses large terms file support");
+	}
+
+	@Override
+	public Set<Integer> idSet() {
+		return new AbstractSet<Integer>() {
+			@Override
+			public boolean contains(Object o) {
+				int fiid = (Integer)o;
+				return fiid >= 0 && fiid < numDocs && !docDeleted[fiid];
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return size() == 0;
+			}
+
+			@Override
+			public Iterator<Integer> iterator() {
+				return new Iterator<Integer>() {
+					int next = findNext(0);
+
+					private int findNext(int from) {
+						while (from < numDocs && docDeleted[from]) {
+							from++;
+						}
+						return from;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return next < numDocs;
+					}
+
+					@Override
+					public Integer next() {
+						if (next >= numDocs)
+							throw new NoSuchElementException();
+						int current = next;
+						next = findNext(next + 1);
+						return current;
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return numDocs - numDeleted;
+			}
+		};
+	}
+
+	@Override
+	protected List<ByteBuffer> getMappedBuffers() {
+		if (tokensFileChunks == null)
+			return Collections.emptyList();
+		return Arrays.asList(tokensFileChunks);
+	}
+
+	@Override
+	protected long getDocumentOffset(int fiid) {
+		return docOffset[fiid];
+	}
+
+	@Override
+	protected void prefetch(int fiid, int start, int end) {
+		if (indexMode || docDeleted[fiid])
+			return;
+		int length = docLength[fiid];
+		if (start < 0)
+			start = 0;
+		if (end < 0 || end > length)
+			end = length;
+		if (end <= start)
+			return;
+		int chunk = chunkForOffset(docOffset[fiid]);
+		ByteBuffer buf = tokensFileChunks[chunk];
+		int docStart = (int)(docOffset[fiid] - tokensFileChunkOffsetBytes[chunk]);
+		int docEnd = (int)(docOffset[fiid + 1] - tokensFileChunkOffsetBytes[chunk]);
+
+		// Touch only the blocks the part is in (reading the block offset touches the start of the document)
+		int firstBlock = start / BLOCK_SIZE;
+		int nextBlock = (end - 1) / BLOCK_SIZE + 1;
+		int numberOfBlocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int from = docStart + buf.getInt(docStart + firstBlock * SIZEOF_INT);
+		int to = nextBlock < numberOfBlocks ? docStart + buf.getInt(docStart + nextBlock * SIZEOF_INT) : docEnd;
+		touchPages(buf, from, to);
+	}
+
+	@Override
+	public boolean canDoNfaMatching() {
+		return canDoNfaMatching;
+	}
+
+	/**
+	 * Write a document's codes: the block index, followed by the blocks.
+	 *
+	 * @param out where to write
+	 * @param codes the document's codes
+	 * @return number of bytes written
+	 * @throws IOException on error
+	 */
+	private static long writeDocument(DataOutputStream out, int[] codes) throws IOException {
+		int numBlocks = (codes.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int[] bitWidth = new int[numBlocks];
+		int blockOffset = numBlocks * SIZEOF_INT;
+		for (int b = 0; b < numBlocks; b++) {
+			int max = 0;
+			for (int i = b * BLOCK_SIZE; i < Math.min(codes.length, (b + 1) * BLOCK_SIZE); i++) {
+				max |= codes[i];
+			}
+			bitWidth[b] = Integer.SIZE - Integer.numberOfLeadingZeros(max);
+			out.writeInt(blockOffset);
+			int tokensInBlock = Math.min(BLOCK_SIZE, codes.length - b * BLOCK_SIZE);
+			blockOffset += 1 + (tokensInBlock * bitWidth[b] + 7) / 8;
+		}
+		for (int b = 0; b < numBlocks; b++) {
+			int width = bitWidth[b];
+			out.writeByte(width);
+			long acc = 0;
+			int bits = 0;
+			for (int i = b * BLOCK_SIZE; i < Math.min(codes.length, (b + 1) * BLOCK_SIZE); i++) {
+				acc |= (codes[i] & 0xFFFFFFFFL) << bits;
+				bits += width;
+				while (bits >= 8) {
+					out.writeByte((int)acc);
+					acc >>>= 8;
+					bits -= 8;
+				}
+			}
+			if (bits > 0)
+				out.writeByte((int)acc);
+		}
+		return blockOffset;
+	}
+
+	/**
+	 * Decode a block of bit-packed codes.
+	 *
+	 * @param buf buffer to read from
+	 * @param blockStart position of the block in the buffer
+	 * @param tokensInBlock number of codes in the block
+	 * @param codes (out) the decoded codes
+	 * @return number of bytes read
+	 */
+	private static int decodeBlock(ByteBuffer buf, int blockStart, int tokensInBlock, int[] codes) {
+		int width = buf.get(blockStart) & 0xFF;
+		if (width == 0) {
+			Arrays.fill(codes, 0, tokensInBlock, 0);
+			return 1;
+		}
+		long mask = mask(width);
+		int p = blockStart + 1;
+		long acc = 0;
+		int bits = 0;
+		for (int i = 0; i < tokensInBlock; i++) {
+			while (bits < width) {
+				acc |= (long)(buf.get(p++) & 0xFF) << bits;
+				bits += 8;
+			}
+			codes[i] = (int)(acc & mask);
+			acc >>>= width;
+			bits -= width;
+		}
+		return p - blockStart;
+	}
+
+	private static long mask(int bitWidth) {
+		return (1L << bitWidth) - 1;
+	}
+
+}
@@ -23,10 +23,16 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.text.CollationKey;
 import java.text.Collator;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -57,6 +63,29 @@ class TermsImplV3 extends Terms {
 	/** Number of bytes per int */
 	private static final int BYTES_PER_INT = Integer.SIZE / Byte.SIZE;
 
+	/** Below this number of terms, we don't bother calculating collation keys in parallel. */
+	private static final int MIN_TERMS_FOR_PARALLEL_SORT = 10000;
+
+	/** Number of threads to calculate collation keys with */
+	private static final int COLLATION_KEY_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	/** Threads calculating collation keys (created when first needed, shared by all Terms) */
+	private static ExecutorService collationKeyPool;
+
+	private static synchronized ExecutorService getCollationKeyPool() {
+		if (collationKeyPool == null) {
+			collationKeyPool = Executors.newFixedThreadPool(COLLATION_KEY_THREADS, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "TermsCollationKeys");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return collationKeyPool;
+	}
+
 	protected static final Logger logger = LogManager.getLogger(TermsImplV3.class);
 
 	/** First index in array and number of elements from array */
@@ -75,7 +104,8 @@ class TermsImplV3 extends Terms {
 	/** How many terms total are there? (always valid) */
 	int numberOfTerms = 0;
 
-	/** Search mode only: the terms, by index number. */
+	/** The terms, by index number. In index mode, only created when needed (see get());
+	 *  may then have room for more terms than termIndex contains. */
 	String[] terms;
 
 	/** The index number of each sorting position. Inverse of sortPositionPerId[] array.
@@ -95,8 +125,9 @@ class TermsImplV3 extends Terms {
 	int[] sortPositionPerIdInsensitive;
 
 	/**
-	 * Mapping from term to its unique index number. We use a SortedMap because we wish to
-	 * store the sorted index numbers later (to speed up sorting).
+	 * Mapping from term to its unique index number. This is a hash map, so
+	 * interning terms while indexing is fast; the terms are only sorted when
+	 * we write the terms file.
 	 */
 	Map<String, Integer> termIndex;
 
@@ -143,16 +174,10 @@ class TermsImplV3 extends Terms {
 		this.collator = collators.get(true, true);
 		this.collatorInsensitive = collators.get(false, false);
 
-		if (indexMode) {
-			// Index mode: create a SortedMap based on the specified Collator.
-			// (used later to get the terms in sort order)
-			this.termIndex = new TreeMap<>(this.collator);
-			this.termIndexInsensitive = null;
-		} else {
-			// We already have the sort order, so TreeMap is not necessary here.
-			this.termIndex = Maps.mutable.empty();
-			this.termIndexInsensitive = Maps.mutable.empty();
-		}
+		// We don't keep the terms sorted while indexing (that would require a lot of
+		// collator comparisons for every token); we sort them when writing the terms file.
+		this.termIndex = Maps.mutable.empty();
+		this.termIndexInsensitive = indexMode ? null : Maps.mutable.<CollationKey, FirstAndNumber>empty();
 		termIndexBuilt = true;
 		setBlockBasedFile(useBlockBasedTermsFile);
 		if (termsFile != null && termsFile.exists())
@@ -180,6 +205,12 @@ class TermsImplV3 extends Terms {
 				return NO_TERM; // term not found
 			index = termIndex.size();
 			termIndex.put(term, index);
+			if (terms != null) {
+				// Keep terms[] up to date as well (see get())
+				if (index >= terms.length)
+					terms = Arrays.copyOf(terms, Math.max(16, terms.length * 2));
+				terms[index] = term;
+			}
 			return index;
 		}
 
@@ -290,9 +321,9 @@ class TermsImplV3 extends Terms {
 			return;
 
 		// Build the case-sensitive term index.
-		int n = numberOfTerms();
+		int n = numberOfTerms; // (terms read from file)
 		for (int i = 0; i < n; i++) {
-			termIndex.put(get(i), i);
+			termIndex.put(terms[i], i);
 		}
 
 		if (termIndexInsensitive != null) {
@@ -328,6 +359,7 @@ class TermsImplV3 extends Terms {
 		termIndex.clear();
 		if (termIndexInsensitive != null)
 			termIndexInsensitive.clear();
+		terms = null;
 		termIndexBuilt = true;
 	}
 
@@ -567,40 +599,12 @@ class TermsImplV3 extends Terms {
 							fc.truncate(fileLength);
 					}
 
-					// Write the case-sensitive sort order
-					// Because termIndex is a SortedMap, values are returned in key-sorted order.
-					// In other words, the index numbers are in order of sorted terms, so the id
-					// for 'aardvark' comes before the id for 'ape', etc.
-					int i = 0;
-					sortPositionPerId = new int[n];
-					Integer[] insensitive = new Integer[n];
-					for (int id: termIndex.values()) {
-						sortPositionPerId[id] = i;
-						insensitive[i] = id; // fill this so we can re-sort later, faster b/c already partially sorted
-						i++;
-					}
+					// Determine the case-sensitive and -insensitive sort orders
+					// and write them.
+					sortPositionPerId = determineSortPositions(collator);
 					ib.put(new int[n]); // NOT USED ANYMORE, JUST FOR FILE COMPATIBILITY
 					ib.put(sortPositionPerId);
-
-					// Now, sort case-insensitively and write those arrays as well
-					Arrays.sort(insensitive, new Comparator<Integer>() {
-						@Override
-						public int compare(Integer a, Integer b) {
-							return collatorInsensitive.compare(terms[a], terms[b]);
-						}
-					});
-					// Copy into the sortPositionPerIdInsensitive array, making sure that
-					// identical values get identical sort positions!
-					sortPositionPerIdInsensitive = new int[n];
-					int sortPos = 0;
-					for (i = 0; i < n; i++) {
-						if (i == 0 || collatorInsensitive.compare(terms[insensitive[i - 1]], terms[insensitive[i]]) != 0) {
-							// Not identical to previous value: gets its own sort position.
-							// If a value is identical to the previous one, it gets the same sort position.
-							sortPos = i;
-						}
-						sortPositionPerIdInsensitive[insensitive[i]] = sortPos;
-					}
+					sortPositionPerIdInsensitive = determineSortPositions(collatorInsensitive);
 					ib.put(new int[n]); // NOT USED ANYMORE, JUST FOR FILE COMPATIBILITY
 					ib.put(sortPositionPerIdInsensitive);
 				}
@@ -610,15 +614,114 @@ class TermsImplV3 extends Terms {
 		}
 	}
 
+	/**
+	 * Determine the sort position of each term in terms[].
+	 *
+	 * We calculate a CollationKey for each term once (in parallel for large
+	 * numbers of terms) and sort those, instead of doing full collator
+	 * comparisons during the sort.
+	 *
+	 * Terms that compare equal get the same sort position. The exception is the
+	 * case-sensitive sort: the terms are all different, so we want each term to
+	 * get a unique sort position; if the collator considers two different terms
+	 * equal (e.g. because of ignorable characters), we order them by code point.
+	 *
+	 * @param coll the collator to sort with
+	 * @return the sort position for each term id
+	 */
+	private int[] determineSortPositions(Collator coll) {
+		final boolean sensitive = coll == collator;
+		final CollationKey[] keys = getCollationKeys(coll);
+		int n = keys.length;
+		Integer[] idPerSortPos = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			idPerSortPos[i] = i;
+		}
+		Arrays.sort(idPerSortPos, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int cmp = keys[a].compareTo(keys[b]);
+				if (cmp == 0 && sensitive)
+					cmp = terms[a].compareTo(terms[b]);
+				return cmp;
+			}
+		});
+		// Copy into the sort positions array, making sure that
+		// identical values get identical sort positions!
+		int[] sortPosPerId = new int[n];
+		int sortPos = 0;
+		for (int i = 0; i < n; i++) {
+			if (sensitive || i == 0 || keys[idPerSortPos[i - 1]].compareTo(keys[idPerSortPos[i]]) != 0) {
+				// Not identical to previous value: gets its own sort position.
+				// If a value is identical to the previous one, it gets the same sort position.
+				sortPos = i;
+			}
+			sortPosPerId[idPerSortPos[i]] = sortPos;
+		}
+		return sortPosPerId;
+	}
+
+	/**
+	 * Calculate the CollationKey for each term in terms[].
+	 *
+	 * Collator.getCollationKey() is synchronized, so each thread uses its
+	 * own clone of the collator.
+	 *
+	 * @param coll the collator to use
+	 * @return the collation keys, by term id
+	 */
+	private CollationKey[] getCollationKeys(final Collator coll) {
+		final CollationKey[] keys = new CollationKey[terms.length];
+		int numThreads = Math.min(COLLATION_KEY_THREADS, terms.length / MIN_TERMS_FOR_PARALLEL_SORT);
+		if (numThreads <= 1) {
+			for (int i = 0; i < terms.length; i++) {
+				keys[i] = coll.getCollationKey(terms[i]);
+			}
+			return keys;
+		}
+		ExecutorService executor = getCollationKeyPool();
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			int chunkSize = (terms.length + numThreads - 1) / numThreads;
+			for (int start = 0; start < terms.length; start += chunkSize) {
+				final int chunkStart = start;
+				final int chunkEnd = Math.min(start + chunkSize, terms.length);
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						Collator threadColl = (Collator)coll.clone();
+						for (int i = chunkStart; i < chunkEnd; i++) {
+							keys[i] = threadColl.getCollationKey(terms[i]);
+						}
+					}
+				}));
+			}
+			for (Future<?> future: futures) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+		return keys;
+	}
+
 	@Override
 	public String get(Integer index) {
-		assert index >= 0 && index < numberOfTerms : "Term index out of range (" + index + ", numterms = " + numberOfTerms + ")";
+		if (indexMode && terms == null) {
+			// First lookup by id in index mode; fill terms[] (indexOf() keeps it up to date after this)
+			terms = new String[termIndex.size()];
+			for (Map.Entry<String, Integer> entry: termIndex.entrySet()) {
+				terms[entry.getValue()] = entry.getKey();
+			}
+		}
+		assert index >= 0 && index < numberOfTerms() : "Term index out of range (" + index + ", numterms = " + numberOfTerms() + ")";
 		return terms[index];
 	}
 
 	@Override
 	public int numberOfTerms() {
-		return numberOfTerms;
+		// (in index mode, terms may have been added after reading the terms file)
+		return indexMode ? termIndex.size() : numberOfTerms;
 	}
 
 	@Override
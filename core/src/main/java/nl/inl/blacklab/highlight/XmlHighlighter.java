@@ -15,18 +15,21 @@
  *******************************************************************************/
 package nl.inl.blacklab.highlight;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import nl.inl.util.StringUtil;
 
 /**
  * Performs highlighting of the contents of XML elements that we found hits in.
  *
- * NOTE: this class is not threadsafe. Use a separate instance per thread.
+ * The content is scanned for tags once, and the highlighted result is written
+ * directly to an Appendable (e.g. a Writer or StringBuilder).
+ *
+ * This class is threadsafe: all state needed while highlighting is local to each
+ * call, so a single (configured) instance may be shared between threads.
  */
 public class XmlHighlighter {
 	/**
@@ -53,9 +56,6 @@ public class XmlHighlighter {
 	 * a highlight tag, or an existing tag in the original XML.
 	 */
 	static class TagLocation implements Comparable<TagLocation> {
-		/** Counter for assigning unique id to objectNum */
-		public static long n = 0;
-
 		/**
 		 * Whether this is an existing tag from the original content, a start highlight tag to be
 		 * added, or an end highlight tag to be added.
@@ -80,10 +80,10 @@ public class XmlHighlighter {
 		int matchingTagStart;
 
 		/**
-		 * Unique id for each tag; used as a tie-breaker so sorting is always the same, and end tags
-		 * always follow their start tags
+		 * Number indicating the order in which tags were created; used as a tie-breaker so sorting
+		 * is always the same, and end tags always follow their start tags
 		 */
-		public long objectNum;
+		long objectNum;
 
 		/**
 		 * For FIX_START/END tags, indicate the tag name to use when insert.
@@ -91,13 +91,12 @@ public class XmlHighlighter {
 		 */
 		String name;
 
-		public TagLocation(TagType type, int start, int end) {
+		public TagLocation(TagType type, int start, int end, long objectNum) {
 			this.type = type;
 			this.start = start;
 			this.end = end;
 			matchingTagStart = -1; // unmatched tag (until we find its match)
-			objectNum = n;
-			n++;
+			this.objectNum = objectNum;
 		}
 
 		@Override
@@ -111,7 +110,7 @@ public class XmlHighlighter {
 				if (a == b) {
 					// use the objectNum as a tie breaker so sort is always the same,
 					// and end tags always follow their start tags
-					return (int) (objectNum - o.objectNum);
+					return Long.compare(objectNum, o.objectNum);
 				}
 			}
 			return a - b;
@@ -140,12 +139,6 @@ public class XmlHighlighter {
 	 */
 	private static final int OVERSHOOT_ALLOWED = 10;
 
-	/** How deep are we inside highlighting tags? */
-	private int inHighlightTag;
-
-	/** Where the highlighted content is built - therefore, this class is not threadsafe! */
-	StringBuilder b;
-
 	/** Remove empty <hl></hl> tags after highlighting? */
 	private boolean removeEmptyHlTags = true;
 
@@ -153,8 +146,230 @@ public class XmlHighlighter {
 	 *  if false (the default) we add extra tags at the start or end to rebalance it. */
 	private UnbalancedTagsStrategy unbalancedTagsStrategy = UnbalancedTagsStrategy.ADD_TAG;
 
-	/** The outer (usually, only) highlight tag we're inside of, or null if we're not highlighting. */
-	private TagLocation outerHighlightTag = null;
+	/**
+	 * Writes the result of a single highlighting operation.
+	 *
+	 * Keeps track of the highlighting depth, trims whitespace from the start and end
+	 * of the result, and optionally removes empty highlight tags, all without buffering
+	 * more than the whitespace we may still need to remove.
+	 */
+	private static class HighlightWriter {
+
+		/** Where to write the result */
+		private Appendable out;
+
+		/** out as a Writer, if it is one (so we can write parts of strings without copying) */
+		private Writer outWriter;
+
+		/** Remove empty <hl></hl> tags? */
+		private boolean removeEmptyHlTags;
+
+		/** How deep are we inside highlighting tags? */
+		int inHighlightTag = 0;
+
+		/** The outer (usually, only) highlight tag we're inside of, or null if we're not highlighting. */
+		TagLocation outerHighlightTag = null;
+
+		/** Have we written anything other than whitespace yet? (for trimming the start) */
+		private boolean startedOutput = false;
+
+		/** Whitespace we've held back because it might be at the end (for trimming the end) */
+		private StringBuilder pendingWhitespace = new StringBuilder();
+
+		/** Have we held back a highlight start tag because the highlight might be empty? */
+		private boolean pendingHighlightStart = false;
+
+		/** Whitespace following the highlight start tag we held back */
+		private StringBuilder whitespaceInHighlight = new StringBuilder();
+
+		HighlightWriter(Appendable out, boolean removeEmptyHlTags) {
+			this.out = out;
+			this.outWriter = out instanceof Writer ? (Writer)out : null;
+			this.removeEmptyHlTags = removeEmptyHlTags;
+		}
+
+		/** Add highlight tag if not already added; increment depth
+		 * @param tag where the tag occurs
+		 * @throws IOException on write error */
+		void startHighlight(TagLocation tag) throws IOException {
+			if (inHighlightTag == 0) {
+				highlightStartTag();
+				outerHighlightTag = tag;
+			}
+			inHighlightTag++;
+		}
+
+		/** Decrement depth; End highlight if we're at level 0
+		 * @throws IOException on write error */
+		void endHighlight() throws IOException {
+			inHighlightTag--;
+			if (inHighlightTag == 0) {
+				highlightEndTag();
+				outerHighlightTag = null;
+			}
+		}
+
+		/**
+		 * We encountered a tag in the content. If we're inside a highlight tag, ends the current
+		 * highlight, add the existing tag and restart the highlighting.
+		 *
+		 * @param tag where the tag occurs
+		 * @param str string containing the tag
+		 * @param start start of the tag in str
+		 * @param end end of the tag in str
+		 * @throws IOException on write error
+		 */
+		void existingTag(TagLocation tag, CharSequence str, int start, int end) throws IOException {
+			boolean suspendHighlighting = false;
+
+			if (inHighlightTag > 0) {
+				// We should possibly suspend highlighting for this tag to maintain well-formedness.
+				// Check the current (outer) highlighting span and see if our matching tag is inside or outside this highlighting span.
+				if (outerHighlightTag.start > tag.matchingTagStart || outerHighlightTag.matchingTagStart <= tag.matchingTagStart) {
+					// Matching tag is outside the highlighting span; highlighting must be suspended to maintain well-formedness.
+					suspendHighlighting = true;
+				}
+			}
+
+			if (suspendHighlighting)
+				highlightEndTag();
+			if (isTag(str, start, end, startHighlightTag))
+				highlightStartTag(); // existing highlight tag; treat the same as ours
+			else if (isTag(str, start, end, endHighlightTag))
+				highlightEndTag();
+			else
+				text(str, start, end);
+			if (suspendHighlighting)
+				highlightStartTag();
+		}
+
+		private static boolean isTag(CharSequence str, int start, int end, String tag) {
+			if (end - start != tag.length())
+				return false;
+			for (int i = 0; i < tag.length(); i++) {
+				if (str.charAt(start + i) != tag.charAt(i))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Write (part of) a string, trimming whitespace at the start and end of the result.
+		 *
+		 * @param str string to write part of
+		 * @param start start of the part to write
+		 * @param end end of the part to write
+		 * @throws IOException on write error
+		 */
+		void text(CharSequence str, int start, int end) throws IOException {
+			int lastNonWhitespace = end - 1;
+			while (lastNonWhitespace >= start && str.charAt(lastNonWhitespace) <= ' ')
+				lastNonWhitespace--;
+			if (lastNonWhitespace < start) {
+				// Only whitespace; hold it back, as it might be at the end
+				if (startedOutput)
+					pendingWhitespace.append(str, start, end);
+				return;
+			}
+			if (startedOutput) {
+				flushPendingWhitespace();
+			} else {
+				// Skip whitespace at the start of the result
+				while (str.charAt(start) <= ' ')
+					start++;
+				startedOutput = true;
+			}
+			textTrimmed(str, start, lastNonWhitespace + 1);
+			pendingWhitespace.append(str, lastNonWhitespace + 1, end);
+		}
+
+		private void highlightStartTag() throws IOException {
+			flushPendingWhitespace();
+			startedOutput = true;
+			if (removeEmptyHlTags) {
+				if (pendingHighlightStart)
+					flushPendingHighlightStart();
+				// Hold back the tag until we know the highlight isn't empty
+				pendingHighlightStart = true;
+				return;
+			}
+			write(startHighlightTag, 0, startHighlightTag.length());
+		}
+
+		private void highlightEndTag() throws IOException {
+			flushPendingWhitespace();
+			startedOutput = true;
+			if (pendingHighlightStart) {
+				// Empty highlight; only write the whitespace inside it
+				pendingHighlightStart = false;
+				write(whitespaceInHighlight, 0, whitespaceInHighlight.length());
+				whitespaceInHighlight.setLength(0);
+				return;
+			}
+			write(endHighlightTag, 0, endHighlightTag.length());
+		}
+
+		/**
+		 * Write text that won't be trimmed anymore.
+		 *
+		 * @param str string to write part of
+		 * @param start start of the part to write
+		 * @param end end of the part to write
+		 * @throws IOException on write error
+		 */
+		private void textTrimmed(CharSequence str, int start, int end) throws IOException {
+			if (pendingHighlightStart) {
+				int i = start;
+				while (i < end && isWhitespace(str.charAt(i)))
+					i++;
+				if (i == end) {
+					// Still only whitespace; highlight might still turn out to be empty
+					whitespaceInHighlight.append(str, start, end);
+					return;
+				}
+				flushPendingHighlightStart();
+			}
+			write(str, start, end);
+		}
+
+		private void flushPendingWhitespace() throws IOException {
+			if (pendingWhitespace.length() > 0) {
+				textTrimmed(pendingWhitespace, 0, pendingWhitespace.length());
+				pendingWhitespace.setLength(0);
+			}
+		}
+
+		private void flushPendingHighlightStart() throws IOException {
+			pendingHighlightStart = false;
+			write(startHighlightTag, 0, startHighlightTag.length());
+			write(whitespaceInHighlight, 0, whitespaceInHighlight.length());
+			whitespaceInHighlight.setLength(0);
+		}
+
+		private void write(CharSequence str, int start, int end) throws IOException {
+			if (start == end)
+				return;
+			if (outWriter != null && str instanceof String)
+				outWriter.write((String)str, start, end - start);
+			else
+				out.append(str, start, end);
+		}
+
+		/**
+		 * Finish the result: drop whitespace at the end, and add an ellipsis if the content was cut.
+		 *
+		 * @param wasCut whether the content was cut
+		 * @throws IOException on write error
+		 */
+		void finish(boolean wasCut) throws IOException {
+			pendingWhitespace.setLength(0);
+			if (wasCut)
+				textTrimmed("...", 0, 3);
+			if (pendingHighlightStart)
+				flushPendingHighlightStart();
+		}
+
+	}
 
 	/**
 	 * Given XML content and a sorted list of existing tags and highlight tags to be added, add the
@@ -171,15 +386,13 @@ public class XmlHighlighter {
 	 * @param stopAfterChars
 	 *            after how many characters of text content to cut this fragment.
 	 *            -1 = no cutting.
-	 * @param offset
-	 * @return the highlighted XML content.
+	 * @param out where to write the highlighted XML content
+	 * @throws IOException on write error
 	 */
-	private String highlightInternal(String xmlContent, List<TagLocation> tags, int stopAfterChars) {
+	private void highlightInternal(String xmlContent, List<TagLocation> tags, int stopAfterChars, HighlightWriter out) throws IOException {
 		if (stopAfterChars < 0)
 			stopAfterChars = xmlContent.length();
 		int positionInContent = 0;
-		b = new StringBuilder();
-		inHighlightTag = 0;
 		int visibleCharsAdded = 0;
 		boolean addVisibleChars = true; // keep adding text content until we reach the preferred length
 		boolean wasCut = false;
@@ -191,27 +404,76 @@ public class XmlHighlighter {
 				continue; // skip tag
 			}
 			if (addVisibleChars) {
-				String visibleChars = xmlContent.substring(positionInContent, tag.start);
-				if (visibleCharsAdded + visibleChars.length() >= stopAfterChars) {
-					visibleChars = StringUtil.abbreviate(visibleChars, stopAfterChars
-							- visibleCharsAdded, OVERSHOOT_ALLOWED, false);
-					if (visibleChars.length() < tag.start - positionInContent)
+				int visibleLength = tag.start - positionInContent;
+				if (visibleCharsAdded + visibleLength >= stopAfterChars) {
+					int charsAdded = cutText(xmlContent, positionInContent, tag.start,
+							stopAfterChars - visibleCharsAdded, out);
+					if (charsAdded < visibleLength)
 						wasCut = true;
 					addVisibleChars = false;
+					visibleCharsAdded += charsAdded;
+				} else {
+					out.text(xmlContent, positionInContent, tag.start);
+					visibleCharsAdded += visibleLength;
 				}
-				b.append(visibleChars);
-				visibleCharsAdded += visibleChars.length();
 			} else {
 				if (positionInContent < tag.start) {
 					wasCut = true;
 				}
 			}
-			processTag(xmlContent, tag);
+			processTag(xmlContent, tag, out);
 			positionInContent = tag.end;
 		}
-		b.append(xmlContent.substring(positionInContent));
-		final String optionalEllipsis = wasCut ? "..." : "";
-		return b.toString().trim() + optionalEllipsis;
+		out.text(xmlContent, positionInContent, xmlContent.length());
+		out.finish(wasCut);
+	}
+
+	/**
+	 * Write text content, cutting it at a word boundary near the preferred length.
+	 *
+	 * Whitespace is normalized to single spaces and the result is trimmed. If the
+	 * normalized text is longer than the preferred length (plus the allowed
+	 * overshoot), it is cut at the last space before the preferred length, or
+	 * at the preferred length if there's no such space. Only the part of the text
+	 * we might write is looked at.
+	 *
+	 * @param str string containing the text
+	 * @param start start of the text in str
+	 * @param end end of the text in str
+	 * @param preferredLength the length we would like to cut at
+	 * @param out where to write the text
+	 * @return number of characters written
+	 * @throws IOException on write error
+	 */
+	private static int cutText(String str, int start, int end, int preferredLength, HighlightWriter out) throws IOException {
+		// Normalize whitespace until we know whether we need to cut
+		int maxLength = preferredLength + OVERSHOOT_ALLOWED;
+		StringBuilder text = new StringBuilder(Math.min(end - start, maxLength + 1));
+		boolean inWhitespace = false;
+		for (int i = start; i < end && text.length() <= maxLength; i++) {
+			char c = str.charAt(i);
+			if (isWhitespace(c)) {
+				if (!inWhitespace)
+					text.append(' ');
+				inWhitespace = true;
+			} else {
+				text.append(c);
+				inWhitespace = false;
+			}
+		}
+		if (text.length() > maxLength) {
+			int i = text.lastIndexOf(" ", preferredLength);
+			text.setLength(i >= 1 ? i : preferredLength);
+		}
+
+		// Trim
+		int textStart = 0, textEnd = text.length();
+		while (textStart < textEnd && text.charAt(textStart) <= ' ')
+			textStart++;
+		while (textEnd > textStart && text.charAt(textEnd - 1) <= ' ')
+			textEnd--;
+		out.text(text, textStart, textEnd);
+		return textEnd - textStart;
 	}
 
 	/**
@@ -221,23 +483,27 @@ public class XmlHighlighter {
 	 *            the content we're highlighting
 	 * @param tag
 	 *            the existing tag or highlight tag to add
+	 * @param out where to write the result
+	 * @throws IOException on write error
 	 */
-	private void processTag(String xmlContent, TagLocation tag) {
+	private static void processTag(String xmlContent, TagLocation tag, HighlightWriter out) throws IOException {
 		switch (tag.type) {
 		case HIGHLIGHT_START:
-			startHighlight(tag);
+			out.startHighlight(tag);
 			break;
 		case EXISTING_TAG:
-			existingTag(tag, xmlContent.substring(tag.start, tag.end));
+			out.existingTag(tag, xmlContent, tag.start, tag.end);
 			break;
 		case HIGHLIGHT_END:
-			endHighlight();
+			out.endHighlight();
 			break;
 		case FIX_START:
-			existingTag(tag, "<" + tag.name + ">");
+			String startTag = "<" + tag.name + ">";
+			out.existingTag(tag, startTag, 0, startTag.length());
 			break;
 		case FIX_END:
-			existingTag(tag, "</" + tag.name + ">");
+			String endTag = "</" + tag.name + ">";
+			out.existingTag(tag, endTag, 0, endTag.length());
 			break;
 		case REMOVE_EXISTING_TAG:
 			// Simply don't add the tag
@@ -245,51 +511,6 @@ public class XmlHighlighter {
 		}
 	}
 
-	/** Add highlight tag if not already added; increment depth
-	 * @param tag where the tag occurs */
-	private void startHighlight(TagLocation tag) {
-		if (inHighlightTag == 0) {
-			b.append(startHighlightTag);
-			outerHighlightTag  = tag;
-		}
-		inHighlightTag++;
-	}
-
-	/** Decrement depth; End highlight if we're at level 0 */
-	private void endHighlight() {
-		inHighlightTag--;
-		if (inHighlightTag == 0) {
-			b.append(endHighlightTag);
-			outerHighlightTag = null;
-		}
-	}
-
-	/**
-	 * We encountered a tag in the content. If we're inside a highlight tag, ends the current
-	 * highlight, add the existing tag and restart the highlighting.
-	 * @param tag where the tag occurs
-	 * @param str
-	 *            the existing tag encountered.
-	 */
-	private void existingTag(TagLocation tag, String str) {
-		boolean suspendHighlighting = false;
-
-		if (inHighlightTag > 0) {
-			// We should possibly suspend highlighting for this tag to maintain well-formedness.
-			// Check the current (outer) highlighting span and see if our matching tag is inside or outside this highlighting span.
-			if (outerHighlightTag.start > tag.matchingTagStart || outerHighlightTag.matchingTagStart <= tag.matchingTagStart) {
-				// Matching tag is outside the highlighting span; highlighting must be suspended to maintain well-formedness.
-				suspendHighlighting = true;
-			}
-		}
-
-		if (suspendHighlighting)
-			b.append(endHighlightTag);
-		b.append(str);
-		if (suspendHighlighting)
-			b.append(startHighlightTag);
-	}
-
 	/**
 	 * The start and end character position of a hit, used for highlighting the content.
 	 */
@@ -318,15 +539,24 @@ public class XmlHighlighter {
 			final int b = hit.getEndChar() - offset;
 			if (b > length)
 				continue; // outside highlighting range
-			TagLocation start = new TagLocation(TagType.HIGHLIGHT_START, a, a);
+			TagLocation start = new TagLocation(TagType.HIGHLIGHT_START, a, a, tags.size());
 			start.matchingTagStart = b;
 			tags.add(start);
-			TagLocation end = new TagLocation(TagType.HIGHLIGHT_END, b, b);
+			TagLocation end = new TagLocation(TagType.HIGHLIGHT_END, b, b, tags.size());
 			end.matchingTagStart = a;
 			tags.add(end);
 		}
 	}
 
+	/**
+	 * Is this a whitespace character? (same as \s in a regular expression)
+	 * @param c the character
+	 * @return true iff it's whitespace
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
 	/**
 	 * Given XML content, make a list of tag locations in this content.
 	 *
@@ -337,32 +567,73 @@ public class XmlHighlighter {
 	 * for, but if there are other tag errors (e.g. hierarchy errors such as &lt;i&gt;&lt;b&gt;&lt;/i&gt;&lt;/b&gt;)
 	 * the behaviour of the highlighter is undefined.
 	 *
+	 * Tags are found in a single pass over the content. We recognize the same tags
+	 * as the regular expression <code>&lt;\s*(/?)\s*([^&gt;\s]+)(\s+[^&gt;]*)?&gt;</code>
+	 * (where group 1 indicates a close tag and group 2 is the tag name).
+	 *
 	 * @param elementContent
 	 *            the XML content
 	 * @return the list of tag locations, each with type EXISTING_TAG.
 	 */
 	private List<TagLocation> makeTagList(String elementContent) {
 		List<TagLocation> tags = new ArrayList<>();
-
-		// Regex for finding all XML tags.
-		// Group 1 indicates if this is an open or close tag
-		// Group 2 is the tag name
-		Pattern xmlTags = Pattern.compile("<\\s*(/?)\\s*([^>\\s]+)(\\s+[^>]*)?>");
-
-		Matcher m = xmlTags.matcher(elementContent);
 		List<TagLocation> openTagStack = new ArrayList<>(); // keep track of open tags
 		int fixStartTagObjectNum = -1; // when adding start tags to fix well-formedness, number backwards (for correct sorting)
-		while (m.find()) {
-			TagLocation tagLocation = new TagLocation(TagType.EXISTING_TAG, m.start(), m.end());
+		int length = elementContent.length();
+		int tagStart = elementContent.indexOf('<');
+		while (tagStart >= 0) {
+			// Skip whitespace and check for a slash indicating a close tag
+			int i = tagStart + 1;
+			while (i < length && isWhitespace(elementContent.charAt(i)))
+				i++;
+			boolean isOpenTag = true;
+			int slashPos = i;
+			if (i < length && elementContent.charAt(i) == '/') {
+				isOpenTag = false;
+				i++;
+				while (i < length && isWhitespace(elementContent.charAt(i)))
+					i++;
+			}
+
+			// Read the tag name
+			int nameStart = i;
+			while (i < length && elementContent.charAt(i) != '>' && !isWhitespace(elementContent.charAt(i)))
+				i++;
+			if (i == nameStart && !isOpenTag) {
+				// No name after the slash; the slash itself is the name of an open tag
+				// (e.g. "</>"; that's what the regex would do as well)
+				isOpenTag = true;
+				nameStart = i = slashPos;
+				while (i < length && elementContent.charAt(i) != '>' && !isWhitespace(elementContent.charAt(i)))
+					i++;
+			}
+			int nameEnd = i;
+
+			// Find the end of the tag (skipping any attributes)
+			int tagEnd = -1;
+			if (nameEnd > nameStart && i < length) {
+				if (elementContent.charAt(i) == '>')
+					tagEnd = i + 1;
+				else {
+					int closeBracket = elementContent.indexOf('>', i);
+					if (closeBracket >= 0)
+						tagEnd = closeBracket + 1;
+				}
+			}
+			if (tagEnd < 0) {
+				// Not a tag; look for the next one
+				tagStart = elementContent.indexOf('<', tagStart + 1);
+				continue;
+			}
+
+			TagLocation tagLocation = new TagLocation(TagType.EXISTING_TAG, tagStart, tagEnd, tags.size());
 
 			// Keep track of open tags, so we know if the tags are matched
-			boolean isOpenTag = m.group(1).length() == 0;
-			boolean isSelfClosing = isOpenTag && isSelfClosing(m.group());
 			if (isOpenTag) {
-				if (!isSelfClosing) {
+				if (!isSelfClosing(elementContent, tagStart, tagEnd)) {
 					// Open tag. Add to the stack.
 					openTagStack.add(tagLocation);
-					tagLocation.name = m.group(2); // remember in case there's no close tag
+					tagLocation.name = elementContent.substring(nameStart, nameEnd); // remember in case there's no close tag
 				} else {
 					// Self-closing tag. Don't add to stack, link to self
 					tagLocation.matchingTagStart = tagLocation.start;
@@ -382,9 +653,8 @@ public class XmlHighlighter {
 					} else {
 						// Insert a dummy open tag at the start
 						// of the content to maintain well-formedness
-						openTag = new TagLocation(TagType.FIX_START, 0, 0);
-						openTag.name = m.group(2); // we need to know what tag to insert
-						openTag.objectNum = fixStartTagObjectNum; // to fix sorting
+						openTag = new TagLocation(TagType.FIX_START, 0, 0, fixStartTagObjectNum); // number backwards to fix sorting
+						openTag.name = elementContent.substring(nameStart, nameEnd); // we need to know what tag to insert
 						fixStartTagObjectNum--;
 						tags.add(openTag);
 					}
@@ -398,6 +668,8 @@ public class XmlHighlighter {
 
 			// Add tag to the tag list
 			tags.add(tagLocation);
+
+			tagStart = elementContent.indexOf('<', tagEnd);
 		}
 		// Close any tags still open, in the correct order (for well-formedness)
 		for (int i = openTagStack.size() - 1; i >= 0; i--) {
@@ -406,7 +678,7 @@ public class XmlHighlighter {
 				openTagStack.get(i).type = TagType.REMOVE_EXISTING_TAG;
 			} else {
 				// Add a close tag at the end to fix the unbalanced tag
-				TagLocation tagLocation = new TagLocation(TagType.FIX_END, elementContent.length(), elementContent.length());
+				TagLocation tagLocation = new TagLocation(TagType.FIX_END, length, length, tags.size());
 				tagLocation.name = openTagStack.get(i).name; // we remembered this for this case
 				tags.add(tagLocation);
 			}
@@ -416,13 +688,15 @@ public class XmlHighlighter {
 
 	/**
 	 * Determines if a tag is a self-closing tag (ends with "/&gt;")
-	 * @param tag the tag
+	 * @param content the content containing the tag
+	 * @param start start of the tag
+	 * @param end end of the tag (just after the '&gt;')
 	 * @return true iff it is self-closing
 	 */
-	private static boolean isSelfClosing(String tag) {
+	private static boolean isSelfClosing(String content, int start, int end) {
 		// Start at the second to last character (skip the '>') and look for slash.
-		for (int i = tag.length() - 2; i >= 0; i--) {
-			switch(tag.charAt(i)) {
+		for (int i = end - 2; i >= start; i--) {
+			switch(content.charAt(i)) {
 			case '/':
 				// Yes, self-closing tag
 				return true;
@@ -468,6 +742,28 @@ public class XmlHighlighter {
 	 * @return the highlighted (part of the) XML string
 	 */
 	public String highlight(String partialContent, List<HitCharSpan> hits, int offset) {
+		StringBuilder b = new StringBuilder(partialContent.length() + 16);
+		try {
+			highlight(partialContent, hits, offset, b);
+		} catch (IOException e) {
+			throw new RuntimeException(e); // can't happen with a StringBuilder
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Highlight part of an XML document, writing the result to an Appendable.
+	 *
+	 * See highlight(String, List, int).
+	 *
+	 * @param partialContent the (partial) XML to cut and highlight.
+	 * @param hits the hits to use for highlighting, or null for no highlighting
+	 * @param offset position of the first character in the string (i.e. what to subtract
+	 *   from Hit positions to highlight)
+	 * @param out where to write the highlighted (part of the) XML string
+	 * @throws IOException on write error
+	 */
+	public void highlight(String partialContent, List<HitCharSpan> hits, int offset, Appendable out) throws IOException {
 
 		// Find all tags in the content and put their positions in a list
 		List<TagLocation> tags = makeTagList(partialContent);
@@ -478,17 +774,10 @@ public class XmlHighlighter {
 		Collections.sort(tags);
 
 		// Add all the highlight tags in the list into the content,
-		// taking care to mainting well-formedness around existing tags
-		String highlighted = highlightInternal(partialContent, tags, -1);
-
-		if (removeEmptyHlTags) {
-			// Because of the way the highlighting (and maintaining of well-formedness) occurs,
-			// empty highlight tags may have arisen. Remove these.
-			highlighted = highlighted.replaceAll(startHighlightTag + "(\\s*)" + endHighlightTag,
-					"$1");
-		}
-
-		return highlighted;
+		// taking care to mainting well-formedness around existing tags.
+		// Because of the way the highlighting (and maintaining of well-formedness) occurs,
+		// empty highlight tags may arise; the writer optionally removes these.
+		highlightInternal(partialContent, tags, -1, new HighlightWriter(out, removeEmptyHlTags));
 	}
 
 	/**
@@ -510,7 +799,13 @@ public class XmlHighlighter {
 
 		// Add all the highlight tags in the list into the content,
 		// taking care to mainting well-formedness around existing tags
-		return highlightInternal(elementContent, tags, stopAfterChars);
+		StringBuilder b = new StringBuilder(elementContent.length() + 16);
+		try {
+			highlightInternal(elementContent, tags, stopAfterChars, new HighlightWriter(b, false));
+		} catch (IOException e) {
+			throw new RuntimeException(e); // can't happen with a StringBuilder
+		}
+		return b.toString();
 	}
 
 	public static void main(String[] args) {
@@ -528,6 +823,8 @@ public class XmlHighlighter {
 	 * at the end of highlighting (which can form due to
 	 * the process).
 	 *
+	 * Configure the highlighter before sharing it between threads.
+	 *
 	 * @param c true iff empty hl tags should be removed
 	 */
 	public void setRemoveEmptyHlTags(boolean c) {
@@ -564,6 +861,9 @@ public class XmlHighlighter {
 
 	/**
 	 * Set how to fix well-formedness problems.
+	 *
+	 * Configure the highlighter before sharing it between threads.
+	 *
 	 * @param strategy what to do when encountering unbalanced tags.
 	 */
 	public void setUnbalancedTagsStrategy(UnbalancedTagsStrategy strategy) {
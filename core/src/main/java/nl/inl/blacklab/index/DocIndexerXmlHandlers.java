@@ -19,7 +19,6 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
 import java.lang.reflect.Constructor;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -38,7 +37,9 @@ import nl.inl.blacklab.index.complex.ComplexField;
 import nl.inl.blacklab.index.complex.ComplexFieldProperty;
 import nl.inl.blacklab.index.complex.ComplexFieldProperty.SensitivitySetting;
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.index.complex.TagPayloads;
 import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.search.indexstructure.ComplexFieldDesc;
 import nl.inl.blacklab.search.indexstructure.FieldType;
 import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.blacklab.search.indexstructure.MetadataFieldDesc;
@@ -50,7 +51,6 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.IntField;
-import org.apache.lucene.util.BytesRef;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
@@ -170,6 +170,13 @@ public abstract class DocIndexerXmlHandlers extends DocIndexerAbstract {
 						.forwardIndexIdField(fieldName), fiid, Store.YES));
 			}
 
+			// Add tag positions to structure index (if any) and add id to Lucene doc
+			int siid = indexer.addToStructureIndex(contentsField.getName(), propStartTag);
+			if (siid >= 0) {
+				currentLuceneDoc.add(new IntField(ComplexFieldUtil
+						.structureIndexIdField(contentsField.getName()), siid, Store.YES));
+			}
+
 			// If there's an external metadata fetcher, call it now so it can
 			// add the metadata for this document and (optionally) store the
 			// metadata
@@ -333,6 +340,9 @@ public abstract class DocIndexerXmlHandlers extends DocIndexerAbstract {
 	}
 	List<OpenTagInfo> openTags = new ArrayList<>();
 
+	/** Store the element length in the start tag payloads instead of the end position? */
+	private boolean tagLengthPayloads;
+
 	/** Handle tags. */
 	public class InlineTagHandler extends ElementHandler {
 
@@ -365,8 +375,7 @@ public abstract class DocIndexerXmlHandlers extends DocIndexerAbstract {
 
 			// Add payload to start tag property indicating end position
 			OpenTagInfo openTag = openTags.remove(openTags.size() - 1);
-			byte[] payload = ByteBuffer.allocate(4).putInt(currentPos).array();
-			propStartTag.setPayloadAtIndex(openTag.index, new BytesRef(payload));
+			propStartTag.setPayloadAtIndex(openTag.index, TagPayloads.encode(openTag.position, currentPos, tagLengthPayloads));
 		}
 	}
 
@@ -542,8 +551,12 @@ public abstract class DocIndexerXmlHandlers extends DocIndexerAbstract {
 
 		// If the indexmetadata file specified a list of properties that shouldn't get a forward index,
 		// make the new complex field aware of this.
-		Set<String> noForwardIndexProps = indexStructure.getComplexFieldDesc(Searcher.DEFAULT_CONTENTS_FIELD_NAME).getNoForwardIndexProps();
+		ComplexFieldDesc contentsFieldDesc = indexStructure.getComplexFieldDesc(Searcher.DEFAULT_CONTENTS_FIELD_NAME);
+		Set<String> noForwardIndexProps = contentsFieldDesc.getNoForwardIndexProps();
 		contentsField.setNoForwardIndexProps(noForwardIndexProps);
+
+		// How should we store the end positions of tags in the start tag payloads?
+		tagLengthPayloads = contentsFieldDesc.hasTagLengthPayloads();
 	}
 
 	public void addNumericFields(Collection<String> fields) {
@@ -18,14 +18,18 @@ package nl.inl.blacklab.index;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
@@ -286,7 +290,10 @@ public class HookableSaxHandler extends DefaultHandler {
 	}
 
 	/**
-	 * Evaluates the condition and calls the handler if if matches
+	 * A condition and the handler to call if it matches.
+	 *
+	 * The conditions of all hooks are evaluated together by the dispatch
+	 * automaton (see DispatchState); we only get called if ours matches.
 	 */
 	private static class SaxParserHook {
 		/** The path to check for */
@@ -313,55 +320,37 @@ public class HookableSaxHandler extends DefaultHandler {
 			this.callHandlerForDescendants = callHandlerForDescendants;
 		}
 
-		/** Should we call the handler for our current place in the document?
-		 * @return true iff we should
-		 */
-		private boolean shouldCallHandler() {
-			if (callHandlerForDescendants)
-				return expression.ancestorOrSelfMatched();
-			return expression.currentElementMatches();
-		}
-
 		/**
-		 * Open tag: pass on to expression checked, and call handler if the
-		 * element matches or any of the attributes match.
+		 * Open tag of a matching element: call handler.
 		 * @param uri namespace uri
 		 * @param localName element local name
 		 * @param qName element qualified name
 		 * @param attributes element attributes
 		 */
 		public void startElement(String uri, String localName, String qName, Attributes attributes) {
-			expression.startElement(localName);
-			if (shouldCallHandler()) {
-				handler.setInsideElement(true);
-				handler.startElement(uri, localName, qName, attributes);
-			}
+			handler.setInsideElement(true);
+			handler.startElement(uri, localName, qName, attributes);
 		}
 
 		/**
-		 * Close tag: call handler if the element matched, and pass the tag
-		 * on to the expression checker.
+		 * Close tag of a matching element: call handler.
 		 * @param uri namespace uri
 		 * @param localName element local name
 		 * @param qName element qualified name
 		 */
 		public void endElement(String uri, String localName, String qName) {
-			if (shouldCallHandler()) {
-				handler.endElement(uri, localName, qName);
-				handler.setInsideElement(false);
-			}
-			expression.endElement();
+			handler.endElement(uri, localName, qName);
+			handler.setInsideElement(false);
 		}
 
 		/**
-		 * Character content: call handler if the expression is currently matched.
+		 * Character content inside a matching element: call handler.
 		 * @param ch character buffer
 		 * @param start start of content in buffer
 		 * @param length length of content in buffer
 		 */
 		public void characters(char[] ch, int start, int length) {
-			if (shouldCallHandler())
-				handler.characters(ch, start, length);
+			handler.characters(ch, start, length);
 		}
 
 		@Override
@@ -370,9 +359,54 @@ public class HookableSaxHandler extends DefaultHandler {
 		}
 	}
 
+	/**
+	 * A state of the automaton that decides which hooks to call.
+	 *
+	 * The expressions of all hooks are compiled into one deterministic
+	 * automaton over element names, which is built as we encounter new
+	 * elements. Each open element corresponds to a state that knows which
+	 * hooks to call for it, so a SAX event is a single transition (or a
+	 * stack lookup) instead of evaluating every hook's expression.
+	 */
+	private static class DispatchState {
+		/**
+		 * Partial matches: hook index (upper 16 bits) and the number of steps
+		 * matched (lower 16 bits), sorted. The implicit "no steps matched yet"
+		 * of relative expressions isn't included, as it applies everywhere.
+		 */
+		int[] partialMatches;
+
+		/** Hooks called for descendants whose expression matched this element or an ancestor (sorted) */
+		int[] ancestorOrSelfMatched;
+
+		/** Hooks to call for this element, in the order they were added */
+		SaxParserHook[] hooksToCall;
+
+		/** Next state for each element name we've encountered so far */
+		Map<String, DispatchState> next = new HashMap<>();
+
+		DispatchState(int[] partialMatches, int[] ancestorOrSelfMatched, SaxParserHook[] hooksToCall) {
+			this.partialMatches = partialMatches;
+			this.ancestorOrSelfMatched = ancestorOrSelfMatched;
+			this.hooksToCall = hooksToCall;
+		}
+	}
+
 	/** The list of hooks into our parser */
 	private List<SaxParserHook> hooks = new ArrayList<>();
 
+	/** Start state of the dispatch automaton, or null if it needs to be (re)built */
+	private DispatchState startState;
+
+	/** The states of the dispatch automaton, by partial matches and ancestor matches */
+	private Map<String, DispatchState> states = new HashMap<>();
+
+	/** States for the start state and the currently open elements */
+	private DispatchState[] stateStack = new DispatchState[32];
+
+	/** Number of open elements */
+	private int depth = 0;
+
 	/** To keep track of the position within the document */
 	protected Locator locator;
 
@@ -393,6 +427,7 @@ public class HookableSaxHandler extends DefaultHandler {
 	private void addHook(SaxPathExpressionChecker condition, ElementHandler handler,
 			boolean callHandlerForAllDescendants) {
 		hooks.add(new SaxParserHook(condition, handler, callHandlerForAllDescendants));
+		startState = null; // rebuild the dispatch automaton
 	}
 
 	/**
@@ -441,7 +476,9 @@ public class HookableSaxHandler extends DefaultHandler {
 	 */
 	@Override
 	public void characters(char[] ch, int start, int length) {
-		for (SaxParserHook hook: hooks) {
+		if (depth == 0)
+			return;
+		for (SaxParserHook hook: stateStack[depth].hooksToCall) {
 			hook.characters(ch, start, length);
 		}
 	}
@@ -451,9 +488,10 @@ public class HookableSaxHandler extends DefaultHandler {
 	 */
 	@Override
 	public void endElement(String uri, String localName, String qName) {
-		for (SaxParserHook hook: hooks) {
+		for (SaxParserHook hook: stateStack[depth].hooksToCall) {
 			hook.endElement(uri, localName, qName);
 		}
+		depth--;
 	}
 
 	/**
@@ -461,11 +499,117 @@ public class HookableSaxHandler extends DefaultHandler {
 	 */
 	@Override
 	public void startElement(String uri, String localName, String qName, Attributes attributes) {
-		for (SaxParserHook hook: hooks) {
+		if (depth == 0) {
+			if (startState == null)
+				buildStartState();
+			stateStack[0] = startState;
+		}
+		DispatchState current = stateStack[depth];
+		DispatchState state = current.next.get(localName);
+		if (state == null) {
+			state = nextState(current, localName);
+			current.next.put(localName, state);
+		}
+		depth++;
+		if (depth == stateStack.length)
+			stateStack = Arrays.copyOf(stateStack, depth * 2);
+		stateStack[depth] = state;
+		for (SaxParserHook hook: state.hooksToCall) {
 			hook.startElement(uri, localName, qName, attributes);
 		}
 	}
 
+	/**
+	 * (Re)build the start state of the dispatch automaton.
+	 *
+	 * In the start state, absolute expressions haven't matched any steps yet.
+	 */
+	private void buildStartState() {
+		states.clear();
+		IntArrayList partialMatches = new IntArrayList();
+		for (int i = 0; i < hooks.size(); i++) {
+			if (!hooks.get(i).expression.isRelativePath)
+				partialMatches.add(i << 16);
+		}
+		startState = getState(partialMatches.toArray(), new int[0], new int[0]);
+	}
+
+	/**
+	 * Calculate the state for an element inside an element in the given state.
+	 *
+	 * @param current state of the parent element
+	 * @param elementName local name of the element
+	 * @return the state for the element
+	 */
+	private DispatchState nextState(DispatchState current, String elementName) {
+		IntArrayList partialMatches = new IntArrayList();
+		boolean[] matched = new boolean[hooks.size()];
+		boolean[] ancestorOrSelfMatched = new boolean[hooks.size()];
+		for (int i: current.ancestorOrSelfMatched) {
+			ancestorOrSelfMatched[i] = true;
+		}
+
+		// Try to match the next step of each partial match, plus the first step of each relative expression
+		IntArrayList candidates = IntArrayList.newListWith(current.partialMatches);
+		for (int i = 0; i < hooks.size(); i++) {
+			if (hooks.get(i).expression.isRelativePath)
+				candidates.add(i << 16);
+		}
+		for (int j = 0; j < candidates.size(); j++) {
+			int hookIndex = candidates.get(j) >>> 16;
+			int steps = candidates.get(j) & 0xFFFF;
+			List<String> elementNames = hooks.get(hookIndex).expression.elementNames;
+			String step = elementNames.get(steps);
+			// (the first step must match literally; a wildcard is only allowed after that)
+			if (step.equals(elementName) || steps > 0 && step.equals("*")) {
+				if (steps + 1 == elementNames.size()) {
+					matched[hookIndex] = true;
+					if (hooks.get(hookIndex).callHandlerForDescendants)
+						ancestorOrSelfMatched[hookIndex] = true;
+				} else {
+					partialMatches.add(candidates.get(j) + 1);
+				}
+			}
+		}
+
+		IntArrayList ancestorOrSelfList = new IntArrayList();
+		IntArrayList hooksToCall = new IntArrayList();
+		for (int i = 0; i < hooks.size(); i++) {
+			if (ancestorOrSelfMatched[i])
+				ancestorOrSelfList.add(i);
+			if (hooks.get(i).callHandlerForDescendants ? ancestorOrSelfMatched[i] : matched[i])
+				hooksToCall.add(i);
+		}
+		partialMatches.sortThis();
+		return getState(partialMatches.distinct().toArray(), ancestorOrSelfList.toArray(), hooksToCall.toArray());
+	}
+
+	/**
+	 * Get the state with these matches, creating it if it doesn't exist yet.
+	 *
+	 * Sharing states keeps the automaton small: elements in different places
+	 * often end up in the same state.
+	 *
+	 * @param partialMatches the partial matches
+	 * @param ancestorOrSelfMatched hooks called for descendants that matched
+	 * @param hooksToCall indices of the hooks to call for elements in this state
+	 * @return the state
+	 */
+	private DispatchState getState(int[] partialMatches, int[] ancestorOrSelfMatched, int[] hooksToCall) {
+		String key = Arrays.toString(partialMatches) + Arrays.toString(ancestorOrSelfMatched)
+				+ Arrays.toString(hooksToCall);
+		DispatchState state = states.get(key);
+		if (state == null) {
+			SaxParserHook[] hookObjects = new SaxParserHook[hooksToCall.length];
+			for (int i = 0; i < hooksToCall.length; i++) {
+				hookObjects[i] = hooks.get(hooksToCall[i]);
+			}
+			state = new DispatchState(partialMatches, ancestorOrSelfMatched, hookObjects);
+			states.put(key, state);
+		}
+		return state;
+	}
+
 	/**
 	 * Test program
 	 *
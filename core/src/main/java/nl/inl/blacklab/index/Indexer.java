@@ -46,6 +46,7 @@ import nl.inl.blacklab.externalstorage.ContentStore;
 import nl.inl.blacklab.forwardindex.ForwardIndex;
 import nl.inl.blacklab.index.complex.ComplexFieldProperty;
 import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.structureindex.StructureIndex;
 import nl.inl.util.FileUtil;
 import nl.inl.util.TarGzipReader;
 import nl.inl.util.TarGzipReader.FileHandler;
@@ -382,6 +383,24 @@ public class Indexer {
 		return forwardIndex.addDocument(prop.getValues(), prop.getPositionIncrements());
 	}
 
+	/**
+	 * Add the tags of a document to the structure index of a complex field.
+	 *
+	 * @param fieldName the complex field
+	 * @param startTagProp the start tag property, whose payloads contain the end positions of the tags
+	 * @return the id assigned to the document in the structure index, or -1 if the field
+	 *   doesn't have a structure index
+	 */
+	public int addToStructureIndex(String fieldName, ComplexFieldProperty startTagProp) {
+		StructureIndex structureIndex = searcher.getStructureIndex(fieldName);
+		if (structureIndex == null)
+			return -1;
+
+		boolean tagLengthPayloads = searcher.getIndexStructure().getComplexFieldDesc(fieldName).hasTagLengthPayloads();
+		return structureIndex.addDocument(startTagProp.getValues(), startTagProp.getPositionIncrements(),
+				startTagProp.getPayloads(), tagLengthPayloads);
+	}
+
 	/**
 	 * Index a document from a Reader, using the specified type of DocIndexer
 	 *
@@ -185,6 +185,10 @@ public class ComplexFieldProperty {
 		return CollUtil.toList(increments);
 	}
 
+	public List<BytesRef> getPayloads() {
+		return payloads == null ? null : Collections.unmodifiableList(payloads);
+	}
+
 	public int lastValuePosition() {
 		return lastValuePosition;
 	}
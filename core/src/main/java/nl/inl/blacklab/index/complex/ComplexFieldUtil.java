@@ -34,6 +34,8 @@ public class ComplexFieldUtil {
 
 	private static final String LENGTH_TOKENS_BOOKKEEP_NAME = "length_tokens";
 
+	private static final String STRUCTURE_INDEX_ID_BOOKKEEP_NAME = "siid";
+
 	private static final String DEFAULT_MAIN_PROP_NAME = "word";
 
 	public static final String SENSITIVE_ALT_NAME = "s";
@@ -101,7 +103,8 @@ public class ComplexFieldUtil {
 	private final static List<String> BOOKKEEPING_SUBFIELDS = Arrays.asList(
 		CONTENT_ID_BOOKKEEP_NAME,
 		FORWARD_INDEX_ID_BOOKKEEP_NAME,
-		LENGTH_TOKENS_BOOKKEEP_NAME
+		LENGTH_TOKENS_BOOKKEEP_NAME,
+		STRUCTURE_INDEX_ID_BOOKKEEP_NAME
 	);
 
 	private ComplexFieldUtil() {
@@ -110,7 +113,8 @@ public class ComplexFieldUtil {
 	public enum BookkeepFieldType {
 		CONTENT_ID,
 		FORWARD_INDEX_ID,
-		LENGTH_TOKENS
+		LENGTH_TOKENS,
+		STRUCTURE_INDEX_ID
 	}
 
 	public static boolean isBookkeepingSubfield(String bookkeepName) {
@@ -125,6 +129,8 @@ public class ComplexFieldUtil {
 			return BookkeepFieldType.FORWARD_INDEX_ID;
 		case 2:
 			return BookkeepFieldType.LENGTH_TOKENS;
+		case 3:
+			return BookkeepFieldType.STRUCTURE_INDEX_ID;
 		default:
 			throw new IllegalArgumentException("Unknown bookkeeping field: " + bookkeepName);
 		}
@@ -147,6 +153,10 @@ public class ComplexFieldUtil {
 		return bookkeepingField(fieldName, LENGTH_TOKENS_BOOKKEEP_NAME);
 	}
 
+	public static String structureIndexIdField(String fieldName) {
+		return bookkeepingField(fieldName, STRUCTURE_INDEX_ID_BOOKKEEP_NAME);
+	}
+
 	public static String startTagPropertyField(String fieldName) {
 		return propertyField(fieldName, START_TAG_PROP_NAME);
 	}
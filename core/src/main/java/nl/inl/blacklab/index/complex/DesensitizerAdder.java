@@ -3,6 +3,7 @@ package nl.inl.blacklab.index.complex;
 import org.apache.lucene.analysis.TokenStream;
 
 import nl.inl.blacklab.filter.DesensitizeFilter;
+import nl.inl.blacklab.filter.Desensitizer;
 
 public class DesensitizerAdder implements TokenFilterAdder {
 
@@ -12,16 +13,21 @@ public class DesensitizerAdder implements TokenFilterAdder {
 	/** Should we add a RemoveAllAccentsFilter? */
 	private boolean removeAccents;
 
+	/** Desensitizes the terms (shared by our filters, so its memo lasts for the whole input file) */
+	private Desensitizer desensitizer;
+
 	public DesensitizerAdder(boolean lowerCase, boolean removeAccents) {
 		this.lowerCase = lowerCase;
 		this.removeAccents = removeAccents;
+		if (lowerCase || removeAccents)
+			desensitizer = new Desensitizer(lowerCase, removeAccents);
 	}
 
 	@Override
 	public TokenStream addFilters(TokenStream input) {
 		if (!lowerCase && !removeAccents)
 			return input;
-		return new DesensitizeFilter(input, lowerCase, removeAccents);
+		return new DesensitizeFilter(input, desensitizer);
 	}
 
 }
@@ -0,0 +1,99 @@
+package nl.inl.blacklab.index.complex;
+
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Encodes and decodes the payloads of the start tag property.
+ *
+ * Each start tag token has a payload indicating where the element ends.
+ * Traditionally, this is the end position as a fixed-width 4-byte int.
+ * Newer indices may store the length of the element (end - start) as a
+ * variable-length int instead (see ComplexFieldDesc.hasTagLengthPayloads()),
+ * which takes only 1 byte for most elements.
+ *
+ * Decoding works directly on the payload bytes, so it doesn't allocate
+ * anything.
+ */
+public final class TagPayloads {
+
+	private TagPayloads() {
+	}
+
+	/**
+	 * Encode the payload for a start tag.
+	 *
+	 * @param start start position of the element
+	 * @param end end position of the element
+	 * @param lengthEncoded if true, store the length as a variable-length int;
+	 *   if false, store the end position as a 4-byte int
+	 * @return the payload
+	 */
+	public static BytesRef encode(int start, int end, boolean lengthEncoded) {
+		if (!lengthEncoded) {
+			return new BytesRef(new byte[] { (byte) (end >>> 24), (byte) (end >>> 16), (byte) (end >>> 8), (byte) end });
+		}
+		byte[] bytes = new byte[5];
+		int n = 0;
+		int length = end - start;
+		while ((length & ~0x7F) != 0) {
+			bytes[n++] = (byte) ((length & 0x7F) | 0x80);
+			length >>>= 7;
+		}
+		bytes[n++] = (byte) length;
+		return new BytesRef(bytes, 0, n);
+	}
+
+	/**
+	 * Decode the end position of an element from a start tag payload.
+	 *
+	 * @param bytes payload bytes
+	 * @param offset offset of the payload in the array
+	 * @param length length of the payload
+	 * @param start start position of the element
+	 * @param lengthEncoded was the payload written with lengthEncoded == true?
+	 * @return the end position of the element
+	 */
+	public static int decodeEnd(byte[] bytes, int offset, int length, int start, boolean lengthEncoded) {
+		if (!lengthEncoded) {
+			return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+					| ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+		}
+		int elementLength = 0;
+		int shift = 0;
+		for (int i = offset; i < offset + length; i++) {
+			byte b = bytes[i];
+			elementLength |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				break;
+			shift += 7;
+		}
+		return start + elementLength;
+	}
+
+	/**
+	 * Decode the end position of an element from a start tag payload.
+	 *
+	 * @param payload the payload
+	 * @param start start position of the element
+	 * @param lengthEncoded was the payload written with lengthEncoded == true?
+	 * @return the end position of the element
+	 */
+	public static int decodeEnd(BytesRef payload, int start, boolean lengthEncoded) {
+		return decodeEnd(payload.bytes, payload.offset, payload.length, start, lengthEncoded);
+	}
+
+	/**
+	 * Is this a valid start tag payload?
+	 *
+	 * Attribute values (and empty values used for padding) are indexed
+	 * without a payload.
+	 *
+	 * @param payload the payload, or null if none
+	 * @param lengthEncoded was the payload written with lengthEncoded == true?
+	 * @return true if we can decode the end position from this payload
+	 */
+	public static boolean isValid(BytesRef payload, boolean lengthEncoded) {
+		return payload != null && payload.length >= (lengthEncoded ? 1 : 4);
+	}
+
+}
@@ -24,6 +24,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.eclipse.collections.api.block.procedure.primitive.ObjectIntProcedure;
+
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.grouping.HitPropValue;
 
@@ -64,23 +66,18 @@ public class DocCounts implements Iterable<DocCount> {
 		this.docResults = docResults;
 		searcher = docResults.getSearcher();
 		this.countBy = countBy;
-		//Thread currentThread = Thread.currentThread();
-		for (DocResult r : docResults) {
-
-			HitPropValue groupId = countBy.get(r);
-			DocCount count = counts.get(groupId);
-			if (count == null) {
-				count = new DocCount(searcher, groupId);
+		List<DocResult> results = docResults.subList(0, docResults.size());
+		DocResultsParallel.count(results, countBy).forEachKeyValue(new ObjectIntProcedure<HitPropValue>() {
+			@Override
+			public void value(HitPropValue groupId, int n) {
+				DocCount count = new DocCount(searcher, groupId, n);
 				counts.put(groupId, count);
+				orderedGroups.add(count);
+				if (n > largestGroupSize)
+					largestGroupSize = n;
+				totalResults += n;
 			}
-			count.increment();
-			if (count.size() > largestGroupSize)
-				largestGroupSize = count.size();
-			totalResults++;
-		}
-		for (DocCount c: counts.values()) {
-			orderedGroups.add(c);
-		}
+		});
 	}
 
 	public Collection<DocCount> getCounts() {
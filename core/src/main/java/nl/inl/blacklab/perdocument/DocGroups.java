@@ -61,10 +61,12 @@ public class DocGroups implements Iterable<DocGroup>, DocOrHitGroups {
 		this.docResults = docResults;
 		searcher = docResults.getSearcher();
 		this.groupBy = groupBy;
-		//Thread currentThread = Thread.currentThread();
+		List<DocResult> results = docResults.subList(0, docResults.size());
+		HitPropValue[] groupIds = DocResultsParallel.values(results, groupBy);
 		Map<HitPropValue, List<DocResult>> groupLists = new HashMap<>();
-		for (DocResult r : docResults) {
-			HitPropValue groupId = groupBy.get(r);
+		for (int i = 0; i < groupIds.length; i++) {
+			DocResult r = results.get(i);
+			HitPropValue groupId = groupIds[i];
 			List<DocResult> group = groupLists.get(groupId);
 			if (group == null) {
 				group = new ArrayList<>();
@@ -55,6 +55,36 @@ public abstract class DocProperty {
 		return get(a).compareTo(get(b));
 	}
 
+	/**
+	 * Get the key to sort on for a result.
+	 *
+	 * Sorting calls compare() many times for each result, which often means
+	 * retrieving the stored document each time. Instead, DocResults gets the
+	 * sort key for each result once and compares those using compareSortKeys().
+	 *
+	 * The default implementation returns the value from get(). Subclasses that
+	 * override compare() should override this and compareSortKeys() to match.
+	 *
+	 * @param result the result to get the sort key for
+	 * @return the sort key
+	 */
+	public Object getSortKey(DocResult result) {
+		return get(result);
+	}
+
+	/**
+	 * Compares the sort keys of two docs.
+	 *
+	 * Must give the same result as compare() for the corresponding docs.
+	 *
+	 * @param a sort key of first doc
+	 * @param b sort key of second doc
+	 * @return 0 if equal, negative if a < b, positive if a > b.
+	 */
+	public int compareSortKeys(Object a, Object b) {
+		return ((HitPropValue)a).compareTo(b);
+	}
+
 	public boolean defaultSortDescending() {
 		return false;
 	}
@@ -57,15 +57,27 @@ public class DocPropertyComplexFieldLength extends DocProperty {
 	 */
 	@Override
 	public int compare(DocResult a, DocResult b) {
+		return compareSortKeys(getSortKey(a), getSortKey(b));
+	}
+
+	@Override
+	public Integer getSortKey(DocResult result) {
 		try {
-			int ia = Integer.parseInt(a.getDocument().get(fieldName));
-			int ib = Integer.parseInt(b.getDocument().get(fieldName));
-			return reverse ? ib - ia : ia - ib;
+			return Integer.parseInt(result.getDocument().get(fieldName));
 		} catch (NumberFormatException e) {
-			return 0;
+			return null;
 		}
 	}
 
+	@Override
+	public int compareSortKeys(Object a, Object b) {
+		if (a == null || b == null)
+			return 0;
+		int ia = (Integer)a;
+		int ib = (Integer)b;
+		return reverse ? ib - ia : ia - ib;
+	}
+
 	@Override
 	public String getName() {
 		return friendlyName;
@@ -52,31 +52,38 @@ public class DocPropertyDecade extends DocProperty {
 	 */
 	@Override
 	public int compare(DocResult a, DocResult b) {
-		String strYearA = a.getDocument().get(fieldName);
-		if (strYearA == null)
-			strYearA = "";
-		String strYearB = b.getDocument().get(fieldName);
-		if (strYearB == null)
-			strYearB = "";
-		if (strYearA.length() == 0) // sort missing year at the end
-			return strYearB.length() == 0 ? 0 : (reverse ? -1 : 1);
-		if (strYearB.length() == 0) // sort missing year at the end
-			return reverse ? 1 : -1;
-		int year1;
-		try {
-			year1 = Integer.parseInt(strYearB);
-			year1 -= year1 % 10;
-		} catch (NumberFormatException e) {
-			year1 = HitPropertyDocumentDecade.UNKNOWN_VALUE;
-		}
-		int year2;
+		return compareSortKeys(getSortKey(a), getSortKey(b));
+	}
+
+	/**
+	 * Get the decade to sort on.
+	 *
+	 * @param result the result
+	 * @return the decade, or null if the year is missing
+	 */
+	@Override
+	public Integer getSortKey(DocResult result) {
+		String strYear = result.getDocument().get(fieldName);
+		if (strYear == null || strYear.length() == 0)
+			return null;
+		int year;
 		try {
-			year2 = Integer.parseInt(strYearB);
-			year2 -= year2 % 10;
+			year = Integer.parseInt(strYear);
+			year -= year % 10;
 		} catch (NumberFormatException e) {
-			year2 = HitPropertyDocumentDecade.UNKNOWN_VALUE;
+			year = HitPropertyDocumentDecade.UNKNOWN_VALUE;
 		}
+		return year;
+	}
 
+	@Override
+	public int compareSortKeys(Object a, Object b) {
+		if (a == null) // sort missing year at the end
+			return b == null ? 0 : (reverse ? -1 : 1);
+		if (b == null) // sort missing year at the end
+			return reverse ? 1 : -1;
+		int year1 = (Integer)a;
+		int year2 = (Integer)b;
 		return reverse ? year2 - year1 : year1 - year2;
 	}
 
@@ -105,6 +105,31 @@ public class DocPropertyMultiple extends DocProperty implements Iterable<DocProp
 		return 0;
 	}
 
+	@Override
+	public Object[] getSortKey(DocResult result) {
+		Object[] keys = new Object[criteria.size()];
+		int i = 0;
+		for (DocProperty crit : criteria) {
+			keys[i] = crit.getSortKey(result);
+			i++;
+		}
+		return keys;
+	}
+
+	@Override
+	public int compareSortKeys(Object a, Object b) {
+		Object[] ka = (Object[])a;
+		Object[] kb = (Object[])b;
+		int i = 0;
+		for (DocProperty crit : criteria) {
+			int cmp = crit.compareSortKeys(ka[i], kb[i]);
+			if (cmp != 0)
+				return reverse ? -cmp : cmp;
+			i++;
+		}
+		return 0;
+	}
+
 	@Override
 	public String getName() {
 		StringBuilder b = new StringBuilder();
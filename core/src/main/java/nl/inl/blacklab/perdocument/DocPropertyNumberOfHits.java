@@ -35,9 +35,19 @@ public class DocPropertyNumberOfHits extends DocProperty {
 	 */
 	@Override
 	public int compare(DocResult a, DocResult b) {
+		return compareSortKeys(getSortKey(a), getSortKey(b));
+	}
+
+	@Override
+	public Integer getSortKey(DocResult result) {
+		return result.getNumberOfHits();
+	}
+
+	@Override
+	public int compareSortKeys(Object a, Object b) {
 		if (reverse)
-			return b.getNumberOfHits() - a.getNumberOfHits();
-		return a.getNumberOfHits() - b.getNumberOfHits();
+			return (Integer)b - (Integer)a;
+		return (Integer)a - (Integer)b;
 	}
 
 	@Override
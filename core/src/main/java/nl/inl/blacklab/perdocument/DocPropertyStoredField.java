@@ -48,12 +48,19 @@ public class DocPropertyStoredField extends DocProperty {
 	 */
 	@Override
 	public int compare(DocResult a, DocResult b) {
-		String sa = a.getDocument().get(fieldName);
-		if (sa == null)
-			sa = "";
-		String sb = b.getDocument().get(fieldName);
-		if (sb == null)
-			sb = "";
+		return compareSortKeys(getSortKey(a), getSortKey(b));
+	}
+
+	@Override
+	public String getSortKey(DocResult result) {
+		String value = result.getDocument().get(fieldName);
+		return value == null ? "" : value;
+	}
+
+	@Override
+	public int compareSortKeys(Object a, Object b) {
+		String sa = (String)a;
+		String sb = (String)b;
 		if (sa.length() == 0) // sort empty string at the end
 			return sb.length() == 0 ? 0 : (reverse ? -1 : 1);
 		if (sb.length() == 0) // sort empty string at the end
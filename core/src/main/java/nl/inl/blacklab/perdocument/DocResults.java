@@ -25,17 +25,20 @@ import java.util.NoSuchElementException;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
-import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.Bits;
 
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.FilterCache;
 import nl.inl.blacklab.search.Prioritizable;
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.grouping.HitPropValueInt;
-import nl.inl.util.ReverseComparator;
 import nl.inl.util.ThreadPriority.Level;
 
 /**
@@ -177,33 +180,24 @@ public class DocResults implements Iterable<DocResult>, Prioritizable {
 		//    even better: make DocResults abstract and provide two implementations, DocResultsFromHits and DocResultsFromQuery.
 
 		try {
-			searcher.getIndexSearcher().search(query, new SimpleCollector() {
-
-				private int docBase;
-
-				@Override
-				protected void doSetNextReader(LeafReaderContext context)
-						throws IOException {
-					docBase = context.docBase;
-					super.doSetNextReader(context);
-				}
-
-				@Override
-				public void collect(int docId) throws IOException {
-					int globalDocId = docId + docBase;
-					results.add(new DocResult(DocResults.this.searcher, null, globalDocId, 0.0f));
-				}
-
-				@Override
-				public void setScorer(Scorer scorer) {
-					// (ignore)
-				}
-
-				@Override
-				public boolean needsScores() {
-					return false;
+			// Use the filter cache, so we don't evaluate the same metadata query again and again
+			IndexSearcher indexSearcher = searcher.getIndexSearcher();
+			Query rewritten = indexSearcher.rewrite(query == null ? new MatchAllDocsQuery() : query);
+			FilterCache filterCache = searcher.filterCache();
+			for (LeafReaderContext context: indexSearcher.getIndexReader().leaves()) {
+				DocIdSet docs = filterCache.getDocIdSet(rewritten, context, indexSearcher);
+				DocIdSetIterator it = docs == null ? null : docs.iterator();
+				if (it == null)
+					continue;
+				Bits liveDocs = context.reader().getLiveDocs();
+				while (true) {
+					int docId = it.nextDoc();
+					if (docId == DocIdSetIterator.NO_MORE_DOCS)
+						break;
+					if (liveDocs == null || liveDocs.get(docId))
+						results.add(new DocResult(searcher, null, context.docBase + docId, 0.0f));
 				}
-			});
+			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -291,15 +285,22 @@ public class DocResults implements Iterable<DocResult>, Prioritizable {
 
 	/**
 	 * Sort documents based on a document property.
+	 *
+	 * The sort key for each document is determined only once (in parallel
+	 * for large result sets), then the keys are sorted.
+	 *
 	 * @param prop the property to sort on
 	 * @param sortReverse true iff we want to sort in reverse.
 	 */
 	public void sort(DocProperty prop, boolean sortReverse) {
-		Comparator<DocResult> comparator = new ComparatorDocProperty(prop);
-		if (sortReverse) {
-			comparator = new ReverseComparator<>(comparator);
+		try {
+			ensureAllResultsRead();
+		} catch (InterruptedException e) {
+			// Thread was interrupted; just sort the results we have.
+			// Let caller detect and deal with interruption.
 		}
-		sort(comparator);
+		// (same order as a ComparatorDocProperty, reversed if requested)
+		DocResultsParallel.sort(results, prop, sortReverse != prop.defaultSortDescending());
 	}
 
 	/**
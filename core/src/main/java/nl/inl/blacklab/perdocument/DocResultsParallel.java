@@ -0,0 +1,310 @@
+package nl.inl.blacklab.perdocument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.eclipse.collections.api.block.procedure.primitive.ObjectIntProcedure;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import nl.inl.blacklab.search.grouping.HitPropValue;
+
+/**
+ * Sorts, groups and counts document results in parallel.
+ *
+ * Most document properties need the stored Lucene document, and retrieving
+ * that is by far the most expensive part of sorting or grouping. So we
+ * retrieve the property value (or sort key) once for each result, in chunks
+ * on several threads for large result sets, and sort, group or count using
+ * those precomputed values.
+ */
+class DocResultsParallel {
+
+	/** Minimum number of results per chunk; smaller sets are processed on the calling thread */
+	static final int MIN_CHUNK_SIZE = 5000;
+
+	/** Number of threads to process chunks with */
+	private static final int THREADS = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+	/** Threads processing chunks (created when first needed) */
+	private static ExecutorService pool;
+
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "DocResultsWorker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return pool;
+	}
+
+	private DocResultsParallel() {
+	}
+
+	/**
+	 * Processes a range of results.
+	 */
+	private interface ChunkTask {
+		void run(int chunk, int from, int to);
+	}
+
+	/**
+	 * Determine how many chunks to split a number of results into.
+	 *
+	 * @param n number of results
+	 * @return number of chunks
+	 */
+	static int numberOfChunks(int n) {
+		return Math.max(1, Math.min(THREADS, n / MIN_CHUNK_SIZE));
+	}
+
+	/**
+	 * Determine the boundaries of the chunks.
+	 *
+	 * @param n number of results
+	 * @param chunks number of chunks
+	 * @return chunk start positions, plus n at the end
+	 */
+	private static int[] chunkBounds(int n, int chunks) {
+		int[] bounds = new int[chunks + 1];
+		for (int i = 0; i <= chunks; i++) {
+			bounds[i] = (int)((long)n * i / chunks);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Split a range into chunks and process them in parallel.
+	 *
+	 * If we're interrupted while waiting, the chunks that weren't started yet are
+	 * processed on the calling thread (so the results are always complete) and
+	 * the interrupted flag is set again for the caller to deal with.
+	 *
+	 * @param n number of results
+	 * @param chunks number of chunks to split into
+	 * @param task what to do with each chunk
+	 */
+	private static void runChunks(int n, int chunks, final ChunkTask task) {
+		final int[] bounds = chunkBounds(n, chunks);
+		if (chunks == 1) {
+			task.run(0, 0, n);
+			return;
+		}
+		// Each chunk is claimed by whoever gets to it first: a worker or
+		// (after an interrupt) the calling thread.
+		final AtomicIntegerArray claimed = new AtomicIntegerArray(chunks);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < chunks; i++) {
+			final int chunk = i;
+			futures.add(getPool().submit(new Runnable() {
+				@Override
+				public void run() {
+					if (claimed.compareAndSet(chunk, 0, 1))
+						task.run(chunk, bounds[chunk], bounds[chunk + 1]);
+				}
+			}));
+		}
+		boolean interrupted = false;
+		for (int i = 0; i < chunks; i++) {
+			Future<?> future = futures.get(i);
+			while (true) {
+				if (interrupted && claimed.compareAndSet(i, 0, 1)) {
+					future.cancel(false);
+					task.run(i, bounds[i], bounds[i + 1]);
+					break;
+				}
+				try {
+					future.get();
+					break;
+				} catch (InterruptedException e) {
+					// Don't wait for chunks that haven't been started yet
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException)cause;
+					if (cause instanceof Error)
+						throw (Error)cause;
+					throw new RuntimeException(cause);
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Get a property's sort key or value for each result.
+	 *
+	 * @param results the results
+	 * @param prop property to get
+	 * @param sortKeys if true, get the sort keys; otherwise, get the values
+	 * @param values where to store the sort keys or values
+	 */
+	private static void getValues(final List<DocResult> results, final DocProperty prop, final boolean sortKeys,
+			final Object[] values) {
+		runChunks(results.size(), numberOfChunks(results.size()), new ChunkTask() {
+			@Override
+			public void run(int chunk, int from, int to) {
+				for (int i = from; i < to; i++) {
+					DocResult result = results.get(i);
+					values[i] = sortKeys ? prop.getSortKey(result) : prop.get(result);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Get a property's value for each result.
+	 *
+	 * @param results the results
+	 * @param prop property to get
+	 * @return the values, in the same order as the results
+	 */
+	static HitPropValue[] values(List<DocResult> results, DocProperty prop) {
+		HitPropValue[] values = new HitPropValue[results.size()];
+		getValues(results, prop, false, values);
+		return values;
+	}
+
+	/** A result and its sort key */
+	private static class SortEntry {
+		Object key;
+
+		DocResult result;
+
+		SortEntry(Object key, DocResult result) {
+			this.key = key;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Sort results on a property.
+	 *
+	 * The sort is stable.
+	 *
+	 * @param results the results to sort (sorted in-place)
+	 * @param prop property to sort on
+	 * @param reverse if true, reverse the order given by the property
+	 */
+	static void sort(List<DocResult> results, final DocProperty prop, final boolean reverse) {
+		Object[] keys = new Object[results.size()];
+		getValues(results, prop, true, keys);
+		SortEntry[] entries = new SortEntry[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			entries[i] = new SortEntry(keys[i], results.get(i));
+		}
+		sort(entries, new Comparator<SortEntry>() {
+			@Override
+			public int compare(SortEntry a, SortEntry b) {
+				int cmp = prop.compareSortKeys(a.key, b.key);
+				return reverse ? -cmp : cmp;
+			}
+		});
+		for (int i = 0; i < entries.length; i++) {
+			results.set(i, entries[i].result);
+		}
+	}
+
+	/**
+	 * Stable sort of an array: sort chunks in parallel, then merge them.
+	 *
+	 * @param a the array to sort
+	 * @param comparator how to compare elements
+	 */
+	static <T> void sort(final T[] a, final Comparator<? super T> comparator) {
+		int chunks = numberOfChunks(a.length);
+		if (chunks == 1) {
+			Arrays.sort(a, comparator);
+			return;
+		}
+		runChunks(a.length, chunks, new ChunkTask() {
+			@Override
+			public void run(int chunk, int from, int to) {
+				Arrays.sort(a, from, to, comparator);
+			}
+		});
+		int[] bounds = chunkBounds(a.length, chunks);
+
+		// Merge adjacent sorted runs until there's only one left
+		T[] src = a, dest = Arrays.copyOf(a, a.length);
+		for (int width = 1; width < chunks; width *= 2) {
+			for (int left = 0; left < chunks; left += 2 * width) {
+				int mid = Math.min(left + width, chunks);
+				int right = Math.min(left + 2 * width, chunks);
+				merge(src, bounds[left], bounds[mid], bounds[right], dest, comparator);
+			}
+			T[] tmp = src;
+			src = dest;
+			dest = tmp;
+		}
+		if (src != a)
+			System.arraycopy(src, 0, a, 0, a.length);
+	}
+
+	/**
+	 * Merge two adjacent sorted ranges, preferring the left one for equal elements.
+	 */
+	private static <T> void merge(T[] src, int from, int mid, int to, T[] dest, Comparator<? super T> comparator) {
+		int i = from, j = mid, k = from;
+		while (i < mid && j < to) {
+			if (comparator.compare(src[j], src[i]) < 0)
+				dest[k++] = src[j++];
+			else
+				dest[k++] = src[i++];
+		}
+		while (i < mid)
+			dest[k++] = src[i++];
+		while (j < to)
+			dest[k++] = src[j++];
+	}
+
+	/**
+	 * Count the number of results for each value of a property.
+	 *
+	 * Each chunk counts into its own map; the maps are combined at the end.
+	 *
+	 * @param results the results
+	 * @param prop property to count
+	 * @return number of results per property value
+	 */
+	static ObjectIntHashMap<HitPropValue> count(final List<DocResult> results, final DocProperty prop) {
+		int chunks = numberOfChunks(results.size());
+		@SuppressWarnings("unchecked")
+		final ObjectIntHashMap<HitPropValue>[] counts = new ObjectIntHashMap[chunks];
+		runChunks(results.size(), chunks, new ChunkTask() {
+			@Override
+			public void run(int chunk, int from, int to) {
+				ObjectIntHashMap<HitPropValue> chunkCounts = new ObjectIntHashMap<>();
+				for (int i = from; i < to; i++) {
+					chunkCounts.addToValue(prop.get(results.get(i)), 1);
+				}
+				counts[chunk] = chunkCounts;
+			}
+		});
+		final ObjectIntHashMap<HitPropValue> total = counts[0];
+		for (int i = 1; i < chunks; i++) {
+			counts[i].forEachKeyValue(new ObjectIntProcedure<HitPropValue>() {
+				@Override
+				public void value(HitPropValue value, int count) {
+					total.addToValue(value, count);
+				}
+			});
+		}
+		return total;
+	}
+
+}
@@ -0,0 +1,281 @@
+package nl.inl.blacklab.search;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RoaringDocIdSet;
+
+/**
+ * Caches the documents matching metadata filter queries, per index segment.
+ *
+ * Users tend to apply the same few metadata filters (e.g. a date range or
+ * genre) to many different patterns. Instead of evaluating the filter query
+ * again for each search, we remember the matching documents in each
+ * segment. Sparse sets are stored compactly (RoaringDocIdSet); dense sets
+ * as a FixedBitSet.
+ *
+ * Entries are keyed by the rewritten filter query and the segment core, so
+ * they stay valid when the index is reopened, and are removed when the
+ * segment is closed (e.g. after a merge). When the cache grows beyond its
+ * maximum size, the least recently used entries are removed.
+ *
+ * NOTE: like the filter query's Scorer, the cached sets don't take deleted
+ * documents into account.
+ */
+public class FilterCache {
+
+	/** Default maximum size (32 MB) */
+	public static final long DEFAULT_MAX_SIZE_BYTES = 32 * 1024 * 1024;
+
+	/** Approximate memory used per entry, besides the set itself */
+	private static final long ENTRY_OVERHEAD_BYTES = 100;
+
+	/** Identifies a cache entry: filter query and segment */
+	private static class CacheKey {
+		Query query;
+
+		Object coreKey;
+
+		CacheKey(Query query, Object coreKey) {
+			this.query = query;
+			this.coreKey = coreKey;
+		}
+
+		@Override
+		public int hashCode() {
+			return query.hashCode() * 31 + coreKey.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof CacheKey))
+				return false;
+			CacheKey other = (CacheKey) obj;
+			return coreKey == other.coreKey && query.equals(other.query);
+		}
+	}
+
+	/** The cached sets, in least recently used order */
+	private LinkedHashMap<CacheKey, DocIdSet> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Segments we've registered a close listener for */
+	private Set<Object> listeningTo = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+	/** Removes a segment's entries when it is closed */
+	private LeafReader.CoreClosedListener closedListener = new LeafReader.CoreClosedListener() {
+		@Override
+		public void onClose(Object ownerCoreCacheKey) {
+			removeSegment(ownerCoreCacheKey);
+		}
+	};
+
+	/** Maximum total size of the cached sets in bytes (0 disables the cache) */
+	private long maxSizeBytes = DEFAULT_MAX_SIZE_BYTES;
+
+	/** Current total size of the cached sets in bytes */
+	private long sizeBytes = 0;
+
+	/** Number of lookups that were answered from the cache */
+	private long hits = 0;
+
+	/** Number of lookups that had to evaluate the filter */
+	private long misses = 0;
+
+	/**
+	 * Get the documents in a segment matching a filter query.
+	 *
+	 * @param filter the filter query
+	 * @param context the segment
+	 * @param searcher searcher to evaluate the filter with, if it's not cached
+	 * @return iterator over the matching documents, or null if there are none
+	 * @throws IOException
+	 */
+	public DocIdSetIterator iterator(Query filter, LeafReaderContext context, IndexSearcher searcher) throws IOException {
+		DocIdSet set = getDocIdSet(searcher.rewrite(filter), context, searcher);
+		return set == null ? null : set.iterator();
+	}
+
+	/**
+	 * Get the set of documents in a segment matching a (rewritten) filter query.
+	 *
+	 * @param filter the rewritten filter query
+	 * @param context the segment
+	 * @param searcher searcher to evaluate the filter with, if it's not cached
+	 * @return the matching documents, or null if there are none
+	 * @throws IOException
+	 */
+	public DocIdSet getDocIdSet(Query filter, LeafReaderContext context, IndexSearcher searcher) throws IOException {
+		LeafReader reader = context.reader();
+		if (!isCacheable(filter)) {
+			// Just evaluate it; don't count it as a miss
+			Scorer scorer = filter.createWeight(searcher, false).scorer(context);
+			if (scorer == null)
+				return null;
+			return compactSet(scorer.iterator(), reader.maxDoc());
+		}
+		CacheKey key = new CacheKey(filter, reader.getCoreCacheKey());
+		synchronized (this) {
+			DocIdSet set = cache.get(key);
+			if (set != null) {
+				hits++;
+				return set == DocIdSet.EMPTY ? null : set;
+			}
+			misses++;
+		}
+
+		// Not cached; evaluate the filter (outside the lock, this may take a while)
+		Weight weight = filter.createWeight(searcher, false);
+		Scorer scorer = weight.scorer(context);
+		DocIdSet set = DocIdSet.EMPTY;
+		if (scorer != null)
+			set = compactSet(scorer.iterator(), reader.maxDoc());
+		put(key, reader, set);
+		return set == DocIdSet.EMPTY ? null : set;
+	}
+
+	/**
+	 * Can we use this query as a cache key?
+	 *
+	 * Query's own equals() only compares the class and boost, so a query
+	 * class that doesn't override it would make different queries look the same.
+	 *
+	 * Single-document filters (used for viewing one document) are never reused,
+	 * and would add an entry for every segment, pushing out useful filters.
+	 *
+	 * @param query the query
+	 * @return true if we can cache its results
+	 */
+	private static boolean isCacheable(Query query) {
+		if (query instanceof SingleDocIdFilter)
+			return false;
+		try {
+			return query.getClass().getMethod("equals", Object.class).getDeclaringClass() != Query.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Store matching documents in the most compact form.
+	 *
+	 * A sorted array of shorts (as used by RoaringDocIdSet for sparse blocks)
+	 * takes 16 bits per document; a bit set takes 1 bit per document in the
+	 * segment. So we use the bit set if more than 1 in 16 documents match.
+	 *
+	 * @param docs the matching documents
+	 * @param maxDoc number of documents in the segment
+	 * @return the set
+	 * @throws IOException
+	 */
+	private static DocIdSet compactSet(DocIdSetIterator docs, int maxDoc) throws IOException {
+		FixedBitSet bits = new FixedBitSet(maxDoc);
+		int cardinality = 0;
+		while (true) {
+			int doc = docs.nextDoc();
+			if (doc == DocIdSetIterator.NO_MORE_DOCS)
+				break;
+			bits.set(doc);
+			cardinality++;
+		}
+		if (cardinality == 0)
+			return DocIdSet.EMPTY;
+		if (cardinality > maxDoc / 16)
+			return new BitDocIdSet(bits, cardinality);
+		return new RoaringDocIdSet.Builder(maxDoc).add(new BitDocIdSet(bits, cardinality).iterator()).build();
+	}
+
+	private static long entrySize(DocIdSet set) {
+		return set.ramBytesUsed() + ENTRY_OVERHEAD_BYTES;
+	}
+
+	private synchronized void put(CacheKey key, LeafReader reader, DocIdSet set) {
+		long size = entrySize(set);
+		if (size > maxSizeBytes || cache.containsKey(key))
+			return;
+		if (listeningTo.add(key.coreKey))
+			reader.addCoreClosedListener(closedListener);
+		cache.put(key, set);
+		sizeBytes += size;
+		evict();
+	}
+
+	/** Remove least recently used entries until we're within our maximum size. */
+	private void evict() {
+		Iterator<DocIdSet> it = cache.values().iterator();
+		while (sizeBytes > maxSizeBytes && it.hasNext()) {
+			sizeBytes -= entrySize(it.next());
+			it.remove();
+		}
+	}
+
+	/**
+	 * Remove all entries for a segment.
+	 *
+	 * @param coreKey core cache key of the segment
+	 */
+	synchronized void removeSegment(Object coreKey) {
+		listeningTo.remove(coreKey);
+		Iterator<Map.Entry<CacheKey, DocIdSet>> it = cache.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<CacheKey, DocIdSet> e = it.next();
+			if (e.getKey().coreKey == coreKey) {
+				sizeBytes -= entrySize(e.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	/** Remove all entries. */
+	public synchronized void clear() {
+		cache.clear();
+		sizeBytes = 0;
+	}
+
+	/**
+	 * Set the maximum total size of the cached sets.
+	 *
+	 * @param maxSizeBytes maximum size in bytes (0 disables the cache)
+	 */
+	public synchronized void setMaxSizeBytes(long maxSizeBytes) {
+		this.maxSizeBytes = maxSizeBytes;
+		evict();
+	}
+
+	public synchronized long getMaxSizeBytes() {
+		return maxSizeBytes;
+	}
+
+	public synchronized long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+}
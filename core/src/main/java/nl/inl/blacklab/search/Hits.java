@@ -127,6 +127,23 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 		return new HitsImpl(searcher, query);
 	}
 
+	/**
+	 * Construct a Hits object from a SpanQuery, profiling its execution.
+	 *
+	 * @param searcher
+	 *            the searcher object
+	 * @param query
+	 *            the query to execute to get the hits
+	 * @param profile
+	 *            where to record the profile, or null if we're not profiling
+	 * @return hits found
+	 */
+	public static Hits fromSpanQuery(Searcher searcher, SpanQuery query, QueryProfile profile) {
+		if (!(query instanceof BLSpanQuery))
+			throw new IllegalArgumentException("Supplied query must be a BLSpanQuery!");
+		return new HitsImpl(searcher, query, profile);
+	}
+
 
 	/**
 	 * Construct a Hits object from a Spans.
@@ -162,6 +179,9 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 	 *  for way too long). */
 	protected ThreadPriority etiquette;
 
+	/** Where to record the query profile (carried over to derived Hits), or null if we're not profiling. */
+	protected QueryProfile profile;
+
 	public Hits(Searcher searcher) {
 		this.searcher = searcher;
 		settings = new HitsSettings(searcher.hitsSettings(), true); // , concordanceFieldName);
@@ -224,6 +244,16 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 		setMaxHitsRetrieved(copyFrom.maxHitsRetrieved());
 		setMaxHitsCounted(copyFrom.maxHitsCounted());
 		setHitQueryContext(copyFrom.getHitQueryContext());
+		profile = copyFrom.profile;
+	}
+
+	/**
+	 * Get the profile of the query that produced these hits.
+	 *
+	 * @return the profile, or null if we're not profiling
+	 */
+	public QueryProfile getProfile() {
+		return profile;
 	}
 
 	public abstract void setMaxHitsCounted(boolean maxHitsCounted);
@@ -411,9 +441,12 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 	 * @return a new Hits object with the same hits, sorted in the specified way
 	 */
 	public Hits sortedBy(HitProperty sortProp, boolean reverseSort, boolean sensitive) {
+		long start = System.nanoTime();
 		Hits hits = copy();
 		sortProp = sortProp.copyWithHits(hits);
 		hits.sort(sortProp, reverseSort, sensitive);
+		if (profile != null)
+			profile.addPhaseTime("sort", start);
 		return hits;
 	}
 
@@ -449,6 +482,51 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 		return sortedBy(sortProp, false, searcher.isDefaultSearchCaseSensitive());
 	}
 
+	/**
+	 * Return a new Hits object with these hits sorted by the given property,
+	 * where initially only the first hits are put in their sorted position.
+	 *
+	 * Useful if you only want to show the first page of sorted hits: selecting
+	 * the first few hits is much cheaper than sorting all of them. If a hit
+	 * beyond the requested number is accessed, the remaining hits are sorted
+	 * automatically, so the resulting object behaves exactly like the one
+	 * returned by sortedBy().
+	 *
+	 * @param sortProp
+	 *            the hit property to sort on
+	 * @param reverseSort
+	 *            if true, sort in descending order
+	 * @param number how many hits we need in sorted order right away
+	 * @return a new Hits object with the same hits, (partially) sorted in the specified way
+	 */
+	public Hits partiallySortedBy(HitProperty sortProp, boolean reverseSort, int number) {
+		long start = System.nanoTime();
+		Hits hits = copy();
+		sortProp = sortProp.copyWithHits(hits);
+		hits.sortPartially(sortProp, reverseSort, searcher.isDefaultSearchCaseSensitive(), number);
+		if (profile != null)
+			profile.addPhaseTime("sort", start);
+		return hits;
+	}
+
+	/**
+	 * Sort (at least) the first part of the list of hits.
+	 *
+	 * The default implementation just sorts all the hits. Subclasses
+	 * may override this to only select and sort the first hits, as long as
+	 * they make sure the rest of the hits are sorted when they are accessed.
+	 *
+	 * @param sortProp
+	 *            the hit property to sort on
+	 * @param reverseSort
+	 *            if true, sort in descending order
+	 * @param sensitive whether to sort case-sensitively or not
+	 * @param number how many hits we need in sorted order right away
+	 */
+	protected void sortPartially(HitProperty sortProp, boolean reverseSort, boolean sensitive, int number) {
+		sort(sortProp, reverseSort, sensitive);
+	}
+
 	/**
 	 * Select only the hits where the specified property has the specified value.
 	 * @param property property to select on, e.g. "word left of hit"
@@ -477,7 +555,11 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 	 * @return a HitGroups object representing the grouped hits
 	 */
 	public HitGroups groupedBy(final HitProperty criteria) {
-		return ResultsGrouper._fromHits(this, criteria);
+		long start = System.nanoTime();
+		HitGroups groups = ResultsGrouper._fromHits(this, criteria);
+		if (profile != null)
+			profile.addPhaseTime("group", start);
+		return groups;
 	}
 
 	/**
@@ -596,6 +678,27 @@ public abstract class Hits extends AbstractList<Hit> implements Cloneable, Prior
 	 */
 	public abstract boolean doneFetchingHits();
 
+	/**
+	 * Register a listener to be notified as hits are counted.
+	 *
+	 * The default implementation doesn't notify anything; subclasses
+	 * that fetch hits incrementally override this.
+	 *
+	 * @param listener the listener
+	 */
+	public void addProgressListener(HitsProgressListener listener) {
+		// NOP
+	}
+
+	/**
+	 * Unregister a listener registered with addProgressListener().
+	 *
+	 * @param listener the listener
+	 */
+	public void removeProgressListener(HitsProgressListener listener) {
+		// NOP
+	}
+
 	/**
 	 * Iterate over the hits in the original (pre-sort) order.
 	 * @return an iterable object that will produce hits in the original order.
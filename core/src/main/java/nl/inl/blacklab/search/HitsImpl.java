@@ -19,14 +19,18 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
@@ -64,6 +68,9 @@ public class HitsImpl extends Hits {
 
 	protected static final Logger logger = LogManager.getLogger(HitsImpl.class);
 
+	/** Approximate number of hits to retrieve context for in one batched forward index call */
+	private static final int CONTEXT_BATCH_SIZE = 1000;
+
 	/**
 	 * The hits.
 	 */
@@ -95,9 +102,24 @@ public class HitsImpl extends Hits {
 	private int currentContextSize;
 
 	/**
-	 * The sort order, if we've sorted, or null if not
+	 * The sort order, if we've sorted, or null if not.
+	 *
+	 * Other threads may be reading hits while we sort, so this array is never
+	 * modified once published; sorting builds a new array and then replaces it.
+	 * Read it into a local variable once (see ensureSortedUpTo()).
+	 */
+	volatile Integer[] sortOrder;
+
+	/**
+	 * If we've only sorted the first part of the hits (see sortPartially()),
+	 * the property to sort the rest of the hits on when they're accessed; null otherwise.
 	 */
-	Integer[] sortOrder;
+	private HitProperty partialSortProp;
+
+	/**
+	 * If we've only sorted the first part of the hits, whether that sort is reversed.
+	 */
+	private boolean partialSortReverse;
 
 	/**
 	 * The KWIC data, if it has been retrieved.
@@ -193,6 +215,16 @@ public class HitsImpl extends Hits {
 	 */
 	protected int previousHitDoc = -1;
 
+	/**
+	 * Notify progress listeners each time we've counted this many hits.
+	 */
+	static final int PROGRESS_NOTIFY_INTERVAL = 100;
+
+	/**
+	 * Who to notify while counting hits.
+	 */
+	private List<HitsProgressListener> progressListeners = new CopyOnWriteArrayList<>();
+
 	@Override
 	public Hits copy() {
 		return new HitsImpl(this);
@@ -285,23 +317,47 @@ public class HitsImpl extends Hits {
 	 * @throws TooManyClauses if the query is overly broad (expands to too many terms)
 	 */
 	HitsImpl(Searcher searcher, SpanQuery sourceQuery) throws TooManyClauses {
+		this(searcher, sourceQuery, null);
+	}
+
+	/**
+	 * Construct a Hits object from a SpanQuery, profiling its execution.
+	 *
+	 * @param searcher
+	 *            the searcher object
+	 * @param sourceQuery
+	 *            the query to execute to get the hits
+	 * @param profile
+	 *            where to record the profile, or null if we're not profiling
+	 * @throws TooManyClauses if the query is overly broad (expands to too many terms)
+	 */
+	HitsImpl(Searcher searcher, SpanQuery sourceQuery, QueryProfile profile) throws TooManyClauses {
 		this(searcher, (List<Hit>)null);
+		this.profile = profile;
+		QueryProfile previousProfile = QueryProfile.setCurrent(profile); // (so the optimizer can record decisions)
 		try {
 			IndexReader reader = searcher.getIndexReader();
 			if (!(sourceQuery instanceof BLSpanQuery))
 				throw new IllegalArgumentException("Supplied query must be a BLSpanQuery!");
 
 			if (Searcher.traceQueryExecution) logger.debug("HitsImpl(): optimize");
+			long start = System.nanoTime();
 			BLSpanQuery optimize = ((BLSpanQuery)sourceQuery).optimize(reader);
+			if (profile != null)
+				profile.addPhaseTime("optimize", start);
 
 			if (Searcher.traceQueryExecution) logger.debug("HitsImpl(): rewrite");
+			start = System.nanoTime();
 			spanQuery = optimize.rewrite(reader);
+			if (profile != null)
+				profile.addPhaseTime("rewrite", start);
 
 			//System.err.println(spanQuery);
 			termContexts = new HashMap<>();
 			Set<Term> terms = new HashSet<>();
 			spanQuery = BLSpanQuery.ensureSortedUnique(spanQuery);
 			if (Searcher.traceQueryExecution) logger.debug("HitsImpl(): createWeight");
+			start = System.nanoTime();
 			weight = spanQuery.createWeight(searcher.getIndexSearcher(), false);
 			weight.extractTerms(terms);
 			etiquette = new ThreadPriority();
@@ -318,12 +374,16 @@ public class HitsImpl extends Hits {
 				}
 				termContexts.put(term, TermContext.build(reader.getContext(), term));
 			}
+			if (profile != null)
+				profile.addPhaseTime("createWeight", start);
 
 			currentSourceSpans = null;
 			atomicReaderContexts = reader == null ? null : reader.leaves();
 			atomicReaderContextIndex = -1;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
+		} finally {
+			QueryProfile.setCurrent(previousProfile);
 		}
 
 		sourceSpansFullyRead = false;
@@ -421,7 +481,7 @@ public class HitsImpl extends Hits {
 		return maxHitsCounted;
 	}
 
-	private void ensureAllHitsRead() throws InterruptedException {
+	void ensureAllHitsRead() throws InterruptedException {
 		ensureHitsRead(-1);
 	}
 
@@ -433,15 +493,16 @@ public class HitsImpl extends Hits {
 	 * @throws InterruptedException if the thread was interrupted during this operation
 	 */
 	void ensureHitsRead(int number) throws InterruptedException {
-		if (sourceSpansFullyRead || (number >= 0 && hits.size() >= number))
+		if (sourceSpansFullyRead || (number >= 0 && numberOfRetrievedHits() >= number))
 			return;
 
 		synchronized (this) {
 			boolean readAllHits = number < 0;
+			long fetchStart = System.nanoTime();
 			try {
 				int maxHitsToCount = settings.maxHitsToCount();
 				int maxHitsToRetrieve = settings.maxHitsToRetrieve();
-				while (readAllHits || hits.size() < number) {
+				while (readAllHits || numberOfRetrievedHits() < number) {
 
 					// Don't hog the CPU, don't take too long
 					etiquette.behave();
@@ -473,7 +534,7 @@ public class HitsImpl extends Hits {
 								// Get the atomic reader context and get the next Spans from it.
 								LeafReaderContext context = atomicReaderContexts.get(atomicReaderContextIndex);
 								currentDocBase = context.docBase;
-								BLSpans spans = (BLSpans) weight.getSpans(context, Postings.OFFSETS);
+								BLSpans spans = getSpans(context);
 								currentSourceSpans = spans; //BLSpansWrapper.optWrapSortUniq(spans);
 							} else {
 								// TESTING
@@ -482,7 +543,7 @@ public class HitsImpl extends Hits {
 									sourceSpansFullyRead = true;
 									return;
 								}
-								BLSpans spans = (BLSpans) weight.getSpans(null, Postings.OFFSETS);
+								BLSpans spans = getSpans(null);
 								currentSourceSpans = spans; //BLSpansWrapper.optWrapSortUniq(spans);
 							}
 
@@ -527,6 +588,8 @@ public class HitsImpl extends Hits {
 					// Count the hit and add it (unless we've reached the maximum number of hits we
 					// want)
 					hitsCounted++;
+					if (hitsCounted % PROGRESS_NOTIFY_INTERVAL == 0 && !progressListeners.isEmpty())
+						notifyProgress();
 					int hitDoc = currentSourceSpans.docID() + currentDocBase;
 					if (hitDoc != previousHitDoc) {
 						docsCounted++;
@@ -534,16 +597,16 @@ public class HitsImpl extends Hits {
 							docsRetrieved++;
 						previousHitDoc = hitDoc;
 					}
-					maxHitsRetrieved = maxHitsToRetrieve >= 0 && hits.size() >= maxHitsToRetrieve;
+					maxHitsRetrieved = maxHitsToRetrieve >= 0 && numberOfRetrievedHits() >= maxHitsToRetrieve;
 					if (!maxHitsRetrieved) {
 						Hit hit = currentSourceSpans.getHit();
 						Hit offsetHit = new Hit(hit.doc + currentDocBase, hit.start, hit.end);
+						Span[] groups = null;
 						if (capturedGroups != null) {
-							Span[] groups = new Span[hitQueryContext.numberOfCapturedGroups()];
+							groups = new Span[hitQueryContext.numberOfCapturedGroups()];
 							hitQueryContext.getCapturedGroups(groups);
-							capturedGroups.put(offsetHit, groups);
 						}
-						hits.add(offsetHit);
+						addRetrievedHit(offsetHit, groups);
 					}
 				}
 			} catch (InterruptedException e) {
@@ -551,10 +614,73 @@ public class HitsImpl extends Hits {
 				throw e;
 			} catch (IOException e) {
 				throw new RuntimeException(e);
+			} finally {
+				// Let listeners know where we stopped (e.g. because we're done)
+				if (!progressListeners.isEmpty())
+					notifyProgress();
+				if (profile != null)
+					profile.addPhaseTime("fetchHits", fetchStart);
 			}
 		}
 	}
 
+	/**
+	 * Get the spans for a segment (profiled if we're profiling).
+	 *
+	 * @param context the segment, or null if we're testing
+	 * @return the spans, or null if there are no hits in this segment
+	 * @throws IOException on error
+	 */
+	private BLSpans getSpans(LeafReaderContext context) throws IOException {
+		QueryProfile previousProfile = QueryProfile.setCurrent(profile);
+		try {
+			return (BLSpans) weight.getSpans(context, Postings.OFFSETS);
+		} finally {
+			QueryProfile.setCurrent(previousProfile);
+		}
+	}
+
+	private void notifyProgress() {
+		for (HitsProgressListener listener: progressListeners) {
+			listener.progress(this);
+		}
+	}
+
+	@Override
+	public void addProgressListener(HitsProgressListener listener) {
+		progressListeners.add(listener);
+	}
+
+	@Override
+	public void removeProgressListener(HitsProgressListener listener) {
+		progressListeners.remove(listener);
+	}
+
+	/**
+	 * Store a hit we just retrieved from the source spans.
+	 *
+	 * Subclasses may override this (together with numberOfRetrievedHits())
+	 * to process hits as they are retrieved without storing all of them,
+	 * e.g. to sample them.
+	 *
+	 * @param hit the hit retrieved
+	 * @param groups the hit's captured groups, or null if there are none
+	 */
+	protected void addRetrievedHit(Hit hit, Span[] groups) {
+		if (groups != null)
+			capturedGroups.put(hit, groups);
+		hits.add(hit);
+	}
+
+	/**
+	 * How many hits have we retrieved from the source spans so far?
+	 *
+	 * @return number of hits retrieved
+	 */
+	protected int numberOfRetrievedHits() {
+		return hits.size();
+	}
+
 	/**
 	 * Sort the list of hits.
 	 *
@@ -582,14 +708,11 @@ public class HitsImpl extends Hits {
 			return;
 		}
 
-		// Make sure we have a sort order array of sufficient size
-		if (sortOrder == null || sortOrder.length < hits.size()) {
-			sortOrder = new Integer[hits.size()];
-		}
-		// Fill the array with the original hit order (0, 1, 2, ...)
+		// Fill a new array with the original hit order (0, 1, 2, ...)
 		int n = hits.size();
+		Integer[] newSortOrder = new Integer[n];
 		for (int i = 0; i < n; i++)
-			sortOrder[i] = i;
+			newSortOrder[i] = i;
 
 		// If we need context, make sure we have it.
 		List<String> requiredContext = sortProp.needsContext();
@@ -597,7 +720,7 @@ public class HitsImpl extends Hits {
 			findContext(requiredContext);
 
 		// Perform the actual sort.
-		Arrays.sort(sortOrder, sortProp);
+		Arrays.sort(newSortOrder, 0, n, sortProp);
 
 		if (reverseSort) {
 			// Instead of creating a new Comparator that reverses the order of the
@@ -605,9 +728,120 @@ public class HitsImpl extends Hits {
 			// O(n log n) comparisons), just reverse the hits now (which runs
 			// in linear time).
 			for (int i = 0; i < n / 2; i++) {
-				sortOrder[i] = sortOrder[n - i - 1];
+				Integer t = newSortOrder[i];
+				newSortOrder[i] = newSortOrder[n - i - 1];
+				newSortOrder[n - i - 1] = t;
+			}
+		}
+		partialSortProp = null;
+		sortOrder = newSortOrder; // publish the complete order
+	}
+
+	/**
+	 * Sort the first part of the list of hits.
+	 *
+	 * Instead of sorting all hits, we select the first hits in sort order using a
+	 * bounded heap, which takes O(n log k) comparisons instead of O(n log n). The
+	 * remaining hits are sorted as soon as a hit beyond the first part is accessed.
+	 *
+	 * The resulting order is exactly the same as that produced by sort().
+	 *
+	 * @param sortProp
+	 *            the hit property to sort on
+	 * @param reverseSort
+	 *            if true, sort in descending order
+	 * @param sensitive whether to sort case-sensitively or not
+	 * @param number how many hits we need in sorted order right away
+	 */
+	@Override
+	protected synchronized void sortPartially(HitProperty sortProp, boolean reverseSort, boolean sensitive, int number) {
+		try {
+			ensureAllHitsRead();
+		} catch (InterruptedException e) {
+			// Thread was interrupted; don't complete the operation but return
+			// and let the caller detect and deal with the interruption.
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		int n = hits.size();
+		if (number < 0 || number >= n) {
+			// We need all the hits anyway; just sort them.
+			sort(sortProp, reverseSort, sensitive);
+			return;
+		}
+
+		// If we need context, make sure we have it.
+		List<String> requiredContext = sortProp.needsContext();
+		if (requiredContext != null)
+			findContext(requiredContext);
+
+		// Keep the best hits we've seen so far in a heap, with the "worst" of those at the top
+		Comparator<Integer> order = sortOrderComparator(sortProp, reverseSort);
+		PriorityQueue<Integer> best = new PriorityQueue<>(number + 1, Collections.reverseOrder(order));
+		for (int i = 0; i < n; i++) {
+			if (best.size() < number) {
+				best.add(i);
+			} else if (number > 0 && order.compare(i, best.peek()) < 0) {
+				best.poll();
+				best.add(i);
+			}
+		}
+		Integer[] newSortOrder = new Integer[number];
+		for (int i = number - 1; i >= 0; i--) {
+			newSortOrder[i] = best.poll();
+		}
+
+		// Remember how to sort the rest, should we need it
+		partialSortProp = sortProp;
+		partialSortReverse = reverseSort;
+		sortOrder = newSortOrder; // publish the complete (partial) order
+	}
+
+	/**
+	 * Return a comparator for hit indices that yields the same order as sort().
+	 *
+	 * sort() uses a stable sort, then reverses the result if necessary, so equal
+	 * hits end up in original order (or reversed original order).
+	 *
+	 * @param sortProp the hit property to sort on
+	 * @param reverseSort if true, sort in descending order
+	 * @return the comparator
+	 */
+	private static Comparator<Integer> sortOrderComparator(final HitProperty sortProp, final boolean reverseSort) {
+		return new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int cmp = sortProp.compare(a, b);
+				if (cmp == 0)
+					cmp = Integer.compare(a, b);
+				return reverseSort ? -cmp : cmp;
+			}
+		};
+	}
+
+	/**
+	 * Get the sort order, making sure the hit with the specified index is in its
+	 * sorted position (if we've only sorted the first part of the hits).
+	 *
+	 * Use the returned array instead of reading the sortOrder field again, as
+	 * another thread may replace it in the meantime.
+	 *
+	 * @param index index of the hit we want to access
+	 * @return the sort order, or null if we haven't sorted
+	 */
+	Integer[] ensureSortedUpTo(int index) {
+		Integer[] order = sortOrder;
+		if (order != null && index >= order.length) {
+			synchronized (this) {
+				if (partialSortProp != null && index >= sortOrder.length) {
+					// Sort all hits. This is cached, so this only happens once.
+					sort(partialSortProp, partialSortReverse, searcher.isDefaultSearchCaseSensitive());
+				}
+				order = sortOrder;
 			}
 		}
+		return order;
 	}
 
 	/**
@@ -834,7 +1068,10 @@ public class HitsImpl extends Hits {
 				// Check if there is a next, taking unread hits from Spans into account
 				if (hasNext()) {
 					index++;
-					return hits.get( (originalOrder || sortOrder == null) ? index : sortOrder[index]);
+					Integer[] order = originalOrder ? null : ensureSortedUpTo(index);
+					if (order == null)
+						return hits.get(index);
+					return hits.get(order[index]);
 				}
 				throw new NoSuchElementException();
 			}
@@ -887,7 +1124,10 @@ public class HitsImpl extends Hits {
 		}
 		if (i >= hits.size())
 			return null;
-		return hits.get(sortOrder == null ? i : sortOrder[i]);
+		Integer[] order = ensureSortedUpTo(i);
+		if (order == null)
+			return hits.get(i);
+		return hits.get(order[i]);
 	}
 
 	/**
@@ -1081,7 +1321,10 @@ public class HitsImpl extends Hits {
 		}
 
 		// Get the concordances
+		long start = System.nanoTime();
 		kwics = retrieveKwics(settings().contextSize(), settings().concordanceField());
+		if (profile != null)
+			profile.addPhaseTime("kwic", start);
 	}
 
 	/**
@@ -1180,65 +1423,40 @@ public class HitsImpl extends Hits {
 			return;
 		}
 
+		long start = System.nanoTime();
 		List<ForwardIndex> fis = new ArrayList<>();
 		for (String fieldPropName: fieldProps) {
 			fis.add(searcher.getForwardIndex(fieldPropName));
 		}
 
-		// Get the context
-		// Group hits per document
-		List<Hit> hitsInSameDoc = new ArrayList<>();
-		int currentDoc = -1;
-		int index = 0;
-		if (contexts == null || contexts.length < hits.size()) {
-			contexts = new int[hits.size()][];
+		// Get the context in batches of whole documents. The forward index
+		// reads each batch in file order, so this is mostly sequential I/O.
+		int n = hits.size();
+		if (contexts == null || contexts.length < n) {
+			contexts = new int[n][];
 		}
-		for (Hit hit: hits) {
-			if (hit.doc != currentDoc) {
-				if (currentDoc >= 0) {
-					try {
-						etiquette.behave();
-					} catch (InterruptedException e) {
-						// Thread was interrupted. Just go ahead with the hits we did
-						// get, so at least we can return with valid context.
-						Thread.currentThread().interrupt();
-					}
-
-					findPartOfContext(hitsInSameDoc, index - hitsInSameDoc.size(), fis);
-
-					// Reset hits list for next doc
-					hitsInSameDoc.clear();
+		int batchStart = 0;
+		while (batchStart < n) {
+			if (batchStart > 0) {
+				try {
+					etiquette.behave();
+				} catch (InterruptedException e) {
+					// Thread was interrupted. Just go ahead with the hits we did
+					// get, so at least we can return with valid context.
+					Thread.currentThread().interrupt();
 				}
-				currentDoc = hit.doc; // start a new document
 			}
-			hitsInSameDoc.add(hit);
-			index++;
+			int batchEnd = Math.min(n, batchStart + CONTEXT_BATCH_SIZE);
+			while (batchEnd < n && hits.get(batchEnd).doc == hits.get(batchEnd - 1).doc)
+				batchEnd++;
+			getContextWords(settings().contextSize(), fis, batchStart, batchEnd);
+			batchStart = batchEnd;
 		}
-		if (!hitsInSameDoc.isEmpty())
-			findPartOfContext(hitsInSameDoc, index - hitsInSameDoc.size(), fis);
 
 		currentContextSize = settings().contextSize();
 		contextFieldsPropName = new ArrayList<>(fieldProps);
-	}
-
-	/**
-	 * Helper method for findContext(). Finds the hits in a single document and adds
-	 * context to our contexts array.
-	 *
-	 * @param hitsInSameDoc the hits in one document
-	 * @param firstHitIndex index of the first hit
-	 * @param fis forward indices needed for contexts
-	 */
-	private void findPartOfContext(List<Hit> hitsInSameDoc, int firstHitIndex, List<ForwardIndex> fis) {
-		// Find context for the hits in the current document
-		HitsImpl hitsObj = new HitsImpl(searcher, searcher.getMainContentsFieldName(), hitsInSameDoc);
-		hitsObj.copySettingsFrom(this);
-		hitsObj.getContextWords(settings().contextSize(), fis);
-
-		// Copy the contexts from the temporary Hits object to this one
-		for (int i = 0; i < hitsInSameDoc.size(); i++) {
-			contexts[firstHitIndex + i] = hitsObj.getHitContext(i);
-		}
+		if (profile != null)
+			profile.addPhaseTime("context", start);
 	}
 
 	/**
@@ -1499,43 +1717,65 @@ public class HitsImpl extends Hits {
 	 *            forward indices to get context from
 	 */
 	private void getContextWords(int wordsAroundHit, List<ForwardIndex> contextSources) {
+		getContextWords(wordsAroundHit, contextSources, 0, hits.size());
+	}
 
-		int n = hits.size();
-		if (n == 0)
+	/**
+	 * Get context words from the forward index for a range of hits.
+	 *
+	 * The hits may be in different documents; the snippets for all of them
+	 * are retrieved with one batched forward index call per context source.
+	 *
+	 * NOTE: not synchronized because only ever called from synchronized methods!
+	 *
+	 * @param wordsAroundHit how many words of context we want
+	 * @param contextSources
+	 *            forward indices to get context from
+	 * @param fromIndex first hit to get context for
+	 * @param toIndex hit after the last one to get context for
+	 */
+	private void getContextWords(int wordsAroundHit, List<ForwardIndex> contextSources, int fromIndex, int toIndex) {
+
+		int n = toIndex - fromIndex;
+		if (n <= 0)
 			return;
 		int[] startsOfSnippets = new int[n];
 		int[] endsOfSnippets = new int[n];
-		int i = 0;
-		for (Hit h: hits) {
+		for (int i = 0; i < n; i++) {
+			Hit h = hits.get(fromIndex + i);
 			startsOfSnippets[i] = wordsAroundHit >= h.start ? 0 : h.start - wordsAroundHit;
 			endsOfSnippets[i] = h.end + wordsAroundHit;
-			i++;
+		}
+		if (contexts == null || contexts.length < hits.size()) {
+			contexts = new int[hits.size()][];
 		}
 
 		int fiNumber = 0;
-		int doc = hits.get(0).doc;
+		int[] fiids = new int[n];
+		int[][] words = new int[n][];
 		for (ForwardIndex forwardIndex: contextSources) {
 			// Get all the words from the forward index
-			List<int[]> words;
-			if (forwardIndex != null) {
-				// We have a forward index for this field. Use it.
-				int fiid = forwardIndex.luceneDocIdToFiid(doc);
-				words = forwardIndex.retrievePartsInt(fiid, startsOfSnippets, endsOfSnippets);
-			} else {
+			if (forwardIndex == null)
 				throw new RuntimeException("Cannot get context without a forward index");
+			int doc = -1, fiid = -1;
+			for (int i = 0; i < n; i++) {
+				int hitDoc = hits.get(fromIndex + i).doc;
+				if (hitDoc != doc) {
+					doc = hitDoc;
+					fiid = forwardIndex.luceneDocIdToFiid(doc);
+				}
+				fiids[i] = fiid;
 			}
+			forwardIndex.retrievePartsIntBatch(fiids, startsOfSnippets, endsOfSnippets, words);
 
 			// Build the actual concordances
-			Iterator<int[]> wordsIt = words.iterator();
-			int hitNum = 0;
-			if (contexts == null || contexts.length < hits.size()) {
-				contexts = new int[hits.size()][];
-			}
-			for (Hit hit: hits) {
-				int[] theseWords = wordsIt.next();
+			for (int i = 0; i < n; i++) {
+				Hit hit = hits.get(fromIndex + i);
+				int[] theseWords = words[i];
+				int hitNum = fromIndex + i;
 
 				// Put the concordance in the Hit object
-				int firstWordIndex = startsOfSnippets[hitNum];
+				int firstWordIndex = startsOfSnippets[i];
 
 				if (fiNumber == 0) {
 					// Allocate context array and set hit and right start and context length
@@ -1547,7 +1787,6 @@ public class HitsImpl extends Hits {
 				// Copy the context we just retrieved into the context array
 				int start = fiNumber * theseWords.length + CONTEXTS_NUMBER_OF_BOOKKEEPING_INTS;
 				System.arraycopy(theseWords, 0, contexts[hitNum], start, theseWords.length);
-				hitNum++;
 			}
 
 			fiNumber++;
@@ -1691,8 +1930,7 @@ public class HitsImpl extends Hits {
 	 * @return the concordances
 	 */
 	private Map<Hit, Concordance> retrieveConcordancesFromContentStore(int contextSize, String fieldName) {
-		XmlHighlighter hl = new XmlHighlighter(); // used to make fragments well-formed
-		hl.setUnbalancedTagsStrategy(searcher.getDefaultUnbalancedTagsStrategy());
+		XmlHighlighter hl = searcher.getHighlighter(); // used to make fragments well-formed
 		// Group hits per document
 		MutableIntObjectMap<List<Hit>> hitsPerDocument = IntObjectMaps.mutable.empty();
 		for (Hit key: hits) {
@@ -0,0 +1,22 @@
+package nl.inl.blacklab.search;
+
+/**
+ * Notified while a Hits object is retrieving/counting hits.
+ *
+ * Allows a client to wait for the count to change instead of
+ * repeatedly polling countSoFarHitsCounted().
+ */
+public interface HitsProgressListener {
+
+	/**
+	 * More hits have been counted, or we're done counting.
+	 *
+	 * Called from the thread that's fetching the hits, while holding the
+	 * Hits object's lock, so this should return quickly. Use the
+	 * countSoFar...() methods and doneFetchingHits() to check the progress.
+	 *
+	 * @param hits the hits object that made progress
+	 */
+	void progress(Hits hits);
+
+}
@@ -31,7 +31,7 @@ public abstract class HitsSample extends HitsImpl {
 		super(searcher, new ArrayList<Hit>());
 		this.ratioOfHitsToSelect = ratio;
 		this.seed = seed == RANDOM_SEED ? getRandomSeed() : seed;
-		this.random = new Random(seed);
+		this.random = new Random(this.seed);
 	}
 
 	protected HitsSample(Searcher searcher, int number, long seed) {
@@ -39,14 +39,14 @@ public abstract class HitsSample extends HitsImpl {
 		this.numberOfHitsToSelect = number;
 		exactNumberGiven = true;
 		this.seed = seed == RANDOM_SEED ? getRandomSeed() : seed;
-		this.random = new Random(seed);
+		this.random = new Random(this.seed);
 	}
 
 	protected HitsSample(Searcher searcher, List<Hit> hits, float ratio, long seed) {
 		super(searcher, hits);
 		this.ratioOfHitsToSelect = ratio;
 		this.seed = seed == RANDOM_SEED ? getRandomSeed() : seed;
-		this.random = new Random(seed);
+		this.random = new Random(this.seed);
 	}
 
 	/**
@@ -80,6 +80,9 @@ public abstract class HitsSample extends HitsImpl {
 	/**
 	 * Take a sample of hits by executing a SpanQuery and sampling the results.
 	 *
+	 * The query is executed once; only hits that may end up in the sample are
+	 * kept while going through the results.
+	 *
 	 * @param searcher searcher object
 	 * @param query query to sample
 	 * @param ratio ratio of hits to select, from 0 (none) to 1 (all)
@@ -87,11 +90,26 @@ public abstract class HitsSample extends HitsImpl {
 	 * @return the sample
 	 */
 	public static HitsSample fromSpanQuery(Searcher searcher, SpanQuery query, float ratio, long seed) {
-		// We can later provide an optimized version that uses a HitsSampleSpans or somesuch
-		// (this class could save memory by only storing the hits we're interested in)
+		return fromSpanQuery(searcher, query, ratio, seed, null);
+	}
+
+	/**
+	 * Take a sample of hits by executing a SpanQuery and sampling the results.
+	 *
+	 * The settings (e.g. max. hits to retrieve/count) apply while the hits are read.
+	 *
+	 * @param searcher searcher object
+	 * @param query query to sample
+	 * @param ratio ratio of hits to select, from 0 (none) to 1 (all)
+	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
+	 * @param settings settings for the hits, or null to use the searcher's defaults
+	 * @return the sample
+	 */
+	public static HitsSample fromSpanQuery(Searcher searcher, SpanQuery query, float ratio, long seed, HitsSettings settings) {
+		// Hits are sampled while they are retrieved, so we don't need to store all of them
 		if (!(query instanceof BLSpanQuery))
 			throw new IllegalArgumentException("Supplied query must be a BLSpanQuery!");
-		return new HitsSampleImpl(Hits.fromSpanQuery(searcher, query), ratio, seed);
+		return new HitsSampleImpl(searcher, query, ratio, seed, settings);
 	}
 
 	/**
@@ -104,11 +122,26 @@ public abstract class HitsSample extends HitsImpl {
 	 * @return the sample
 	 */
 	public static HitsSample fromSpanQuery(Searcher searcher, SpanQuery query, int number, long seed) {
-		// We can later provide an optimized version that uses a HitsSampleSpans or somesuch
-		// (this class could save memory by only storing the hits we're interested in)
+		return fromSpanQuery(searcher, query, number, seed, null);
+	}
+
+	/**
+	 * Take a sample of hits by executing a SpanQuery and sampling the results.
+	 *
+	 * The settings (e.g. max. hits to retrieve/count) apply while the hits are read.
+	 *
+	 * @param searcher searcher object
+	 * @param query query to sample
+	 * @param number number of hits to select
+	 * @param seed seed for the random generator, or HitsSample.RANDOM_SEED to use a randomly chosen seed
+	 * @param settings settings for the hits, or null to use the searcher's defaults
+	 * @return the sample
+	 */
+	public static HitsSample fromSpanQuery(Searcher searcher, SpanQuery query, int number, long seed, HitsSettings settings) {
+		// Hits are sampled while they are retrieved, so we don't need to store all of them
 		if (!(query instanceof BLSpanQuery))
 			throw new IllegalArgumentException("Supplied query must be a BLSpanQuery!");
-		return new HitsSampleImpl(Hits.fromSpanQuery(searcher, query), number, seed);
+		return new HitsSampleImpl(searcher, query, number, seed, settings);
 	}
 
 	public float ratio() {
@@ -1,59 +1,418 @@
 package nl.inl.blacklab.search;
 
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.apache.lucene.search.spans.SpanQuery;
 
 /**
- * Implements HitsSample by wrapping a Hits object.
+ * Implements HitsSample by wrapping a Hits object or by streaming hits from a SpanQuery.
+ *
+ * If the number of hits to select is given, we use reservoir sampling with
+ * random skips (Li's "Algorithm L", an improvement on Vitter's Algorithm Z),
+ * so we only need a single pass over the hits and never have to know the total
+ * number of hits in advance. If a ratio is given, we give each hit a random key
+ * and select the hits with the smallest keys, which also only takes a single
+ * pass (see RatioSampler).
+ *
+ * Both samplers draw their random numbers in a fixed order from a generator
+ * seeded with the sample seed, so the sample is deterministic for a given seed.
  */
 public class HitsSampleImpl extends HitsSample {
 
+	/**
+	 * Decides which hits to select while we're going through them in order.
+	 */
+	private static abstract class Sampler {
+
+		/** Hits selected so far */
+		Hit[] selected;
+
+		/** Index (in the source) of each selected hit */
+		int[] selectedIndex;
+
+		/** Number of hits selected so far */
+		int numberSelected = 0;
+
+		/** Index of the next hit we want to see, or -1 if we don't want any more hits */
+		long nextIndex;
+
+		Random random;
+
+		Sampler(int numberToSelect, Random random) {
+			selected = new Hit[numberToSelect];
+			selectedIndex = new int[numberToSelect];
+			this.random = random;
+		}
+
+		/**
+		 * Offer the hit with index nextIndex to the sampler.
+		 *
+		 * @param index index of the hit (should equal nextIndex)
+		 * @param hit the hit
+		 */
+		abstract void offer(int index, Hit hit);
+
+		/**
+		 * Get a random number in the range (0, 1].
+		 * @return the random number
+		 */
+		double randomNonZero() {
+			return 1.0 - random.nextDouble();
+		}
+
+		/**
+		 * Get the selected hits, in the order they occurred in the source.
+		 *
+		 * @return the selected hits
+		 */
+		Hit[] selectedInOrder() {
+			long[] order = new long[numberSelected];
+			for (int i = 0; i < numberSelected; i++) {
+				order[i] = ((long)selectedIndex[i] << 32) | i;
+			}
+			Arrays.sort(order);
+			Hit[] result = new Hit[numberSelected];
+			for (int i = 0; i < numberSelected; i++) {
+				result[i] = selected[(int)(order[i] & 0xFFFFFFFFL)];
+			}
+			return result;
+		}
+
+	}
+
+	/**
+	 * Reservoir sampler that doesn't need to know the number of hits in advance
+	 * (Algorithm L).
+	 *
+	 * After filling the reservoir, it calculates how many hits to skip before the
+	 * next hit that will replace a random hit in the reservoir.
+	 */
+	private static class ReservoirSampler extends Sampler {
+
+		/** Largest of the random keys of the hits in the reservoir (see Algorithm L) */
+		private double w;
+
+		ReservoirSampler(int numberToSelect, Random random) {
+			super(numberToSelect, random);
+			nextIndex = numberToSelect == 0 ? -1 : 0;
+		}
+
+		@Override
+		void offer(int index, Hit hit) {
+			int k = selected.length;
+			if (numberSelected < k) {
+				// Still filling the reservoir
+				selected[numberSelected] = hit;
+				selectedIndex[numberSelected] = index;
+				numberSelected++;
+				if (numberSelected == k) {
+					w = Math.exp(Math.log(randomNonZero()) / k);
+					skip(index);
+				} else {
+					nextIndex = index + 1;
+				}
+			} else {
+				// Replace a random hit in the reservoir
+				int i = random.nextInt(k);
+				selected[i] = hit;
+				selectedIndex[i] = index;
+				w *= Math.exp(Math.log(randomNonZero()) / k);
+				skip(index);
+			}
+		}
+
+		private void skip(int index) {
+			double skip = Math.floor(Math.log(randomNonZero()) / Math.log(1 - w));
+			nextIndex = skip >= Integer.MAX_VALUE - index ? -1 : index + 1 + (long)skip;
+		}
+
+	}
+
+	/**
+	 * Sampler that selects a ratio of the hits in a single pass, without knowing
+	 * the number of hits in advance.
+	 *
+	 * Every hit gets a random key; the sample consists of the hits with the
+	 * smallest keys. While going through the hits, we only keep hits whose key is
+	 * below a threshold that is comfortably above the ratio (and shrinks as we see
+	 * more hits), so we don't have to keep all the hits in memory. If it turns out
+	 * we kept too few (very unlikely), we have to go through the hits again,
+	 * keeping all of them; because the keys are drawn in the same order from the
+	 * same seed, the result is the same as if we'd kept all hits the first time.
+	 */
+	private static class RatioSampler extends Sampler {
+
+		private float ratio;
+
+		/** If true, keep every hit (we found out the threshold was too low) */
+		private boolean keepAll;
+
+		/** Random keys of the hits we've kept */
+		private double[] keys = new double[16];
+
+		/** Index (in the source) of the hits we've kept */
+		private int[] keptIndex = new int[16];
+
+		/** The hits we've kept */
+		private Hit[] kept = new Hit[16];
+
+		private int numberKept = 0;
+
+		/** When to get rid of kept hits that are above the current threshold */
+		private int pruneAt = 1024;
+
+		RatioSampler(float ratio, Random random, boolean keepAll) {
+			super(0, random);
+			this.ratio = ratio;
+			this.keepAll = keepAll;
+			nextIndex = ratio == 0 ? -1 : 0;
+		}
+
+		/**
+		 * Threshold below which we keep hits' keys, after seeing a number of hits.
+		 *
+		 * Roughly the ratio plus four standard deviations, plus some slack for small
+		 * numbers of hits.
+		 *
+		 * @param hitsSeen number of hits seen so far
+		 * @return the threshold
+		 */
+		private double threshold(int hitsSeen) {
+			if (keepAll)
+				return 1.0;
+			return Math.min(1.0, ratio + 4 * Math.sqrt(ratio * (1.0 - ratio) / hitsSeen) + 8.0 / hitsSeen);
+		}
+
+		@Override
+		void offer(int index, Hit hit) {
+			double key = random.nextDouble();
+			nextIndex = index + 1;
+			if (key >= threshold(index + 1))
+				return;
+			if (numberKept == keys.length) {
+				keys = Arrays.copyOf(keys, numberKept * 2);
+				keptIndex = Arrays.copyOf(keptIndex, numberKept * 2);
+				kept = Arrays.copyOf(kept, numberKept * 2);
+			}
+			keys[numberKept] = key;
+			keptIndex[numberKept] = index;
+			kept[numberKept] = hit;
+			numberKept++;
+			if (numberKept >= pruneAt) {
+				prune(threshold(index + 1));
+				pruneAt = Math.max(1024, numberKept * 2);
+			}
+		}
+
+		/**
+		 * Get rid of the kept hits whose key is not below the threshold.
+		 *
+		 * @param threshold the threshold
+		 */
+		private void prune(double threshold) {
+			int n = 0;
+			for (int i = 0; i < numberKept; i++) {
+				if (keys[i] < threshold) {
+					keys[n] = keys[i];
+					keptIndex[n] = keptIndex[i];
+					kept[n] = kept[i];
+					n++;
+				}
+			}
+			for (int i = n; i < numberKept; i++)
+				kept[i] = null;
+			numberKept = n;
+		}
+
+		/**
+		 * Select the hits, now that we know how many there are.
+		 *
+		 * @param totalNumberOfHits the number of hits we went through
+		 * @return true if we're done, false if we kept too few hits and need to go
+		 *   through them again with a sampler that keeps all hits
+		 */
+		boolean finish(int totalNumberOfHits) {
+			int numberToSelect = numberToSelect(totalNumberOfHits, ratio);
+			if (totalNumberOfHits > 0)
+				prune(threshold(totalNumberOfHits));
+			if (numberKept < numberToSelect)
+				return false;
+
+			// Select the hits with the smallest keys (ties broken by index)
+			Integer[] order = new Integer[numberKept];
+			for (int i = 0; i < numberKept; i++)
+				order[i] = i;
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					int cmp = Double.compare(keys[a], keys[b]);
+					return cmp != 0 ? cmp : keptIndex[a] - keptIndex[b];
+				}
+			});
+			selected = new Hit[numberToSelect];
+			selectedIndex = new int[numberToSelect];
+			for (int i = 0; i < numberToSelect; i++) {
+				selected[i] = kept[order[i]];
+				selectedIndex[i] = keptIndex[order[i]];
+			}
+			numberSelected = numberToSelect;
+			return true;
+		}
+
+	}
+
+	/**
+	 * Retrieves hits from a SpanQuery without storing them, offering the hits
+	 * the sampler wants to it.
+	 */
+	private static class StreamingSource extends HitsImpl {
+
+		private Sampler sampler;
+
+		private int retrieved = 0;
+
+		StreamingSource(Searcher searcher, SpanQuery query, Sampler sampler, HitsSettings settings) {
+			super(searcher, query);
+			this.settings = new HitsSettings(settings, false);
+			this.sampler = sampler;
+		}
+
+		@Override
+		protected void addRetrievedHit(Hit hit, Span[] groups) {
+			if (sampler != null && retrieved == sampler.nextIndex)
+				sampler.offer(retrieved, hit);
+			retrieved++;
+		}
+
+		@Override
+		protected int numberOfRetrievedHits() {
+			return retrieved;
+		}
+
+		/**
+		 * Go through all the hits.
+		 *
+		 * @return the number of hits retrieved
+		 */
+		int readAll() {
+			try {
+				ensureAllHitsRead();
+			} catch (InterruptedException e) {
+				// Thread was interrupted; abort operation
+				// and let client decide what to do
+				Thread.currentThread().interrupt();
+			}
+			return retrieved;
+		}
+
+	}
+
 	HitsSampleImpl(Hits hits, float ratio, long seed) {
 		super(hits.getSearcher(), ratio, seed);
 		if (ratio < 0 || ratio > 1)
 			throw new IllegalArgumentException("ratio must be in the range 0-1");
 
-		// Determine how many hits there are, and how many to choose
-		int totalNumberOfHits = hits.size();
-		numberOfHitsToSelect = Math.round(totalNumberOfHits * ratio);
-		if (numberOfHitsToSelect == 0 && totalNumberOfHits > 0 && ratio > 0)
-			numberOfHitsToSelect = 1; // always choose at least one hit, unless we specify ratio 0 (why..??)
-
 		// Copy relevant information from Hits object
 		setMaxHitsCounted(hits.maxHitsCounted());
 		setMaxHitsRetrieved(hits.maxHitsRetrieved());
 
-		selectHits(hits);
+		RatioSampler sampler = new RatioSampler(ratio, random, false);
+		int totalNumberOfHits = selectHits(hits, sampler);
+		if (!sampler.finish(totalNumberOfHits)) {
+			// Kept too few hits; go through them again, keeping all of them
+			random.setSeed(seed);
+			sampler = new RatioSampler(ratio, random, true);
+			selectHits(hits, sampler);
+			sampler.finish(totalNumberOfHits);
+		}
+		addSelectedHits(sampler);
+		numberOfHitsToSelect = this.hits.size();
 	}
 
 	HitsSampleImpl(Hits hits, int number, long seed) {
 		super(hits.getSearcher(), number, seed);
 		if (number < 0)
 			throw new IllegalArgumentException("Negative sample number specified");
-		if (number > hits.size())
-			numberOfHitsToSelect = number = hits.size(); // default to all hits in this case
 
-		// Determine how many hits there are, and how many to choose
-		ratioOfHitsToSelect = (float)number / hits.size();
+		ReservoirSampler sampler = new ReservoirSampler(number, random);
+		int totalNumberOfHits = selectHits(hits, sampler);
+		addSelectedHits(sampler);
+		numberOfHitsToSelect = this.hits.size(); // may be less than requested if there weren't enough hits
+		ratioOfHitsToSelect = totalNumberOfHits == 0 ? 0 : (float)numberOfHitsToSelect / totalNumberOfHits;
+	}
 
-		selectHits(hits);
+	HitsSampleImpl(Searcher searcher, SpanQuery query, float ratio, long seed, HitsSettings settings) {
+		super(searcher, ratio, seed);
+		if (ratio < 0 || ratio > 1)
+			throw new IllegalArgumentException("ratio must be in the range 0-1");
+		if (settings != null)
+			this.settings = new HitsSettings(settings, false);
+
+		RatioSampler sampler = new RatioSampler(ratio, random, false);
+		StreamingSource source = new StreamingSource(searcher, query, sampler, this.settings);
+		int totalNumberOfHits = source.readAll();
+		if (!sampler.finish(totalNumberOfHits)) {
+			// Kept too few hits (very unlikely); go through them again, keeping all of them
+			random.setSeed(seed);
+			sampler = new RatioSampler(ratio, random, true);
+			source = new StreamingSource(searcher, query, sampler, this.settings);
+			source.readAll();
+			sampler.finish(totalNumberOfHits);
+		}
+		setMaxHitsCounted(source.maxHitsCounted());
+		setMaxHitsRetrieved(source.maxHitsRetrieved());
+		addSelectedHits(sampler);
+		numberOfHitsToSelect = this.hits.size();
+	}
+
+	HitsSampleImpl(Searcher searcher, SpanQuery query, int number, long seed, HitsSettings settings) {
+		super(searcher, number, seed);
+		if (number < 0)
+			throw new IllegalArgumentException("Negative sample number specified");
+		if (settings != null)
+			this.settings = new HitsSettings(settings, false);
+
+		ReservoirSampler sampler = new ReservoirSampler(number, random);
+		StreamingSource source = new StreamingSource(searcher, query, sampler, this.settings);
+		int totalNumberOfHits = source.readAll();
+		setMaxHitsCounted(source.maxHitsCounted());
+		setMaxHitsRetrieved(source.maxHitsRetrieved());
+		addSelectedHits(sampler);
+		numberOfHitsToSelect = this.hits.size(); // may be less than requested if there weren't enough hits
+		ratioOfHitsToSelect = totalNumberOfHits == 0 ? 0 : (float)numberOfHitsToSelect / totalNumberOfHits;
+	}
+
+	private static int numberToSelect(int totalNumberOfHits, float ratio) {
+		int number = Math.round(totalNumberOfHits * ratio);
+		if (number == 0 && totalNumberOfHits > 0 && ratio > 0)
+			number = 1; // always choose at least one hit, unless we specify ratio 0 (why..??)
+		return number;
+	}
+
+	/**
+	 * Go through the hits, only offering the ones the sampler wants to it.
+	 *
+	 * @param selectFrom hits to select from
+	 * @param sampler decides which hits to select
+	 * @return total number of hits in selectFrom, if we went through all of them
+	 */
+	private int selectHits(Hits selectFrom, Sampler sampler) {
+		while (sampler.nextIndex >= 0 && selectFrom.sizeAtLeast((int)sampler.nextIndex + 1)) {
+			int index = (int)sampler.nextIndex;
+			sampler.offer(index, selectFrom.get(index));
+		}
+		return selectFrom.size();
 	}
 
-	private void selectHits(Hits selectFrom) {
-		// Choose the hits
-		Set<Integer> chosenHitIndices = new TreeSet<>();
-		for (int i = 0; i < numberOfHitsToSelect; i++) {
-			// Choose a hit we haven't chosen yet
-			int hitIndex;
-			do {
-				hitIndex = random.nextInt(selectFrom.size());
-			} while (chosenHitIndices.contains(hitIndex));
-			chosenHitIndices.add(hitIndex);
-		}
-
-		// Add the hits in order of their index
-		for (Integer hitIndex: chosenHitIndices) {
-			Hit hit = selectFrom.get(hitIndex);
+	/**
+	 * Add the hits the sampler selected, in order.
+	 *
+	 * @param sampler the sampler
+	 */
+	private void addSelectedHits(Sampler sampler) {
+		for (Hit hit: sampler.selectedInOrder()) {
 			if (hit.doc != previousHitDoc) {
 				docsRetrieved++;
 				docsCounted++;
@@ -0,0 +1,235 @@
+package nl.inl.blacklab.search;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Takes care of writing Hits objects to, and reading them from, a compact
+ * binary representation in a (possibly memory-mapped) ByteBuffer.
+ *
+ * Used by BlackLab Server to spill large cached results to disk instead of
+ * discarding them. Only the hits themselves (doc, start and end arrays),
+ * the sort order, the counts and the most important settings are stored;
+ * context and concordances are retrieved again when needed.
+ */
+public class HitsSerializeUtil {
+
+	/** Version of the binary format; increase when changing it */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int SIZEOF_INT = Integer.SIZE / Byte.SIZE;
+
+	private static final byte FLAG_MAX_HITS_RETRIEVED = 1;
+
+	private static final byte FLAG_MAX_HITS_COUNTED = 2;
+
+	private static final byte FLAG_SORTED = 4;
+
+	private HitsSerializeUtil() {
+	}
+
+	/**
+	 * Can we serialize this Hits object?
+	 *
+	 * We can only serialize hits that have all been fetched, and we don't store
+	 * captured groups.
+	 *
+	 * @param hits the hits to check
+	 * @return true if we can serialize them, false if not
+	 */
+	public static boolean canSerialize(Hits hits) {
+		return hits instanceof HitsImpl && hits.doneFetchingHits() && !hits.hasCapturedGroups();
+	}
+
+	/**
+	 * Calculate how many bytes the serialized version of the hits will take.
+	 *
+	 * @param hits the hits to serialize
+	 * @return number of bytes needed
+	 */
+	public static long sizeBytes(Hits hits) {
+		HitsImpl h = (HitsImpl)hits;
+		long n = h.hits.size();
+		int arrays = h.sortOrder == null ? 3 : 4;
+		return SIZEOF_INT * 8 + 2 + sizeBytes(h.settings().concordanceField()) + arrays * n * SIZEOF_INT;
+	}
+
+	/**
+	 * Write the hits to a buffer.
+	 *
+	 * The buffer must have at least sizeBytes(hits) bytes remaining.
+	 *
+	 * @param hits the hits to serialize
+	 * @param buf where to write them
+	 */
+	public static void write(Hits hits, ByteBuffer buf) {
+		if (!canSerialize(hits))
+			throw new IllegalArgumentException("Cannot serialize these hits");
+		HitsImpl h = (HitsImpl)hits;
+		int n = h.hits.size();
+		Integer[] order = n > 0 ? h.ensureSortedUpTo(n - 1) : h.sortOrder; // make sure we're not partially sorted
+
+		byte flags = 0;
+		if (h.maxHitsRetrieved())
+			flags |= FLAG_MAX_HITS_RETRIEVED;
+		if (h.maxHitsCounted())
+			flags |= FLAG_MAX_HITS_COUNTED;
+		if (order != null)
+			flags |= FLAG_SORTED;
+		HitsSettings settings = h.settings();
+		buf.putInt(FORMAT_VERSION);
+		buf.putInt(n);
+		buf.putInt(h.hitsCounted);
+		buf.putInt(h.docsRetrieved);
+		buf.putInt(h.docsCounted);
+		buf.put(flags);
+		buf.putInt(settings.maxHitsToRetrieve());
+		buf.putInt(settings.maxHitsToCount());
+		buf.putInt(settings.contextSize());
+		buf.put((byte)settings.concordanceType().ordinal());
+		putString(buf, settings.concordanceField());
+
+		int[] doc = new int[n];
+		int[] start = new int[n];
+		int[] end = new int[n];
+		for (int i = 0; i < n; i++) {
+			Hit hit = h.hits.get(i);
+			doc[i] = hit.doc;
+			start[i] = hit.start;
+			end[i] = hit.end;
+		}
+		putInts(buf, doc);
+		putInts(buf, start);
+		putInts(buf, end);
+		if (order != null) {
+			int[] sortOrder = new int[n];
+			for (int i = 0; i < n; i++)
+				sortOrder[i] = order[i];
+			putInts(buf, sortOrder);
+		}
+	}
+
+	/**
+	 * Read hits from a buffer.
+	 *
+	 * @param searcher our searcher
+	 * @param buf the buffer to read from, positioned at the start of the serialized hits
+	 * @return the hits read, or null if the data isn't valid for this searcher
+	 *   (e.g. refers to documents that don't exist) or was written in a different
+	 *   format version
+	 */
+	public static Hits read(Searcher searcher, ByteBuffer buf) {
+		int version = buf.getInt();
+		if (version != FORMAT_VERSION)
+			return null; // written by another version; caller should discard it
+		int n = buf.getInt();
+		int hitsCounted = buf.getInt();
+		int docsRetrieved = buf.getInt();
+		int docsCounted = buf.getInt();
+		byte flags = buf.get();
+		int maxHitsToRetrieve = buf.getInt();
+		int maxHitsToCount = buf.getInt();
+		int contextSize = buf.getInt();
+		int concTypeOrdinal = buf.get();
+		String concField = getString(buf);
+		boolean sorted = (flags & FLAG_SORTED) != 0;
+		if (n < 0 || (long)(sorted ? 4 : 3) * n * SIZEOF_INT > buf.remaining())
+			return null; // truncated
+		if (concTypeOrdinal < 0 || concTypeOrdinal >= ConcordanceType.values().length)
+			return null;
+		ConcordanceType concType = ConcordanceType.values()[concTypeOrdinal];
+
+		int[] doc = getInts(buf, n);
+		int[] start = getInts(buf, n);
+		int[] end = getInts(buf, n);
+		int maxDoc = searcher.maxDoc();
+		List<Hit> list = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			if (doc[i] < 0 || doc[i] >= maxDoc || start[i] < 0 || end[i] < start[i])
+				return null; // not a hit in this index
+			list.add(new Hit(doc[i], start[i], end[i]));
+		}
+		HitsImpl hits = new HitsImpl(searcher, list);
+		if (sorted) {
+			int[] sortOrder = getInts(buf, n);
+			Integer[] order = new Integer[n];
+			boolean[] seen = new boolean[n];
+			for (int i = 0; i < n; i++) {
+				int hitIndex = sortOrder[i];
+				if (hitIndex < 0 || hitIndex >= n || seen[hitIndex])
+					return null; // not a permutation of the hits
+				seen[hitIndex] = true;
+				order[i] = hitIndex;
+			}
+			hits.sortOrder = order;
+		}
+		hits.hitsCounted = hitsCounted;
+		hits.docsRetrieved = docsRetrieved;
+		hits.docsCounted = docsCounted;
+		hits.setMaxHitsRetrieved((flags & FLAG_MAX_HITS_RETRIEVED) != 0);
+		hits.setMaxHitsCounted((flags & FLAG_MAX_HITS_COUNTED) != 0);
+		HitsSettings settings = hits.settings();
+		settings.setMaxHitsToRetrieve(maxHitsToRetrieve);
+		settings.setMaxHitsToCount(maxHitsToCount);
+		settings.setContextSize(contextSize);
+		settings.setConcordanceType(concType);
+		settings.setConcordanceField(concField);
+		return hits;
+	}
+
+	/**
+	 * How many bytes does putString() need for this string?
+	 * @param str the string
+	 * @return number of bytes
+	 */
+	public static int sizeBytes(String str) {
+		return SIZEOF_INT + (str == null ? 0 : str.getBytes(StandardCharsets.UTF_8).length);
+	}
+
+	/**
+	 * Write a length-prefixed UTF-8 string to the buffer.
+	 * @param buf buffer to write to
+	 * @param str string to write (may be null)
+	 */
+	public static void putString(ByteBuffer buf, String str) {
+		if (str == null) {
+			buf.putInt(-1);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		buf.putInt(bytes.length);
+		buf.put(bytes);
+	}
+
+	/**
+	 * Read a length-prefixed UTF-8 string from the buffer.
+	 * @param buf buffer to read from
+	 * @return the string read (may be null)
+	 */
+	public static String getString(ByteBuffer buf) {
+		int length = buf.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void putInts(ByteBuffer buf, int[] values) {
+		IntBuffer ib = buf.asIntBuffer();
+		ib.put(values);
+		buf.position(buf.position() + SIZEOF_INT * values.length);
+	}
+
+	private static int[] getInts(ByteBuffer buf, int n) {
+		int[] values = new int[n];
+		IntBuffer ib = buf.asIntBuffer();
+		ib.get(values);
+		buf.position(buf.position() + SIZEOF_INT * n);
+		return values;
+	}
+
+}
@@ -0,0 +1,283 @@
+package nl.inl.blacklab.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the time went while executing a query.
+ *
+ * Profiling is opt-in per query (see Searcher.find(BLSpanQuery, QueryProfile)).
+ * It records:
+ * <ul>
+ * <li>time spent in each phase (optimize, rewrite, fetching hits, sorting,
+ * grouping, KWICs, ...). Phases may overlap; e.g. sorting includes fetching
+ * the hits that weren't fetched yet.</li>
+ * <li>the decisions made when combining adjacent clauses during optimization</li>
+ * <li>the executed tree of spans, with per-node counters (see Node)</li>
+ * </ul>
+ *
+ * While creating spans and optimizing, the profile is made available to the
+ * query classes through a thread-local (see current()).
+ */
+public class QueryProfile {
+
+	/** The profile for the query being optimized or executed by this thread, if any */
+	private static final ThreadLocal<QueryProfile> current = new ThreadLocal<>();
+
+	/**
+	 * Get the profile for the query being optimized or executed by this thread.
+	 *
+	 * @return the profile, or null if we're not profiling
+	 */
+	public static QueryProfile current() {
+		return current.get();
+	}
+
+	/**
+	 * Set the profile for the query being optimized or executed by this thread.
+	 *
+	 * @param profile the profile, or null to stop profiling
+	 * @return the previous profile (so it can be restored)
+	 */
+	public static QueryProfile setCurrent(QueryProfile profile) {
+		QueryProfile previous = current.get();
+		if (profile == null)
+			current.remove();
+		else
+			current.set(profile);
+		return previous;
+	}
+
+	/**
+	 * A node in the executed spans tree, with counters.
+	 *
+	 * The counters are summed over all index segments. Time is in nanoseconds and
+	 * includes the time spent in the node's children.
+	 *
+	 * Counters are updated by the thread fetching the hits, without locking;
+	 * read them after (or while) fetching for an approximate picture.
+	 */
+	public static class Node {
+
+		private Node parent;
+
+		/** Identifies this node among its siblings (the weight that created the spans) */
+		private Object key;
+
+		private String type;
+
+		private String description;
+
+		private List<Node> children = new ArrayList<>();
+
+		private long nextDocCalls;
+
+		private long advanceCalls;
+
+		private long nextStartPositionCalls;
+
+		private long advanceStartPositionCalls;
+
+		private long docs;
+
+		private long hits;
+
+		private long nanos;
+
+		Node(Node parent, Object key, String type, String description) {
+			this.parent = parent;
+			this.key = key;
+			this.type = type;
+			this.description = description;
+		}
+
+		/**
+		 * Record a call to nextDoc() or advance() (called by the profiling spans).
+		 *
+		 * @param advance true for advance(), false for nextDoc()
+		 * @param found true if we found a document (i.e. not NO_MORE_DOCS)
+		 * @param callNanos time spent in the call
+		 */
+		public void recordDocCall(boolean advance, boolean found, long callNanos) {
+			if (advance)
+				advanceCalls++;
+			else
+				nextDocCalls++;
+			if (found)
+				docs++;
+			nanos += callNanos;
+		}
+
+		/**
+		 * Record a call to nextStartPosition() or advanceStartPosition() (called by the profiling spans).
+		 *
+		 * @param advance true for advanceStartPosition(), false for nextStartPosition()
+		 * @param found true if we found a hit (i.e. not NO_MORE_POSITIONS)
+		 * @param callNanos time spent in the call
+		 */
+		public void recordPositionCall(boolean advance, boolean found, long callNanos) {
+			if (advance)
+				advanceStartPositionCalls++;
+			else
+				nextStartPositionCalls++;
+			if (found)
+				hits++;
+			nanos += callNanos;
+		}
+
+		synchronized Node child(Object childKey, String childType, String childDescription) {
+			for (Node child: children) {
+				if (child.key == childKey)
+					return child;
+			}
+			Node child = new Node(this, childKey, childType, childDescription);
+			children.add(child);
+			return child;
+		}
+
+		/**
+		 * Get the type of spans (e.g. "SpanQuerySequence").
+		 * @return the type
+		 */
+		public String getType() {
+			return type;
+		}
+
+		/**
+		 * Get the query this node executes.
+		 * @return the query (including its clauses)
+		 */
+		public String getDescription() {
+			return description;
+		}
+
+		public synchronized List<Node> getChildren() {
+			return new ArrayList<>(children);
+		}
+
+		public long getNextDocCalls() {
+			return nextDocCalls;
+		}
+
+		public long getAdvanceCalls() {
+			return advanceCalls;
+		}
+
+		public long getNextStartPositionCalls() {
+			return nextStartPositionCalls;
+		}
+
+		public long getAdvanceStartPositionCalls() {
+			return advanceStartPositionCalls;
+		}
+
+		/**
+		 * Get the number of documents this node produced.
+		 * @return number of documents
+		 */
+		public long getDocs() {
+			return docs;
+		}
+
+		/**
+		 * Get the number of hits this node produced.
+		 * @return number of hits
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * Get the time spent in this node and its children.
+		 * @return time in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+	}
+
+	/** Time per phase, in nanoseconds, in the order they were first recorded */
+	private Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+	/** Decisions made by the clause combiners */
+	private List<String> combinerDecisions = new ArrayList<>();
+
+	/** Root of the spans tree (has no counters itself) */
+	private Node root = new Node(null, null, "", "");
+
+	/** Node whose spans are being created right now (while creating spans) */
+	private Node currentNode = root;
+
+	/**
+	 * Add time spent in a phase.
+	 *
+	 * @param phase phase name, e.g. "sort"
+	 * @param startNanos value of System.nanoTime() when the phase started
+	 */
+	public synchronized void addPhaseTime(String phase, long startNanos) {
+		long nanos = System.nanoTime() - startNanos;
+		Long soFar = phaseNanos.get(phase);
+		phaseNanos.put(phase, soFar == null ? nanos : soFar + nanos);
+	}
+
+	/**
+	 * Get the time spent per phase.
+	 *
+	 * @return time per phase in nanoseconds, in the order they were first recorded
+	 */
+	public synchronized Map<String, Long> getPhaseTimes() {
+		return new LinkedHashMap<>(phaseNanos);
+	}
+
+	/**
+	 * Record a decision made while optimizing the query.
+	 *
+	 * @param decision description of the decision
+	 */
+	public synchronized void addCombinerDecision(String decision) {
+		combinerDecisions.add(decision);
+	}
+
+	public synchronized List<String> getCombinerDecisions() {
+		return Collections.unmodifiableList(new ArrayList<>(combinerDecisions));
+	}
+
+	/**
+	 * Get the top-level nodes of the executed spans tree.
+	 *
+	 * @return the top-level nodes (usually just one)
+	 */
+	public List<Node> getSpansTree() {
+		return root.getChildren();
+	}
+
+	/**
+	 * Start creating the spans for a node (called by the query classes).
+	 *
+	 * Spans created until the matching call to endNode() are children of this
+	 * node.
+	 *
+	 * @param key identifies the node among its siblings
+	 * @param type type of spans
+	 * @param description the query the node executes
+	 * @return the node
+	 */
+	public Node startNode(Object key, String type, String description) {
+		currentNode = currentNode.child(key, type, description);
+		return currentNode;
+	}
+
+	/**
+	 * Done creating the spans for a node.
+	 *
+	 * @param node the node returned by the matching startNode() call
+	 */
+	public void endNode(Node node) {
+		currentNode = node.parent;
+	}
+
+}
@@ -27,11 +27,14 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.store.LockObtainFailedException;
+import org.apache.lucene.util.Bits;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 
 import nl.inl.blacklab.analysis.BLDutchAnalyzer;
 import nl.inl.blacklab.analysis.BLNonTokenizingAnalyzer;
@@ -49,6 +52,7 @@ import nl.inl.blacklab.perdocument.DocResults;
 import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.SpanQueryFiltered;
+import nl.inl.blacklab.structureindex.StructureIndex;
 import nl.inl.util.VersionFile;
 
 public abstract class Searcher {
@@ -366,6 +370,14 @@ public abstract class Searcher {
 	 */
 	protected Map<String, ForwardIndex> forwardIndices = new HashMap<>();
 
+	/**
+	 * Structure indices store the positions of the XML tags in each document as intervals,
+	 * which speeds up within/containing tag queries. They are optional.
+	 *
+	 * Indexed by complex field name.
+	 */
+	protected Map<String, StructureIndex> structureIndices = new HashMap<>();
+
 	protected HitsSettings hitsSettings;
 
 	/**
@@ -379,6 +391,18 @@ public abstract class Searcher {
 		return hitsSettings;
 	}
 
+	/**
+	 * The cache for documents matching metadata filter queries.
+	 *
+	 * Used when filtering searches and finding documents by metadata.
+	 * Searchers returned by reopenIfChanged() share this cache.
+	 *
+	 * @return the filter cache
+	 */
+	public FilterCache filterCache() {
+		return filterCache;
+	}
+
 	public Searcher() {
 		hitsSettings = new HitsSettings();
 	}
@@ -434,9 +458,18 @@ public abstract class Searcher {
 	/** How we fix well-formedness for snippets of XML: by adding or removing unbalanced tags */
 	private UnbalancedTagsStrategy defaultUnbalancedTagsStrategy = UnbalancedTagsStrategy.ADD_TAG;
 
+	/** Highlighter configured with our unbalanced tags strategy (XmlHighlighter may be shared between threads) */
+	private volatile XmlHighlighter highlighter = new XmlHighlighter();
+
 	/** If true, we want to add/delete documents. If false, we're just searching. */
 	protected boolean indexMode = false;
 
+	/** How many times the index was refreshed before we were opened (see reopenIfChanged()) */
+	protected long generation = 0;
+
+	/** Caches the documents matching metadata filter queries (shared with reopened Searchers) */
+	protected FilterCache filterCache = new FilterCache();
+
 	/** @return the default maximum number of hits to retrieve.
 	 * @deprecated use hitsSettings().maxHitsToRetrieve()
 	 */
@@ -485,6 +518,17 @@ public abstract class Searcher {
 	 */
 	public void setDefaultUnbalancedTagsStrategy(UnbalancedTagsStrategy strategy) {
 		this.defaultUnbalancedTagsStrategy = strategy;
+		XmlHighlighter hl = new XmlHighlighter();
+		hl.setUnbalancedTagsStrategy(strategy);
+		highlighter = hl; // don't reconfigure the one that may be in use
+	}
+
+	/**
+	 * Get the highlighter to use for highlighting and making fragments well-formed.
+	 * @return the highlighter, configured with the default unbalanced tags strategy
+	 */
+	XmlHighlighter getHighlighter() {
+		return highlighter;
 	}
 
 	/**
@@ -571,6 +615,36 @@ public abstract class Searcher {
 	 */
 	public abstract void rollback();
 
+	/**
+	 * Open a new Searcher that sees the changes made to the index since this
+	 * Searcher was opened (e.g. documents added by an Indexer).
+	 *
+	 * Unchanged Lucene segments are shared between the two Searchers, but the
+	 * index structure, forward indices and content stores are opened again
+	 * (not incrementally). This Searcher stays open and may still be used (e.g.
+	 * by searches that are running); close it when it's no longer needed.
+	 *
+	 * Only possible in search mode. Don't keep a Searcher open on an index
+	 * while adding documents to it: the forward index may be changed in place.
+	 *
+	 * @return the new Searcher, or null if the index hasn't changed
+	 * @throws IOException
+	 */
+	public abstract Searcher reopenIfChanged() throws IOException;
+
+	/**
+	 * Get the generation of this Searcher.
+	 *
+	 * Each Searcher returned by reopenIfChanged() has a generation one higher
+	 * than the Searcher it was reopened from. This can be used to check if
+	 * results that were cached are still up to date.
+	 *
+	 * @return the generation
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
 	/**
 	 * Finalize the Searcher object. This closes the IndexSearcher and (depending on the constructor
 	 * used) may also close the index reader.
@@ -583,6 +657,11 @@ public abstract class Searcher {
 			fi.close();
 		}
 
+		// Close the structure indices
+		for (StructureIndex si: structureIndices.values()) {
+			si.close();
+		}
+
 	}
 
 	/**
@@ -724,6 +803,25 @@ public abstract class Searcher {
 		return Hits.fromSpanQuery(this, query);
 	}
 
+	/**
+	 * Find hits for a pattern in a field, recording where the time goes.
+	 *
+	 * The profile is also available from the resulting Hits object and from
+	 * Hits objects derived from it (e.g. sorted hits), so the time spent
+	 * sorting, grouping, etc. is recorded as well.
+	 *
+	 * @param query
+	 *            the pattern to find
+	 * @param profile
+	 *            where to record the profile
+	 * @return the hits found
+	 * @throws BooleanQuery.TooManyClauses
+	 *             if a wildcard or regular expression term is overly broad
+	 */
+	public Hits find(BLSpanQuery query, QueryProfile profile) throws BooleanQuery.TooManyClauses {
+		return Hits.fromSpanQuery(this, query, profile);
+	}
+
 	/**
 	 * Find hits for a pattern in a field.
 	 *
@@ -1076,6 +1174,33 @@ public abstract class Searcher {
 	 * @return the highlighted content
 	 */
 	public String highlightContent(int docId, String fieldName, Hits hits, int startAtWord, int endAtWord) {
+		StringBuilder b = new StringBuilder();
+		try {
+			highlightContent(docId, fieldName, hits, startAtWord, endAtWord, b);
+		} catch (IOException e) {
+			throw new RuntimeException(e); // can't happen with a StringBuilder
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Highlight part of field content with the specified hits,
+	 * and make sure it's well-formed, writing the result to an Appendable.
+	 *
+	 * Uses &lt;hl&gt;&lt;/hl&gt; tags to highlight the content.
+	 *
+	 * @param docId
+	 *            document to highlight a field from
+	 * @param fieldName
+	 *            field to highlight
+	 * @param hits
+	 *            the hits
+	 * @param startAtWord where to start highlighting (first word returned)
+	 * @param endAtWord where to end highlighting (first word not returned)
+	 * @param out where to write the highlighted content
+	 * @throws IOException on write error
+	 */
+	public void highlightContent(int docId, String fieldName, Hits hits, int startAtWord, int endAtWord, Appendable out) throws IOException {
 		// Get the field content
 		int endAtWordForCharPos = endAtWord < 0 ? endAtWord : endAtWord - 1; // if whole content, don't subtract one
 		int[] startEndCharPos = startEndWordToCharPos(docId, fieldName, startAtWord, endAtWordForCharPos);
@@ -1086,18 +1211,17 @@ public abstract class Searcher {
 		if (hits == null && startAtWord == -1 && endAtWord == -1) {
 			// No hits to highlight, and we've fetched the whole document, so it is
 			// well-formed already. Just return as-is.
-			return content;
+			out.append(content);
+			return;
 		}
 
 		// Find the character offsets for the hits and highlight
 		List<HitCharSpan> hitspans = null;
 		if (hits != null) // if hits == null, we still want the highlighter to make it well-formed
 			hitspans = getCharacterOffsets(docId, fieldName, hits);
-		XmlHighlighter hl = new XmlHighlighter();
-		hl.setUnbalancedTagsStrategy(getDefaultUnbalancedTagsStrategy());
 		if (startAtChar == -1)
 			startAtChar = 0;
-		return hl.highlight(content, hitspans, startAtChar);
+		getHighlighter().highlight(content, hitspans, startAtChar, out);
 	}
 
 
@@ -1196,6 +1320,16 @@ public abstract class Searcher {
 
 	protected abstract ForwardIndex openForwardIndex(String fieldPropName);
 
+	/**
+	 * Get the structure index for the specified complex field.
+	 *
+	 * @param fieldName the complex field
+	 * @return the structure index, or null if this field doesn't have one
+	 */
+	public StructureIndex getStructureIndex(String fieldName) {
+		return structureIndices.get(fieldName);
+	}
+
 	/**
 	 * Get a number of substrings from a certain field in a certain document.
 	 *
@@ -1529,10 +1663,56 @@ public abstract class Searcher {
 		}
 	}
 
+	protected void deleteFromStructureIndices(Document d) {
+		// Delete this document in all structure indices
+		for (Map.Entry<String, StructureIndex> e: structureIndices.entrySet()) {
+			String siid = d.get(ComplexFieldUtil.structureIndexIdField(e.getKey()));
+			if (siid != null)
+				e.getValue().deleteDocument(Integer.parseInt(siid));
+		}
+	}
+
 	public Map<String, ForwardIndex> getForwardIndices() {
 		return forwardIndices;
 	}
 
+	/**
+	 * Rewrite all forward indices without gaps and without unused terms.
+	 *
+	 * See ForwardIndex.compact(). Only available in index mode. Searchers
+	 * that have the index open in search mode keep using the old files;
+	 * they will see the compacted forward indices after they're reopened.
+	 *
+	 * @param luceneDocOrder if true, store documents in Lucene document order,
+	 *   so sequential access in Lucene document order (e.g. KWICs for hits sorted
+	 *   by document) reads the forward index sequentially as well; if false,
+	 *   store them in forward index id order
+	 */
+	public void compactForwardIndices(boolean luceneDocOrder) {
+		if (!indexMode)
+			throw new RuntimeException("Cannot compact forward indices, not in index mode");
+		IndexReader reader = getIndexReader();
+		Bits liveDocs = MultiFields.getLiveDocs(reader);
+		for (Map.Entry<String, ForwardIndex> e: forwardIndices.entrySet()) {
+			ForwardIndex fi = e.getValue();
+			int[] order = null;
+			if (luceneDocOrder) {
+				IntArrayList fiids = new IntArrayList(reader.maxDoc());
+				for (int docId = 0; docId < reader.maxDoc(); docId++) {
+					if (liveDocs == null || liveDocs.get(docId)) {
+						int fiid = fi.luceneDocIdToFiid(docId);
+						if (fiid >= 0)
+							fiids.add(fiid);
+					}
+				}
+				order = fiids.toArray();
+			}
+			logger.debug("Compacting forward index " + e.getKey() + " (" + fi.getFreeBlocks()
+					+ " free blocks, " + fi.getFreeSpace() + " free tokens)");
+			fi.compact(order);
+		}
+	}
+
 	public boolean canDoNfaMatching() {
 		if (forwardIndices.size() == 0)
 			return false;
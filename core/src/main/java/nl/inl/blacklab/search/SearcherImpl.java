@@ -61,6 +61,7 @@ import nl.inl.blacklab.search.indexstructure.ComplexFieldDesc;
 import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.blacklab.search.indexstructure.MetadataFieldDesc;
 import nl.inl.blacklab.search.indexstructure.PropertyDesc;
+import nl.inl.blacklab.structureindex.StructureIndex;
 import nl.inl.util.ExUtil;
 import nl.inl.util.LuceneUtil;
 import nl.inl.util.VersionFile;
@@ -180,41 +181,7 @@ public class SearcherImpl extends Searcher implements Closeable {
 
 		// Detect and open the ContentStore for the contents field
 		if (!createNewIndex) {
-			if (traceIndexOpening) logger.debug("  Determining main contents field name...");
-			ComplexFieldDesc mainContentsField = indexStructure.getMainContentsField();
-			if (mainContentsField == null) {
-				if (!indexMode) {
-					if (!isEmptyIndex)
-						throw new RuntimeException("Could not detect main contents field");
-
-					// Empty index. Set a default name for the contents field.
-					// Searching an empty index will fail and should not be attempted.
-					this.mainContentsFieldName = Searcher.DEFAULT_CONTENTS_FIELD_NAME;
-				}
-			} else {
-				this.mainContentsFieldName = mainContentsField.getName();
-
-				// See if we have a punctuation forward index. If we do,
-				// default to creating concordances using that.
-				if (mainContentsField.hasPunctuation()) {
-					hitsSettings.setConcordanceType(ConcordanceType.FORWARD_INDEX);
-				}
-			}
-
-			// Register content stores
-			if (traceIndexOpening) logger.debug("  Opening content stores...");
-			for (String cfn: indexStructure.getComplexFields()) {
-				if (indexStructure.getComplexFieldDesc(cfn).hasContentStore()) {
-					File dir = new File(indexDir, "cs_" + cfn);
-					if (!dir.exists()) {
-						dir = new File(indexDir, "xml"); // OLD, should eventually be removed
-					}
-					if (dir.exists()) {
-						if (traceIndexOpening) logger.debug("    " + dir + "...");
-						registerContentStore(cfn, openContentStore(dir, false));
-					}
-				}
-			}
+			openContentStores();
 		}
 
 		if (traceIndexOpening) logger.debug("  Opening IndexSearcher...");
@@ -229,6 +196,101 @@ public class SearcherImpl extends Searcher implements Closeable {
 			if (traceIndexOpening) logger.debug("  Opening forward indices...");
 			openForwardIndices();
 		}
+
+		if (traceIndexOpening) logger.debug("  Opening structure indices...");
+		openStructureIndices();
+	}
+
+	/**
+	 * Refresh a Searcher that was opened in search mode, after documents have
+	 * been added to or deleted from the index.
+	 *
+	 * Lucene segments that didn't change are shared with the previous Searcher;
+	 * the index structure, content stores and forward indices are reread. The
+	 * previous Searcher stays open and usable; the settings are copied from it.
+	 *
+	 * @param previous the Searcher to refresh
+	 * @param newReader the refreshed reader (see DirectoryReader.openIfChanged())
+	 * @throws IOException
+	 */
+	private SearcherImpl(SearcherImpl previous, DirectoryReader newReader) throws IOException {
+		if (traceIndexOpening) logger.debug("Refreshing Searcher...");
+		this.indexMode = false;
+		this.indexLocation = previous.indexLocation;
+		this.generation = previous.generation + 1;
+		reader = newReader;
+
+		if (traceIndexOpening) logger.debug("  Determining index structure...");
+		indexStructure = new IndexStructure(reader, indexLocation, false, null);
+		isEmptyIndex = indexStructure.isNewIndex();
+		if (traceIndexOpening) logger.debug("  Creating analyzers...");
+		createAnalyzers();
+		searcherFromIndexReader.put(reader, this);
+
+		// Keep the settings the application made on the previous Searcher
+		hitsSettings = new HitsSettings(previous.hitsSettings, false);
+		filterCache = previous.filterCache;
+		setCollator(previous.getCollator());
+		setDefaultSearchSensitive(previous.defaultCaseSensitive, previous.defaultDiacriticsSensitive);
+		setDefaultUnbalancedTagsStrategy(previous.getDefaultUnbalancedTagsStrategy());
+
+		openContentStores();
+		indexSearcher = new IndexSearcher(reader);
+		if (traceIndexOpening) logger.debug("  Opening forward indices...");
+		openForwardIndices();
+		if (traceIndexOpening) logger.debug("  Opening structure indices...");
+		openStructureIndices();
+	}
+
+	/**
+	 * Determine the main contents field and open the content stores.
+	 */
+	private void openContentStores() {
+		if (traceIndexOpening) logger.debug("  Determining main contents field name...");
+		ComplexFieldDesc mainContentsField = indexStructure.getMainContentsField();
+		if (mainContentsField == null) {
+			if (!indexMode) {
+				if (!isEmptyIndex)
+					throw new RuntimeException("Could not detect main contents field");
+
+				// Empty index. Set a default name for the contents field.
+				// Searching an empty index will fail and should not be attempted.
+				this.mainContentsFieldName = Searcher.DEFAULT_CONTENTS_FIELD_NAME;
+			}
+		} else {
+			this.mainContentsFieldName = mainContentsField.getName();
+
+			// See if we have a punctuation forward index. If we do,
+			// default to creating concordances using that.
+			if (mainContentsField.hasPunctuation()) {
+				hitsSettings.setConcordanceType(ConcordanceType.FORWARD_INDEX);
+			}
+		}
+
+		// Register content stores
+		if (traceIndexOpening) logger.debug("  Opening content stores...");
+		for (String cfn: indexStructure.getComplexFields()) {
+			if (indexStructure.getComplexFieldDesc(cfn).hasContentStore()) {
+				File dir = new File(indexLocation, "cs_" + cfn);
+				if (!dir.exists()) {
+					dir = new File(indexLocation, "xml"); // OLD, should eventually be removed
+				}
+				if (dir.exists()) {
+					if (traceIndexOpening) logger.debug("    " + dir + "...");
+					registerContentStore(cfn, openContentStore(dir, false));
+				}
+			}
+		}
+	}
+
+	@Override
+	public Searcher reopenIfChanged() throws IOException {
+		if (indexMode)
+			throw new UnsupportedOperationException("Cannot reopen, in index mode");
+		DirectoryReader newReader = DirectoryReader.openIfChanged((DirectoryReader)reader);
+		if (newReader == null)
+			return null;
+		return new SearcherImpl(this, newReader);
 	}
 
 	@Override
@@ -270,6 +332,7 @@ public class SearcherImpl extends Searcher implements Closeable {
 	@Override
 	public void close() {
 		try {
+			searcherFromIndexReader.remove(reader);
 			reader.close();
 			if (indexWriter != null) {
 				indexWriter.commit();
@@ -460,6 +523,27 @@ public class SearcherImpl extends Searcher implements Closeable {
 		}
 	}
 
+	/**
+	 * Opens the structure indices of the complex fields that have one.
+	 *
+	 * In index mode, a structure index is created for a new index if the
+	 * index metadata asks for it. We never add one to an existing index,
+	 * because the documents already in it wouldn't be in the structure index.
+	 */
+	private void openStructureIndices() {
+		for (String field: indexStructure.getComplexFields()) {
+			File dir = new File(indexLocation, "si_" + field);
+			boolean create = false;
+			if (!StructureIndex.exists(dir)) {
+				if (!indexMode || !isEmptyIndex || !indexStructure.getComplexFieldDesc(field).hasStructureIndex())
+					continue;
+				create = true;
+			}
+			if (traceIndexOpening) logger.debug("    " + dir + "...");
+			structureIndices.put(field, new StructureIndex(dir, indexMode, create));
+		}
+	}
+
 	@Override
 	protected ForwardIndex openForwardIndex(String fieldPropName) {
 		ForwardIndex forwardIndex;
@@ -572,6 +656,7 @@ public class SearcherImpl extends Searcher implements Closeable {
 						Document d = freshReader.document(docId);
 
 						deleteFromForwardIndices(d);
+						deleteFromStructureIndices(d);
 
 						// Delete this document in all content stores
 						contentStores.deleteDocument(d);
@@ -5,7 +5,6 @@ import java.util.Set;
 
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.IndexSearcher;
@@ -51,6 +50,10 @@ public class SingleDocIdFilter extends Query {
 
 			@Override
 			public Scorer scorer(final LeafReaderContext ctx) throws IOException {
+				if (luceneDocId < ctx.docBase || luceneDocId >= ctx.docBase + ctx.reader().maxDoc()) {
+					// Our document is not in this segment; no need to look at it at all
+					return null;
+				}
 				return new Scorer(this) {
 					@Override
 					public int docID() {
@@ -69,16 +72,8 @@ public class SingleDocIdFilter extends Query {
 
 					@Override
 					public DocIdSetIterator iterator() {
-						// Check that id could be in this segment, and bits allows this doc id
-						if (luceneDocId >= ctx.docBase) {
-							// ctx is a single segment, so use docBase to adjust the id
-							return new SingleDocIdSet(luceneDocId - ctx.docBase).iterator();
-						}
-						try {
-							return DocIdSet.EMPTY.iterator();
-						} catch (IOException e) {
-							throw new RuntimeException(e);
-						}
+						// ctx is a single segment, so use docBase to adjust the id
+						return new SingleDocIdSet(luceneDocId - ctx.docBase).iterator();
 					}
 				};
 			}
@@ -90,4 +85,16 @@ public class SingleDocIdFilter extends Query {
 		return "SingleDocIdFilter(" + luceneDocId + ")";
 	}
 
+	@Override
+	public boolean equals(Object obj) {
+		if (!super.equals(obj))
+			return false;
+		return luceneDocId == ((SingleDocIdFilter) obj).luceneDocId;
+	}
+
+	@Override
+	public int hashCode() {
+		return super.hashCode() * 31 + luceneDocId;
+	}
+
 }
@@ -34,30 +34,23 @@ public class SingleDocIdSet extends DocIdSet {
 	@Override
 	public DocIdSetIterator iterator() {
 		return new DocIdSetIterator() {
-			private boolean nexted = false;
-
-			private boolean done = false;
+			private int doc = -1;
 
 			@Override
 			public int nextDoc() {
-				if (done)
-					return NO_MORE_DOCS;
-				nexted = true;
-				return id;
+				doc = doc == -1 ? id : NO_MORE_DOCS;
+				return doc;
 			}
 
 			@Override
 			public int docID() {
-				if (!nexted || done)
-					return NO_MORE_DOCS;
-				return id;
+				return doc;
 			}
 
 			@Override
 			public int advance(int target) {
-				if (done || target > id)
-					return NO_MORE_DOCS;
-				return id;
+				doc = doc == -1 && target <= id ? id : NO_MORE_DOCS;
+				return doc;
 			}
 
 			@Override
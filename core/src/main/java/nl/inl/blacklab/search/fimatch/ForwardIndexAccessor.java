@@ -27,6 +27,17 @@ public abstract class ForwardIndexAccessor {
 	 */
 	public abstract int getPropertyNumber(String propertyName);
 
+	/**
+	 * Do all the properties we looked up (see getPropertyNumber()) have a forward index?
+	 *
+	 * If not, we can't match using this accessor.
+	 *
+	 * @return true if they do, false if not
+	 */
+	public boolean hasForwardIndices() {
+		return true;
+	}
+
 	/**
 	 * Get the term number for a given term string.
 	 *
@@ -38,6 +38,9 @@ class ForwardIndexAccessorImpl extends ForwardIndexAccessor {
 	/** The terms object for each property */
 	private List<Terms> terms = new ArrayList<>();
 
+	/** Did we look up a property that has no forward index? */
+	private boolean missingForwardIndex = false;
+
 	ForwardIndexAccessorImpl(Searcher searcher, String searchField) {
 		this.searcher = searcher;
 		this.complexFieldBaseName = searchField;
@@ -58,15 +61,25 @@ class ForwardIndexAccessorImpl extends ForwardIndexAccessor {
 			propertyNumbers.put(propertyName, n);
 			propertyNames.add(propertyName);
 			ForwardIndex fi = searcher.getForwardIndex(ComplexFieldUtil.propertyField(complexFieldBaseName, propertyName));
+			if (fi == null)
+				missingForwardIndex = true;
 			fis.add(fi);
-			terms.add(fi.getTerms());
+			terms.add(fi == null ? null : fi.getTerms());
 		}
 		return n;
 	}
 
+	@Override
+	public boolean hasForwardIndices() {
+		return !missingForwardIndex;
+	}
+
 	@Override
 	public void getTermNumbers(MutableIntSet results, int propertyNumber, String propertyValue, boolean caseSensitive, boolean diacSensitive) {
-		terms.get(propertyNumber).indexOf(results, propertyValue, caseSensitive, diacSensitive);
+		Terms t = terms.get(propertyNumber);
+		if (t == null)
+			return; // no forward index for this property; see hasForwardIndices()
+		t.indexOf(results, propertyValue, caseSensitive, diacSensitive);
 	}
 
 	public int getTermAtPosition(int fiid, int propertyNumber, int pos) {
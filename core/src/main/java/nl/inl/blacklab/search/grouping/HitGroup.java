@@ -50,6 +50,17 @@ public class HitGroup extends Group {
 		results.settings().setConcordanceField(defaultConcField);
 	}
 
+	/**
+	 * Wraps a Hits object with the HitGroup interface.
+	 *
+	 * @param groupIdentity grouping identity of this group of hits
+	 * @param hits the hits
+	 */
+	HitGroup(HitPropValue groupIdentity, Hits hits) {
+		super(groupIdentity);
+		results = hits;
+	}
+
 	public Hits getHits() {
 		return results;
 	}
@@ -0,0 +1,104 @@
+package nl.inl.blacklab.search.grouping;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.HitsSerializeUtil;
+
+/**
+ * Takes care of writing HitGroups objects to, and reading them from, a compact
+ * binary representation in a (possibly memory-mapped) ByteBuffer.
+ *
+ * The group criteria and group identities are stored in their serialized
+ * string form (see HitProperty.serialize() and HitPropValue.serialize()); the
+ * hits in each group are stored using HitsSerializeUtil.
+ */
+public class HitGroupsSerializeUtil {
+
+	/** Version of the binary format; increase when changing it */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int SIZEOF_INT = Integer.SIZE / Byte.SIZE;
+
+	private HitGroupsSerializeUtil() {
+	}
+
+	/**
+	 * Can we serialize these groups?
+	 *
+	 * @param groups the groups to check
+	 * @return true if we can serialize them, false if not
+	 */
+	public static boolean canSerialize(HitGroups groups) {
+		for (HitGroup group: groups) {
+			if (!HitsSerializeUtil.canSerialize(group.getHits()))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Calculate how many bytes the serialized version of the groups will take.
+	 *
+	 * @param groups the groups to serialize
+	 * @return number of bytes needed
+	 */
+	public static long sizeBytes(HitGroups groups) {
+		long size = SIZEOF_INT * 2 + HitsSerializeUtil.sizeBytes(groups.getGroupCriteria().serialize());
+		for (HitGroup group: groups) {
+			size += HitsSerializeUtil.sizeBytes(group.getIdentity().serialize());
+			size += HitsSerializeUtil.sizeBytes(group.getHits());
+		}
+		return size;
+	}
+
+	/**
+	 * Write the groups to a buffer, in their current order.
+	 *
+	 * The buffer must have at least sizeBytes(groups) bytes remaining.
+	 *
+	 * @param groups the groups to serialize
+	 * @param buf where to write them
+	 */
+	public static void write(HitGroups groups, ByteBuffer buf) {
+		buf.putInt(FORMAT_VERSION);
+		HitsSerializeUtil.putString(buf, groups.getGroupCriteria().serialize());
+		buf.putInt(groups.numberOfGroups());
+		for (HitGroup group: groups) {
+			HitsSerializeUtil.putString(buf, group.getIdentity().serialize());
+			HitsSerializeUtil.write(group.getHits(), buf);
+		}
+	}
+
+	/**
+	 * Read groups from a buffer.
+	 *
+	 * @param hits the hits that were grouped (used to deserialize the group criteria and identities)
+	 * @param buf the buffer to read from, positioned at the start of the serialized groups
+	 * @return the groups read, or null if the criteria or a group identity could not be deserialized,
+	 *   or the groups were written in a different format version
+	 */
+	public static HitGroups read(Hits hits, ByteBuffer buf) {
+		int version = buf.getInt();
+		if (version != FORMAT_VERSION)
+			return null; // written by another version; caller should discard it
+		HitProperty criteria = HitProperty.deserialize(hits, HitsSerializeUtil.getString(buf));
+		if (criteria == null)
+			return null;
+		int n = buf.getInt();
+		List<HitGroup> groupsInOrder = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			HitPropValue identity = HitPropValue.deserialize(hits, HitsSerializeUtil.getString(buf));
+			if (identity == null)
+				return null;
+			Hits groupHits = HitsSerializeUtil.read(hits.getSearcher(), buf);
+			if (groupHits == null)
+				return null;
+			groupsInOrder.add(new HitGroup(identity, groupHits));
+		}
+		return new ResultsGrouper(hits.getSearcher(), criteria, groupsInOrder);
+	}
+
+}
@@ -24,6 +24,7 @@ import java.util.Map;
 
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.Searcher;
 
 /**
  * Groups results on the basis of a list of criteria, and provide random access to the resulting
@@ -80,6 +81,30 @@ public class ResultsGrouper extends HitGroups {
 		init(hits, criteria);
 	}
 
+	/**
+	 * Construct a ResultsGrouper object from groups that were created earlier.
+	 *
+	 * Used when restoring serialized groups (see HitGroupsSerializeUtil).
+	 *
+	 * @param searcher
+	 *            the searcher object
+	 * @param criteria
+	 *            the criteria the hits were grouped on
+	 * @param groupsInOrder
+	 *            the groups, in sorted order
+	 */
+	ResultsGrouper(Searcher searcher, HitProperty criteria, List<HitGroup> groupsInOrder) {
+		super(searcher, criteria);
+		for (HitGroup group: groupsInOrder) {
+			groups.put(group.getIdentity(), group);
+			groupsOrdered.add(group);
+			int size = group.size();
+			if (size > largestGroupSize)
+				largestGroupSize = size;
+			totalHits += size;
+		}
+	}
+
 	/**
 	 * Don't use this; use Hits.groupedBy().
 	 * @param hits hits to group
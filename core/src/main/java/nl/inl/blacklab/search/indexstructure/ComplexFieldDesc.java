@@ -37,6 +37,12 @@ public class ComplexFieldDesc extends BaseFieldDesc {
 	/** Are there XML tag locations stored for this field? */
 	private boolean xmlTags;
 
+	/** Does the field have a structure index (tag intervals per document)? */
+	private boolean structureIndex;
+
+	/** Do the start tag payloads store the element length instead of the end position? */
+	private boolean tagLengthPayloads;
+
 	/** These properties should not get a forward index. */
 	private Set<String> noForwardIndexProps = Collections.emptySet();
 
@@ -46,6 +52,8 @@ public class ComplexFieldDesc extends BaseFieldDesc {
 		contentStore = false;
 		lengthInTokens = false;
 		xmlTags = false;
+		structureIndex = false;
+		tagLengthPayloads = false;
 		mainProperty = null;
 	}
 
@@ -94,6 +102,33 @@ public class ComplexFieldDesc extends BaseFieldDesc {
 		return xmlTags;
 	}
 
+	/**
+	 * Checks if this field has a structure index, storing the positions of
+	 * the XML tags in each document as intervals.
+	 * @return true iff there's a structure index.
+	 */
+	public boolean hasStructureIndex() {
+		return structureIndex;
+	}
+
+	public void setStructureIndex(boolean structureIndex) {
+		this.structureIndex = structureIndex;
+	}
+
+	/**
+	 * Checks how the end positions of XML tags are stored in the start tag
+	 * payloads: as a variable-length element length (newer indices, if
+	 * configured) or as a fixed-width end position (the default).
+	 * @return true iff the payloads store the element length.
+	 */
+	public boolean hasTagLengthPayloads() {
+		return tagLengthPayloads;
+	}
+
+	public void setTagLengthPayloads(boolean tagLengthPayloads) {
+		this.tagLengthPayloads = tagLengthPayloads;
+	}
+
 	/**
 	 * Checks if this field has a "punctuation" forward index, storing all the
 	 * intra-word characters (whitespace and punctuation) so we can build concordances
@@ -136,6 +171,10 @@ public class ComplexFieldDesc extends BaseFieldDesc {
 				// Complex field has length in tokens
 				lengthInTokens = true;
 				return;
+			case STRUCTURE_INDEX_ID:
+				// Complex field has structure index
+				structureIndex = true;
+				return;
 			}
 			throw new RuntimeException();
 		}
@@ -226,6 +265,9 @@ public class ComplexFieldDesc extends BaseFieldDesc {
 		out.println("  * " + (contentStore ? "Includes" : "No") + " content store");
 		out.println("  * " + (xmlTags ? "Includes" : "No") + " XML tag index");
 		out.println("  * " + (lengthInTokens ? "Includes" : "No") + " document length field");
+		out.println("  * " + (structureIndex ? "Includes" : "No") + " structure index");
+		if (xmlTags)
+			out.println("  * XML tag payloads store " + (tagLengthPayloads ? "element length" : "end position"));
 	}
 
 	public void setMainPropertyName(String mainPropertyName) {
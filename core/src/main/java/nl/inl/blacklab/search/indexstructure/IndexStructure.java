@@ -341,12 +341,17 @@ public class IndexStructure {
 			}
 			*/
 
-			jsonComplexFields.put(f.getName(), Json.object(
+			JSONObject jsonComplexField = Json.object(
 				"displayName", f.getDisplayName(),
 				"description", f.getDescription(),
 				"mainProperty", f.getMainProperty().getName()
 				//, "properties", jsonProperties
-			));
+			);
+			if (f.hasStructureIndex())
+				jsonComplexField.put("structureIndex", true);
+			if (f.hasTagLengthPayloads())
+				jsonComplexField.put("tagLengthPayloads", true);
+			jsonComplexFields.put(f.getName(), jsonComplexField);
 		}
 
 		// Write the file
@@ -411,6 +416,8 @@ public class IndexStructure {
 				String[] noForwardIndexProps = noForwardIndex.split("\\s+");
 				fieldDesc.setNoForwardIndexProps(new HashSet<>(Arrays.asList(noForwardIndexProps)));
 			}
+			fieldDesc.setStructureIndex(Json.getBoolean(fieldConfig, "structureIndex", false));
+			fieldDesc.setTagLengthPayloads(Json.getBoolean(fieldConfig, "tagLengthPayloads", false));
 			complexFields.put(fieldName, fieldDesc);
 		}
 	}
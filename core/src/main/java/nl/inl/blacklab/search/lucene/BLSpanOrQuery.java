@@ -370,7 +370,7 @@ public final class BLSpanOrQuery extends BLSpanQuery {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 
 			final ArrayList<Spans> subSpans = new ArrayList<>(inner.getClauses().length);
 
@@ -109,7 +109,7 @@ public class BLSpanTermQuery extends BLSpanQuery {
 			}
 
 			@Override
-			public BLSpans getSpans(LeafReaderContext ctx, Postings requiredPostings) throws IOException {
+			protected BLSpans createSpans(LeafReaderContext ctx, Postings requiredPostings) throws IOException {
 				Spans spans = weight.getSpans(ctx, requiredPostings);
 				return spans == null ? null : new BLSpansWrapper(spans);
 			}
@@ -9,9 +9,14 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanWeight;
 
+import nl.inl.blacklab.search.QueryProfile;
+
 /**
  * Base class for our SpanWeight classes.
  * Ensures that getSpans returns a BLSpans.
+ *
+ * If we're profiling the query (see QueryProfile.current()), the spans
+ * are wrapped so calls, hits and time are recorded for each node in the tree.
  */
 abstract class BLSpanWeight extends SpanWeight {
 
@@ -20,6 +25,27 @@ abstract class BLSpanWeight extends SpanWeight {
 	}
 
 	@Override
-	public abstract BLSpans getSpans(LeafReaderContext ctx, Postings requiredPostings) throws IOException;
+	public final BLSpans getSpans(LeafReaderContext ctx, Postings requiredPostings) throws IOException {
+		QueryProfile profile = QueryProfile.current();
+		if (profile == null)
+			return createSpans(ctx, requiredPostings);
+		QueryProfile.Node node = profile.startNode(this, getQuery().getClass().getSimpleName(), getQuery().toString());
+		try {
+			BLSpans spans = createSpans(ctx, requiredPostings);
+			return spans == null ? null : new SpansProfiled(spans, node);
+		} finally {
+			profile.endNode(node);
+		}
+	}
+
+	/**
+	 * Create the spans for a segment (see getSpans()).
+	 *
+	 * @param ctx the segment
+	 * @param requiredPostings postings data we need
+	 * @return the spans, or null if there are no matches in this segment
+	 * @throws IOException on error
+	 */
+	protected abstract BLSpans createSpans(LeafReaderContext ctx, Postings requiredPostings) throws IOException;
 
 }
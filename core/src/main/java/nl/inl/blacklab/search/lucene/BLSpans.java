@@ -141,7 +141,7 @@ public abstract class BLSpans extends Spans {
 			return null;
 		BLSpans result = spans;
 		if (sort || removeDuplicates)
-			return new PerDocumentSortedSpans(result, PerDocumentSortedSpans.cmpStartPoint, removeDuplicates);
+			return new PerDocumentSortedSpans(result, false, removeDuplicates);
 		if (removeDuplicates)
 			return new SpansUnique(result);
 		return result;
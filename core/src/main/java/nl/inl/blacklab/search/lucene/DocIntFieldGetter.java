@@ -56,6 +56,25 @@ public class DocIntFieldGetter implements Closeable {
 		}
 	}
 
+	/**
+	 * Does every document in a segment have a value for the specified field?
+	 *
+	 * If not, getFieldValue() returns 0 for documents without a value, which
+	 * may be a valid value, so callers should check this first.
+	 *
+	 * Uses the field's index statistics, so we don't have to check each document.
+	 * If the codec doesn't keep these, we return false.
+	 *
+	 * @param reader the segment
+	 * @param fieldName the (indexed) int field
+	 * @return true iff all documents have a value
+	 * @throws IOException
+	 */
+	public static boolean allDocsHaveValue(LeafReader reader, String fieldName) throws IOException {
+		// Like maxDoc(), getDocCount() includes deleted documents
+		return reader.getDocCount(fieldName) == reader.maxDoc();
+	}
+
 	/**
 	 * Get the value of our field in the specified document.
 	 *
@@ -16,21 +16,16 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.Comparator;
 
 import org.apache.lucene.search.spans.SpanCollector;
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Span;
 
 /**
- * Sort the given Spans per document, according to the given comparator.
+ * Sort the given Spans per document, by start point or end point.
  */
 class PerDocumentSortedSpans extends BLSpans {
 
-	final static Comparator<Hit> cmpStartPoint = new SpanComparatorStartPoint();
-
-	final static Comparator<Hit> cmpEndPoint = new SpanComparatorEndPoint();
-
 	protected BLSpans source;
 
 	private int curDoc = -1, curStart = -1, curEnd = -1;
@@ -43,11 +38,19 @@ class PerDocumentSortedSpans extends BLSpans {
 
 	private int indexInBucket = -2; // -2 == no bucket yet; -1 == just started a bucket
 
-	public PerDocumentSortedSpans(BLSpans src, Comparator<Hit> comparator, boolean eliminateDuplicates) {
+	/**
+	 * Sort the spans per document.
+	 *
+	 * @param src the spans to sort
+	 * @param sortByEndPoint if true, sort by end point, then start point;
+	 *   otherwise sort by start point, then end point
+	 * @param eliminateDuplicates if true, skip duplicate spans
+	 */
+	public PerDocumentSortedSpans(BLSpans src, boolean sortByEndPoint, boolean eliminateDuplicates) {
 		this.source = src;
 
 		// Wrap a HitsPerDocument and show it to the client as a normal, sequential Spans.
-		bucketedSpans = new SpansInBucketsPerDocumentSorted(src, comparator);
+		bucketedSpans = new SpansInBucketsPerDocumentSorted(src, sortByEndPoint);
 
 		this.eliminateDuplicates = eliminateDuplicates;
 	}
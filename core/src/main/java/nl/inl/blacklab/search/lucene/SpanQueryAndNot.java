@@ -248,7 +248,7 @@ public class SpanQueryAndNot extends BLSpanQuery {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans combi = weights.get(0).getSpans(context, requiredPostings);
 			if (combi == null)
 				return null; // if no hits in one of the clauses, no hits in AND query
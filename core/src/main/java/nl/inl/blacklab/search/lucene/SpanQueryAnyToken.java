@@ -95,7 +95,7 @@ public class SpanQueryAnyToken extends BLSpanQuery {
 			}
 
 			@Override
-			public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+			protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 				return new SpansNGrams(alwaysHasClosingToken, context.reader(), luceneField, realMin, max);
 			}
 		};
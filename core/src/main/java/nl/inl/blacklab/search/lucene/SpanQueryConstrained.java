@@ -74,7 +74,7 @@ public class SpanQueryConstrained extends BLSpanQueryAbstract {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans spansProd = prodWeight.getSpans(context, requiredPostings);
 			if (spansProd == null)
 				return null;
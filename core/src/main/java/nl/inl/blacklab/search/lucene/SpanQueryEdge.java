@@ -78,7 +78,7 @@ public class SpanQueryEdge extends BLSpanQueryAbstract {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans spans = weight.getSpans(context, requiredPostings);
 			if (spans == null)
 				return null;
@@ -109,7 +109,7 @@ public class SpanQueryFiSeq extends BLSpanQueryAbstract {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans anchorSpans = anchorWeight.getSpans(context, requiredPostings);
 			if (anchorSpans == null)
 				return null;
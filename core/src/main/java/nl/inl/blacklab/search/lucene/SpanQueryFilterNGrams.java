@@ -115,7 +115,7 @@ public class SpanQueryFilterNGrams extends BLSpanQueryAbstract {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans spansSource = weight.getSpans(context, requiredPostings);
 			if (spansSource == null)
 				return null;
@@ -16,28 +16,80 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 
+import nl.inl.blacklab.search.FilterCache;
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
+import nl.inl.blacklab.search.fimatch.Nfa;
+import nl.inl.blacklab.search.fimatch.NfaState;
+
 /**
  * Filters a SpanQuery.
+ *
+ * If the filter leaves only a few documents in a segment, we may match
+ * the clause using an NFA over the forward index of those documents
+ * instead of using the reverse index (see setForwardIndexScanThreshold()).
  */
 @SuppressWarnings("deprecation")
 public class SpanQueryFiltered extends BLSpanQueryAbstract {
 
+	/**
+	 * The default value of forwardIndexScanThreshold.
+	 */
+	public static final long DEFAULT_FORWARD_INDEX_SCAN_THRESHOLD = 1000;
+
+	/**
+	 * The minimum value of forwardIndexScanThreshold, meaning "never scan the forward index".
+	 */
+	public static final long NO_FORWARD_INDEX_SCAN = 0;
+
+	/**
+	 * The maximum value of forwardIndexScanThreshold, meaning "scan the forward index
+	 * whenever possible, regardless of the estimated cost" (mostly useful for testing).
+	 */
+	public static final long ALWAYS_FORWARD_INDEX_SCAN = Long.MAX_VALUE;
+
+	/**
+	 * Maximum number of documents in a segment passing the filter for which we consider
+	 * matching using the forward index. We only do so if the number of tokens in these
+	 * documents (weighted by the NFA complexity) is smaller than the estimated number of
+	 * hits for the clause on the reverse index.
+	 */
+	private static long forwardIndexScanThreshold = DEFAULT_FORWARD_INDEX_SCAN_THRESHOLD;
+
+	public static void setForwardIndexScanThreshold(long forwardIndexScanThreshold) {
+		SpanQueryFiltered.forwardIndexScanThreshold = forwardIndexScanThreshold;
+	}
+
 	private Query filter;
 
+	/** Searcher our forward index NFA was built for (see getForwardIndexNfa()) */
+	private Searcher nfaSearcher;
+
+	/** Forward index accessor for our NFA, or null if we can't match using the forward index */
+	private ForwardIndexAccessor nfaAccessor;
+
+	/** Starting state of the NFA for our clause, if nfaAccessor is not null */
+	private NfaState nfaStartingState;
+
 	/**
 	 * Filter a SpanQuery.
 	 *
@@ -125,6 +177,22 @@ public class SpanQueryFiltered extends BLSpanQueryAbstract {
 	@Override
 	public BLSpanWeight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
 		BLSpanWeight weight = clauses.get(0).createWeight(searcher, needsScores);
+		Searcher blSearcher = Searcher.fromIndexReader(searcher.getIndexReader());
+		if (blSearcher != null) {
+			// Use the cached documents matching the filter, if any
+			FilterCache filterCache = blSearcher.filterCache();
+			ForwardIndexAccessor fiAccessor = null;
+			NfaState nfa = null;
+			if (canScanForwardIndex() && blSearcher.canDoNfaMatching()) {
+				synchronized (this) {
+					if (prepareForwardIndexNfa(blSearcher)) {
+						fiAccessor = nfaAccessor;
+						nfa = nfaStartingState;
+					}
+				}
+			}
+			return new SpanWeightFiltered(weight, searcher.rewrite(filter), filterCache, fiAccessor, nfa, searcher, needsScores ? getTermContexts(weight) : null);
+		}
 		Weight filterWeight = filter.createWeight(searcher, false);
 		return new SpanWeightFiltered(weight, filterWeight, searcher, needsScores ? getTermContexts(weight) : null);
 	}
@@ -133,12 +201,43 @@ public class SpanQueryFiltered extends BLSpanQueryAbstract {
 
 		final BLSpanWeight weight;
 
+		/** Weight for the filter query, or null if we use the filter cache */
 		final Weight filterWeight;
 
+		/** The rewritten filter query (if we use the filter cache) */
+		final Query rewrittenFilter;
+
+		/** The filter cache, or null if not available */
+		final FilterCache filterCache;
+
+		final IndexSearcher searcher;
+
+		/** Forward index accessor, if we may match using the forward index; null otherwise */
+		final ForwardIndexAccessor fiAccessor;
+
+		/** NFA for the clause, to match using the forward index (if fiAccessor is not null) */
+		final NfaState nfa;
+
 		public SpanWeightFiltered(BLSpanWeight weight, Weight filterWeight, IndexSearcher searcher, Map<Term, TermContext> terms) throws IOException {
 			super(SpanQueryFiltered.this, searcher, terms);
 			this.weight = weight;
 			this.filterWeight = filterWeight;
+			this.rewrittenFilter = null;
+			this.filterCache = null;
+			this.fiAccessor = null;
+			this.nfa = null;
+			this.searcher = searcher;
+		}
+
+		public SpanWeightFiltered(BLSpanWeight weight, Query rewrittenFilter, FilterCache filterCache, ForwardIndexAccessor fiAccessor, NfaState nfa, IndexSearcher searcher, Map<Term, TermContext> terms) throws IOException {
+			super(SpanQueryFiltered.this, searcher, terms);
+			this.weight = weight;
+			this.filterWeight = null;
+			this.rewrittenFilter = rewrittenFilter;
+			this.filterCache = filterCache;
+			this.fiAccessor = fiAccessor;
+			this.nfa = nfa;
+			this.searcher = searcher;
 		}
 
 		@Override
@@ -152,15 +251,90 @@ public class SpanQueryFiltered extends BLSpanQueryAbstract {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+			DocIdSetIterator filterDocs;
+			if (filterCache != null) {
+				DocIdSet docs = filterCache.getDocIdSet(rewrittenFilter, context, searcher);
+				filterDocs = docs == null ? null : docs.iterator();
+			} else {
+				Scorer scorer = filterWeight.scorer(context);
+				filterDocs = scorer == null ? null : scorer.iterator();
+			}
+			if (filterDocs == null)
+				return null; // no documents in this segment pass the filter; don't bother with the clause
+			if (fiAccessor != null && shouldScanForwardIndex(context.reader(), filterDocs.cost())) {
+				// Only a few documents; find matches in their forward index instead
+				return new SpansFiScan(filterDocs, context.reader().getLiveDocs(), nfa,
+						fiAccessor.getForwardIndexAccessorLeafReader(context.reader()));
+			}
 			BLSpans result = weight.getSpans(context, requiredPostings);
 			if (result == null)
 				return null;
-			return new SpansFiltered(result, filterWeight.scorer(context));
+			return new SpansFiltered(result, filterDocs);
+		}
+
+		/**
+		 * Should we match using the forward index in this segment?
+		 *
+		 * @param reader the segment
+		 * @param numberOfDocs (estimated) number of documents passing the filter
+		 * @return true if that's likely to be faster than using the reverse index
+		 * @throws IOException
+		 */
+		private boolean shouldScanForwardIndex(LeafReader reader, long numberOfDocs) throws IOException {
+			if (numberOfDocs > forwardIndexScanThreshold)
+				return false;
+			if (forwardIndexScanThreshold == ALWAYS_FORWARD_INDEX_SCAN)
+				return true;
+			BLSpanQuery clause = clauses.get(0);
+			String field = clause.getRealField();
+			long docCount = reader.getDocCount(field);
+			long totalTokens = reader.getSumTotalTermFreq(field);
+			if (docCount <= 0 || totalTokens < 0)
+				return false;
+			long tokensToScan = numberOfDocs * (totalTokens / docCount + 1);
+			long forwardCost = tokensToScan * Math.max(1, clause.forwardMatchingCost());
+			return forwardCost < clause.reverseMatchingCost(reader);
 		}
 
 	}
 
+	/**
+	 * Can we match our clause using the forward index and get exactly the
+	 * same hits, in the same order?
+	 *
+	 * @return true if we can, false if not
+	 */
+	private boolean canScanForwardIndex() {
+		BLSpanQuery clause = clauses.get(0);
+		return forwardIndexScanThreshold != NO_FORWARD_INDEX_SCAN && clause.canMakeNfa()
+				&& !clause.matchesEmptySequence() && clause.hitsStartPointSorted() && clause.hitsAreUnique();
+	}
+
+	/**
+	 * Build the NFA to match our clause using the forward index, if we haven't yet.
+	 *
+	 * The NFA is built once per Searcher and shared by all our weights.
+	 * Caller must synchronize on this query.
+	 *
+	 * @param blSearcher our searcher
+	 * @return true if all properties our clause searches have a forward index
+	 *   (nfaAccessor and nfaStartingState are set), false if not
+	 */
+	private boolean prepareForwardIndexNfa(Searcher blSearcher) {
+		if (nfaSearcher != blSearcher) {
+			BLSpanQuery clause = clauses.get(0);
+			ForwardIndexAccessor fiAccessor = ForwardIndexAccessor.fromSearcher(blSearcher, clause.getField());
+			Nfa clauseNfa = clause.getNfa(fiAccessor, 1);
+			clauseNfa.finish();
+			clauseNfa.lookupPropertyNumbers(fiAccessor, new IdentityHashMap<NfaState, Boolean>());
+			nfaSearcher = blSearcher;
+			nfaAccessor = fiAccessor.hasForwardIndices() ? fiAccessor : null;
+			nfaStartingState = nfaAccessor == null ? null : clauseNfa.getStartingState();
+		}
+		return nfaAccessor != null;
+	}
+
 	@Override
 	public String toString(String field) {
 		return "FILTER(" + clausesToString(field) + ", " + filter + ")";
@@ -44,7 +44,7 @@ public class SpanQueryNoHits extends BLSpanQuery {
 			}
 
 			@Override
-			public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+			protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 				return null; // no hits
 			}
 		};
@@ -151,7 +151,7 @@ public class SpanQueryNot extends BLSpanQueryAbstract {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans spans = weight == null ? null : weight.getSpans(context, requiredPostings);
 			if (!clauses.get(0).hitsStartPointSorted())
 				spans = BLSpans.optSortUniq(spans, true, false);
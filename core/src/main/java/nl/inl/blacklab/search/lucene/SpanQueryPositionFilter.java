@@ -25,6 +25,10 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.IndexSearcher;
 
+import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.structureindex.StructureIndex;
+
 /**
  * Filters hits from a producer query based on the hit positions of a filter query.
  * This allows us to do several things, such as:
@@ -35,8 +39,6 @@ import org.apache.lucene.search.IndexSearcher;
  */
 public class SpanQueryPositionFilter extends BLSpanQueryAbstract {
 
-	static SpanComparatorStartPoint cmpStartPoint = new SpanComparatorStartPoint();
-
 	/** Filter operation to apply */
 	SpanQueryPositionFilter.Operation op;
 
@@ -105,13 +107,31 @@ public class SpanQueryPositionFilter extends BLSpanQueryAbstract {
 		BLSpanWeight prodWeight = clauses.get(0).createWeight(searcher, needsScores);
 		BLSpanWeight filterWeight = clauses.get(1).createWeight(searcher, needsScores);
 		Map<Term, TermContext> contexts = needsScores ? getTermContexts(prodWeight, filterWeight) : null;
-		return new SpanWeightPositionFilter(prodWeight, filterWeight, searcher, contexts);
+		SpanWeightPositionFilter weight = new SpanWeightPositionFilter(prodWeight, filterWeight, searcher, contexts);
+
+		// If we're filtering by a tag, see if we can use the structure index instead
+		if ((op == Operation.WITHIN || op == Operation.CONTAINING) && clauses.get(1) instanceof SpanQueryTags) {
+			SpanQueryTags tags = (SpanQueryTags)clauses.get(1);
+			Searcher blSearcher = Searcher.fromIndexReader(searcher.getIndexReader());
+			StructureIndex structureIndex = blSearcher == null ? null : blSearcher.getStructureIndex(tags.getField());
+			if (structureIndex != null) {
+				weight.structureIndex = structureIndex;
+				weight.tagId = structureIndex.getTagId(tags.getElementName());
+			}
+		}
+		return weight;
 	}
 
 	class SpanWeightPositionFilter extends BLSpanWeight {
 
 		final BLSpanWeight prodWeight, filterWeight;
 
+		/** Structure index to filter with instead of the filter clause, or null if we can't */
+		StructureIndex structureIndex;
+
+		/** Tag type to filter by (if we're using the structure index) */
+		int tagId = -1;
+
 		public SpanWeightPositionFilter(BLSpanWeight prodWeight, BLSpanWeight filterWeight, IndexSearcher searcher, Map<Term, TermContext> terms) throws IOException {
 			super(SpanQueryPositionFilter.this, searcher, terms);
 			this.prodWeight = prodWeight;
@@ -131,12 +151,26 @@ public class SpanQueryPositionFilter extends BLSpanQueryAbstract {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans spansProd = prodWeight.getSpans(context, requiredPostings);
 			if (spansProd == null)
 				return null;
 			if (!clauses.get(0).hitsStartPointSorted())
-				spansProd = new PerDocumentSortedSpans(spansProd, PerDocumentSortedSpans.cmpStartPoint, false);
+				spansProd = new PerDocumentSortedSpans(spansProd, false, false);
+			if (structureIndex != null) {
+				// Documents without a structure index id (e.g. indexed by an indexer that
+				// doesn't fill the structure index) can't be filtered using the intervals;
+				// if this segment has any, use the filter clause instead.
+				String siidField = ComplexFieldUtil.structureIndexIdField(clauses.get(1).getField());
+				if (DocIntFieldGetter.allDocsHaveValue(context.reader(), siidField)) {
+					if (tagId < 0) {
+						// Tag doesn't occur in the index
+						return invert ? spansProd : null;
+					}
+					DocIntFieldGetter siidGetter = new DocIntFieldGetter(context.reader(), siidField);
+					return new SpansPositionFilterIntervals(spansProd, siidGetter, structureIndex, tagId, op, invert, leftAdjust, rightAdjust);
+				}
+			}
 			BLSpans spansFilter = filterWeight.getSpans(context, requiredPostings);
 			if (spansFilter == null) {
 				// No filter hits. If it's a positive filter, that means no producer hits can match.
@@ -150,7 +184,7 @@ public class SpanQueryPositionFilter extends BLSpanQueryAbstract {
 				filter = new SpansInBucketsPerDocument(spansFilter);
 			} else {
 				// Not sorted yet; sort buckets
-				filter = new SpansInBucketsPerDocumentSorted(spansFilter, cmpStartPoint);
+				filter = new SpansInBucketsPerDocumentSorted(spansFilter, false);
 			}
 			return new SpansPositionFilter(spansProd, filter, filterFixedLength, op, invert, leftAdjust, rightAdjust);
 		}
@@ -156,7 +156,7 @@ public class SpanQueryRepetition extends BLSpanQueryAbstract {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans spans = weight.getSpans(context, requiredPostings);
 			if (spans == null)
 				return null;
@@ -33,6 +33,7 @@ import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.spans.SpanWeight;
 
+import nl.inl.blacklab.search.QueryProfile;
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.Nfa;
@@ -239,6 +240,11 @@ public class SpanQuerySequence extends BLSpanQueryAbstract {
 				left = cl.get(highestPrioIndex - 1);
 				right = cl.get(highestPrioIndex);
 				BLSpanQuery combined = highestPrioCombiner.combine(left, right, reader);
+				QueryProfile profile = QueryProfile.current();
+				if (profile != null) {
+					profile.addCombinerDecision(highestPrioCombiner.getClass().getSimpleName() + " (prio " + highestPrio +
+							"): " + left + " + " + right + " => " + combined);
+				}
 				// (we used to rewrite() combined here just to be safe, but that could break optimizations later)
 				cl.remove(highestPrioIndex);
 				cl.set(highestPrioIndex - 1, combined);
@@ -559,7 +565,7 @@ public class SpanQuerySequence extends BLSpanQueryAbstract {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			List<CombiPart> parts = new ArrayList<>();
 			for (int i = 0; i < weights.size(); i++) {
 				CombiPart part = new CombiPart(weights.get(i), context, requiredPostings);
@@ -598,9 +604,9 @@ public class SpanQuerySequence extends BLSpanQueryAbstract {
 				// We keep track of this and sort them manually if necessary.
 				CombiPart newPart = null;
 				if (!left.endSorted)
-					left.spans = new PerDocumentSortedSpans(left.spans, PerDocumentSortedSpans.cmpEndPoint, false);
+					left.spans = new PerDocumentSortedSpans(left.spans, true, false);
 				if (!right.startSorted)
-					right.spans = new PerDocumentSortedSpans(right.spans, PerDocumentSortedSpans.cmpStartPoint, false);
+					right.spans = new PerDocumentSortedSpans(right.spans, false, false);
 				BLSpans newSpans = new SpansSequenceRaw(left.spans, right.spans);
 				newPart = new CombiPart(newSpans, left.uniqueStart && left.uniqueEnd && right.uniqueStart,
 						left.uniqueEnd && right.uniqueStart && right.uniqueEnd, left.startSorted, right.sameLength,
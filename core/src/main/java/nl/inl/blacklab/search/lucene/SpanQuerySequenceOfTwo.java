@@ -218,7 +218,7 @@ class SpanQuerySequenceOfTwo extends BLSpanQueryAbstract {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans combi = weights.get(0).getSpans(context, requiredPostings);
 			if (combi == null)
 				return null;
@@ -240,9 +240,9 @@ class SpanQuerySequenceOfTwo extends BLSpanQueryAbstract {
 					combiUniqueEnds = clauses.get(i).hitsHaveUniqueEnd();
 				} else {
 					if (!combiEndpointSorted)
-						combi = new PerDocumentSortedSpans(combi, PerDocumentSortedSpans.cmpEndPoint, false);
+						combi = new PerDocumentSortedSpans(combi, true, false);
 					if (!clauses.get(i).hitsStartPointSorted())
-						si = new PerDocumentSortedSpans(si, PerDocumentSortedSpans.cmpStartPoint, false);
+						si = new PerDocumentSortedSpans(si, false, false);
 					combi = new SpansSequenceRaw(combi, si);
 					combiUniqueEnds = combiUniqueEnds && clauses.get(i).hitsHaveUniqueEnd();
 					combiEndpointSorted = clauses.get(i).hitsAllSameLength();
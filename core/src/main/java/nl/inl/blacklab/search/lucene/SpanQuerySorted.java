@@ -1,7 +1,6 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.Comparator;
 import java.util.Map;
 import java.util.Set;
 
@@ -10,7 +9,6 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.IndexSearcher;
-import nl.inl.blacklab.search.Hit;
 
 /**
  * Ensure hits from a SpanQuery are sorted by start- or endpoint
@@ -79,12 +77,11 @@ class SpanQuerySorted extends BLSpanQuery {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans srcSpans = weight.getSpans(context, requiredPostings);
 			if (srcSpans == null)
 				return null;
-			Comparator<Hit> comparator = sortByEndpoint ? PerDocumentSortedSpans.cmpEndPoint : PerDocumentSortedSpans.cmpStartPoint;
-			return new PerDocumentSortedSpans(srcSpans, comparator, eliminateDuplicates);
+			return new PerDocumentSortedSpans(srcSpans, sortByEndpoint, eliminateDuplicates);
 		}
 	}
 
@@ -26,7 +26,10 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.IndexSearcher;
+
 import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.util.StringUtil;
 
 /**
@@ -83,16 +86,28 @@ public class SpanQueryTags extends BLSpanQuery {
 		if (attr != null)
 			throw new RuntimeException("Query should've been rewritten! (attr != null)");
 		BLSpanWeight weight = clause.createWeight(searcher, needsScores);
-		return new SpanWeightTags(weight, searcher, needsScores ? getTermContexts(weight) : null);
+
+		// How are the end positions stored in the start tag payloads?
+		boolean tagLengthPayloads = false;
+		Searcher blSearcher = Searcher.fromIndexReader(searcher.getIndexReader());
+		if (blSearcher != null) {
+			IndexStructure struct = blSearcher.getIndexStructure();
+			if (struct.getComplexFields().contains(baseFieldName))
+				tagLengthPayloads = struct.getComplexFieldDesc(baseFieldName).hasTagLengthPayloads();
+		}
+		return new SpanWeightTags(weight, searcher, needsScores ? getTermContexts(weight) : null, tagLengthPayloads);
 	}
 
 	class SpanWeightTags extends BLSpanWeight {
 
 		final BLSpanWeight weight;
 
-		public SpanWeightTags(BLSpanWeight weight, IndexSearcher searcher, Map<Term, TermContext> terms) throws IOException {
+		final boolean tagLengthPayloads;
+
+		public SpanWeightTags(BLSpanWeight weight, IndexSearcher searcher, Map<Term, TermContext> terms, boolean tagLengthPayloads) throws IOException {
 			super(SpanQueryTags.this, searcher, terms);
 			this.weight = weight;
+			this.tagLengthPayloads = tagLengthPayloads;
 		}
 
 		@Override
@@ -106,11 +121,11 @@ public class SpanQueryTags extends BLSpanQuery {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans startTags = weight.getSpans(context, requiredPostings);
 			if (startTags == null)
 				return null;
-			return new SpansTags(startTags);
+			return new SpansTags(startTags, tagLengthPayloads);
 		}
 	}
 
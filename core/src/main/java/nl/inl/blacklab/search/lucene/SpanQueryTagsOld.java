@@ -131,7 +131,7 @@ public class SpanQueryTagsOld extends BLSpanQueryAbstract {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans startTags = startWeight.getSpans(context, requiredPostings);
 			BLSpans endTags = endWeight.getSpans(context, requiredPostings);
 			if (startTags == null || endTags == null)
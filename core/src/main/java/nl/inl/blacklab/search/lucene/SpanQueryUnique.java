@@ -83,12 +83,12 @@ class SpanQueryUnique extends BLSpanQuery {
 		}
 
 		@Override
-		public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+		protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 			BLSpans srcSpans = weight.getSpans(context, requiredPostings);
 			if (srcSpans == null)
 				return null;
 			if (!src.hitsStartPointSorted())
-				return new PerDocumentSortedSpans(srcSpans, PerDocumentSortedSpans.cmpStartPoint, true);
+				return new PerDocumentSortedSpans(srcSpans, false, true);
 			return new SpansUnique(srcSpans);
 		}
 	}
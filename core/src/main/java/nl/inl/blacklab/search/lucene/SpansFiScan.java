@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2012 Institute for Dutch Lexicology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NavigableSet;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.spans.SpanCollector;
+import org.apache.lucene.util.Bits;
+
+import nl.inl.blacklab.search.Span;
+import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor.ForwardIndexAccessorLeafReader;
+import nl.inl.blacklab.search.fimatch.ForwardIndexDocument;
+import nl.inl.blacklab.search.fimatch.NfaState;
+
+/**
+ * Finds hits in a (small) set of documents by matching an NFA at
+ * each position of their forward index.
+ *
+ * Used instead of the reverse index when a filter only leaves a few
+ * documents, so we don't have to go through (possibly very long) postings
+ * lists only to discard almost everything we find.
+ */
+class SpansFiScan extends BLSpans {
+
+	/** The documents to search */
+	private DocIdSetIterator docs;
+
+	/** Documents that haven't been deleted, or null if there are no deleted documents */
+	private Bits liveDocs;
+
+	/** The NFA to match (forward) */
+	private NfaState nfa;
+
+	/** Where to get forward index documents from */
+	private ForwardIndexAccessorLeafReader fiAccessor;
+
+	/** Current document */
+	private int currentDoc = -1;
+
+	/** Tokens for the current document */
+	private ForwardIndexDocument currentFiDoc;
+
+	/** Length of the current document in tokens */
+	private int currentDocLength;
+
+	/** Start of the current hit */
+	private int currentStart = -1;
+
+	/** End of the current hit */
+	private int currentEnd = -1;
+
+	/** Next position to match the NFA from */
+	private int nextStartToTry;
+
+	/** Ends of the remaining hits starting at currentStart */
+	private Iterator<Integer> matchEndPointIt;
+
+	/** Are we already at the first match in a new document, before nextStartPosition() has been called?
+	 * Necessary because we have to make sure nextDoc()/advance() actually puts us in a document with at
+	 * least one match.
+	 */
+	private boolean alreadyAtFirstMatch = false;
+
+	/**
+	 * Construct SpansFiScan.
+	 *
+	 * @param docs the documents to search
+	 * @param liveDocs documents that haven't been deleted, or null if there are no deleted documents
+	 * @param nfa the (finished) NFA to match
+	 * @param fiAccessor where to get forward index documents from
+	 */
+	public SpansFiScan(DocIdSetIterator docs, Bits liveDocs, NfaState nfa, ForwardIndexAccessorLeafReader fiAccessor) {
+		this.docs = docs;
+		this.liveDocs = liveDocs;
+		this.nfa = nfa;
+		this.fiAccessor = fiAccessor;
+	}
+
+	@Override
+	public int docID() {
+		return currentDoc;
+	}
+
+	@Override
+	public int startPosition() {
+		if (alreadyAtFirstMatch)
+			return -1; // nextStartPosition() hasn't been called yet
+		return currentStart;
+	}
+
+	@Override
+	public int endPosition() {
+		if (alreadyAtFirstMatch)
+			return -1; // nextStartPosition() hasn't been called yet
+		return currentEnd;
+	}
+
+	@Override
+	public int nextDoc() throws IOException {
+		if (currentDoc == NO_MORE_DOCS)
+			return NO_MORE_DOCS;
+		return findDocWithMatch(docs.nextDoc());
+	}
+
+	@Override
+	public int advance(int target) throws IOException {
+		if (currentDoc == NO_MORE_DOCS)
+			return NO_MORE_DOCS;
+		return findDocWithMatch(docs.advance(target));
+	}
+
+	/**
+	 * Find the first document with a match, starting from the specified one.
+	 *
+	 * @param doc document to start at
+	 * @return docID if found, NO_MORE_DOCS if there are no more matches
+	 */
+	private int findDocWithMatch(int doc) {
+		alreadyAtFirstMatch = false;
+		while (doc != NO_MORE_DOCS) {
+			if (liveDocs == null || liveDocs.get(doc)) {
+				currentDoc = doc;
+				currentFiDoc = fiAccessor.getForwardIndexDoc(doc);
+				currentDocLength = fiAccessor.getDocLength(doc);
+				currentStart = currentEnd = -1;
+				nextStartToTry = 0;
+				matchEndPointIt = null;
+				if (findNextMatch()) {
+					alreadyAtFirstMatch = true;
+					return currentDoc;
+				}
+			}
+			try {
+				doc = docs.nextDoc();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		currentDoc = NO_MORE_DOCS;
+		currentFiDoc = null;
+		currentStart = currentEnd = NO_MORE_POSITIONS;
+		return NO_MORE_DOCS;
+	}
+
+	/**
+	 * Go to the next match in the current document.
+	 *
+	 * Matches are ordered by start, then end position.
+	 *
+	 * @return true if found, false if there are no more matches in this document
+	 */
+	private boolean findNextMatch() {
+		if (matchEndPointIt != null && matchEndPointIt.hasNext()) {
+			currentEnd = matchEndPointIt.next();
+			return true;
+		}
+		while (nextStartToTry < currentDocLength) {
+			int pos = nextStartToTry++;
+			NavigableSet<Integer> setMatchEndpoints = nfa.findMatches(currentFiDoc, pos, 1);
+			if (setMatchEndpoints.size() > 0) {
+				matchEndPointIt = setMatchEndpoints.iterator();
+				currentStart = pos;
+				currentEnd = matchEndPointIt.next();
+				return true;
+			}
+		}
+		matchEndPointIt = null;
+		currentStart = currentEnd = NO_MORE_POSITIONS;
+		return false;
+	}
+
+	@Override
+	public int nextStartPosition() throws IOException {
+		if (currentDoc == NO_MORE_DOCS)
+			return NO_MORE_POSITIONS;
+		if (alreadyAtFirstMatch) {
+			// We're already at the first match in the doc. Return it.
+			alreadyAtFirstMatch = false;
+			return currentStart;
+		}
+		if (currentStart == NO_MORE_POSITIONS)
+			return NO_MORE_POSITIONS;
+		findNextMatch();
+		return currentStart;
+	}
+
+	@Override
+	public int advanceStartPosition(int target) throws IOException {
+		if (currentDoc == NO_MORE_DOCS)
+			return NO_MORE_POSITIONS;
+		if (alreadyAtFirstMatch) {
+			alreadyAtFirstMatch = false;
+			if (currentStart >= target)
+				return currentStart;
+		} else if (currentStart == NO_MORE_POSITIONS) {
+			return NO_MORE_POSITIONS;
+		} else if (currentStart >= target) {
+			// We must move to the next hit in any case
+			return nextStartPosition();
+		}
+
+		// Skip the remaining hits at this start position and the positions before target
+		matchEndPointIt = null;
+		if (nextStartToTry < target)
+			nextStartToTry = target;
+		findNextMatch();
+		return currentStart;
+	}
+
+	@Override
+	public String toString() {
+		return "SpansFiScan(" + nfa + ")";
+	}
+
+	@Override
+	public void passHitQueryContextToClauses(HitQueryContext context) {
+		// NOP
+	}
+
+	@Override
+	public void getCapturedGroups(Span[] capturedGroups) {
+		// NOP
+	}
+
+	@Override
+	public int width() {
+		return 0;
+	}
+
+	@Override
+	public void collect(SpanCollector collector) throws IOException {
+		// NOP
+	}
+
+	@Override
+	public float positionsCost() {
+		return 0;
+	}
+
+}
@@ -37,8 +37,19 @@ class SpansFiltered extends BLSpans {
 	boolean more;
 
 	public SpansFiltered(BLSpans spans, Scorer filterDocs) throws IOException {
+		this(spans, filterDocs == null ? null : filterDocs.iterator());
+	}
+
+	/**
+	 * Filter spans.
+	 *
+	 * @param spans the spans to filter
+	 * @param filterDocs the accepted documents in this segment
+	 * @throws IOException
+	 */
+	public SpansFiltered(BLSpans spans, DocIdSetIterator filterDocs) throws IOException {
 		this.spans = spans;
-		docIdSetIter = filterDocs == null ? null : filterDocs.iterator(); //docIdSetIter = filterDocs.iterator();
+		docIdSetIter = filterDocs;
 		more = false;
 		if (docIdSetIter != null) {
 			more = (docIdSetIter.nextDoc() != NO_MORE_DOCS);
@@ -16,12 +16,7 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.spans.Spans;
@@ -45,19 +40,37 @@ import nl.inl.blacklab.search.Span;
  *
  * Also, SpansInBuckets assumes all hits in a bucket are from a single document.
  *
+ * The hits in a bucket are stored in primitive arrays that are reused for the next bucket, so
+ * gathering hits doesn't create any objects (apart from the captured groups the source creates).
  */
 abstract class SpansInBucketsAbstract implements SpansInBuckets {
+	/** Initial capacity of the bucket arrays (also the capacity we return to after a huge bucket) */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Below this number of hits, use insertion sort instead of quicksort */
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
 	protected BLSpans source;
 
 	protected int currentDoc = -1;
 
-	private List<Hit> bucket = new ArrayList<>();
+	/** Start positions of the hits in the current bucket */
+	private int[] starts = new int[INITIAL_CAPACITY];
+
+	/** End positions of the hits in the current bucket */
+	private int[] ends = new int[INITIAL_CAPACITY];
 
 	/**
 	 * For each hit we fetched, store the captured groups, so we don't
-	 * lose this information.
+	 * lose this information. Contains numberOfCapturedGroups entries per hit.
 	 */
-	private Map<Hit, Span[]> capturedGroupsPerHit = new HashMap<>();
+	private Span[] capturedGroups = new Span[0];
+
+	/** Buffer to get the captured groups for a hit from the source */
+	private Span[] capturedGroupsBuffer = new Span[0];
+
+	/** Number of captured groups per hit */
+	private int numberOfCapturedGroups = 0;
 
 	/**
 	 * Size of the current bucket, or -1 if we're not at a valid bucket.
@@ -73,19 +86,99 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 	protected boolean clauseCapturesGroups = true;
 
 	protected void addHitFromSource() {
-		Hit hit = source.getHit();
-		bucket.add(hit);
+		if (bucketSize == starts.length) {
+			int newCapacity = starts.length * 2;
+			starts = Arrays.copyOf(starts, newCapacity);
+			ends = Arrays.copyOf(ends, newCapacity);
+			if (doCapturedGroups)
+				capturedGroups = Arrays.copyOf(capturedGroups, newCapacity * numberOfCapturedGroups);
+		}
+		starts[bucketSize] = source.startPosition();
+		ends[bucketSize] = source.endPosition();
 		if (doCapturedGroups) {
 			// Store captured group information
-			Span[] capturedGroups = new Span[hitQueryContext.numberOfCapturedGroups()];
-			source.getCapturedGroups(capturedGroups);
-			capturedGroupsPerHit.put(hit, capturedGroups);
+			Arrays.fill(capturedGroupsBuffer, null);
+			source.getCapturedGroups(capturedGroupsBuffer);
+			System.arraycopy(capturedGroupsBuffer, 0, capturedGroups, bucketSize * numberOfCapturedGroups, numberOfCapturedGroups);
 		}
 		bucketSize++;
 	}
 
-	protected void sortHits(Comparator<Hit> hitComparator) {
-		Collections.sort(bucket, hitComparator);
+	/**
+	 * Sort the hits in the bucket.
+	 *
+	 * @param sortByEndPoint if true, sort by end point, then start point;
+	 *   otherwise sort by start point, then end point
+	 */
+	protected void sortHits(boolean sortByEndPoint) {
+		if (sortByEndPoint)
+			sort(ends, starts, 0, bucketSize - 1);
+		else
+			sort(starts, ends, 0, bucketSize - 1);
+	}
+
+	/**
+	 * Sort a range of the hits in place (quicksort, insertion sort for small ranges).
+	 *
+	 * @param primary the positions to sort by
+	 * @param secondary the positions to sort by if primary is equal
+	 * @param from first index of the range
+	 * @param to last index of the range (inclusive)
+	 */
+	private void sort(int[] primary, int[] secondary, int from, int to) {
+		while (to - from >= INSERTION_SORT_THRESHOLD) {
+			// Partition around the middle element
+			int mid = (from + to) >>> 1;
+			int pivotPrimary = primary[mid], pivotSecondary = secondary[mid];
+			int i = from, j = to;
+			while (i <= j) {
+				while (compare(primary, secondary, i, pivotPrimary, pivotSecondary) < 0)
+					i++;
+				while (compare(primary, secondary, j, pivotPrimary, pivotSecondary) > 0)
+					j--;
+				if (i <= j) {
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			// Recurse into the smaller part, loop on the larger one
+			if (j - from < to - i) {
+				sort(primary, secondary, from, j);
+				from = i;
+			} else {
+				sort(primary, secondary, i, to);
+				to = j;
+			}
+		}
+		for (int i = from + 1; i <= to; i++) {
+			for (int j = i; j > from && compare(primary, secondary, j - 1, primary[j], secondary[j]) > 0; j--) {
+				swap(j - 1, j);
+			}
+		}
+	}
+
+	private static int compare(int[] primary, int[] secondary, int i, int otherPrimary, int otherSecondary) {
+		if (primary[i] != otherPrimary)
+			return primary[i] < otherPrimary ? -1 : 1;
+		return secondary[i] < otherSecondary ? -1 : (secondary[i] == otherSecondary ? 0 : 1);
+	}
+
+	private void swap(int i, int j) {
+		int t = starts[i];
+		starts[i] = starts[j];
+		starts[j] = t;
+		t = ends[i];
+		ends[i] = ends[j];
+		ends[j] = t;
+		if (doCapturedGroups) {
+			int a = i * numberOfCapturedGroups, b = j * numberOfCapturedGroups;
+			for (int k = 0; k < numberOfCapturedGroups; k++) {
+				Span g = capturedGroups[a + k];
+				capturedGroups[a + k] = capturedGroups[b + k];
+				capturedGroups[b + k] = g;
+			}
+		}
 	}
 
 	@Override
@@ -95,17 +188,17 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 
 	@Override
 	public int startPosition(int indexInBucket) {
-		return bucket.get(indexInBucket).start;
+		return starts[indexInBucket];
 	}
 
 	@Override
 	public int endPosition(int indexInBucket) {
-		return bucket.get(indexInBucket).end;
+		return ends[indexInBucket];
 	}
 
 	@Override
 	public Hit getHit(int indexInBucket) {
-		return bucket.get(indexInBucket);
+		return new Hit(currentDoc, starts[indexInBucket], ends[indexInBucket]);
 	}
 
 	public SpansInBucketsAbstract(BLSpans source) {
@@ -165,20 +258,23 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 	}
 
 	private int gatherHitsInternal() throws IOException {
-		// NOTE: we could call .clear() here, but we don't want to hold on to
+		// NOTE: we reuse the arrays, but we don't want to hold on to
 		// a lot of memory indefinitely after encountering one huge bucket.
-		if (bucket.size() < ARRAYLIST_REALLOC_THRESHOLD) {
-			// Not a huge amount of memory, so don't reallocate
-			bucket.clear();
-			capturedGroupsPerHit.clear();
-		} else {
-			// Reallocate in this case to avoid holding on to a lot of memory
-			bucket = new ArrayList<>();
-			capturedGroupsPerHit = new HashMap<>();
+		if (starts.length > ARRAYLIST_REALLOC_THRESHOLD) {
+			starts = new int[INITIAL_CAPACITY];
+			ends = new int[INITIAL_CAPACITY];
 		}
 
 		bucketSize = 0;
 		doCapturedGroups = clauseCapturesGroups && hitQueryContext != null && hitQueryContext.numberOfCapturedGroups() > 0;
+		if (doCapturedGroups) {
+			if (numberOfCapturedGroups != hitQueryContext.numberOfCapturedGroups()) {
+				numberOfCapturedGroups = hitQueryContext.numberOfCapturedGroups();
+				capturedGroupsBuffer = new Span[numberOfCapturedGroups];
+			}
+			if (capturedGroups.length != starts.length * numberOfCapturedGroups)
+				capturedGroups = new Span[starts.length * numberOfCapturedGroups];
+		}
 		gatherHits();
 		return currentDoc;
 	}
@@ -208,12 +304,12 @@ abstract class SpansInBucketsAbstract implements SpansInBuckets {
 	public void getCapturedGroups(int indexInBucket, Span[] capturedGroups) {
 		if (!doCapturedGroups)
 			return;
-		Span[] previouslyCapturedGroups = capturedGroupsPerHit.get(bucket.get(indexInBucket));
-		if (previouslyCapturedGroups != null) {
-			for (int i = 0; i < capturedGroups.length; i++) {
-				if (previouslyCapturedGroups[i] != null)
-					capturedGroups[i] = previouslyCapturedGroups[i];
-			}
+		int offset = indexInBucket * numberOfCapturedGroups;
+		int n = Math.min(capturedGroups.length, numberOfCapturedGroups);
+		for (int i = 0; i < n; i++) {
+			Span group = this.capturedGroups[offset + i];
+			if (group != null)
+				capturedGroups[i] = group;
 		}
 	}
 
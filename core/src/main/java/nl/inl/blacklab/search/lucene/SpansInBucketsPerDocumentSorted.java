@@ -16,29 +16,25 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.Comparator;
-
-import nl.inl.blacklab.search.Hit;
 
 /**
  * Wrap a Spans to retrieve hits per document, so we can process all matches in a document
  * efficiently.
  *
- * Hits are sorted by the given comparator.
+ * Hits are sorted by start point or end point.
  */
 class SpansInBucketsPerDocumentSorted extends SpansInBucketsPerDocument {
-	private Comparator<Hit> comparator;
+	private boolean sortByEndPoint;
 
-	public SpansInBucketsPerDocumentSorted(BLSpans source, Comparator<Hit> comparator) {
+	public SpansInBucketsPerDocumentSorted(BLSpans source, boolean sortByEndPoint) {
 		super(source);
-		this.comparator = comparator;
+		this.sortByEndPoint = sortByEndPoint;
 	}
 
 	@Override
 	protected void gatherHits() throws IOException {
 		super.gatherHits();
-		if (comparator != null)
-			sortHits(comparator);
+		sortHits(sortByEndPoint);
 	}
 
 }
\ No newline at end of file
@@ -16,12 +16,10 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.spans.Spans;
-import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 
 import nl.inl.blacklab.search.Hit;
 import nl.inl.blacklab.search.Span;
@@ -32,6 +30,9 @@ import nl.inl.blacklab.search.Span;
  *
  * The reason we don't use SpansInBucketsAbstract here is that it's more efficient to just save the
  * endpoints for the current start point (the source spans is normally startpoint-sorted already).
+ *
+ * The end points and captured groups are stored in arrays that are reused for the next bucket,
+ * so gathering hits doesn't create any objects (apart from the captured groups the source creates).
  */
 class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuckets {
 	protected BLSpans source;
@@ -42,9 +43,19 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 
 	protected int currentSpansStart = -1;
 
-	private IntArrayList endPoints = new IntArrayList();
+	/** Initial capacity of the bucket arrays (also the capacity we return to after a huge bucket) */
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] endPoints = new int[INITIAL_CAPACITY];
+
+	/** Captured groups for each end point (numberOfCapturedGroups entries per end point) */
+	private Span[] capturedGroups = new Span[0];
 
-	private List<Span[]> capturedGroupsPerEndpoint = new ArrayList<>();
+	/** Buffer to get the captured groups for a hit from the source */
+	private Span[] capturedGroupsBuffer = new Span[0];
+
+	/** Number of captured groups per hit */
+	private int numberOfCapturedGroups = 0;
 
 	private int bucketSize = 0;
 
@@ -113,26 +124,34 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 	}
 
 	protected int gatherEndPointsAtStartPoint() throws IOException {
-		if (endPoints.size() < ARRAYLIST_REALLOC_THRESHOLD) {
-			// Not a huge amount of memory, so don't reallocate
-			endPoints.clear();
-			capturedGroupsPerEndpoint.clear();
-		} else {
-			// Reallocate in this case to avoid holding on to a lot of memory
-			endPoints = new IntArrayList();
-			capturedGroupsPerEndpoint = new ArrayList<>();
-		}
+		// Reuse the arrays, unless the last bucket was huge; in that case,
+		// reallocate to avoid holding on to a lot of memory
+		if (endPoints.length > ARRAYLIST_REALLOC_THRESHOLD)
+			endPoints = new int[INITIAL_CAPACITY];
 
 		doCapturedGroups = clauseCapturesGroups && source != null && hitQueryContext != null && hitQueryContext.numberOfCapturedGroups() > 0;
+		if (doCapturedGroups) {
+			if (numberOfCapturedGroups != hitQueryContext.numberOfCapturedGroups()) {
+				numberOfCapturedGroups = hitQueryContext.numberOfCapturedGroups();
+				capturedGroupsBuffer = new Span[numberOfCapturedGroups];
+			}
+			if (capturedGroups.length != endPoints.length * numberOfCapturedGroups)
+				capturedGroups = new Span[endPoints.length * numberOfCapturedGroups];
+		}
 
 		bucketSize = 0;
 		currentBucketStart = currentSpansStart;
 		while (currentSpansStart != Spans.NO_MORE_POSITIONS && currentSpansStart == currentBucketStart) {
-			endPoints.add(source.endPosition());
+			if (bucketSize == endPoints.length) {
+				endPoints = Arrays.copyOf(endPoints, endPoints.length * 2);
+				if (doCapturedGroups)
+					capturedGroups = Arrays.copyOf(capturedGroups, endPoints.length * numberOfCapturedGroups);
+			}
+			endPoints[bucketSize] = source.endPosition();
 			if (doCapturedGroups) {
-				Span[] capturedGroups = new Span[hitQueryContext.numberOfCapturedGroups()];
-				source.getCapturedGroups(capturedGroups);
-				capturedGroupsPerEndpoint.add(capturedGroups);
+				Arrays.fill(capturedGroupsBuffer, null);
+				source.getCapturedGroups(capturedGroupsBuffer);
+				System.arraycopy(capturedGroupsBuffer, 0, capturedGroups, bucketSize * numberOfCapturedGroups, numberOfCapturedGroups);
 			}
 			bucketSize++;
 			currentSpansStart = source.nextStartPosition();
@@ -175,7 +194,7 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 
 	@Override
 	public int endPosition(int indexInBucket) {
-		return endPoints.get(indexInBucket);
+		return endPoints[indexInBucket];
 	}
 
 	@Override
@@ -196,14 +215,14 @@ class SpansInBucketsPerStartPoint extends DocIdSetIterator implements SpansInBuc
 
 	@Override
 	public void getCapturedGroups(int indexInBucket, Span[] capturedGroups) {
-		if (!doCapturedGroups || capturedGroupsPerEndpoint.isEmpty())
+		if (!doCapturedGroups || bucketSize == 0)
 			return;
-		Span[] previouslyCapturedGroups = capturedGroupsPerEndpoint.get(indexInBucket);
-		if (previouslyCapturedGroups != null) {
-			for (int i = 0; i < capturedGroups.length; i++) {
-				if (previouslyCapturedGroups[i] != null)
-					capturedGroups[i] = previouslyCapturedGroups[i];
-			}
+		int offset = indexInBucket * numberOfCapturedGroups;
+		int n = Math.min(capturedGroups.length, numberOfCapturedGroups);
+		for (int i = 0; i < n; i++) {
+			Span group = this.capturedGroups[offset + i];
+			if (group != null)
+				capturedGroups[i] = group;
 		}
 	}
 
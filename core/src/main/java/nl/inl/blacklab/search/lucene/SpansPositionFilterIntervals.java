@@ -0,0 +1,297 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.spans.SpanCollector;
+
+import nl.inl.blacklab.search.Span;
+import nl.inl.blacklab.search.lucene.SpanQueryPositionFilter.Operation;
+import nl.inl.blacklab.structureindex.StructureIndex;
+import nl.inl.blacklab.structureindex.StructureIndex.Intervals;
+
+/**
+ * Finds hits that are within or contain a tag, using the tag intervals
+ * from the structure index instead of the start tag property.
+ *
+ * For each document, we read the intervals for the tag type once and
+ * precalculate the largest end position up to each interval (for WITHIN) or
+ * the smallest end position from each interval on (for CONTAINING). Because
+ * the producer hits are start-point sorted, we can then walk through the
+ * intervals along with the producer hits (a merge join), and only need to
+ * look at a single interval for each producer hit.
+ */
+class SpansPositionFilterIntervals extends BLSpans {
+
+	/** The spans we're (possibly) looking for */
+	private BLSpans producer;
+
+	/** Gets the structure index id for a document */
+	private DocIntFieldGetter siidGetter;
+
+	/** The structure index */
+	private StructureIndex structureIndex;
+
+	/** The tag type we're filtering by */
+	private int tagId;
+
+	/** Intervals for the tag type in the current document */
+	private Intervals intervals = new Intervals();
+
+	/**
+	 * For WITHIN: the largest end position of intervals 0..i.
+	 * For CONTAINING: the smallest end position of intervals i..n-1.
+	 */
+	private int[] bestEnd = new int[16];
+
+	/** Index of the current interval (moves along with the producer start position) */
+	private int intervalIndex;
+
+	/** What doc is the producer in? */
+	private int producerDoc = -1;
+
+	/** What start pos is the producer at? */
+	private int producerStart = -1;
+
+	/** What filter operation to use (WITHIN or CONTAINING) */
+	private Operation op;
+
+	/** How to adjust the left edge of the producer hits while matching */
+	private int leftAdjust;
+
+	/** How to adjust the right edge of the producer hits while matching */
+	private int rightAdjust;
+
+	/** Are we already at the first match in a new document, before nextStartPosition() has been called? */
+	private boolean alreadyAtFirstMatch = false;
+
+	/** If true, produce hits that DON'T match the filter instead. */
+	private boolean invert;
+
+	/**
+	 * Find hits from producer that are within or contain a tag
+	 *
+	 * The producer should be start-point sorted.
+	 *
+	 * @param producer the hits we may be interested in
+	 * @param siidGetter gets the structure index id for a document (every document must have one)
+	 * @param structureIndex the structure index
+	 * @param tagId the tag type to filter by
+	 * @param op filter operation to use (WITHIN or CONTAINING)
+	 * @param invert if true, produce hits that DON'T match the filter instead
+	 * @param leftAdjust how to adjust the left edge of the producer hits while matching
+	 * @param rightAdjust how to adjust the right edge of the producer hits while matching
+	 */
+	public SpansPositionFilterIntervals(BLSpans producer, DocIntFieldGetter siidGetter, StructureIndex structureIndex,
+			int tagId, Operation op, boolean invert, int leftAdjust, int rightAdjust) {
+		if (op != Operation.WITHIN && op != Operation.CONTAINING)
+			throw new IllegalArgumentException("Unsupported filter operation " + op);
+		this.producer = producer;
+		this.siidGetter = siidGetter;
+		this.structureIndex = structureIndex;
+		this.tagId = tagId;
+		this.op = op;
+		this.invert = invert;
+		this.leftAdjust = leftAdjust;
+		this.rightAdjust = rightAdjust;
+	}
+
+	@Override
+	public int docID() {
+		return producerDoc;
+	}
+
+	@Override
+	public int endPosition() {
+		if (alreadyAtFirstMatch)
+			return -1; // nextStartPosition() hasn't been called yet
+		return producer.endPosition();
+	}
+
+	@Override
+	public int nextDoc() throws IOException {
+		alreadyAtFirstMatch = false;
+		if (producerDoc == NO_MORE_DOCS)
+			return NO_MORE_DOCS;
+		producerDoc = producer.nextDoc();
+		return findDocWithMatch();
+	}
+
+	@Override
+	public int advance(int doc) throws IOException {
+		alreadyAtFirstMatch = false;
+		if (producerDoc == NO_MORE_DOCS)
+			return NO_MORE_DOCS;
+		producerDoc = producer.advance(doc);
+		return findDocWithMatch();
+	}
+
+	@Override
+	public int nextStartPosition() throws IOException {
+		if (producerDoc == NO_MORE_DOCS)
+			return NO_MORE_POSITIONS;
+
+		if (alreadyAtFirstMatch) {
+			// We're already at the first match in the doc. Return it.
+			alreadyAtFirstMatch = false;
+			return producerStart;
+		}
+
+		// Are we done yet?
+		if (producerStart == NO_MORE_POSITIONS)
+			return NO_MORE_POSITIONS;
+
+		// Find first matching producer span from here
+		producerStart = producer.nextStartPosition();
+		return synchronizePos();
+	}
+
+	@Override
+	public int advanceStartPosition(int target) throws IOException {
+		if (producerDoc == NO_MORE_DOCS)
+			return NO_MORE_POSITIONS;
+
+		if (alreadyAtFirstMatch) {
+			alreadyAtFirstMatch = false;
+			if (producerStart >= target)
+				return producerStart;
+		}
+
+		// Are we done yet?
+		if (producerStart == NO_MORE_POSITIONS)
+			return NO_MORE_POSITIONS;
+
+		// Find first matching producer span from here
+		producerStart = producer.advanceStartPosition(target);
+		return synchronizePos();
+	}
+
+	/**
+	 * Find a document with a matching producer span, starting from the current document.
+	 *
+	 * @return docID if found, NO_MORE_DOCS if no such document exists (i.e. we're done)
+	 * @throws IOException
+	 */
+	private int findDocWithMatch() throws IOException {
+		while (producerDoc != NO_MORE_DOCS) {
+			readIntervals();
+			if (intervals.size() > 0 || invert) {
+				producerStart = producer.nextStartPosition();
+				producerStart = synchronizePos();
+				if (producerStart != NO_MORE_POSITIONS) {
+					alreadyAtFirstMatch = true;
+					return producerDoc;
+				}
+			}
+
+			// No matches in this document; go to the next.
+			producerDoc = producer.nextDoc();
+		}
+		return NO_MORE_DOCS;
+	}
+
+	/**
+	 * Read the intervals for the current document and precalculate the best end positions.
+	 */
+	private void readIntervals() {
+		structureIndex.getIntervals(siidGetter.getFieldValue(producerDoc), tagId, intervals);
+		int n = intervals.size();
+		if (bestEnd.length < n)
+			bestEnd = new int[Math.max(n, bestEnd.length * 2)];
+		if (op == Operation.WITHIN) {
+			int max = -1;
+			for (int i = 0; i < n; i++) {
+				max = Math.max(max, intervals.end(i));
+				bestEnd[i] = max;
+			}
+		} else {
+			int min = Integer.MAX_VALUE;
+			for (int i = n - 1; i >= 0; i--) {
+				min = Math.min(min, intervals.end(i));
+				bestEnd[i] = min;
+			}
+		}
+		intervalIndex = 0;
+		producerStart = -1;
+	}
+
+	/**
+	 * Find a producer span matching with filter, starting from the current producer span.
+	 *
+	 * @return start position if found, NO_MORE_POSITIONS if no such span exists
+	 * @throws IOException
+	 */
+	private int synchronizePos() throws IOException {
+		while (producerStart != NO_MORE_POSITIONS) {
+			if (matchesFilter() != invert)
+				return producerStart;
+			producerStart = producer.nextStartPosition();
+		}
+		return NO_MORE_POSITIONS;
+	}
+
+	/**
+	 * Does the current producer span match the filter?
+	 *
+	 * Moves the interval index along with the producer start position.
+	 *
+	 * @return true iff it matches
+	 */
+	private boolean matchesFilter() {
+		int n = intervals.size();
+		int start = producerStart + leftAdjust;
+		int end = producer.endPosition() + rightAdjust;
+		if (op == Operation.WITHIN) {
+			// Is there an interval starting at or before our start that ends at or after our end?
+			while (intervalIndex < n && intervals.start(intervalIndex) <= start)
+				intervalIndex++;
+			return intervalIndex > 0 && bestEnd[intervalIndex - 1] >= end;
+		}
+		// Is there an interval starting at or after our start that ends at or before our end?
+		while (intervalIndex < n && intervals.start(intervalIndex) < start)
+			intervalIndex++;
+		return intervalIndex < n && bestEnd[intervalIndex] <= end;
+	}
+
+	@Override
+	public int startPosition() {
+		if (alreadyAtFirstMatch)
+			return -1; // nextStartPosition() hasn't been called yet
+		return producerStart;
+	}
+
+	@Override
+	public String toString() {
+		String not = invert ? "not " : "";
+		String ign = (leftAdjust != 0 || rightAdjust != 0) ? ", " + leftAdjust + ", " + rightAdjust : "";
+		String opName = op == Operation.WITHIN ? "within" : "containing";
+		return "POSFILTER(" + producer + " " + not + opName + " INTERVALS(" + tagId + ")" + ign + ")";
+	}
+
+	@Override
+	public void passHitQueryContextToClauses(HitQueryContext context) {
+		producer.setHitQueryContext(context);
+	}
+
+	@Override
+	public void getCapturedGroups(Span[] capturedGroups) {
+		if (!childClausesCaptureGroups)
+			return;
+		producer.getCapturedGroups(capturedGroups);
+	}
+
+	@Override
+	public int width() {
+		return producer.width();
+	}
+
+	@Override
+	public void collect(SpanCollector collector) throws IOException {
+		producer.collect(collector);
+	}
+
+	@Override
+	public float positionsCost() {
+		return producer.positionsCost();
+	}
+
+}
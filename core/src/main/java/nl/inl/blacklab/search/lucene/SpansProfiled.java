@@ -0,0 +1,127 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.spans.SpanCollector;
+
+import nl.inl.blacklab.search.Hit;
+import nl.inl.blacklab.search.QueryProfile;
+import nl.inl.blacklab.search.Span;
+
+/**
+ * Wraps a BLSpans while profiling, counting calls, documents, hits and time.
+ *
+ * Only used if a query is executed with a QueryProfile (see BLSpanWeight.getSpans()).
+ */
+class SpansProfiled extends BLSpans {
+
+	private BLSpans source;
+
+	private QueryProfile.Node node;
+
+	SpansProfiled(BLSpans source, QueryProfile.Node node) {
+		this.source = source;
+		this.node = node;
+	}
+
+	@Override
+	public int nextDoc() throws IOException {
+		long start = System.nanoTime();
+		int doc = source.nextDoc();
+		node.recordDocCall(false, doc != DocIdSetIterator.NO_MORE_DOCS, System.nanoTime() - start);
+		return doc;
+	}
+
+	@Override
+	public int advance(int target) throws IOException {
+		long start = System.nanoTime();
+		int doc = source.advance(target);
+		node.recordDocCall(true, doc != DocIdSetIterator.NO_MORE_DOCS, System.nanoTime() - start);
+		return doc;
+	}
+
+	@Override
+	public int nextStartPosition() throws IOException {
+		long start = System.nanoTime();
+		int pos = source.nextStartPosition();
+		node.recordPositionCall(false, pos != NO_MORE_POSITIONS, System.nanoTime() - start);
+		return pos;
+	}
+
+	@Override
+	public int advanceStartPosition(int target) throws IOException {
+		long start = System.nanoTime();
+		int pos = source.advanceStartPosition(target);
+		node.recordPositionCall(true, pos != NO_MORE_POSITIONS, System.nanoTime() - start);
+		return pos;
+	}
+
+	@Override
+	public int docID() {
+		return source.docID();
+	}
+
+	@Override
+	public int startPosition() {
+		return source.startPosition();
+	}
+
+	@Override
+	public int endPosition() {
+		return source.endPosition();
+	}
+
+	@Override
+	public Hit getHit() {
+		return source.getHit();
+	}
+
+	@Override
+	public void setHitQueryContext(HitQueryContext context) {
+		source.setHitQueryContext(context);
+	}
+
+	@Override
+	protected void passHitQueryContextToClauses(HitQueryContext context) {
+		source.passHitQueryContextToClauses(context);
+	}
+
+	@Override
+	public void getCapturedGroups(Span[] capturedGroups) {
+		source.getCapturedGroups(capturedGroups);
+	}
+
+	@Override
+	public int width() {
+		return source.width();
+	}
+
+	@Override
+	public void collect(SpanCollector collector) throws IOException {
+		source.collect(collector);
+	}
+
+	@Override
+	public float positionsCost() {
+		return source.positionsCost();
+	}
+
+	@Override
+	public TwoPhaseIterator asTwoPhaseIterator() {
+		// NOTE: document iteration through the two-phase iterator isn't counted
+		return source.asTwoPhaseIterator();
+	}
+
+	@Override
+	public long cost() {
+		return source.cost();
+	}
+
+	@Override
+	public String toString() {
+		return source.toString();
+	}
+
+}
@@ -91,7 +91,7 @@ class SpansSequenceRaw extends BLSpans {
 	 */
 	public SpansSequenceRaw(BLSpans leftClause, BLSpans rightClause) {
 		// Sort the left spans by (1) document (2) end point (3) start point
-		left = leftClause; //new PerDocumentSortedSpans(leftClause, PerDocumentSortedSpans.cmpEndPoint, false);
+		left = leftClause; //new PerDocumentSortedSpans(leftClause, true, false);
 
 		// From the right spans, let us extract all end points belonging with a start point.
 		// Already start point sorted.
@@ -16,14 +16,20 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 
-import org.apache.lucene.payloads.PayloadSpanCollector;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.spans.SpanCollector;
+import org.apache.lucene.util.BytesRef;
+
+import nl.inl.blacklab.index.complex.TagPayloads;
 import nl.inl.blacklab.search.Span;
 
 /**
  * Gets spans for a certain XML element.
+ *
+ * The end position of each element is stored in the payload of the start tag.
+ * We decode it directly from the postings, so this doesn't allocate anything per hit.
  */
 class SpansTags extends BLSpans {
 
@@ -31,8 +37,37 @@ class SpansTags extends BLSpans {
 
 	private int end = -1; // -1: not nexted yet. -2: payload not read yet.
 
+	/** Do the payloads store the element length instead of the end position? */
+	private boolean tagLengthPayloads;
+
+	/** Decodes the end position from the payload of the current start tag */
+	private final SpanCollector endPositionDecoder = new SpanCollector() {
+		@Override
+		public void collectLeaf(PostingsEnum postings, int position, Term term) throws IOException {
+			BytesRef payload = postings.getPayload();
+			if (payload != null)
+				end = TagPayloads.decodeEnd(payload, tags.startPosition(), tagLengthPayloads);
+		}
+
+		@Override
+		public void reset() {
+			// NOP
+		}
+	};
+
 	public SpansTags(BLSpans startTags) {
+		this(startTags, false);
+	}
+
+	/**
+	 * Construct SpansTags.
+	 *
+	 * @param startTags the start tag tokens, with payloads
+	 * @param tagLengthPayloads do the payloads store the element length instead of the end position?
+	 */
+	public SpansTags(BLSpans startTags, boolean tagLengthPayloads) {
 		this.tags = startTags;
+		this.tagLengthPayloads = tagLengthPayloads;
 	}
 
 	@Override
@@ -73,21 +108,15 @@ class SpansTags extends BLSpans {
 		return tags.startPosition();
 	}
 
-    private final PayloadSpanCollector collector = new PayloadSpanCollector();
-
-
-
 	@Override
 	public int endPosition() {
 		if (tags.startPosition() == NO_MORE_POSITIONS)
 			return NO_MORE_POSITIONS;
 		try {
 			if (end == -2) {
-				collector.reset();
-				tags.collect(collector);
-				byte[] payload = collector.getPayloads().iterator().next();
-				ByteBuffer bb = ByteBuffer.wrap(payload);
-				end = bb.getInt();
+				tags.collect(endPositionDecoder);
+				if (end == -2)
+					throw new RuntimeException("No payload found for start tag");
 			}
 			return end;
 		} catch (IOException e) {
@@ -0,0 +1,507 @@
+package nl.inl.blacklab.structureindex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.BytesRef;
+import org.eclipse.collections.impl.list.mutable.primitive.BooleanArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import nl.inl.blacklab.index.complex.TagPayloads;
+import nl.inl.util.ExUtil;
+import nl.inl.util.VersionFile;
+
+/**
+ * Stores the positions of the inline tags (e.g. &lt;s/&gt;, &lt;p/&gt;) in each
+ * document as intervals, sorted by start position, per tag type.
+ *
+ * The start tag property in the Lucene index only stores the end position of an
+ * element in a payload, which has to be decoded for every tag we encounter.
+ * With this index, a query like <code>"x" within &lt;s/&gt;</code> can check its
+ * hits against the intervals directly (see SpansPositionFilterIntervals).
+ *
+ * The structure index is optional; it is enabled per complex field using the
+ * "structureIndex" setting in the index template, and must be enabled when the
+ * index is created.
+ *
+ * Files:
+ * - tags.dat: the tag names; the index of a name is its tag id
+ * - docs.dat: the table of contents: offset and length of each document in
+ *   intervals.dat, and whether it was deleted
+ * - intervals.dat: for each document, the number of tag types, the tag id and
+ *   number of intervals for each tag type (in order of tag id), and then the
+ *   (start, end) pairs for each tag type.
+ */
+public class StructureIndex {
+
+	/** Type in the version file */
+	private static final String VERSION_FILE_TYPE = "si";
+
+	/** Current version of the file format */
+	private static final String CURRENT_VERSION = "1";
+
+	private static final int SIZEOF_INT = Integer.SIZE / Byte.SIZE;
+
+	private static final int SIZEOF_LONG = Long.SIZE / Byte.SIZE;
+
+	/** Maximum size of a memory-mapped chunk of intervals.dat */
+	private static final long MAX_CHUNK_SIZE_BYTES = 1000000000;
+
+	/**
+	 * Intervals of one tag type in a document, sorted by start position.
+	 *
+	 * Meant to be reused for many documents, to avoid allocations; the arrays
+	 * grow as needed.
+	 */
+	public static class Intervals {
+
+		private int n = 0;
+
+		private int[] starts = new int[16];
+
+		private int[] ends = new int[16];
+
+		/**
+		 * Number of intervals
+		 * @return number of intervals
+		 */
+		public int size() {
+			return n;
+		}
+
+		/**
+		 * Start position of an interval
+		 * @param i interval index
+		 * @return start position
+		 */
+		public int start(int i) {
+			return starts[i];
+		}
+
+		/**
+		 * End position of an interval (exclusive, like the end of a span)
+		 * @param i interval index
+		 * @return end position
+		 */
+		public int end(int i) {
+			return ends[i];
+		}
+
+		void clear(int newSize) {
+			if (newSize > starts.length) {
+				int capacity = Math.max(newSize, starts.length * 2);
+				starts = new int[capacity];
+				ends = new int[capacity];
+			}
+			n = newSize;
+		}
+	}
+
+	/** Directory containing our files */
+	private File dir;
+
+	/** Are we adding/deleting documents? */
+	private boolean indexMode;
+
+	/** Tag names, in order of tag id */
+	private List<String> tagNames = new ArrayList<>();
+
+	/** Tag id for each tag name */
+	private Map<String, Integer> tagIds = new HashMap<>();
+
+	/** Offset of each document in intervals.dat */
+	private LongArrayList offsets = new LongArrayList();
+
+	/** Length of each document in intervals.dat */
+	private IntArrayList lengths = new IntArrayList();
+
+	/** Has each document been deleted? */
+	private BooleanArrayList deleted = new BooleanArrayList();
+
+	/** Were documents added or deleted? (index mode) */
+	private boolean modified = false;
+
+	/** For appending to intervals.dat (index mode) */
+	private RandomAccessFile writeIntervalsFp;
+
+	/** Where the next document will be appended to intervals.dat (index mode) */
+	private long intervalsFileEndPosition = 0;
+
+	/** Start offset of each memory-mapped chunk of intervals.dat (search mode) */
+	private long[] chunkOffsets;
+
+	/** Memory-mapped chunks of intervals.dat (search mode) */
+	private ByteBuffer[] chunks;
+
+	/**
+	 * Does the specified directory contain a structure index?
+	 *
+	 * @param dir the directory
+	 * @return true iff it contains a structure index
+	 */
+	public static boolean exists(File dir) {
+		return dir.exists() && VersionFile.exists(dir);
+	}
+
+	/**
+	 * Open a structure index.
+	 *
+	 * @param dir directory containing the structure index
+	 * @param indexMode if true, we're adding/deleting documents
+	 * @param create if true, create a new structure index (removing any existing one)
+	 */
+	public StructureIndex(File dir, boolean indexMode, boolean create) {
+		if (create && !indexMode)
+			throw new IllegalArgumentException("Cannot create structure index, not in index mode");
+		this.dir = dir;
+		this.indexMode = indexMode;
+		if (!dir.exists()) {
+			if (!create)
+				throw new IllegalArgumentException("Structure index not found: " + dir);
+			if (!dir.mkdir())
+				throw new RuntimeException("Could not create dir: " + dir);
+		}
+		if (create) {
+			VersionFile.write(dir, VERSION_FILE_TYPE, CURRENT_VERSION);
+			modified = true;
+		} else {
+			if (!VersionFile.isTypeVersion(dir, VERSION_FILE_TYPE, CURRENT_VERSION))
+				throw new IllegalArgumentException("Not a structure index or wrong version: "
+						+ VersionFile.report(dir));
+			readTags();
+			readToc();
+		}
+		try {
+			if (indexMode) {
+				writeIntervalsFp = new RandomAccessFile(getIntervalsFile(), "rw");
+				if (create)
+					writeIntervalsFp.setLength(0);
+				intervalsFileEndPosition = writeIntervalsFp.length();
+			} else {
+				mapIntervals();
+			}
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	private File getTagsFile() {
+		return new File(dir, "tags.dat");
+	}
+
+	private File getTocFile() {
+		return new File(dir, "docs.dat");
+	}
+
+	private File getIntervalsFile() {
+		return new File(dir, "intervals.dat");
+	}
+
+	private void readTags() {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(getTagsFile())))) {
+			int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				String tagName = in.readUTF();
+				tagIds.put(tagName, tagNames.size());
+				tagNames.add(tagName);
+			}
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	private void writeTags() {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getTagsFile())))) {
+			out.writeInt(tagNames.size());
+			for (String tagName: tagNames) {
+				out.writeUTF(tagName);
+			}
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	private void readToc() {
+		File tocFile = getTocFile();
+		try (RandomAccessFile raf = new RandomAccessFile(tocFile, "r");
+			FileChannel fc = raf.getChannel()) {
+			MappedByteBuffer buf = fc.map(MapMode.READ_ONLY, 0, tocFile.length());
+			int n = buf.getInt();
+			long[] offset = new long[n];
+			int[] length = new int[n];
+			byte[] del = new byte[n];
+			LongBuffer lb = buf.asLongBuffer();
+			lb.get(offset);
+			buf.position(buf.position() + SIZEOF_LONG * n);
+			IntBuffer ib = buf.asIntBuffer();
+			ib.get(length);
+			buf.position(buf.position() + SIZEOF_INT * n);
+			buf.get(del);
+			offsets = LongArrayList.newListWith(offset);
+			lengths = IntArrayList.newListWith(length);
+			deleted = new BooleanArrayList(n);
+			for (int i = 0; i < n; i++) {
+				deleted.add(del[i] != 0);
+			}
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	private void writeToc() {
+		int n = offsets.size();
+		try (RandomAccessFile raf = new RandomAccessFile(getTocFile(), "rw");
+			FileChannel fc = raf.getChannel()) {
+			long fileSize = SIZEOF_INT + (SIZEOF_LONG + SIZEOF_INT + 1) * (long)n;
+			fc.truncate(fileSize);
+			MappedByteBuffer buf = fc.map(MapMode.READ_WRITE, 0, fileSize);
+			buf.putInt(n);
+			for (int i = 0; i < n; i++)
+				buf.putLong(offsets.get(i));
+			for (int i = 0; i < n; i++)
+				buf.putInt(lengths.get(i));
+			for (int i = 0; i < n; i++)
+				buf.put((byte)(deleted.get(i) ? 1 : 0));
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Map intervals.dat into memory, in chunks that don't split documents.
+	 *
+	 * Documents are only ever appended, so their offsets are increasing.
+	 */
+	private void mapIntervals() throws IOException {
+		LongArrayList starts = new LongArrayList();
+		LongArrayList ends = new LongArrayList();
+		long chunkStart = 0, chunkEnd = 0;
+		for (int i = 0; i < offsets.size(); i++) {
+			long docEnd = offsets.get(i) + lengths.get(i);
+			if (docEnd - chunkStart > MAX_CHUNK_SIZE_BYTES && chunkEnd > chunkStart) {
+				starts.add(chunkStart);
+				ends.add(chunkEnd);
+				chunkStart = offsets.get(i);
+			}
+			chunkEnd = docEnd;
+		}
+		starts.add(chunkStart);
+		ends.add(chunkEnd);
+
+		chunkOffsets = starts.toArray();
+		chunks = new ByteBuffer[chunkOffsets.length];
+		try (RandomAccessFile raf = new RandomAccessFile(getIntervalsFile(), "r");
+			FileChannel fc = raf.getChannel()) {
+			for (int i = 0; i < chunks.length; i++) {
+				chunks[i] = fc.map(MapMode.READ_ONLY, chunkOffsets[i], ends.get(i) - chunkOffsets[i]);
+			}
+		}
+	}
+
+	/**
+	 * Add a document's tags to the structure index.
+	 *
+	 * The arguments are the values, position increments and payloads of the
+	 * start tag property: each tag name has a payload containing the end
+	 * position of the element. Values without a payload (attribute values, or
+	 * empty values used for padding) are skipped.
+	 *
+	 * @param values the tag names
+	 * @param posIncr the position increments
+	 * @param payloads the payloads
+	 * @return the structure index id assigned to the document
+	 */
+	public int addDocument(List<String> values, List<Integer> posIncr, List<BytesRef> payloads) {
+		return addDocument(values, posIncr, payloads, false);
+	}
+
+	/**
+	 * Add a document's tags to the structure index.
+	 *
+	 * @param values the tag names
+	 * @param posIncr the position increments
+	 * @param payloads the payloads
+	 * @param tagLengthPayloads do the payloads store the element length instead of the end position?
+	 * @return the structure index id assigned to the document
+	 * @see #addDocument(List, List, List)
+	 */
+	public synchronized int addDocument(List<String> values, List<Integer> posIncr, List<BytesRef> payloads, boolean tagLengthPayloads) {
+		if (!indexMode)
+			throw new RuntimeException("Cannot add document, not in index mode");
+
+		// Collect the intervals per tag type, encoded as (start << 32 | end) so they sort
+		// by start position, then end position
+		IntObjectHashMap<LongArrayList> intervalsPerTag = new IntObjectHashMap<>();
+		int position = -1;
+		int numberOfIntervals = 0;
+		for (int i = 0; i < values.size(); i++) {
+			position += posIncr.get(i);
+			BytesRef payload = payloads.get(i);
+			if (!TagPayloads.isValid(payload, tagLengthPayloads))
+				continue;
+			int end = TagPayloads.decodeEnd(payload, position, tagLengthPayloads);
+			int tagId = getOrAddTagId(values.get(i));
+			LongArrayList intervals = intervalsPerTag.get(tagId);
+			if (intervals == null) {
+				intervals = new LongArrayList();
+				intervalsPerTag.put(tagId, intervals);
+			}
+			intervals.add(((long)position << 32) | end);
+			numberOfIntervals++;
+		}
+		int[] tagIdsInDoc = intervalsPerTag.keySet().toSortedArray();
+
+		// Write the document to the end of the intervals file
+		int length = SIZEOF_INT * (1 + tagIdsInDoc.length * 2 + numberOfIntervals * 2);
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		buf.putInt(tagIdsInDoc.length);
+		for (int tagId: tagIdsInDoc) {
+			buf.putInt(tagId);
+			buf.putInt(intervalsPerTag.get(tagId).size());
+		}
+		for (int tagId: tagIdsInDoc) {
+			long[] intervals = intervalsPerTag.get(tagId).toSortedArray();
+			for (long interval: intervals) {
+				buf.putInt((int)(interval >>> 32));
+				buf.putInt((int)interval);
+			}
+		}
+		buf.flip();
+		try {
+			FileChannel fc = writeIntervalsFp.getChannel();
+			long offset = intervalsFileEndPosition;
+			while (buf.hasRemaining()) {
+				fc.write(buf, offset + buf.position());
+			}
+			intervalsFileEndPosition += length;
+			offsets.add(offset);
+			lengths.add(length);
+			deleted.add(false);
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+		modified = true;
+		return offsets.size() - 1;
+	}
+
+	private int getOrAddTagId(String tagName) {
+		Integer tagId = tagIds.get(tagName);
+		if (tagId == null) {
+			tagId = tagNames.size();
+			tagIds.put(tagName, tagId);
+			tagNames.add(tagName);
+		}
+		return tagId;
+	}
+
+	/**
+	 * Delete a document from the structure index.
+	 *
+	 * The space it takes up is not reused.
+	 *
+	 * @param siid structure index id of the document
+	 */
+	public synchronized void deleteDocument(int siid) {
+		if (!indexMode)
+			throw new RuntimeException("Cannot delete document, not in index mode");
+		deleted.set(siid, true);
+		modified = true;
+	}
+
+	/**
+	 * Get the id of a tag type.
+	 *
+	 * @param tagName the tag name
+	 * @return the tag id, or -1 if this tag doesn't occur in the index
+	 */
+	public int getTagId(String tagName) {
+		Integer tagId = tagIds.get(tagName);
+		return tagId == null ? -1 : tagId;
+	}
+
+	/**
+	 * Get the number of documents (including deleted ones).
+	 *
+	 * @return number of documents
+	 */
+	public int numDocs() {
+		return offsets.size();
+	}
+
+	/**
+	 * Read the intervals of one tag type in a document.
+	 *
+	 * Doesn't allocate anything unless the intervals object needs to grow.
+	 * Thread-safe, as long as each thread uses its own intervals object.
+	 *
+	 * @param siid structure index id of the document
+	 * @param tagId the tag type
+	 * @param result where to store the intervals
+	 */
+	public void getIntervals(int siid, int tagId, Intervals result) {
+		if (indexMode)
+			throw new RuntimeException("Cannot read intervals, in index mode");
+		long offset = offsets.get(siid);
+		int chunkIndex = Arrays.binarySearch(chunkOffsets, offset);
+		if (chunkIndex < 0)
+			chunkIndex = -chunkIndex - 2; // (insertion point - 1)
+		ByteBuffer buf = chunks[chunkIndex];
+		int pos = (int)(offset - chunkOffsets[chunkIndex]);
+
+		int numberOfTags = buf.getInt(pos);
+		int dataPos = pos + SIZEOF_INT * (1 + numberOfTags * 2);
+		for (int i = 0; i < numberOfTags; i++) {
+			int headerPos = pos + SIZEOF_INT * (1 + i * 2);
+			int count = buf.getInt(headerPos + SIZEOF_INT);
+			if (buf.getInt(headerPos) == tagId) {
+				result.clear(count);
+				for (int j = 0; j < count; j++) {
+					result.starts[j] = buf.getInt(dataPos);
+					result.ends[j] = buf.getInt(dataPos + SIZEOF_INT);
+					dataPos += SIZEOF_INT * 2;
+				}
+				return;
+			}
+			dataPos += SIZEOF_INT * 2 * count;
+		}
+		result.clear(0);
+	}
+
+	/**
+	 * Close the structure index, writing the table of contents
+	 * and tag names if necessary.
+	 */
+	public synchronized void close() {
+		try {
+			if (indexMode && modified) {
+				writeToc();
+				writeTags();
+			}
+			if (writeIntervalsFp != null)
+				writeIntervalsFp.close();
+		} catch (IOException e) {
+			throw ExUtil.wrapRuntimeException(e);
+		}
+	}
+
+}
@@ -30,6 +30,7 @@ import java.util.TreeMap;
 
 import org.apache.lucene.index.CorruptIndexException;
 
+import nl.inl.blacklab.forwardindex.ForwardIndex;
 import nl.inl.blacklab.index.DocIndexer;
 import nl.inl.blacklab.index.DocumentFormatException;
 import nl.inl.blacklab.index.DocumentFormats;
@@ -60,9 +61,10 @@ public class IndexTool {
 		String docFormat = null;
 		boolean createNewIndex = false;
 		String command = "";
-		Set<String> commands = new HashSet<>(Arrays.asList("add", "create", "delete"));
+		Set<String> commands = new HashSet<>(Arrays.asList("add", "create", "delete", "compact"));
 		boolean addingFiles = true;
 		String deleteQuery = null;
+		String compactOrder = null;
 		for (int i = 0; i < args.length; i++) {
 			String arg = args[i].trim();
 			if (arg.startsWith("---")) {
@@ -108,6 +110,8 @@ public class IndexTool {
 					}
 					readParametersFromPropertiesFile(propFile);
 					i++;
+				} else if (name.equals("compress-forward-index")) {
+					ForwardIndex.setCreateCompressed(true);
 				} else if (name.equals("help")) {
 					usage();
 					return;
@@ -147,6 +151,8 @@ public class IndexTool {
 					docFormat = arg;
 				} else if (command.equals("delete") && deleteQuery == null) {
 					deleteQuery = arg;
+				} else if (command.equals("compact") && compactOrder == null) {
+					compactOrder = arg;
 				} else {
 					System.err.println("Too many arguments!");
 					usage();
@@ -172,6 +178,10 @@ public class IndexTool {
 			commandDelete(indexDir, deleteQuery);
 			return;
 		}
+		if (command.equals("compact")) {
+			commandCompact(indexDir, compactOrder);
+			return;
+		}
 		if (command.equals("create"))
 			createNewIndex = true;
 
@@ -314,14 +324,45 @@ public class IndexTool {
 		}
 	}
 
+	private static void commandCompact(File indexDir, String order) throws IOException {
+		if (order != null && !order.equals("fiid") && !order.equals("docid")) {
+			System.err.println("Unknown document order: " + order);
+			usage();
+			return;
+		}
+		Searcher searcher = Searcher.openForWriting(indexDir, false);
+		try {
+			printForwardIndexStatus(searcher);
+			System.out.println("Compacting forward indices...");
+			searcher.compactForwardIndices("docid".equals(order));
+			printForwardIndexStatus(searcher);
+		} finally {
+			searcher.close();
+		}
+	}
+
+	private static void printForwardIndexStatus(Searcher searcher) {
+		for (Map.Entry<String, ForwardIndex> e: searcher.getForwardIndices().entrySet()) {
+			ForwardIndex fi = e.getValue();
+			System.out.println("  " + e.getKey() + ": " + fi.getFreeBlocks() + " free blocks, "
+					+ fi.getFreeSpace() + " free tokens, " + fi.getTerms().numberOfTerms() + " terms");
+		}
+	}
+
 	private static void usage() {
 		System.out
 				.println("Usage:\n"
 						+ "  IndexTool {add|create} [options] <indexdir> <inputdir> <format>\n"
 						+ "  IndexTool delete <indexdir> <filterQuery>\n"
+						+ "  IndexTool compact <indexdir> [fiid|docid]\n"
+						+ "                         (rewrite forward indices without gaps and unused terms,\n"
+						+ "                         with documents in forward index id or Lucene doc id order)\n"
 						+ "\n"
 						+ "Options:\n"
 						+ "  --maxdocs <n>          Stop after indexing <n> documents\n"
+						+ "  --compress-forward-index\n"
+						+ "                         Create new forward indices in the compressed format\n"
+						+ "                         (smaller, but slightly slower to read)\n"
 						+ "  --indexparam <file>    Read properties file with parameters for DocIndexer\n"
 						+ "                         (NOTE: even without this option, if the current\n"
 						+ "                         directory, the input or index directory (or its parent)\n"
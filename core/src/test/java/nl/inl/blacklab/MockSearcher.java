@@ -46,6 +46,11 @@ public class MockSearcher extends Searcher {
 
 	}
 
+	@Override
+	public Searcher reopenIfChanged() {
+		return null;
+	}
+
 	@Override
 	public Document document(int doc) {
 		//
@@ -60,8 +65,8 @@ public class MockSearcher extends Searcher {
 
 	@Override
 	public int maxDoc() {
-		//
-		return 0;
+		// (any document id is valid)
+		return Integer.MAX_VALUE;
 	}
 
 	@Override
@@ -20,12 +20,14 @@ package nl.inl.blacklab;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.spans.SpanCollector;
 import org.apache.lucene.util.BytesRef;
 
+import nl.inl.blacklab.index.complex.TagPayloads;
 import nl.inl.blacklab.search.Span;
 import nl.inl.blacklab.search.lucene.BLSpans;
 import nl.inl.blacklab.search.lucene.HitQueryContext;
@@ -256,6 +258,16 @@ public class MockSpans extends BLSpans {
 		return spans;
 	}
 
+	public static MockSpans withLengthInPayload(int[] aDoc, int[] aStart, int[] aEnd) {
+		MockSpans spans = MockSpans.singleWordSpans(aDoc, aStart);
+		spans.payloads = new byte[aEnd.length][];
+		for (int i = 0; i < aEnd.length; i++) {
+			BytesRef payload = TagPayloads.encode(aStart[i], aEnd[i], true);
+			spans.payloads[i] = Arrays.copyOfRange(payload.bytes, payload.offset, payload.offset + payload.length);
+		}
+		return spans;
+	}
+
 	private static MockSpans singleWordSpans(int[] aDoc, int[] aStart) {
 		int[] aEnd = new int[aStart.length];
 		for (int i = 0; i < aStart.length; i++) {
@@ -190,7 +190,7 @@ public class TestIndex {
 	 *            the hits to display
 	 * @return
 	 */
-	static List<String> getConcordances(Hits hits) {
+	public static List<String> getConcordances(Hits hits) {
 		List<String> results = new ArrayList<>();
 		for (Hit hit : hits) {
 			Kwic kwic = hits.getKwic(hit);
@@ -0,0 +1,63 @@
+package nl.inl.blacklab.filter;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestDesensitizer {
+
+	private static final String[] terms = {
+		"hond", "Hond", "HÉ", "café", "Ĳsselmeer", "Straße", "ΣΟΦΟΣ", "σοφός",
+		"İstanbul", "Ǆemal", "é", "́", "한국어", "שָׁלוֹם", "𝒜bc", "Ø", "",
+	};
+
+	private static void assertDesensitize(boolean lowerCase, boolean removeAccents) throws IOException {
+		// Twice, so the second time we use the memo for the complex terms
+		String[] input = new String[terms.length * 2];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = terms[i % terms.length];
+		}
+		TokenStream ts = new StubTokenStream(input);
+		try {
+			ts = new DesensitizeFilter(ts, lowerCase, removeAccents);
+			ts.reset();
+			CharTermAttribute ta = ts.addAttribute(CharTermAttribute.class);
+			for (String term: input) {
+				Assert.assertTrue(ts.incrementToken());
+				String expected = Desensitizer.desensitize(term, lowerCase, removeAccents);
+				Assert.assertEquals(term, expected, new String(ta.buffer(), 0, ta.length()));
+			}
+			Assert.assertFalse(ts.incrementToken());
+		} finally {
+			ts.close();
+		}
+	}
+
+	@Test
+	public void testSameAsSlowPath() throws IOException {
+		assertDesensitize(true, true);
+		assertDesensitize(true, false);
+		assertDesensitize(false, true);
+	}
+
+	@Test
+	public void testDesensitize() throws IOException {
+		TokenStream ts = new StubTokenStream(new String[] { "Café", "ΣΟΦΟΣ" });
+		try {
+			ts = new DesensitizeFilter(ts, true, true);
+			ts.reset();
+			CharTermAttribute ta = ts.addAttribute(CharTermAttribute.class);
+			Assert.assertTrue(ts.incrementToken());
+			Assert.assertEquals("cafe", new String(ta.buffer(), 0, ta.length()));
+			Assert.assertTrue(ts.incrementToken());
+			Assert.assertEquals("σοφος", new String(ta.buffer(), 0, ta.length()));
+			Assert.assertFalse(ts.incrementToken());
+		} finally {
+			ts.close();
+		}
+	}
+
+}
@@ -0,0 +1,216 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.File;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.util.UtilsForTesting;
+
+public class TestForwardIndexCompressed {
+	private ForwardIndex fi;
+
+	private File dir;
+
+	/** Lengths of the documents we add (spanning zero, one and several blocks) */
+	private int[] docLengths = { 5, 128, 300, 1, 1000 };
+
+	@Before
+	public void setUpForwardIndex() {
+		// Remove any previously left over temp test dirs
+		UtilsForTesting.removeBlackLabTestDirs();
+
+		// Create new test dir
+		dir = UtilsForTesting.createBlackLabTestDir("ForwardIndexCompressed");
+
+		fi = new ForwardIndexImplV4(dir, true, Collators.getDefault(), true);
+		for (int j = 0; j < docLengths.length; j++) {
+			fi.addDocument(makeDocument(j, docLengths[j]));
+		}
+		fi.close();
+		fi = new ForwardIndexImplV4(dir, false, Collators.getDefault(), false);
+	}
+
+	@After
+	public void tearDown() {
+		if (fi != null)
+			fi.close();
+		// Try to remove (some files may be locked though)
+		UtilsForTesting.removeBlackLabTestDirs();
+	}
+
+	/**
+	 * Make a test document. Mostly frequent terms, with a rare term
+	 * every now and then, so blocks get different bit widths.
+	 */
+	private static List<String> makeDocument(int doc, int length) {
+		List<String> content = new ArrayList<>();
+		for (int i = 0; i < length; i++) {
+			content.add(term(doc, i));
+		}
+		return content;
+	}
+
+	private static String term(int doc, int pos) {
+		if (pos % 97 == 0)
+			return "rare" + doc + "_" + pos;
+		return "common" + (pos % 3);
+	}
+
+	private void assertDocument(int fiid, int doc) {
+		Terms terms = fi.getTerms();
+		int length = docLengths[doc];
+		Assert.assertEquals(length, fi.getDocLength(fiid));
+		int[] tokens = fi.retrievePartsInt(fiid, new int[] {-1}, new int[] {-1}).get(0);
+		Assert.assertEquals(length, tokens.length);
+		for (int i = 0; i < length; i++) {
+			Assert.assertEquals(term(doc, i), terms.get(tokens[i]));
+			Assert.assertEquals(tokens[i], fi.getToken(fiid, i));
+		}
+	}
+
+	@Test
+	public void testRetrieve() {
+		Assert.assertEquals(docLengths.length, fi.getNumDocs());
+		for (int j = 0; j < docLengths.length; j++) {
+			assertDocument(j, j);
+		}
+	}
+
+	@Test
+	public void testRetrieveParts() {
+		Terms terms = fi.getTerms();
+		int[] start = { 0, 120, 127, 500, 990 };
+		int[] end = { 3, 130, 400, 501, 1000 };
+		List<int[]> parts = fi.retrievePartsInt(4, start, end);
+		for (int i = 0; i < start.length; i++) {
+			int[] part = parts.get(i);
+			Assert.assertEquals(end[i] - start[i], part.length);
+			for (int j = 0; j < part.length; j++) {
+				Assert.assertEquals(term(4, start[i] + j), terms.get(part[j]));
+			}
+		}
+	}
+
+	@Test
+	public void testRetrievePartsBatch() {
+		int[] fiid = { 4, 0, 2, 4, 1, 3, 2 };
+		int[] start = { 990, -1, 250, 0, 120, 0, 0 };
+		int[] end = { 1010, -1, 300, 3, 130, 1, 200 };
+		int[][] result = new int[fiid.length][];
+		result[3] = new int[3]; // should be reused
+		int[] reused = result[3];
+		fi.retrievePartsIntBatch(fiid, start, end, result);
+		Assert.assertSame(reused, result[3]);
+		Assert.assertEquals(0, start[1]);
+		Assert.assertEquals(docLengths[0], end[1]);
+		Assert.assertEquals(1000, end[0]); // clipped to document length
+		for (int i = 0; i < fiid.length; i++) {
+			int[] expected = fi.retrievePartsInt(fiid[i], new int[] { start[i] }, new int[] { end[i] }).get(0);
+			Assert.assertArrayEquals(expected, result[i]);
+			fi.prefetch(fiid[i], start[i], end[i]);
+		}
+	}
+
+	@Test
+	public void testAddAndDeleteAfterReopen() {
+		fi.close();
+		fi = new ForwardIndexImplV4(dir, true, Collators.getDefault(), false);
+		fi.deleteDocument(2);
+		fi.deleteDocument(3);
+		int fiid = fi.addDocument(makeDocument(2, 1000));
+		fi.close();
+		Assert.assertFalse(new File(dir, "tokens.dat").exists());
+
+		fi = new ForwardIndexImplV4(dir, false, Collators.getDefault(), false);
+		Assert.assertEquals(docLengths.length - 1, fi.idSet().size());
+		Assert.assertTrue(fi.idSet().contains(fiid));
+		Assert.assertFalse(fi.idSet().contains(fiid == 2 ? 3 : 2));
+		assertDocument(0, 0);
+		assertDocument(1, 1);
+		assertDocument(4, 4);
+		docLengths[2] = 1000;
+		assertDocument(fiid, 2);
+	}
+
+	@Test
+	public void testAppendAndCompact() {
+		fi.close();
+		File tokensFile = new File(dir, "tokens.cmp");
+		long sizeBefore = tokensFile.length();
+		fi = new ForwardIndexImplV4(dir, true, Collators.getDefault(), false);
+		fi.deleteDocument(1);
+		int fiid = fi.addDocument(makeDocument(4, 1000));
+		Assert.assertEquals(docLengths.length, fiid); // appended, not reusing the deleted entry
+		assertDocument(fiid, 4); // readable in index mode
+		assertDocument(2, 2);
+		Assert.assertEquals(docLengths[1], fi.getFreeSpace());
+		Assert.assertEquals(1, fi.getFreeBlocks());
+
+		fi.compact(null);
+		Assert.assertEquals(0, fi.getFreeSpace());
+		Assert.assertEquals(0, fi.getFreeBlocks());
+		assertDocument(fiid, 4);
+		fi.close();
+		Assert.assertTrue(tokensFile.length() > sizeBefore);
+
+		fi = new ForwardIndexImplV4(dir, false, Collators.getDefault(), false);
+		Assert.assertEquals(docLengths.length, fi.idSet().size());
+		Assert.assertFalse(fi.idSet().contains(1));
+		assertDocument(0, 0);
+		assertDocument(3, 3);
+		assertDocument(4, 4);
+		assertDocument(fiid, 4);
+	}
+
+	@Test
+	public void testSmallerThanUncompressed() {
+		long compressed = new File(dir, "tokens.cmp").length();
+		long uncompressed = fi.getTotalSize() * (Integer.SIZE / Byte.SIZE);
+		Assert.assertTrue(compressed * 4 < uncompressed);
+	}
+
+	@Test
+	public void testWarmUp() {
+		long size = fi.getMappedSize();
+		Assert.assertTrue(size > 0);
+		AtomicLong bytesDone = new AtomicLong();
+		Assert.assertTrue(fi.warmUp(bytesDone));
+		Assert.assertEquals(size, bytesDone.get());
+		assertDocument(4, 4);
+	}
+
+
+	@Test
+	public void testOpenCreatesCompressedOnlyIfEnabled() {
+		File uncompressedDir = new File(dir, "uncompressed");
+		ForwardIndex created = ForwardIndex.open(uncompressedDir, true, Collator.getInstance(new Locale("en", "GB")), true);
+		try {
+			Assert.assertTrue(created instanceof ForwardIndexImplV3);
+		} finally {
+			created.close();
+		}
+
+		File compressedDir = new File(dir, "compressed");
+		ForwardIndex.setCreateCompressed(true);
+		try {
+			created = ForwardIndex.open(compressedDir, true, Collator.getInstance(new Locale("en", "GB")), true);
+		} finally {
+			ForwardIndex.setCreateCompressed(false);
+		}
+		created.close();
+		created = ForwardIndex.open(compressedDir, false, Collator.getInstance(new Locale("en", "GB")), false);
+		try {
+			Assert.assertTrue(created instanceof ForwardIndexImplV4);
+		} finally {
+			created.close();
+		}
+	}
+}
@@ -17,6 +17,7 @@ package nl.inl.blacklab.forwardindex;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.After;
@@ -135,4 +136,56 @@ public class TestForwardIndexDelete {
 		Assert.assertEquals(0, addDocumentOfLength(9)); // exact fit
 	}
 
+	private void assertDocumentOfLength(int fiid, int length) {
+		Terms terms = fi.getTerms();
+		int[] tokens = fi.retrievePartsInt(fiid, new int[] {-1}, new int[] {-1}).get(0);
+		Assert.assertEquals(length, tokens.length);
+		for (int i = 0; i < length; i++) {
+			Assert.assertEquals(i + "", terms.get(tokens[i]));
+		}
+	}
+
+	/** Compacting removes gaps and unused terms, and stores documents in the specified order. */
+	@Test
+	public void testCompact() {
+		int unused = fi.addDocument(Arrays.asList("no", "longer", "used"));
+		fi.deleteDocument(unused);
+		int numberOfTerms = fi.getTerms().numberOfTerms();
+		fi.compact(new int[] { 5, 3 });
+		Assert.assertEquals(0, fi.getFreeSpace());
+		Assert.assertEquals(20 + 16 + 12, fi.getTotalSize());
+		Assert.assertEquals(numberOfTerms - 3, fi.getTerms().numberOfTerms());
+		ForwardIndexImplV3 v3 = (ForwardIndexImplV3) fi;
+		Assert.assertEquals(0, v3.toc.get(5).offset);
+		Assert.assertEquals(20, v3.toc.get(3).offset);
+		Assert.assertEquals(36, v3.toc.get(1).offset);
+
+		// Deleted entries are re-used for new documents, which are added at the end
+		int fiid = addDocumentOfLength(5);
+		Assert.assertTrue(fiid < 6);
+		Assert.assertEquals(20 + 16 + 12 + 5, fi.getTotalSize());
+
+		fi.close();
+		fi = new ForwardIndexImplV3(dir, false, Collators.getDefault(), false, true);
+		assertDocumentOfLength(1, 12);
+		assertDocumentOfLength(3, 16);
+		assertDocumentOfLength(5, 20);
+		assertDocumentOfLength(fiid, 5);
+		Assert.assertEquals(4, fi.idSet().size());
+	}
+
+	/** Compacting leaves live empty documents alone. */
+	@Test
+	public void testCompactEmptyDocument() {
+		int empty = fi.addDocument(new ArrayList<String>());
+		fi.compact(null);
+		Assert.assertTrue(fi.idSet().contains(empty));
+
+		// The empty document's entry is not re-used
+		int fiid = addDocumentOfLength(5);
+		Assert.assertTrue(fiid != empty);
+		Assert.assertTrue(fi.idSet().contains(empty));
+		Assert.assertEquals(5, fi.idSet().size());
+	}
+
 }
@@ -106,4 +106,59 @@ public class TestTermsV3 {
 			Assert.assertEquals(expected[i], t.idToSortPosition(i, true));
 		}
 	}
+
+	/**
+	 * Test if terms that only differ in case get the same insensitive sort position,
+	 * and if the sort order is correct when keys are calculated in parallel.
+	 */
+	@Test
+	public void testInsensitiveOrderManyTerms() {
+		Collator coll = Collator.getInstance(new Locale("en", "GB"));
+		Collators colls = new Collators(coll, CollatorVersion.V2);
+		Terms terms = Terms.open(true, colls, null, true);
+		int n = 30000;
+		for (int i = 0; i < n; i++) {
+			String term = Integer.toString(i * 7919 % n, 36);
+			terms.indexOf(term);
+			terms.indexOf(term.toUpperCase());
+		}
+		File f = new File(dir, "terms2.dat");
+		terms.write(f);
+		terms = Terms.open(false, colls, f, true);
+
+		int numberOfTerms = terms.numberOfTerms();
+		String[] bySortPos = new String[numberOfTerms];
+		for (int i = 0; i < numberOfTerms; i++) {
+			bySortPos[terms.idToSortPosition(i, true)] = terms.get(i);
+		}
+		Collator sensitive = colls.get(true, true);
+		for (int i = 1; i < numberOfTerms; i++) {
+			Assert.assertTrue(sensitive.compare(bySortPos[i - 1], bySortPos[i]) <= 0);
+		}
+		for (int i = 0; i < numberOfTerms; i++) {
+			String term = terms.get(i);
+			int upper = terms.indexOf(term.toUpperCase());
+			Assert.assertEquals(terms.idToSortPosition(i, false), terms.idToSortPosition(upper, false));
+		}
+	}
+
+	/**
+	 * Test if terms added in index mode can be retrieved by id right away,
+	 * also after reading an existing terms file.
+	 */
+	@Test
+	public void testGetWhileAdding() {
+		Collator coll = Collator.getInstance(new Locale("en", "GB"));
+		Collators colls = new Collators(coll, CollatorVersion.V2);
+		Terms terms = Terms.open(true, colls, new File(dir, "terms.dat"), true);
+		Assert.assertEquals("quick", terms.get(1));
+		for (int i = 0; i < 1000; i++) {
+			String term = "term" + i;
+			int id = terms.indexOf(term);
+			Assert.assertEquals(term, terms.get(id));
+		}
+		Assert.assertEquals(1008, terms.numberOfTerms());
+		Assert.assertEquals("dog", terms.get(7));
+		Assert.assertEquals("term999", terms.get(1007));
+	}
 }
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package nl.inl.blacklab.highlight;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -133,5 +135,24 @@ public class TestXmlHighlighter {
 		Assert.assertEquals("The fox jumps over", hl.makeWellFormed(xmlContent));
 	}
 
+	@Test
+	public void testHighlightToWriterRemoveEmptyHl() throws IOException {
+		hl.setRemoveEmptyHlTags(true);
+		String xmlContent = " The <b>quick</b> brown fox ";
+
+		List<HitCharSpan> hits = new ArrayList<>();
+		hits.add(new HitCharSpan(4, 4));
+		hits.add(new HitCharSpan(8, 13));
+		StringWriter writer = new StringWriter();
+		hl.highlight(xmlContent, hits, 0, writer);
+		Assert.assertEquals("The <b><hl>quick</hl></b> brown fox", writer.toString());
+	}
+
+	@Test
+	public void testCutAroundTags() {
+		String xmlContent = "<p>The  quick\nbrown fox jumps over the lazy dog</p><p>Second</p>";
+		Assert.assertEquals("<p>The quick</p><p></p>...", hl.cutAroundTags(xmlContent, 10));
+		Assert.assertEquals(xmlContent, hl.cutAroundTags(xmlContent, 100));
+	}
 
 }
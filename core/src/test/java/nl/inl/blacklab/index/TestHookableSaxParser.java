@@ -109,6 +109,38 @@ public class TestHookableSaxParser {
 		Assert.assertEquals("<<$><<$><<$>>><<$><<$>>>>", hookHandler.toString());
 	}
 
+	@Test
+	public void testWildcard() throws SAXException, IOException {
+		hookableSaxHandler.addHook("/root/*", hookHandler, false);
+		parser.parse(inputSource, hookableSaxHandler);
+		Assert.assertEquals("<$><><>", hookHandler.toString());
+	}
+
+	@Test
+	public void testMultipleHooksInOrder() throws SAXException, IOException {
+		final StringBuilder log = new StringBuilder();
+		hookableSaxHandler.addHook("//child/name", new ElementHandler() {
+			@Override
+			public void startElement(String uri, String localName, String qName, Attributes attributes) {
+				log.append("N");
+			}
+		});
+		hookableSaxHandler.addHook("/root", new ElementHandler() {
+			@Override
+			public void startElement(String uri, String localName, String qName, Attributes attributes) {
+				log.append("R");
+			}
+		}, true);
+		hookableSaxHandler.addHook("/child", new ElementHandler() {
+			@Override
+			public void startElement(String uri, String localName, String qName, Attributes attributes) {
+				log.append("X"); // never matches: child is not the root element
+			}
+		});
+		parser.parse(inputSource, hookableSaxHandler);
+		Assert.assertEquals("RRRNRRNRRNRRNR", log.toString());
+	}
+
 //	@Test
 //	public void testAttribute() throws SAXException, IOException {
 //		hookableSaxHandler.addHook("//@att", hookHandler, true);
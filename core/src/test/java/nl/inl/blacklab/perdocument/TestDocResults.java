@@ -15,12 +15,20 @@
  *******************************************************************************/
 package nl.inl.blacklab.perdocument;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import nl.inl.blacklab.MockHits;
 import nl.inl.blacklab.MockSearcher;
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.grouping.HitPropValueInt;
+import nl.inl.util.ReverseComparator;
 
 public class TestDocResults {
 
@@ -43,4 +51,95 @@ public class TestDocResults {
 		}
 	}
 
+	/**
+	 * Create doc results large enough to be processed in parallel.
+	 *
+	 * Document i has (i * 7) % 13 + 1 hits.
+	 */
+	private static DocResults largeDocResults() {
+		int numberOfDocs = DocResultsParallel.MIN_CHUNK_SIZE * 4 + 123;
+		List<Integer> doc = new ArrayList<>();
+		for (int i = 0; i < numberOfDocs; i++) {
+			int hitsInDoc = (i * 7) % 13 + 1;
+			for (int j = 0; j < hitsInDoc; j++)
+				doc.add(i);
+		}
+		int[] aDoc = new int[doc.size()];
+		int[] aStart = new int[doc.size()];
+		int[] aEnd = new int[doc.size()];
+		for (int i = 0; i < aDoc.length; i++) {
+			aDoc[i] = doc.get(i);
+			aStart[i] = i;
+			aEnd[i] = i + 1;
+		}
+		return new MockHits(new MockSearcher(), aDoc, aStart, aEnd).perDocResults();
+	}
+
+	private static void assertSortedLikeComparator(DocProperty prop, boolean reverse) {
+		DocResults drs = largeDocResults();
+		List<DocResult> expected = new ArrayList<>(drs.subList(0, drs.size()));
+		Comparator<DocResult> comparator = new ComparatorDocProperty(prop);
+		if (reverse)
+			comparator = new ReverseComparator<>(comparator);
+		Collections.sort(expected, comparator);
+		drs.sort(prop, reverse);
+		List<DocResult> actual = drs.subList(0, drs.size());
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getDocId(), actual.get(i).getDocId());
+		}
+	}
+
+	@Test
+	public void testSortParallel() {
+		assertSortedLikeComparator(new DocPropertyNumberOfHits(), false);
+		assertSortedLikeComparator(new DocPropertyNumberOfHits(), true);
+		assertSortedLikeComparator(new DocPropertyMultiple(new DocPropertyNumberOfHits()), false);
+	}
+
+	@Test
+	public void testSortArrayStable() {
+		Integer[] values = new Integer[DocResultsParallel.MIN_CHUNK_SIZE * 3 + 7];
+		for (int i = 0; i < values.length; i++)
+			values[i] = (values.length - i) * 31 % 1000 * 100000 + i;
+		Integer[] expected = values.clone();
+		Comparator<Integer> byHundredThousands = new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return a / 100000 - b / 100000;
+			}
+		};
+		// Arrays.sort is stable as well
+		Arrays.sort(expected, byHundredThousands);
+		DocResultsParallel.sort(values, byHundredThousands);
+		Assert.assertArrayEquals(expected, values);
+	}
+
+	@Test
+	public void testGroupAndCountParallel() {
+		DocResults drs = largeDocResults();
+		DocGroups groups = drs.groupedBy(new DocPropertyNumberOfHits());
+		DocCounts counts = drs.countBy(new DocPropertyNumberOfHits());
+		Assert.assertEquals(13, groups.numberOfGroups());
+		Assert.assertEquals(13, counts.numberOfGroups());
+		Assert.assertEquals(drs.size(), groups.getTotalResults());
+		Assert.assertEquals(drs.size(), counts.getTotalResults());
+		int total = 0;
+		for (int hitsInDoc = 1; hitsInDoc <= 13; hitsInDoc++) {
+			HitPropValueInt value = new HitPropValueInt(hitsInDoc);
+			DocGroup group = groups.getGroup(value);
+			int n = group.getResults().size();
+			Assert.assertEquals(n, counts.getCount(value).intValue());
+			int prevDocId = -1;
+			for (DocResult result: group.getResults()) {
+				Assert.assertEquals(hitsInDoc, result.getNumberOfHits());
+				Assert.assertTrue(result.getDocId() > prevDocId); // order within group is kept
+				prevDocId = result.getDocId();
+			}
+			total += n;
+		}
+		Assert.assertEquals(drs.size(), total);
+		Assert.assertEquals(groups.getLargestGroupSize(), counts.getLargestGroupSize());
+	}
+
 }
@@ -16,6 +16,8 @@
 package nl.inl.blacklab.search;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.spans.Spans;
@@ -25,6 +27,7 @@ import org.junit.Test;
 import nl.inl.blacklab.MockHits;
 import nl.inl.blacklab.MockSearcher;
 import nl.inl.blacklab.MockSpans;
+import nl.inl.blacklab.search.grouping.HitPropertyDocumentId;
 
 public class TestHits {
 
@@ -43,6 +46,36 @@ public class TestHits {
 			i++;
 		}
 	}
+	@Test
+	public void testSerialize() {
+		Searcher searcher = new MockSearcher();
+		Hits hits = Hits.fromList(searcher, Arrays.asList(new Hit(3, 1, 2), new Hit(1, 2, 3), new Hit(2, 4, 6)));
+		hits = hits.sortedBy(new HitPropertyDocumentId(hits));
+		Assert.assertTrue(HitsSerializeUtil.canSerialize(hits));
+
+		ByteBuffer buf = ByteBuffer.allocate((int)HitsSerializeUtil.sizeBytes(hits));
+		HitsSerializeUtil.write(hits, buf);
+		Assert.assertEquals(0, buf.remaining());
+		buf.flip();
+		Hits read = HitsSerializeUtil.read(searcher, buf);
+
+		Assert.assertEquals(hits.size(), read.size());
+		Assert.assertEquals(hits.totalNumberOfDocs(), read.totalNumberOfDocs());
+		for (int i = 0; i < hits.size(); i++) {
+			Assert.assertEquals(hits.get(i), read.get(i));
+		}
+
+		// Corrupt the sort order: not a permutation anymore, so we can't restore
+		buf.putInt(buf.limit() - 4, 1); // (was 0)
+		buf.rewind();
+		Assert.assertNull(HitsSerializeUtil.read(searcher, buf));
+
+		// Unknown format version: treated as invalid, not an error
+		buf.putInt(0, -1);
+		buf.rewind();
+		Assert.assertNull(HitsSerializeUtil.read(searcher, buf));
+	}
+
 	@Test
 	public void testMockSpans() throws IOException {
 		int[] aDoc = new int[]   { 1, 2 };
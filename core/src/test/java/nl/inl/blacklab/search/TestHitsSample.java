@@ -54,16 +54,36 @@ public class TestHitsSample {
 	@Test
 	public void testSample() {
 		assertSampleRatio(new int[0], 0, 0);
-		assertSampleRatio(new int[] {3}, 0.1667f, 1);
-		assertSampleRatio(new int[] {0, 1, 5}, 0.5f, 1337);
-		assertSampleRatio(new int[] {0, 1, 2, 3}, 0.6667f, 42);
+		assertSampleRatio(new int[] {5}, 0.1667f, 1);
+		assertSampleRatio(new int[] {0, 1, 4}, 0.5f, 1337);
+		assertSampleRatio(new int[] {1, 2, 3, 4}, 0.6667f, 42);
 		assertSampleRatio(new int[] {0, 1, 2, 3, 4, 5}, 1f, Long.MAX_VALUE);
 
 		assertSampleNumber(new int[0], 0, 0);
-		assertSampleNumber(new int[] {3}, 1, 1);
-		assertSampleNumber(new int[] {0, 1, 5}, 3, 1337);
-		assertSampleNumber(new int[] {0, 1, 2, 3}, 4, 42);
+		assertSampleNumber(new int[] {2}, 1, 1);
+		assertSampleNumber(new int[] {1, 2, 3}, 3, 1337);
+		assertSampleNumber(new int[] {0, 2, 3, 4}, 4, 42);
 		assertSampleNumber(new int[] {0, 1, 2, 3, 4, 5}, 6, Long.MAX_VALUE);
 	}
 
+	@Test
+	public void testSampleRatioManyHits() {
+		// Enough hits that the sampler has to get rid of hits it kept earlier
+		int n = 10000;
+		int[] doc = new int[n], start = new int[n], end = new int[n];
+		for (int i = 0; i < n; i++) {
+			doc[i] = i / 10;
+			start[i] = i % 10;
+			end[i] = i % 10 + 1;
+		}
+		Hits hits = HitsSample.fromHits(new MockHits(new MockSearcher(), doc, start, end), 0.1f, 42);
+		Assert.assertEquals(1000, hits.size());
+		Hit previous = null;
+		for (Hit hit: hits) {
+			if (previous != null)
+				Assert.assertTrue(hit.doc > previous.doc || hit.doc == previous.doc && hit.start > previous.start);
+			previous = hit;
+		}
+	}
+
 }
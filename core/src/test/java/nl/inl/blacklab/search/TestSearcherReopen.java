@@ -0,0 +1,89 @@
+package nl.inl.blacklab.search;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.index.IndexListenerDevNull;
+import nl.inl.blacklab.index.Indexer;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.tools.indexexample.DocIndexerExample;
+import nl.inl.util.UtilsForTesting;
+
+public class TestSearcherReopen {
+
+	private File indexDir;
+
+	private Searcher searcher;
+
+	private Searcher refreshed;
+
+	@Before
+	public void setUp() throws Exception {
+		UtilsForTesting.removeBlackLabTestDirs();
+		indexDir = UtilsForTesting.createBlackLabTestDir("SearcherReopen");
+		addDocuments(true, "<doc><w l='the'>The</w> <w l='quick'>quick</w> <w l='fox'>fox</w></doc>");
+		searcher = Searcher.open(indexDir);
+		searcher.hitsSettings().setContextSize(1);
+	}
+
+	@After
+	public void tearDown() {
+		if (refreshed != null)
+			refreshed.close();
+		if (searcher != null)
+			searcher.close();
+		UtilsForTesting.removeBlackLabTestDirs();
+	}
+
+	private void addDocuments(boolean create, String... docs) throws Exception {
+		Indexer indexer = new Indexer(indexDir, create, DocIndexerExample.class);
+		indexer.setListener(new IndexListenerDevNull());
+		try {
+			for (int i = 0; i < docs.length; i++) {
+				indexer.index("doc" + i, new StringReader(docs[i]));
+			}
+		} finally {
+			indexer.close();
+		}
+	}
+
+	private static Hits find(Searcher searcher, String pattern) throws Exception {
+		return searcher.find(CorpusQueryLanguageParser.parse(pattern));
+	}
+
+	@Test
+	public void testUnchanged() throws Exception {
+		Assert.assertNull(searcher.reopenIfChanged());
+	}
+
+	@Test
+	public void testReopenAfterAdding() throws Exception {
+		addDocuments(false, "<doc><w l='a'>A</w> <w l='lazy'>lazy</w> <w l='fox'>fox</w> <w l='sleep'>sleeps</w></doc>");
+
+		// The old Searcher doesn't see the new document yet
+		Assert.assertEquals(1, find(searcher, "'fox'").size());
+
+		refreshed = searcher.reopenIfChanged();
+		Assert.assertNotNull(refreshed);
+		Assert.assertEquals(searcher.getGeneration() + 1, refreshed.getGeneration());
+		Assert.assertEquals(1, refreshed.hitsSettings().contextSize());
+
+		// The new Searcher sees the new document and its new terms,
+		// both in the Lucene index and in the forward index
+		Assert.assertEquals(2, find(refreshed, "'fox'").size());
+		Assert.assertEquals(Arrays.asList("A [lazy] fox"), TestIndex.getConcordances(find(refreshed, "'lazy'")));
+
+		// ...and the old Searcher can still be used
+		Assert.assertEquals(Arrays.asList("quick [fox]"), TestIndex.getConcordances(find(searcher, "'fox'")));
+
+		Assert.assertNull(refreshed.reopenIfChanged());
+	}
+
+}
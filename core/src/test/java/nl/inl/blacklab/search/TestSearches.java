@@ -1,9 +1,11 @@
 package nl.inl.blacklab.search;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -12,7 +14,10 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
 import nl.inl.blacklab.queryParser.corpusql.ParseException;
+import nl.inl.blacklab.search.grouping.HitPropertyDocumentId;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.BLSpanTermQuery;
 import nl.inl.blacklab.search.lucene.SpanQueryFiltered;
 
@@ -72,6 +77,127 @@ public class TestSearches {
 		Assert.assertEquals(expected, testIndex.findConc(new SpanQueryFiltered(patternQuery, filterQuery)));
 	}
 
+	@Test
+	public void testFilterCache() throws ParseException {
+		FilterCache filterCache = testIndex.getSearcher().filterCache();
+		filterCache.clear();
+		expected = Arrays.asList("[The] quick", "over [the] lazy");
+		TermQuery filterQuery = new TermQuery(new Term("contents%word@i", "fox"));
+		for (int i = 0; i < 2; i++) {
+			BLSpanTermQuery patternQuery = new BLSpanTermQuery(new Term("contents%word@i", "the"));
+			Assert.assertEquals(expected, testIndex.findConc(new SpanQueryFiltered(patternQuery, filterQuery)));
+		}
+		long hits = filterCache.getHits();
+		Assert.assertTrue(hits > 0);
+		Assert.assertTrue(filterCache.size() > 0);
+		Assert.assertEquals(1, testIndex.getSearcher().queryDocuments(filterQuery).size());
+		Assert.assertTrue(filterCache.getHits() > hits);
+
+		// Single-document filters are not cached
+		int size = filterCache.size();
+		long misses = filterCache.getMisses();
+		BLSpanTermQuery patternQuery = new BLSpanTermQuery(new Term("contents%word@i", "the"));
+		Assert.assertEquals(expected, testIndex.findConc(new SpanQueryFiltered(patternQuery, new SingleDocIdFilter(0))));
+		Assert.assertEquals(size, filterCache.size());
+		Assert.assertEquals(misses, filterCache.getMisses());
+	}
+
+	@Test
+	public void testForwardIndexScan() throws ParseException {
+		String[] patterns = { " 'the' ", " [pos='nou'] ", " [pos='adj'] [pos='nou'] ", " 'the' []{1,2} ", " '(?-i).*e' 'lazy' ",
+			" [starttag='entity'] " };
+		Query[] filters = { new SingleDocIdFilter(0), new TermQuery(new Term("contents%word@i", "fox")) };
+		for (String pattern: patterns) {
+			for (Query filter: filters) {
+				SpanQueryFiltered.setForwardIndexScanThreshold(SpanQueryFiltered.NO_FORWARD_INDEX_SCAN);
+				List<String> reverse;
+				try {
+					reverse = testIndex.findConc(pattern, filter);
+				} finally {
+					SpanQueryFiltered.setForwardIndexScanThreshold(SpanQueryFiltered.ALWAYS_FORWARD_INDEX_SCAN);
+				}
+				try {
+					Assert.assertEquals(pattern, reverse, testIndex.findConc(pattern, filter));
+				} finally {
+					SpanQueryFiltered.setForwardIndexScanThreshold(SpanQueryFiltered.DEFAULT_FORWARD_INDEX_SCAN_THRESHOLD);
+				}
+			}
+		}
+		SpanQueryFiltered.setForwardIndexScanThreshold(SpanQueryFiltered.ALWAYS_FORWARD_INDEX_SCAN);
+		try {
+			expected = Arrays.asList("[The] quick", "over [the] lazy");
+			Assert.assertEquals(expected, testIndex.findConc(" 'the' ", new SingleDocIdFilter(0)));
+		} finally {
+			SpanQueryFiltered.setForwardIndexScanThreshold(SpanQueryFiltered.DEFAULT_FORWARD_INDEX_SCAN_THRESHOLD);
+		}
+	}
+
+	@Test
+	public void testSampleFromSpanQuery() {
+		Searcher searcher = testIndex.getSearcher();
+		BLSpanTermQuery patternQuery = new BLSpanTermQuery(new Term("contents%word@i", "the"));
+		// Streaming from the query should select the same hits as sampling a Hits object
+		Hits expectedHits = HitsSample.fromHits(searcher.find(patternQuery), 2, 42);
+		Hits actualHits = HitsSample.fromSpanQuery(searcher, patternQuery, 2, 42);
+		Assert.assertEquals(TestIndex.getConcordances(expectedHits), TestIndex.getConcordances(actualHits));
+		expectedHits = HitsSample.fromHits(searcher.find(patternQuery), 0.5f, 42);
+		actualHits = HitsSample.fromSpanQuery(searcher, patternQuery, 0.5f, 42);
+		Assert.assertEquals(TestIndex.getConcordances(expectedHits), TestIndex.getConcordances(actualHits));
+
+		// Max. hits to retrieve applies while sampling
+		HitsSettings settings = new HitsSettings(searcher.hitsSettings(), false);
+		settings.setMaxHitsToRetrieve(2);
+		actualHits = HitsSample.fromSpanQuery(searcher, patternQuery, 5, 42, settings);
+		Assert.assertEquals(2, actualHits.size());
+		Assert.assertTrue(actualHits.maxHitsRetrieved());
+		Assert.assertEquals(2, actualHits.settings().maxHitsToRetrieve());
+	}
+
+	@Test
+	public void testProgressListener() throws ParseException {
+		Hits hits = testIndex.find(" 'the' ");
+		final List<Integer> counts = new ArrayList<>();
+		HitsProgressListener listener = new HitsProgressListener() {
+			@Override
+			public void progress(Hits h) {
+				counts.add(h.countSoFarHitsCounted());
+			}
+		};
+		hits.addProgressListener(listener);
+		int total = hits.size();
+		hits.removeProgressListener(listener);
+		// We're told when we're done counting
+		Assert.assertFalse(counts.isEmpty());
+		Assert.assertEquals(total, (int)counts.get(counts.size() - 1));
+		Assert.assertTrue(hits.doneFetchingHits());
+	}
+
+	@Test
+	public void testProfile() throws ParseException {
+		Searcher searcher = testIndex.getSearcher();
+		QueryProfile profile = new QueryProfile();
+		BLSpanQuery query = searcher.createSpanQuery(CorpusQueryLanguageParser.parse(" [pos='adj'] [pos='nou'] "));
+		Hits hits = searcher.find(query, profile);
+		Assert.assertSame(profile, hits.getProfile());
+		Assert.assertEquals(2, hits.size());
+		Hits sorted = hits.sortedBy(new HitPropertyDocumentId(hits));
+		Assert.assertSame(profile, sorted.getProfile());
+
+		Assert.assertTrue(profile.getPhaseTimes().keySet().containsAll(Arrays.asList("optimize", "rewrite", "fetchHits", "sort")));
+		List<QueryProfile.Node> top = profile.getSpansTree();
+		Assert.assertEquals(1, top.size());
+		QueryProfile.Node root = top.get(0);
+		Assert.assertEquals(2, root.getHits());
+		Assert.assertEquals(1, root.getDocs()); // both hits are in the first document
+		Assert.assertTrue(root.getNextStartPositionCalls() >= root.getHits());
+		Assert.assertTrue(root.getNanos() > 0);
+		Assert.assertFalse(root.getChildren().isEmpty());
+
+		// Without a profile, nothing is recorded
+		Assert.assertNull(testIndex.find(" 'the' ").getProfile());
+		Assert.assertNull(QueryProfile.current());
+	}
+
 	@Test
 	public void testSequences() throws ParseException {
 		expected = Arrays.asList(
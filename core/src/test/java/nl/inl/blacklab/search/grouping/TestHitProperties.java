@@ -72,4 +72,22 @@ public class TestHitProperties {
 		Assert.assertEquals(1, group.size());
 	}
 
+	@Test
+	public void testPartialSort() throws ParseException {
+		Hits hits = testIndex.find(" [] ");
+		for (boolean reverse: new boolean[] {false, true}) {
+			HitProperty p = new HitPropertyRightContext(hits, "contents", "word", false);
+			Hits sorted = hits.sortedBy(p, reverse);
+			for (int number = 0; number <= 4; number++) {
+				// First hits should be the same as with a full sort, and the rest
+				// should be sorted automatically when we access them.
+				Hits partial = hits.partiallySortedBy(p, reverse, number);
+				Assert.assertEquals(sorted.size(), partial.size());
+				for (int i = 0; i < sorted.size(); i++) {
+					Assert.assertEquals(sorted.get(i), partial.get(i));
+				}
+			}
+		}
+	}
+
 }
@@ -98,7 +98,7 @@ public class MockSpanQuery extends BLSpanQuery {
 			}
 
 			@Override
-			public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
+			protected BLSpans createSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 				return new MockSpans(doc, start, end);
 			}
 		};
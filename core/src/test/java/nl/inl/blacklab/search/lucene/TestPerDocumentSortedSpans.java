@@ -16,6 +16,8 @@
 package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -33,7 +35,7 @@ public class TestPerDocumentSortedSpans {
 		int[] start = { 1, 1, 4, 2, 2 };
 		int[] end   = { 8, 6, 5, 4, 3 };
 		BLSpans spans = new MockSpans(doc, start, end);
-		hpd = new PerDocumentSortedSpans(spans, PerDocumentSortedSpans.cmpEndPoint, false);
+		hpd = new PerDocumentSortedSpans(spans, true, false);
 	}
 
 	@Test
@@ -45,4 +47,28 @@ public class TestPerDocumentSortedSpans {
 		TestUtil.assertEquals(exp, hpd);
 	}
 
+	@Test
+	public void testLargeBucket() throws IOException {
+		// Enough hits per document to use quicksort instead of insertion sort
+		int n = 1000;
+		int[] doc = new int[n], start = new int[n], end = new int[n];
+		long[] sorted = new long[n];
+		Random random = new Random(1234);
+		for (int i = 0; i < n; i++) {
+			doc[i] = i < n / 2 ? 1 : 2;
+			start[i] = random.nextInt(50);
+			end[i] = start[i] + random.nextInt(5);
+			sorted[i] = ((long)doc[i] << 40) | ((long)start[i] << 20) | end[i];
+		}
+		Arrays.sort(sorted, 0, n / 2);
+		Arrays.sort(sorted, n / 2, n);
+		int[] expStart = new int[n], expEnd = new int[n];
+		for (int i = 0; i < n; i++) {
+			expStart[i] = (int)(sorted[i] >> 20) & 0xFFFFF;
+			expEnd[i] = (int)sorted[i] & 0xFFFFF;
+		}
+		BLSpans spans = new PerDocumentSortedSpans(new MockSpans(doc, start, end), false, false);
+		TestUtil.assertEquals(new MockSpans(doc, expStart, expEnd), spans);
+	}
+
 }
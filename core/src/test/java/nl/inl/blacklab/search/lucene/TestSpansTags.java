@@ -95,4 +95,17 @@ public class TestSpansTags {
 		Spans exp = new MockSpans(expDoc, expStart, expEnd);
 		TestUtil.assertEquals(exp, spans, true);
 	}
+
+	@Test
+	public void testLengthInPayload() throws IOException {
+		int[] aDoc   = { 1, 1, 2 };
+		int[] aStart = { 2, 4, 100 };
+		int[] aEnd   = { 7, 4, 400 };
+		BLSpans a = MockSpans.withLengthInPayload(aDoc, aStart, aEnd);
+
+		Spans spans = new SpansTags(a, true);
+
+		Spans exp = new MockSpans(aDoc, aStart, aEnd);
+		TestUtil.assertEquals(exp, spans);
+	}
 }
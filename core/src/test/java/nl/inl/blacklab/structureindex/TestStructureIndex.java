@@ -0,0 +1,222 @@
+package nl.inl.blacklab.structureindex;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.blacklab.TestIndex;
+import nl.inl.blacklab.index.DocIndexer;
+import nl.inl.blacklab.index.DocIndexerXmlHandlers;
+import nl.inl.blacklab.index.DocIndexerXmlHandlers.MetadataFetcher;
+import nl.inl.blacklab.index.IndexListenerDevNull;
+import nl.inl.blacklab.index.Indexer;
+import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.structureindex.StructureIndex.Intervals;
+import nl.inl.blacklab.tools.indexexample.DocIndexerExample;
+import nl.inl.util.UtilsForTesting;
+
+public class TestStructureIndex {
+
+	private static final String[] testData = {
+		"<doc><s><entity><w l='the'>The</w> <w l='quick'>quick</w> <w l='brown'>brown</w> "
+		+ "<w l='fox'>fox</w></entity> <w l='jump'>jumps</w> <w l='over'>over</w> "
+		+ "<entity><w l='the'>the</w> <w l='lazy'>lazy</w> <w l='dog'>dog</w></entity>.</s></doc>",
+
+		"<doc><s><w l='may'>May</w> <entity><w l='the'>the</w> <w l='force'>Force</w></entity> "
+		+ "<w l='be'>be</w> <w l='with'>with</w> <w l='you'>you</w>.</s></doc>",
+
+		"<doc><s><w l='to'>To</w> <w l='find'>find</w> <w l='or'>or</w> <w l='be'>not</w> "
+		+ "<w l='to'>to</w> <w l='find'>find</w>.</s>"
+		+ "<w l='the'>the</w> <w l='end'>end</w> "
+		+ "<s><w l='that'>That</w> <w l='be'>is</w> <w l='the'>the</w> <w l='question'>question</w>.</s></doc>",
+
+		"<doc><w l='noot'>noot</w> <w l='the'>the</w> <w l='aap'>aap</w></doc>",
+	};
+
+	private static final String[] queries = {
+		"'the' within <s/>",
+		"'the' within <entity/>",
+		"[] within <entity/>",
+		"'the' [] within <entity/>",
+		"<s/> containing 'the'",
+		"[]{2} containing 'the'",
+		"<s/> containing <entity/>",
+		"'the' within <unknown/>",
+		"<s/> containing <unknown/>",
+	};
+
+	private File dir;
+
+	private Searcher withStructureIndex;
+
+	private Searcher withoutStructureIndex;
+
+	private Searcher withTagLengthPayloads;
+
+	@Before
+	public void setUp() throws Exception {
+		UtilsForTesting.removeBlackLabTestDirs();
+		dir = UtilsForTesting.createBlackLabTestDir("StructureIndex");
+	}
+
+	@After
+	public void tearDown() {
+		if (withStructureIndex != null)
+			withStructureIndex.close();
+		if (withoutStructureIndex != null)
+			withoutStructureIndex.close();
+		if (withTagLengthPayloads != null)
+			withTagLengthPayloads.close();
+		UtilsForTesting.removeBlackLabTestDirs();
+	}
+
+	private static List<BytesRef> payloads(Integer... ends) {
+		List<BytesRef> result = new ArrayList<>();
+		for (Integer end: ends) {
+			result.add(end == null ? null : new BytesRef(ByteBuffer.allocate(4).putInt(end).array()));
+		}
+		return result;
+	}
+
+	private static void assertIntervals(int[] expected, Intervals intervals) {
+		Assert.assertEquals(expected.length / 2, intervals.size());
+		for (int i = 0; i < intervals.size(); i++) {
+			Assert.assertEquals(expected[i * 2], intervals.start(i));
+			Assert.assertEquals(expected[i * 2 + 1], intervals.end(i));
+		}
+	}
+
+	@Test
+	public void testAddAndRead() {
+		StructureIndex si = new StructureIndex(dir, true, true);
+		// <s><p>a b</p> <p>c</p></s> (with an attribute on the second p)
+		si.addDocument(Arrays.asList("s", "p", "p", "@type__x"), Arrays.asList(1, 0, 2, 0), payloads(3, 2, 3, null));
+		si.addDocument(Arrays.asList("p"), Arrays.asList(6), payloads(8));
+		si.close();
+
+		si = new StructureIndex(dir, true, false);
+		si.deleteDocument(0);
+		int siid = si.addDocument(Arrays.asList("q", "s"), Arrays.asList(1, 0), payloads(1, 2));
+		Assert.assertEquals(2, siid);
+		si.close();
+
+		si = new StructureIndex(dir, false, false);
+		try {
+			Assert.assertEquals(3, si.numDocs());
+			Assert.assertEquals(-1, si.getTagId("@type__x"));
+			int s = si.getTagId("s"), p = si.getTagId("p"), q = si.getTagId("q");
+			Intervals intervals = new Intervals();
+			si.getIntervals(0, p, intervals);
+			assertIntervals(new int[] { 0, 2, 2, 3 }, intervals);
+			si.getIntervals(0, s, intervals);
+			assertIntervals(new int[] { 0, 3 }, intervals);
+			si.getIntervals(1, s, intervals);
+			assertIntervals(new int[0], intervals);
+			si.getIntervals(1, p, intervals);
+			assertIntervals(new int[] { 5, 8 }, intervals);
+			si.getIntervals(2, q, intervals);
+			assertIntervals(new int[] { 0, 1 }, intervals);
+		} finally {
+			si.close();
+		}
+	}
+
+	private Searcher createIndex(String name, String fieldConfig) throws Exception {
+		return createIndex(name, fieldConfig, null);
+	}
+
+	/**
+	 * Removes the structure index id from the last test document, as if it
+	 * were indexed without one.
+	 */
+	public static class RemoveStructureIndexId extends MetadataFetcher {
+		public RemoveStructureIndexId(DocIndexer docIndexer) {
+			super(docIndexer);
+		}
+
+		@Override
+		public void addMetadata() {
+			Document doc = ((DocIndexerXmlHandlers) docIndexer).getCurrentLuceneDoc();
+			if ("test4".equals(doc.get("fromInputFile")))
+				doc.removeField(ComplexFieldUtil.structureIndexIdField("contents"));
+		}
+	}
+
+	private Searcher createIndex(String name, String fieldConfig, Class<? extends MetadataFetcher> metadataFetcher) throws Exception {
+		File indexDir = new File(dir, name);
+		File template = null;
+		if (fieldConfig != null) {
+			template = new File(dir, name + ".json");
+			FileUtils.write(template, "{ \"fieldInfo\": { \"complexFields\": { \"contents\": "
+					+ "{ \"mainProperty\": \"word\", " + fieldConfig + " } } } }", "utf-8");
+		}
+		Indexer indexer = new Indexer(indexDir, true, DocIndexerExample.class, template);
+		indexer.setListener(new IndexListenerDevNull());
+		if (metadataFetcher != null)
+			indexer.setIndexerParam(Collections.singletonMap("metadataFetcherClass", metadataFetcher.getName()));
+		try {
+			for (int i = 0; i < testData.length; i++) {
+				indexer.index("test" + (i + 1), new StringReader(testData[i]));
+			}
+		} finally {
+			indexer.close();
+		}
+		return Searcher.open(indexDir);
+	}
+
+	private static List<String> find(Searcher searcher, String query) throws Exception {
+		searcher.hitsSettings().setContextSize(1);
+		return TestIndex.getConcordances(searcher.find(CorpusQueryLanguageParser.parse(query)));
+	}
+
+	@Test
+	public void testQueries() throws Exception {
+		withStructureIndex = createIndex("with", "\"structureIndex\": true");
+		withoutStructureIndex = createIndex("without", null);
+		Assert.assertNotNull(withStructureIndex.getStructureIndex("contents"));
+		Assert.assertNull(withoutStructureIndex.getStructureIndex("contents"));
+		Assert.assertTrue(withStructureIndex.getIndexStructure().getComplexFieldDesc("contents").hasStructureIndex());
+
+		for (String query: queries) {
+			Assert.assertEquals(query, find(withoutStructureIndex, query), find(withStructureIndex, query));
+		}
+		Assert.assertEquals(Arrays.asList("[The] quick", "over [the] lazy", "May [the] Force"),
+				find(withStructureIndex, "'the' within <entity/>"));
+		Assert.assertEquals(2, find(withStructureIndex, "<s/> containing <entity/>").size());
+	}
+
+	@Test
+	public void testDocumentsWithoutStructureIndexId() throws Exception {
+		withStructureIndex = createIndex("with", "\"structureIndex\": true", RemoveStructureIndexId.class);
+		withoutStructureIndex = createIndex("without", null);
+		for (String query: queries) {
+			Assert.assertEquals(query, find(withoutStructureIndex, query), find(withStructureIndex, query));
+		}
+	}
+
+	@Test
+	public void testTagLengthPayloads() throws Exception {
+		withoutStructureIndex = createIndex("without", null);
+		withTagLengthPayloads = createIndex("length", "\"structureIndex\": true, \"tagLengthPayloads\": true");
+		Assert.assertTrue(withTagLengthPayloads.getIndexStructure().getComplexFieldDesc("contents").hasTagLengthPayloads());
+		String[] tagQueries = { "<s/>", "<entity/>", "<s/> containing 'the'", "'the' within <entity/>" };
+		for (String query: tagQueries) {
+			Assert.assertEquals(query, find(withoutStructureIndex, query), find(withTagLengthPayloads, query));
+		}
+	}
+
+}
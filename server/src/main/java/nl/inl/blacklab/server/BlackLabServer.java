@@ -23,10 +23,14 @@ import org.json.JSONException;
 import nl.inl.blacklab.search.RegexpTooLargeException;
 import nl.inl.blacklab.server.datastream.DataFormat;
 import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.datastream.ExportFormat;
+import nl.inl.blacklab.server.datastream.ExportWriter;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.exceptions.ConfigurationException;
+import nl.inl.blacklab.server.exceptions.IndexBeingOpened;
 import nl.inl.blacklab.server.exceptions.InternalServerError;
 import nl.inl.blacklab.server.requesthandlers.RequestHandler;
+import nl.inl.blacklab.server.requesthandlers.RequestHandlerStaticResponse;
 import nl.inl.blacklab.server.requesthandlers.Response;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
 import nl.inl.blacklab.server.search.SearchManager;
@@ -52,6 +56,18 @@ public class BlackLabServer extends HttpServlet {
 
 		logger.info("Starting BlackLab Server...");
 		super.init();
+
+		// Read the config now, so we can start opening our indices
+		// (if this fails, we'll try again and report the error on the first request)
+		try {
+			readConfig();
+			configRead = true;
+		} catch (BlsException e) {
+			logger.error("Could not read configuration: " + e.getMessage());
+		} catch (RuntimeException e) {
+			logger.error("Could not read configuration", e);
+		}
+
 		logger.info("BlackLab Server ready.");
 	}
 
@@ -177,6 +193,26 @@ public class BlackLabServer extends HttpServlet {
 		boolean debugMode = searchManager.config().isDebugMode(request.getRemoteAddr());
 		RequestHandler requestHandler = RequestHandler.create(this, request, debugMode);
 
+		long startTime = System.nanoTime();
+		try {
+			handleRequest(requestHandler, request, responseObject, debugMode);
+		} finally {
+			String handlerName = requestHandler.getClass().getSimpleName().replaceFirst("^RequestHandler", "");
+			searchManager.getMetrics().histogram("blacklab_request_duration_seconds", "Time spent handling requests, per request handler",
+					"handler", handlerName).observeNanos(System.nanoTime() - startTime);
+		}
+	}
+
+	/**
+	 * Let the request handler handle the request and send the response.
+	 *
+	 * @param requestHandler the request handler chosen for this request
+	 * @param request HTTP request object
+	 * @param responseObject where to write our response
+	 * @param debugMode debug mode request? Allows extra parameters to be used
+	 */
+	private void handleRequest(RequestHandler requestHandler, HttpServletRequest request, HttpServletResponse responseObject, boolean debugMode) {
+
 		// === Figure stuff out about the request
 		DataFormat outputType = requestHandler.getOverrideType();
 		//DataFormat outputType = response.getOverrideType(); // some responses override the user's request (i.e. article XML)
@@ -211,7 +247,19 @@ public class BlackLabServer extends HttpServlet {
 			callbackFunction = "";
 		} else {
 			try {
-				httpCode = requestHandler.handle(ds);
+				ExportFormat exportFormat = ServletUtil.getExportFormat(request);
+				if (exportFormat == null || requestHandler instanceof RequestHandlerStaticResponse) {
+					httpCode = requestHandler.handle(ds);
+				} else if (!requestHandler.canExport()) {
+					httpCode = Response.badRequest(es, "EXPORT_NOT_SUPPORTED", "Output format '" + ServletUtil.getParameter(request, "outputformat", "") + "' is only supported for hits, grouped hits and docs.");
+				} else {
+					handleExport(requestHandler, exportFormat, responseObject, cacheTime);
+					return;
+				}
+			} catch (IndexBeingOpened e) {
+				// Tell the client when to try again
+				responseObject.setHeader("Retry-After", Integer.toString((e.getCheckAgainMs() + 999) / 1000));
+				httpCode = Response.indexBeingOpened(es, e);
 			} catch (InternalServerError e) {
 				String msg = ServletUtil.internalErrorMessage(e, debugMode, e.getInternalErrorCode());
 				httpCode = Response.error(es, e.getBlsErrorCode(), msg, e.getHttpStatusCode());
@@ -230,16 +278,17 @@ public class BlackLabServer extends HttpServlet {
 		// === Write the response headers
 
 		// Write HTTP headers (status code, encoding, content type and cache)
+		boolean errorOccurred = errorBuf.getBuffer().length() > errorBufLengthBefore;
 		if (!isJsonp) // JSONP request always returns 200 OK because otherwise script doesn't load
 			responseObject.setStatus(httpCode);
 		responseObject.setCharacterEncoding(OUTPUT_ENCODING.name().toLowerCase());
-		responseObject.setContentType(ServletUtil.getContentType(outputType));
+		String contentType = errorOccurred ? null : requestHandler.getOverrideContentType();
+		responseObject.setContentType(contentType == null ? ServletUtil.getContentType(outputType) : contentType);
 		ServletUtil.writeCacheHeaders(responseObject, cacheTime);
 
 		// === Write the response that was captured in buf
 		try {
 			Writer realOut = new OutputStreamWriter(responseObject.getOutputStream(), OUTPUT_ENCODING);
-			boolean errorOccurred = errorBuf.getBuffer().length() > errorBufLengthBefore;
 			StringWriter writeWhat = errorOccurred ? errorBuf : buf;
 			realOut.write(writeWhat.toString());
 			realOut.flush();
@@ -251,6 +300,43 @@ public class BlackLabServer extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Stream all results of the request straight to the client in an export format.
+	 *
+	 * If an error occurs before we've started sending the results, we throw
+	 * it so it can be reported as usual. After that, all we can do is log it
+	 * (the client will receive a truncated export).
+	 *
+	 * @param requestHandler the request handler (must support exporting)
+	 * @param exportFormat the export format
+	 * @param responseObject where to write our response
+	 * @param cacheTime how long the client may cache the response
+	 * @throws BlsException if the query couldn't be executed
+	 */
+	private static void handleExport(RequestHandler requestHandler, ExportFormat exportFormat, HttpServletResponse responseObject, int cacheTime) throws BlsException {
+		responseObject.setStatus(RequestHandler.HTTP_OK);
+		if (exportFormat != ExportFormat.BINARY)
+			responseObject.setCharacterEncoding(OUTPUT_ENCODING.name().toLowerCase());
+		responseObject.setContentType(exportFormat.getContentType());
+		responseObject.setHeader("Content-Disposition", "attachment; filename=\"results." + exportFormat.getFileExtension() + "\"");
+		ServletUtil.writeCacheHeaders(responseObject, cacheTime);
+		try {
+			requestHandler.export(ExportWriter.create(exportFormat, responseObject.getOutputStream()));
+		} catch (IOException e) {
+			// Client cancelled the request midway through.
+			// This is okay, don't raise the alarm.
+			logger.debug("(couldn't send export, client probably cancelled the request)");
+		} catch (BlsException | RuntimeException e) {
+			if (responseObject.isCommitted()) {
+				logger.error("Error while exporting results; export is incomplete", e);
+				return;
+			}
+			// Nothing sent yet; clear our headers and report the error as usual
+			responseObject.reset();
+			throw e;
+		}
+	}
+
 	private void readConfig() throws BlsException {
 		try (InputStream is = openConfigFile()) {
 			searchManager = new SearchManager(Json.read(is, CONFIG_ENCODING));
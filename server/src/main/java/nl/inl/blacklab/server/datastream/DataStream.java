@@ -2,7 +2,9 @@ package nl.inl.blacklab.server.datastream;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import nl.inl.blacklab.server.util.ServletUtil;
 
@@ -104,6 +106,12 @@ public abstract class DataStream {
 		error("INTERNAL_ERROR", ServletUtil.internalErrorMessage(code));
 	}
 
+	/** Maximum length of strings for which we cache the escaped version */
+	private static final int MAX_CACHED_STRING_LENGTH = 100;
+
+	/** Maximum number of escaped strings to cache (when full, we clear the cache) */
+	private static final int MAX_ESCAPE_CACHE_SIZE = 10000;
+
 	PrintWriter out;
 
 	int indent = 0;
@@ -112,9 +120,17 @@ public abstract class DataStream {
 
 	boolean prettyPrintPref;
 
-	public DataStream(PrintWriter out, boolean prettyPrint) {
+	/** How to escape keys and values */
+	private Escaper escaper;
+
+	/** Escaped versions of (short) strings that needed escaping.
+	 *  Keys and term strings in KWICs are repeated a lot. */
+	private Map<String, String> escapeCache = new HashMap<>();
+
+	DataStream(PrintWriter out, boolean prettyPrint, Escaper escaper) {
 		this.out = out;
 		this.prettyPrintPref = this.prettyPrint = prettyPrint;
+		this.escaper = escaper;
 	}
 
 	DataStream print(String str) {
@@ -122,6 +138,34 @@ public abstract class DataStream {
 		return this;
 	}
 
+	/**
+	 * Print an escaped string.
+	 *
+	 * Strings that don't need escaping are written as is. For short strings
+	 * that do, we remember the escaped version.
+	 *
+	 * @param str the string to escape
+	 * @return this object
+	 */
+	DataStream printEscaped(String str) {
+		if (str == null)
+			return print(str);
+		int firstToEscape = escaper.firstToEscape(str);
+		if (firstToEscape < 0 || str.length() > MAX_CACHED_STRING_LENGTH) {
+			escaper.write(out, str, firstToEscape);
+		} else {
+			String escaped = escapeCache.get(str);
+			if (escaped == null) {
+				escaped = escaper.escape(str);
+				if (escapeCache.size() >= MAX_ESCAPE_CACHE_SIZE)
+					escapeCache.clear();
+				escapeCache.put(str, escaped);
+			}
+			out.write(escaped);
+		}
+		return this;
+	}
+
 	DataStream print(long value) {
 		out.print(value);
 		return this;
@@ -305,6 +349,16 @@ public abstract class DataStream {
 		return print(value);
 	}
 
+	/**
+	 * Get the writer we're writing to, so large plain content
+	 * can be written to it directly.
+	 *
+	 * @return the writer
+	 */
+	public PrintWriter getWriter() {
+		return out;
+	}
+
 	public static void main(String[] args) {
 		PrintWriter out = new PrintWriter(System.out);
 
@@ -3,8 +3,6 @@ package nl.inl.blacklab.server.datastream;
 import java.io.PrintWriter;
 import java.util.List;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-
 /**
  * Class to stream out JSON data.
  *
@@ -22,7 +20,7 @@ public class DataStreamJson extends DataStream {
 	boolean firstEntry = true;
 
 	public DataStreamJson(PrintWriter out, boolean prettyPrint, String jsonpCallback) {
-		super(out, prettyPrint);
+		super(out, prettyPrint, Escaper.JSON);
 		this.jsonpCallback = jsonpCallback;
 		isJsonp = jsonpCallback != null && jsonpCallback.length() > 0;
 	}
@@ -92,7 +90,7 @@ public class DataStreamJson extends DataStream {
 
 	@Override
 	public DataStream startEntry(String key) {
-		return optSep().newlineIndent().print("\"").print(StringEscapeUtils.escapeJson(key)).print("\":").space();
+		return optSep().newlineIndent().print("\"").printEscaped(key).print("\":").space();
 	}
 
 	@Override
@@ -124,15 +122,15 @@ public class DataStreamJson extends DataStream {
 			optSep();
 			newlineIndent();
 			String name = names.get(k);
-			print("\"").print(StringEscapeUtils.escapeJson(name)).print("\":[");
+			print("\"").printEscaped(name).print("\":[");
 			for (int i = 0; i < numberOfWords; i++) {
 				if (i > 0)
 					print(",");
 				int vIndex = i * valuesPerWord;
 				String value = values.get(vIndex + k);
-				print("\"").print(StringEscapeUtils.escapeJson(value)).print("\"");
+				print("\"").printEscaped(value).print("\"");
 			}
-			out.append("]");
+			print("]");
 		}
 		return closebl("}");
 	}
@@ -140,7 +138,7 @@ public class DataStreamJson extends DataStream {
 	@Override
 	public DataStream value(String value) {
 		return value == null ? print("null") :
-			print("\"").print(StringEscapeUtils.escapeJson(value)).print("\"");
+			print("\"").printEscaped(value).print("\"");
 	}
 
 	@Override
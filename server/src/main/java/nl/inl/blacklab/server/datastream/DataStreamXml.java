@@ -4,8 +4,6 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-
 /**
  * Class to stream out XML data.
  *
@@ -17,7 +15,7 @@ public class DataStreamXml extends DataStream {
 	List<String> tagStack = new ArrayList<>();
 
 	public DataStreamXml(PrintWriter out, boolean prettyPrint) {
-		super(out, prettyPrint);
+		super(out, prettyPrint, Escaper.XML);
 	}
 
 	private DataStream startOpenEl(String name) {
@@ -26,7 +24,7 @@ public class DataStreamXml extends DataStream {
 	}
 
 	private DataStream attr(String key, String value) {
-		return print(" ").print(key).print("=\"").print(StringEscapeUtils.escapeXml10(value)).print("\"");
+		return print(" ").print(key).print("=\"").printEscaped(value).print("\"");
 	}
 
 	private DataStream endOpenEl() {
@@ -221,16 +219,16 @@ public class DataStreamXml extends DataStream {
 			int vIndex = i * valuesPerWord;
 			int j = 0;
 			indent();
-			print(StringEscapeUtils.escapeXml10(values.get(vIndex)));
+			printEscaped(values.get(vIndex));
 			print("<w");
 			for (int k = 1; k < names.size() - 1; k++) {
 				String name = names.get(k);
 				String value = values.get(vIndex + 1 + j);
-				print(" ").print(name).print("=\"").print(StringEscapeUtils.escapeXml10(value)).print("\"");
+				print(" ").print(name).print("=\"").printEscaped(value).print("\"");
 				j++;
 			}
 			print(">");
-			print(StringEscapeUtils.escapeXml10(values.get(vIndex + 1 + j)));
+			printEscaped(values.get(vIndex + 1 + j));
 			print("</w>");
 			newline();
 		}
@@ -243,7 +241,7 @@ public class DataStreamXml extends DataStream {
 		if (value == null)
 			print("(null)");
 		else
-			print(StringEscapeUtils.escapeXml10(value));
+			printEscaped(value);
 		return newline();
 	}
 
@@ -0,0 +1,208 @@
+package nl.inl.blacklab.server.datastream;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Escapes strings for JSON or XML, writing straight to the output.
+ *
+ * Gives the same results as StringEscapeUtils.escapeJson() and
+ * escapeXml10(), but doesn't create any objects. We look up what to do
+ * with each character in a table and write runs of characters that don't
+ * need escaping in one go.
+ */
+abstract class Escaper {
+
+	/** Escapes like StringEscapeUtils.escapeJson() */
+	static final Escaper JSON = new Escaper() {
+
+		/** Replacements for ASCII characters, or null if the character needn't be escaped */
+		private final String[] table = new String[128];
+
+		{
+			for (char c = 0; c < 32; c++)
+				table[c] = String.format("\\u%04X", (int) c);
+			table['\b'] = "\\b";
+			table['\n'] = "\\n";
+			table['\t'] = "\\t";
+			table['\f'] = "\\f";
+			table['\r'] = "\\r";
+			table['"'] = "\\\"";
+			table['\\'] = "\\\\";
+			table['/'] = "\\/";
+		}
+
+		@Override
+		boolean needsEscaping(char c) {
+			return c >= 128 || table[c] != null;
+		}
+
+		@Override
+		void writeEscaped(PrintWriter out, char c) {
+			if (c < 128) {
+				out.write(table[c]);
+			} else {
+				// Non-ASCII (including surrogates): Java-style unicode escape
+				out.write('\\');
+				out.write('u');
+				out.write(HEX_DIGITS[(c >> 12) & 0xF]);
+				out.write(HEX_DIGITS[(c >> 8) & 0xF]);
+				out.write(HEX_DIGITS[(c >> 4) & 0xF]);
+				out.write(HEX_DIGITS[c & 0xF]);
+			}
+		}
+
+	};
+
+	/** Escapes like StringEscapeUtils.escapeXml10() */
+	static final Escaper XML = new Escaper() {
+
+		/** Replacements for characters up to 0xA0 ("" means: remove), or null if the character needn't be escaped */
+		private final String[] table = new String[0xA0];
+
+		{
+			for (char c = 0; c < 32; c++) {
+				if (c != '\t' && c != '\n' && c != '\r')
+					table[c] = "";
+			}
+			table['"'] = "&quot;";
+			table['&'] = "&amp;";
+			table['<'] = "&lt;";
+			table['>'] = "&gt;";
+			table['\''] = "&apos;";
+			for (char c = 0x7f; c <= 0x9f; c++) {
+				if (c != 0x85)
+					table[c] = "&#" + (int) c + ";";
+			}
+		}
+
+		@Override
+		boolean needsEscaping(char c) {
+			if (c < 0xA0)
+				return table[c] != null;
+			return Character.isSurrogate(c) || c == '\uFFFE' || c == '\uFFFF';
+		}
+
+		@Override
+		void writeEscaped(PrintWriter out, char c) {
+			if (c < 0xA0)
+				out.write(table[c]);
+			// (other characters that need escaping are removed)
+		}
+
+		@Override
+		int writeEscaped(PrintWriter out, String str, int i) {
+			char c = str.charAt(i);
+			if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1))) {
+				// Valid surrogate pair; keep it
+				out.write(str, i, 2);
+				return 2;
+			}
+			writeEscaped(out, c);
+			return 1;
+		}
+
+	};
+
+	static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	/**
+	 * Does this character need escaping?
+	 *
+	 * @param c the character
+	 * @return true if it does
+	 */
+	abstract boolean needsEscaping(char c);
+
+	/**
+	 * Write the escaped version of a character.
+	 *
+	 * @param out where to write
+	 * @param c the character
+	 */
+	abstract void writeEscaped(PrintWriter out, char c);
+
+	/**
+	 * Write the escaped version of the character(s) at a position.
+	 *
+	 * @param out where to write
+	 * @param str the string
+	 * @param i position of a character that needs escaping
+	 * @return number of characters handled
+	 */
+	int writeEscaped(PrintWriter out, String str, int i) {
+		writeEscaped(out, str.charAt(i));
+		return 1;
+	}
+
+	/**
+	 * Find the first character that needs escaping.
+	 *
+	 * @param str the string
+	 * @return its position, or -1 if the string can be written as is
+	 */
+	int firstToEscape(String str) {
+		for (int i = 0; i < str.length(); i++) {
+			if (needsEscaping(str.charAt(i)))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Write an escaped string.
+	 *
+	 * @param out where to write
+	 * @param str the string
+	 */
+	void write(PrintWriter out, String str) {
+		write(out, str, firstToEscape(str));
+	}
+
+	/**
+	 * Write an escaped string.
+	 *
+	 * @param out where to write
+	 * @param str the string
+	 * @param firstToEscape position of the first character that needs escaping (see firstToEscape())
+	 */
+	void write(PrintWriter out, String str, int firstToEscape) {
+		if (firstToEscape < 0) {
+			out.write(str);
+			return;
+		}
+		int length = str.length();
+		int runStart = 0;
+		int i = firstToEscape;
+		while (i < length) {
+			if (needsEscaping(str.charAt(i))) {
+				if (i > runStart)
+					out.write(str, runStart, i - runStart);
+				i += writeEscaped(out, str, i);
+				runStart = i;
+			} else {
+				i++;
+			}
+		}
+		if (runStart < length)
+			out.write(str, runStart, length - runStart);
+	}
+
+	/**
+	 * Escape a string.
+	 *
+	 * @param str the string
+	 * @return the escaped string
+	 */
+	String escape(String str) {
+		int firstToEscape = firstToEscape(str);
+		if (firstToEscape < 0)
+			return str;
+		StringWriter sw = new StringWriter(str.length() + 16);
+		PrintWriter pw = new PrintWriter(sw);
+		write(pw, str, firstToEscape);
+		pw.flush();
+		return sw.toString();
+	}
+
+}
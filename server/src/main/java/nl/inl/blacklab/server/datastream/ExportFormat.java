@@ -0,0 +1,61 @@
+package nl.inl.blacklab.server.datastream;
+
+/**
+ * Formats for exporting (large) result sets in bulk.
+ *
+ * Unlike DataFormat, these only contain the results themselves (no summary),
+ * and are streamed to the client as they are produced.
+ */
+public enum ExportFormat {
+
+	/** Tab-separated values, for spreadsheets and command-line tools */
+	TSV("text/tab-separated-values", "tsv"),
+
+	/** Comma-separated values (RFC 4180), for spreadsheets */
+	CSV("text/csv", "csv"),
+
+	/** Compact length-prefixed binary format, for programmatic clients (see ExportWriter) */
+	BINARY("application/octet-stream", "bin");
+
+	private String contentType;
+
+	private String fileExtension;
+
+	ExportFormat(String contentType, String fileExtension) {
+		this.contentType = contentType;
+		this.fileExtension = fileExtension;
+	}
+
+	/**
+	 * Get the MIME content type for this format.
+	 *
+	 * @return the content type
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Get the file extension to suggest to the client.
+	 *
+	 * @return the file extension (without period)
+	 */
+	public String getFileExtension() {
+		return fileExtension;
+	}
+
+	/**
+	 * Translate the value of the outputformat parameter to an export format.
+	 *
+	 * @param typeString the outputformat string
+	 * @return the export format, or null if this is not an export format
+	 */
+	public static ExportFormat fromString(String typeString) {
+		for (ExportFormat format: values()) {
+			if (format.fileExtension.equalsIgnoreCase(typeString) || format.name().equalsIgnoreCase(typeString))
+				return format;
+		}
+		return null;
+	}
+
+}
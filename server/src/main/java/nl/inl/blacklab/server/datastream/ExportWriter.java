@@ -0,0 +1,312 @@
+package nl.inl.blacklab.server.datastream;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes a table of results in one of the export formats.
+ *
+ * Results are written row by row, straight to the output stream, so a
+ * large result set can be sent to the client while we're still retrieving it
+ * and never has to be kept in memory as a whole.
+ *
+ * The binary format is: the magic bytes "BLX1", a varint with the number of
+ * columns, the column names (as string cells), then all the rows (each with
+ * one cell per column) until the end of the stream. Each cell starts with an
+ * unsigned varint n: if n is even, it is a string of n/2 UTF-8 bytes that
+ * follow; if n is odd, (n-1)/2 is the zigzag-encoded value of an integer.
+ * (For a 64-bit integer, n may need up to 65 bits, i.e. 10 varint bytes.)
+ */
+public abstract class ExportWriter {
+
+	/** Encoding for the text formats and the binary format's strings */
+	static final Charset ENCODING = StandardCharsets.UTF_8;
+
+	/** Start of the binary format (includes the format version) */
+	static final byte[] BINARY_MAGIC = { 'B', 'L', 'X', '1' };
+
+	/**
+	 * Create an export writer.
+	 *
+	 * @param format format to write
+	 * @param out where to write to
+	 * @return the export writer
+	 */
+	public static ExportWriter create(ExportFormat format, OutputStream out) {
+		switch (format) {
+		case TSV:
+			return new ExportWriterTsv(out);
+		case CSV:
+			return new ExportWriterCsv(out);
+		case BINARY:
+		default:
+			return new ExportWriterBinary(out);
+		}
+	}
+
+	/** Number of values in the current row so far */
+	private int valuesInRow = 0;
+
+	/**
+	 * Write the header row with the column names.
+	 *
+	 * Must be called once, before writing any values.
+	 *
+	 * @param columnNames the column names
+	 * @throws IOException on write error
+	 */
+	public abstract void header(List<String> columnNames) throws IOException;
+
+	/**
+	 * Write a string value in the current row.
+	 *
+	 * @param value the value (null is written as the empty string)
+	 * @return this writer
+	 * @throws IOException on write error
+	 */
+	public ExportWriter value(String value) throws IOException {
+		writeString(value == null ? "" : value, valuesInRow == 0);
+		valuesInRow++;
+		return this;
+	}
+
+	/**
+	 * Write a numeric value in the current row.
+	 *
+	 * @param value the value
+	 * @return this writer
+	 * @throws IOException on write error
+	 */
+	public ExportWriter value(long value) throws IOException {
+		writeLong(value, valuesInRow == 0);
+		valuesInRow++;
+		return this;
+	}
+
+	/**
+	 * End the current row.
+	 *
+	 * @throws IOException on write error
+	 */
+	public void endRow() throws IOException {
+		writeEndRow();
+		valuesInRow = 0;
+	}
+
+	/**
+	 * Send everything written so far to the client.
+	 *
+	 * @throws IOException on write error
+	 */
+	public abstract void flush() throws IOException;
+
+	abstract void writeString(String value, boolean firstInRow) throws IOException;
+
+	abstract void writeLong(long value, boolean firstInRow) throws IOException;
+
+	abstract void writeEndRow() throws IOException;
+
+	/**
+	 * Base class for the text formats.
+	 */
+	abstract static class ExportWriterText extends ExportWriter {
+
+		Writer out;
+
+		private String separator;
+
+		private String endOfRow;
+
+		ExportWriterText(OutputStream out, String separator, String endOfRow) {
+			this.out = new BufferedWriter(new OutputStreamWriter(out, ENCODING));
+			this.separator = separator;
+			this.endOfRow = endOfRow;
+		}
+
+		@Override
+		public void header(List<String> columnNames) throws IOException {
+			for (String name: columnNames) {
+				value(name);
+			}
+			endRow();
+		}
+
+		@Override
+		void writeString(String value, boolean firstInRow) throws IOException {
+			if (!firstInRow)
+				out.write(separator);
+			writeEscaped(value);
+		}
+
+		@Override
+		void writeLong(long value, boolean firstInRow) throws IOException {
+			if (!firstInRow)
+				out.write(separator);
+			out.write(Long.toString(value));
+		}
+
+		@Override
+		void writeEndRow() throws IOException {
+			out.write(endOfRow);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		abstract void writeEscaped(String value) throws IOException;
+
+	}
+
+	/**
+	 * Tab-separated values.
+	 *
+	 * Backslash, tab and newlines in values are escaped as \\, \t, \n and \r.
+	 */
+	static class ExportWriterTsv extends ExportWriterText {
+
+		ExportWriterTsv(OutputStream out) {
+			super(out, "\t", "\n");
+		}
+
+		@Override
+		void writeEscaped(String value) throws IOException {
+			int runStart = 0;
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				String replacement;
+				switch (c) {
+				case '\\': replacement = "\\\\"; break;
+				case '\t': replacement = "\\t"; break;
+				case '\n': replacement = "\\n"; break;
+				case '\r': replacement = "\\r"; break;
+				default: continue;
+				}
+				out.write(value, runStart, i - runStart);
+				out.write(replacement);
+				runStart = i + 1;
+			}
+			out.write(value, runStart, value.length() - runStart);
+		}
+
+	}
+
+	/**
+	 * Comma-separated values, as described in RFC 4180.
+	 *
+	 * Values containing a comma, quote or newline are quoted, and quotes
+	 * in them are doubled.
+	 */
+	static class ExportWriterCsv extends ExportWriterText {
+
+		ExportWriterCsv(OutputStream out) {
+			super(out, ",", "\r\n");
+		}
+
+		@Override
+		void writeEscaped(String value) throws IOException {
+			boolean needsQuotes = false;
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+					needsQuotes = true;
+					break;
+				}
+			}
+			if (!needsQuotes) {
+				out.write(value);
+				return;
+			}
+			out.write('"');
+			int runStart = 0;
+			for (int i = 0; i < value.length(); i++) {
+				if (value.charAt(i) == '"') {
+					out.write(value, runStart, i + 1 - runStart);
+					out.write('"');
+					runStart = i + 1;
+				}
+			}
+			out.write(value, runStart, value.length() - runStart);
+			out.write('"');
+		}
+
+	}
+
+	/**
+	 * Compact length-prefixed binary format (see class description).
+	 */
+	static class ExportWriterBinary extends ExportWriter {
+
+		private OutputStream out;
+
+		ExportWriterBinary(OutputStream out) {
+			this.out = new BufferedOutputStream(out);
+		}
+
+		@Override
+		public void header(List<String> columnNames) throws IOException {
+			out.write(BINARY_MAGIC);
+			writeVarInt(columnNames.size());
+			for (String name: columnNames) {
+				writeString(name, false);
+			}
+		}
+
+		@Override
+		void writeString(String value, boolean firstInRow) throws IOException {
+			byte[] bytes = value.getBytes(ENCODING);
+			writeVarInt((long)bytes.length << 1);
+			out.write(bytes);
+		}
+
+		@Override
+		void writeLong(long value, boolean firstInRow) throws IOException {
+			// The cell is the varint (zigzag << 1) | 1, which doesn't fit in a long
+			// if zigzag uses all 64 bits; write the first byte (tag bit and lowest 6
+			// bits of zigzag) ourselves, then the remaining bits.
+			long zigzag = (value << 1) ^ (value >> 63);
+			int firstByte = (int)((zigzag & 0x3F) << 1) | 1;
+			long rest = zigzag >>> 6;
+			if (rest == 0) {
+				out.write(firstByte);
+			} else {
+				out.write(firstByte | 0x80);
+				writeVarInt(rest);
+			}
+		}
+
+		@Override
+		void writeEndRow() {
+			// Rows always have the same number of cells; nothing to write
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		/**
+		 * Write an unsigned varint (7 bits per byte, least significant first).
+		 *
+		 * @param value the value
+		 * @throws IOException on write error
+		 */
+		private void writeVarInt(long value) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				out.write((int)((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.write((int)value);
+		}
+
+	}
+
+}
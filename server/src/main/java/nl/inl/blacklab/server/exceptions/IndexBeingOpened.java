@@ -0,0 +1,23 @@
+package nl.inl.blacklab.server.exceptions;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Thrown when the requested index is still being opened; the client
+ * should try again later.
+ */
+public class IndexBeingOpened extends BlsException {
+
+	/** How long the client should wait before trying again */
+	private int checkAgainMs;
+
+	public IndexBeingOpened(String indexName, int checkAgainMs) {
+		super(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "INDEX_OPENING", "The index '" + indexName + "' is being opened. Please try again in " + checkAgainMs + " ms.");
+		this.checkAgainMs = checkAgainMs;
+	}
+
+	public int getCheckAgainMs() {
+		return checkAgainMs;
+	}
+
+}
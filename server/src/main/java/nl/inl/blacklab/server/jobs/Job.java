@@ -2,6 +2,7 @@ package nl.inl.blacklab.server.jobs;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -302,18 +303,35 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 			inputJob = searchMan.search(user, inputDesc, false);
 			try {
 				waitForJobToFinish(inputJob);
-				performSearch();
+				performSearchTimed();
 			} finally {
 				inputJob.decrRef();
 				inputJob = null;
 			}
 		} else {
 			// No input job.
-			performSearch();
+			performSearchTimed();
 		}
 
 	}
 
+	/**
+	 * Call performSearch(), recording how long it took in the job latency metric.
+	 *
+	 * (doesn't include the time spent waiting for the input job)
+	 *
+	 * @throws BlsException on error
+	 */
+	private void performSearchTimed() throws BlsException {
+		long start = System.nanoTime();
+		try {
+			performSearch();
+		} finally {
+			searchMan.getMetrics().histogram("blacklab_job_duration_seconds", "Time spent performing searches, per job class",
+					"job", getClass().getSimpleName()).observeNanos(System.nanoTime() - start);
+		}
+	}
+
 	/**
 	 * @throws BlsException on error
 	 */
@@ -440,6 +458,59 @@ public abstract class Job implements Comparable<Job>, Prioritizable {
 		return 1000000;
 	}
 
+	/**
+	 * How many bytes would the serialized results of this job take?
+	 *
+	 * Used by the cache to decide if a finished job can be spilled to disk
+	 * instead of being discarded.
+	 *
+	 * @return number of bytes, or -1 if this job's results can't be spilled
+	 */
+	public long spillSizeBytes() {
+		return -1;
+	}
+
+	/**
+	 * Write the results of this (finished) job to a buffer.
+	 *
+	 * The buffer must have at least spillSizeBytes() bytes remaining.
+	 *
+	 * @param buf where to write the results
+	 * @return true if the results were written, false if this job's results can't be spilled
+	 */
+	public boolean spill(ByteBuffer buf) {
+		return false;
+	}
+
+	/**
+	 * Read previously spilled results from a buffer.
+	 *
+	 * @param buf the buffer to read from
+	 * @return true if successful, false if the results couldn't be restored
+	 */
+	protected boolean restoreResults(ByteBuffer buf) {
+		return false;
+	}
+
+	/**
+	 * Restore previously spilled results into this new job, instead of performing it.
+	 *
+	 * If successful, the job will be marked as finished.
+	 *
+	 * @param buf the buffer to read from
+	 * @return true if successful, false if the results couldn't be restored
+	 */
+	public boolean restoreSpilledResults(ByteBuffer buf) {
+		if (performCalled)
+			throw new RuntimeException("Already performing search!");
+		if (!restoreResults(buf))
+			return false;
+		startedAt = setLevelRunningAt = System.currentTimeMillis();
+		performCalled = true;
+		setFinished();
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return id + ": " + jobDesc.toString();
@@ -6,6 +6,7 @@ import org.apache.lucene.search.BooleanQuery.TooManyClauses;
 import org.apache.lucene.search.Query;
 
 import nl.inl.blacklab.search.HitsSettings;
+import nl.inl.blacklab.search.QueryProfile;
 import nl.inl.blacklab.search.RegexpTooLargeException;
 import nl.inl.blacklab.search.TextPattern;
 import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
@@ -115,7 +116,13 @@ public class JobHits extends JobWithHits {
 			if (searchSett.isDebugMode() && searchSett.getFiMatchNfaFactor() != -1)
 				ClauseCombinerNfa.setNfaThreshold(searchSett.getFiMatchNfaFactor());
 
-			hits = searcher.find(textPattern, filter);
+			if (searchSett.isProfile()) {
+				String fieldName = searcher.getMainContentsFieldName();
+				hits = searcher.find(searcher.createSpanQuery(textPattern, fieldName, filter), new QueryProfile());
+				hits.settings().setConcordanceField(fieldName);
+			} else {
+				hits = searcher.find(textPattern, filter);
+			}
 
 			// Set the max retrieve/count value
 			MaxSettings maxSettings = jobDesc.getMaxSettings();
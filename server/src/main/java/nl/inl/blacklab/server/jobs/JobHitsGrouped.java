@@ -1,7 +1,11 @@
 package nl.inl.blacklab.server.jobs;
 
+import java.nio.ByteBuffer;
+
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.HitsSerializeUtil;
 import nl.inl.blacklab.search.grouping.HitGroups;
+import nl.inl.blacklab.search.grouping.HitGroupsSerializeUtil;
 import nl.inl.blacklab.search.grouping.HitProperty;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BadRequest;
@@ -92,6 +96,33 @@ public class JobHitsGrouped extends Job {
 		return hits;
 	}
 
+	@Override
+	public long spillSizeBytes() {
+		if (groups == null || !HitsSerializeUtil.canSerialize(hits) || !HitGroupsSerializeUtil.canSerialize(groups))
+			return -1;
+		return HitsSerializeUtil.sizeBytes(hits) + HitGroupsSerializeUtil.sizeBytes(groups);
+	}
+
+	@Override
+	public boolean spill(ByteBuffer buf) {
+		HitsSerializeUtil.write(hits, buf);
+		HitGroupsSerializeUtil.write(groups, buf);
+		return true;
+	}
+
+	@Override
+	protected boolean restoreResults(ByteBuffer buf) {
+		Hits restoredHits = HitsSerializeUtil.read(searcher, buf);
+		if (restoredHits == null)
+			return false;
+		HitGroups restoredGroups = HitGroupsSerializeUtil.read(restoredHits, buf);
+		if (restoredGroups == null)
+			return false;
+		hits = restoredHits;
+		groups = restoredGroups;
+		return true;
+	}
+
 	@Override
 	protected void dataStreamSubclassEntries(DataStream ds) {
 		ds	.entry("hitsRetrieved", hits == null ? -1 : hits.countSoFarHitsRetrieved())
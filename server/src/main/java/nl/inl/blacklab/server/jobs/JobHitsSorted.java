@@ -16,9 +16,34 @@ public class JobHitsSorted extends JobWithHits {
 
 		HitSortSettings sortSettings;
 
+		/** How many hits we need in sorted order right away, or -1 for all of them */
+		int numberOfHitsNeeded;
+
 		public JobDescHitsSorted(SearchParameters param, JobDescription hitsToSort, SearchSettings searchSettings, HitSortSettings sortSettings) {
+			this(param, hitsToSort, searchSettings, sortSettings, -1);
+		}
+
+		/**
+		 * Describe a sort job of which we initially only need the first hits.
+		 *
+		 * The number of hits needed is not part of the unique identifier; if a later
+		 * request needs more hits from the same (cached) job, the rest of the hits
+		 * will be sorted at that time.
+		 *
+		 * @param param search parameters
+		 * @param hitsToSort hits to sort
+		 * @param searchSettings search settings
+		 * @param sortSettings how to sort
+		 * @param numberOfHitsNeeded how many hits we need in sorted order right away, or -1 for all
+		 */
+		public JobDescHitsSorted(SearchParameters param, JobDescription hitsToSort, SearchSettings searchSettings, HitSortSettings sortSettings, int numberOfHitsNeeded) {
 			super(param, JobHitsSorted.class, hitsToSort, searchSettings);
 			this.sortSettings = sortSettings;
+			this.numberOfHitsNeeded = numberOfHitsNeeded;
+		}
+
+		public int getNumberOfHitsNeeded() {
+			return numberOfHitsNeeded;
 		}
 
 		@Override
@@ -54,8 +79,14 @@ public class JobHitsSorted extends JobWithHits {
 		Hits hitsUnsorted = ((JobWithHits)inputJob).getHits();
 		HitSortSettings sortSett = jobDesc.getHitSortSettings();
 		HitProperty sortProp = HitProperty.deserialize(hitsUnsorted, sortSett.sortBy());
+		int numberOfHitsNeeded = ((JobDescHitsSorted)jobDesc).getNumberOfHitsNeeded();
 		if (sortProp != null) {
-			hits = hitsUnsorted.sortedBy(sortProp, sortSett.reverse());
+			if (numberOfHitsNeeded >= 0) {
+				// We only need the first page right now; don't sort everything yet
+				hits = hitsUnsorted.partiallySortedBy(sortProp, sortSett.reverse(), numberOfHitsNeeded);
+			} else {
+				hits = hitsUnsorted.sortedBy(sortProp, sortSett.reverse());
+			}
 		} else {
 			// Be lenient of clients passing wrong sortBy values; simply ignore bad sort requests.
 			hits = hitsUnsorted;
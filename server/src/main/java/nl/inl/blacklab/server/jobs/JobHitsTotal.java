@@ -1,6 +1,7 @@
 package nl.inl.blacklab.server.jobs;
 
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.HitsProgressListener;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
@@ -29,7 +30,23 @@ public class JobHitsTotal extends Job {
 
 	}
 
-	private Hits hits = null;
+	/** How long to wait at most before checking progress again, in case we missed a notification (ms) */
+	private static final int MAX_PROGRESS_CHECK_INTERVAL_MS = 250;
+
+	private volatile Hits hits = null;
+
+	/** Notified when hits have been counted (see waitForProgress()) */
+	private final Object progressLock = new Object();
+
+	/** Wakes up threads waiting for progress */
+	private final HitsProgressListener progressListener = new HitsProgressListener() {
+		@Override
+		public void progress(Hits hits) {
+			synchronized (progressLock) {
+				progressLock.notifyAll();
+			}
+		}
+	};
 
 	public JobHitsTotal(SearchManager searchMan, User user, JobDescription par) throws BlsException {
 		super(searchMan, user, par);
@@ -41,7 +58,13 @@ public class JobHitsTotal extends Job {
 		// and get the final total through the getHits() method yourself.
 		hits = ((JobWithHits)inputJob).getHits();
 		setPriorityInternal(); // make sure hits has the right priority
-		hits.size();
+		hits.addProgressListener(progressListener);
+		try {
+			hits.size();
+		} finally {
+			hits.removeProgressListener(progressListener);
+			progressListener.progress(hits); // we're done; wake up any waiting threads
+		}
 		if (Thread.interrupted()) {
 			// We don't throw anymore because that will cause this error to re-throw even when we just
 			// want to look at a page of results. maxHitsCounted is set to true, however, so the application
@@ -67,6 +90,33 @@ public class JobHitsTotal extends Job {
 		return hits;
 	}
 
+	/**
+	 * Wait until the count has increased enough, or we're done counting.
+	 *
+	 * Lets clients long-poll for progress: we're woken up when more hits
+	 * have been counted, instead of the client having to repeat the request.
+	 *
+	 * @param hitsCountedBefore number of hits counted the client knows about
+	 * @param minIncrease how many more hits should be counted before we return
+	 * @param maxWaitMs how long to wait at most
+	 * @throws InterruptedException if the thread was interrupted
+	 */
+	public void waitForProgress(int hitsCountedBefore, int minIncrease, int maxWaitMs) throws InterruptedException {
+		long waitUntil = System.currentTimeMillis() + maxWaitMs;
+		while (true) {
+			// (check outside progressLock, so we never hold it while the Hits object might need its own lock)
+			Hits h = hits;
+			if (finished() || h != null && (h.doneFetchingHits() || h.countSoFarHitsCounted() >= (long)hitsCountedBefore + minIncrease))
+				return;
+			long waitMs = waitUntil - System.currentTimeMillis();
+			if (waitMs <= 0)
+				return;
+			synchronized (progressLock) {
+				progressLock.wait(Math.min(waitMs, MAX_PROGRESS_CHECK_INTERVAL_MS));
+			}
+		}
+	}
+
 	@Override
 	protected void dataStreamSubclassEntries(DataStream ds) {
 		ds	.entry("hitsCounted", hits != null ? hits.countSoFarHitsCounted() : -1);
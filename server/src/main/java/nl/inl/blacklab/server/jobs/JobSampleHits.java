@@ -1,15 +1,25 @@
 package nl.inl.blacklab.server.jobs;
 
 
+import org.apache.lucene.search.BooleanQuery.TooManyClauses;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.spans.SpanQuery;
+
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.HitsSample;
+import nl.inl.blacklab.search.HitsSettings;
+import nl.inl.blacklab.search.RegexpTooLargeException;
+import nl.inl.blacklab.search.TextPattern;
 import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.exceptions.InternalServerError;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
 import nl.inl.blacklab.server.search.SearchManager;
 
 /**
- * Sample hits from a Hits object
+ * Sample hits, either directly from a query (so we don't have to store all hits),
+ * or from the results of another job (e.g. when the hits have to be filtered first).
  */
 public class JobSampleHits extends JobWithHits {
 
@@ -17,11 +27,76 @@ public class JobSampleHits extends JobWithHits {
 
 		SampleSettings sampleSettings;
 
+		private String indexName;
+
+		private TextPattern pattern;
+
+		private Query filterQuery;
+
+		private MaxSettings maxSettings;
+
+		private ContextSettings contextSettings;
+
+		/**
+		 * Describe sampling the hits resulting from another job.
+		 *
+		 * @param param search parameters
+		 * @param hitsToSample hits to sample
+		 * @param searchSettings search settings
+		 * @param settings how to sample
+		 */
 		public JobDescSampleHits(SearchParameters param, JobDescription hitsToSample, SearchSettings searchSettings, SampleSettings settings) {
 			super(param, JobSampleHits.class, hitsToSample, searchSettings);
 			this.sampleSettings = settings;
 		}
 
+		/**
+		 * Describe sampling the hits of a pattern while it is executed.
+		 *
+		 * @param param search parameters
+		 * @param searchSettings search settings
+		 * @param indexName index to search
+		 * @param pattern pattern to search for
+		 * @param filterQuery document filter, or null for none
+		 * @param maxSettings max. hits to retrieve/count
+		 * @param contextSettings concordance settings
+		 * @param settings how to sample
+		 */
+		public JobDescSampleHits(SearchParameters param, SearchSettings searchSettings, String indexName, TextPattern pattern, Query filterQuery, MaxSettings maxSettings, ContextSettings contextSettings, SampleSettings settings) {
+			super(param, JobSampleHits.class, null, searchSettings);
+			this.indexName = indexName;
+			this.pattern = pattern;
+			this.filterQuery = filterQuery;
+			this.maxSettings = maxSettings;
+			this.contextSettings = contextSettings;
+			this.sampleSettings = settings;
+		}
+
+		@Override
+		public String getIndexName() {
+			return inputDesc == null ? indexName : super.getIndexName();
+		}
+
+		@Override
+		public TextPattern getPattern() {
+			return pattern;
+		}
+
+		@Override
+		public Query getFilterQuery() {
+			return filterQuery;
+		}
+
+		@Override
+		public MaxSettings getMaxSettings() {
+			return maxSettings;
+		}
+
+		@Override
+		public ContextSettings getContextSettings() {
+			return contextSettings;
+		}
+
 		@Override
 		public SampleSettings getSampleSettings() {
 			return sampleSettings;
@@ -29,12 +104,20 @@ public class JobSampleHits extends JobWithHits {
 
 		@Override
 		public String uniqueIdentifier() {
-			return super.uniqueIdentifier() + sampleSettings + ")";
+			String query = inputDesc != null ? "" : "index=" + indexName + ", patt=" + pattern + ", filter=" + filterQuery + ", " +
+					maxSettings + ", " + contextSettings + ", ";
+			return super.uniqueIdentifier() + query + sampleSettings + ")";
 		}
 
 		@Override
 		public void dataStreamEntries(DataStream ds) {
 			super.dataStreamEntries(ds);
+			if (inputDesc == null) {
+				ds	.entry("pattern", pattern)
+					.entry("filterQuery", filterQuery)
+					.entry("maxSettings", maxSettings)
+					.entry("contextSettings", contextSettings);
+			}
 			ds	.entry("sampleSettings", sampleSettings);
 		}
 
@@ -51,13 +134,49 @@ public class JobSampleHits extends JobWithHits {
 
 	@Override
 	public void performSearch() throws BlsException {
-		Hits inputHits = ((JobWithHits)inputJob).getHits();
-		SampleSettings sample = jobDesc.getSampleSettings();
-		if (sample.percentage() >= 0) {
-			hits = HitsSample.fromHits(inputHits, sample.percentage() / 100f, sample.seed());
-		} else if (sample.number() >= 0) {
-			hits = HitsSample.fromHits(inputHits, sample.number(), sample.seed());
+		if (inputJob != null) {
+			hits = sample(((JobWithHits)inputJob).getHits());
+			return;
+		}
+
+		TextPattern textPattern = jobDesc.getPattern();
+		if (textPattern == null)
+			throw new BadRequest("NO_PATTERN_GIVEN", "Text search pattern required. Please specify 'patt' parameter.");
+		try {
+			// Sample the hits while retrieving them, so we don't have to store all of them
+			String fieldName = searcher.getMainContentsFieldName();
+			SpanQuery query = searcher.createSpanQuery(textPattern, fieldName, jobDesc.getFilterQuery());
+
+			// Apply the limits while the hits are read, not afterwards
+			HitsSettings hitsSettings = new HitsSettings(searcher.hitsSettings(), false);
+			hitsSettings.setConcordanceField(fieldName);
+			MaxSettings maxSettings = jobDesc.getMaxSettings();
+			hitsSettings.setMaxHitsToRetrieve(maxSettings.maxRetrieve());
+			hitsSettings.setMaxHitsToCount(maxSettings.maxCount());
+			ContextSettings contextSettings = jobDesc.getContextSettings();
+			hitsSettings.setConcordanceType(contextSettings.concType());
+			hitsSettings.setContextSize(contextSettings.size());
+
+			SampleSettings sample = jobDesc.getSampleSettings();
+			if (sample.percentage() >= 0) {
+				hits = HitsSample.fromSpanQuery(searcher, query, sample.percentage() / 100f, sample.seed(), hitsSettings);
+			} else {
+				hits = HitsSample.fromSpanQuery(searcher, query, sample.number(), sample.seed(), hitsSettings);
+			}
+		} catch (RegexpTooLargeException e) {
+			throw new BadRequest("REGEXP_TOO_LARGE", "Regular expression too large.");
+		} catch (TooManyClauses e) {
+			throw new BadRequest("QUERY_TOO_BROAD", "Query too broad, too many matching terms. Please be more specific.");
+		} catch (RuntimeException e) {
+			throw new InternalServerError("Internal error", 15, e);
 		}
 	}
 
+	private Hits sample(Hits inputHits) {
+		SampleSettings sample = jobDesc.getSampleSettings();
+		if (sample.percentage() >= 0)
+			return HitsSample.fromHits(inputHits, sample.percentage() / 100f, sample.seed());
+		return HitsSample.fromHits(inputHits, sample.number(), sample.seed());
+	}
+
 }
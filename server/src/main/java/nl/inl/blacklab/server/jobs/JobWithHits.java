@@ -1,6 +1,9 @@
 package nl.inl.blacklab.server.jobs;
 
+import java.nio.ByteBuffer;
+
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.HitsSerializeUtil;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.search.SearchManager;
@@ -21,6 +24,28 @@ public class JobWithHits extends Job {
 		return hits;
 	}
 
+	@Override
+	public long spillSizeBytes() {
+		if (hits == null || !HitsSerializeUtil.canSerialize(hits))
+			return -1;
+		return HitsSerializeUtil.sizeBytes(hits);
+	}
+
+	@Override
+	public boolean spill(ByteBuffer buf) {
+		HitsSerializeUtil.write(hits, buf);
+		return true;
+	}
+
+	@Override
+	protected boolean restoreResults(ByteBuffer buf) {
+		Hits restoredHits = HitsSerializeUtil.read(searcher, buf);
+		if (restoredHits == null)
+			return false;
+		hits = restoredHits;
+		return true;
+	}
+
 	@Override
 	protected void dataStreamSubclassEntries(DataStream ds) {
 		ds	.entry("countHitsRetrieved", hits == null ? -1 : hits.countSoFarDocsRetrieved());
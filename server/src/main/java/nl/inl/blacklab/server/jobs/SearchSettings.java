@@ -11,11 +11,14 @@ public class SearchSettings {
 
 	private boolean useCache;
 
-	public SearchSettings(boolean debugMode, int fiMatchNfaFactor, boolean useCache) {
+	private boolean profile;
+
+	public SearchSettings(boolean debugMode, int fiMatchNfaFactor, boolean useCache, boolean profile) {
 		super();
 		this.debugMode = debugMode;
 		this.fiMatchNfaFactor = fiMatchNfaFactor;
 		this.useCache = useCache;
+		this.profile = profile;
 	}
 
 	public boolean isDebugMode() {
@@ -30,9 +33,17 @@ public class SearchSettings {
 		return useCache;
 	}
 
+	/**
+	 * Should we record where the time goes while executing the query?
+	 * @return true if we should profile the query
+	 */
+	public boolean isProfile() {
+		return profile;
+	}
+
 	@Override
 	public String toString() {
-		return "SearchSettings [debugMode=" + debugMode + ", fiMatchNfaFactor=" + fiMatchNfaFactor + ", useCache=" + useCache + "]";
+		return "SearchSettings [debugMode=" + debugMode + ", fiMatchNfaFactor=" + fiMatchNfaFactor + ", useCache=" + useCache + ", profile=" + profile + "]";
 	}
 
 }
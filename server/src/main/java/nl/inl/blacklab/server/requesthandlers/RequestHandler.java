@@ -1,8 +1,11 @@
 package nl.inl.blacklab.server.requesthandlers;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -20,6 +23,7 @@ import nl.inl.blacklab.perdocument.DocResult;
 import nl.inl.blacklab.perdocument.DocResults;
 import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.HitsSample;
+import nl.inl.blacklab.search.QueryProfile;
 import nl.inl.blacklab.search.ResultsWindow;
 import nl.inl.blacklab.search.Searcher;
 import nl.inl.blacklab.search.grouping.DocOrHitGroups;
@@ -27,7 +31,11 @@ import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataFormat;
 import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.datastream.ExportWriter;
+import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.exceptions.ServiceUnavailable;
+import nl.inl.blacklab.server.jobs.Job;
 import nl.inl.blacklab.server.jobs.JobDescription;
 import nl.inl.blacklab.server.jobs.JobFacets;
 import nl.inl.blacklab.server.jobs.User;
@@ -48,6 +56,9 @@ public abstract class RequestHandler {
 
 	public static final int HTTP_OK = HttpServletResponse.SC_OK;
 
+	/** Number of results to write before flushing them to the client when exporting */
+	static final int EXPORT_CHUNK_SIZE = 1000;
+
 	/** The available request handlers by name */
 	static Map<String, Class<? extends RequestHandler>> availableHandlers;
 
@@ -65,6 +76,7 @@ public abstract class RequestHandler {
 		//availableHandlers.put("help", RequestHandlerBlsHelp.class);
 		availableHandlers.put("hits", RequestHandlerHits.class);
 		availableHandlers.put("hits-grouped", RequestHandlerHitsGrouped.class);
+		availableHandlers.put("hits-progress", RequestHandlerHitsProgress.class);
 		availableHandlers.put("status", RequestHandlerIndexStatus.class);
 		availableHandlers.put("termfreq", RequestHandlerTermFreq.class);
 		availableHandlers.put("", RequestHandlerIndexStructure.class);
@@ -180,6 +192,14 @@ public abstract class RequestHandler {
 						return errorObj.unauthorized("You are not authorized to see this information.");
 					}
 					requestHandler = new RequestHandlerCacheInfo(servlet, request, user, indexName, urlResource, urlPathInfo);
+				} else if (indexName.equals("metrics")) {
+					if (resourceOrPathGiven) {
+						return errorObj.unknownOperation(indexName);
+					}
+					if (!debugMode) {
+						return errorObj.unauthorized("You are not authorized to see this information.");
+					}
+					requestHandler = new RequestHandlerMetrics(servlet, request, user, indexName, urlResource, urlPathInfo);
 				} else if (indexName.equals("help")) {
 					requestHandler = new RequestHandlerBlsHelp(servlet, request, user, indexName, urlResource, urlPathInfo);
 				} else if (indexName.length() == 0) {
@@ -191,11 +211,14 @@ public abstract class RequestHandler {
 						String handlerName = urlResource;
 
 						IndexStatus status = searchManager.getIndexManager().getIndexStatus(indexName);
+						if (status == IndexStatus.OPENING && !handlerName.equals("status")) {
+							return errorObj.indexBeingOpened(indexName, IndexManager.CHECK_AGAIN_MS);
+						}
 						if (status != IndexStatus.AVAILABLE && handlerName.length() > 0 && !handlerName.equals("debug") && !handlerName.equals("fields") && !handlerName.equals("status")) {
 							return errorObj.unavailable(indexName, status.toString());
 						}
 
-						if (debugMode && handlerName.length() > 0 && !handlerName.equals("hits") && !handlerName.equals("docs") && !handlerName.equals("fields") && !handlerName.equals("termfreq") && !handlerName.equals("status")) {
+						if (debugMode && handlerName.length() > 0 && !handlerName.equals("hits") && !handlerName.equals("hits-progress") && !handlerName.equals("docs") && !handlerName.equals("fields") && !handlerName.equals("termfreq") && !handlerName.equals("status")) {
 							handlerName = "debug";
 						}
 						// HACK to avoid having a different url resource for
@@ -298,7 +321,7 @@ public abstract class RequestHandler {
 		indexMan = searchMan.getIndexManager();
 		String pathAndQueryString = ServletUtil.getPathAndQueryString(request);
 
-		if (!(this instanceof RequestHandlerStaticResponse) && !pathAndQueryString.startsWith("/cache-info")) { // annoying when monitoring
+		if (!(this instanceof RequestHandlerStaticResponse) && !pathAndQueryString.startsWith("/cache-info") && !pathAndQueryString.startsWith("/metrics")) { // annoying when monitoring
 			logger.info(ServletUtil.shortenIpv6(request.getRemoteAddr()) + " " + user.uniqueIdShort() + " " + request.getMethod() + " " + pathAndQueryString);
 		}
 
@@ -322,6 +345,17 @@ public abstract class RequestHandler {
 		return null;
 	}
 
+	/**
+	 * Returns the response content type, if we want to override it.
+	 *
+	 * Used for returning metrics, which are plain text.
+	 *
+	 * @return the content type to use, or null for the one matching the response data type
+	 */
+	public String getOverrideContentType() {
+		return null;
+	}
+
 	/**
 	 * May the client cache the response of this operation?
 	 *
@@ -369,6 +403,33 @@ public abstract class RequestHandler {
 	 */
 	public abstract int handle(DataStream ds) throws BlsException, InterruptedException;
 
+	/**
+	 * Can this request be answered in one of the export formats?
+	 *
+	 * @return true if export() may be called
+	 */
+	public boolean canExport() {
+		return false;
+	}
+
+	/**
+	 * Child classes that support exporting should override this to
+	 * write all results (up to the export limit) as a table.
+	 *
+	 * Rows should be flushed to the client in chunks as they are
+	 * produced, instead of collecting all results first.
+	 *
+	 * The default implementation reports that exporting isn't supported
+	 * (see canExport()).
+	 *
+	 * @param out where to write the results
+	 * @throws BlsException if the query can't be executed
+	 * @throws IOException if the results couldn't be written (e.g. client disconnected)
+	 */
+	public void export(ExportWriter out) throws BlsException, IOException {
+		throw new BadRequest("EXPORT_NOT_SUPPORTED", "Export is not supported for this request.");
+	}
+
 	/**
 	 * Stream document information (metadata, contents authorization)
 	 *
@@ -392,6 +453,51 @@ public abstract class RequestHandler {
 		.endMap();
 	}
 
+	/**
+	 * Get the names of the document information columns when exporting.
+	 *
+	 * @param struct index structure
+	 * @return the column names (metadata fields, lengthInTokens)
+	 * @see #exportDocumentInfo(ExportWriter, Searcher, Document)
+	 */
+	static List<String> documentInfoColumns(IndexStructure struct) {
+		List<String> columns = new ArrayList<>(struct.getMetadataFields());
+		if (struct.getMainContentsField().getTokenLengthField() != null)
+			columns.add("lengthInTokens");
+		return columns;
+	}
+
+	/**
+	 * Export document information (metadata, length).
+	 *
+	 * @param out where to write the values
+	 * @param searcher our searcher
+	 * @param document Lucene document
+	 * @throws IOException on write error
+	 * @see #documentInfoColumns(IndexStructure)
+	 */
+	static void exportDocumentInfo(ExportWriter out, Searcher searcher, Document document) throws IOException {
+		IndexStructure struct = searcher.getIndexStructure();
+		for (String metadataFieldName: struct.getMetadataFields()) {
+			out.value(document.get(metadataFieldName));
+		}
+		int subtractFromLength = struct.alwaysHasClosingToken() ? 1 : 0;
+		String tokenLengthField = struct.getMainContentsField().getTokenLengthField();
+		if (tokenLengthField != null)
+			out.value(Integer.parseInt(document.get(tokenLengthField)) - subtractFromLength);
+	}
+
+	/**
+	 * Wait for a job we want to export the results of.
+	 *
+	 * @param search the job
+	 * @throws ServiceUnavailable if it didn't finish within the maximum search time
+	 */
+	static void checkFinishedForExport(Job search) throws ServiceUnavailable {
+		if (!search.finished())
+			throw new ServiceUnavailable("Search took too long to start exporting. Please try again later.");
+	}
+
 	protected void dataStreamFacets(DataStream ds, DocResults docsToFacet, JobDescription facetDesc) throws BlsException {
 
 		JobFacets facets = (JobFacets)searchMan.search(user, facetDesc, true);
@@ -430,6 +536,55 @@ public abstract class RequestHandler {
 		ds.endMap();
 	}
 
+	/**
+	 * Write a query profile: time per phase, clause combiner decisions
+	 * and the executed spans tree with counters.
+	 *
+	 * @param ds where to write the profile
+	 * @param profile the profile
+	 */
+	public static void dataStreamQueryProfile(DataStream ds, QueryProfile profile) {
+		ds.startMap();
+		ds.startEntry("phaseTimesMs").startMap();
+		for (Map.Entry<String, Long> e: profile.getPhaseTimes().entrySet()) {
+			ds.entry(e.getKey(), e.getValue() / 1000000.0);
+		}
+		ds.endMap().endEntry();
+		ds.startEntry("clauseCombinerDecisions").startList();
+		for (String decision: profile.getCombinerDecisions()) {
+			ds.item("decision", decision);
+		}
+		ds.endList().endEntry();
+		ds.startEntry("spans");
+		dataStreamProfileNodes(ds, profile.getSpansTree());
+		ds.endEntry();
+		ds.endMap();
+	}
+
+	private static void dataStreamProfileNodes(DataStream ds, List<QueryProfile.Node> nodes) {
+		ds.startList();
+		for (QueryProfile.Node node: nodes) {
+			ds.startItem("node").startMap()
+				.entry("type", node.getType())
+				.entry("query", node.getDescription())
+				.entry("nextDocCalls", node.getNextDocCalls())
+				.entry("advanceCalls", node.getAdvanceCalls())
+				.entry("nextStartPositionCalls", node.getNextStartPositionCalls())
+				.entry("advanceStartPositionCalls", node.getAdvanceStartPositionCalls())
+				.entry("docs", node.getDocs())
+				.entry("hits", node.getHits())
+				.entry("timeMs", node.getNanos() / 1000000.0);
+			List<QueryProfile.Node> children = node.getChildren();
+			if (!children.isEmpty()) {
+				ds.startEntry("children");
+				dataStreamProfileNodes(ds, children);
+				ds.endEntry();
+			}
+			ds.endMap().endItem();
+		}
+		ds.endList();
+	}
+
 	public static void dataStreamDocFields(DataStream ds, IndexStructure struct) {
 		ds.startMap();
 		if (struct.pidField() != null)
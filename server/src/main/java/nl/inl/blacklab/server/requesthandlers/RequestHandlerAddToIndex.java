@@ -55,6 +55,9 @@ public class RequestHandlerAddToIndex extends RequestHandler {
 		final File indexDir = indexMan.getIndexDir(indexName);
 		IndexStatus newStatus = indexMan.setIndexStatus(indexName, Arrays.asList(IndexStatus.AVAILABLE, IndexStatus.EMPTY), IndexStatus.INDEXING);
 		try {
+			// Close the index while we're adding documents: the forward index may
+			// reuse space and rewrite its table of contents in place, which a
+			// Searcher that has these files mapped can't deal with.
 			indexMan.closeSearcher(indexName);
 			if (newStatus != IndexStatus.INDEXING) {
 				throw new InternalServerError("Could not set index status to 'indexing' (status was " + newStatus + ")", 28);
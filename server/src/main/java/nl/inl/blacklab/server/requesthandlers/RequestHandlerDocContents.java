@@ -1,11 +1,17 @@
 package nl.inl.blacklab.server.requesthandlers;
 
+import java.io.IOException;
+
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.search.BooleanQuery.TooManyClauses;
 
 import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.search.HitsSettings;
+import nl.inl.blacklab.search.RegexpTooLargeException;
 import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.search.SingleDocIdFilter;
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataFormat;
 import nl.inl.blacklab.server.datastream.DataStream;
@@ -13,7 +19,7 @@ import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.exceptions.InternalServerError;
 import nl.inl.blacklab.server.exceptions.NotFound;
-import nl.inl.blacklab.server.jobs.JobWithHits;
+import nl.inl.blacklab.server.jobs.MaxSettings;
 import nl.inl.blacklab.server.jobs.User;
 import nl.inl.blacklab.server.util.BlsUtils;
 
@@ -66,19 +72,9 @@ public class RequestHandlerDocContents extends RequestHandler {
 
 		Hits hits = null;
 		if (searchParam.hasPattern()) {
-			//@@@ TODO: filter on document!
-			searchParam.put("docpid", docId);
-			JobWithHits search;
-			search = (JobWithHits) searchMan.search(user, searchParam.hits(), true);
-			try {
-				hits = search.getHits();
-			} finally {
-				search.decrRef();
-				search = null;
-			}
+			hits = findHitsInDocument(searcher, luceneDocId);
 		}
 
-		String content;
 		int startAtWord = searchParam.getInteger("wordstart");
 		int endAtWord = searchParam.getInteger("wordend");
 		if (startAtWord < -1 || endAtWord < -1 || (startAtWord >= 0 && endAtWord >= 0 && endAtWord <= startAtWord) ) {
@@ -87,13 +83,41 @@ public class RequestHandlerDocContents extends RequestHandler {
 
 		// Note: we use the highlighter regardless of whether there's hits because
 		// it makes sure our document fragment is well-formed.
-		Hits hitsInDoc = hits == null ? null : hits.getHitsInDoc(luceneDocId);
-		content = searcher.highlightContent(luceneDocId, searcher.getMainContentsFieldName(), hitsInDoc, startAtWord, endAtWord);
-
-		ds.plain(content);
+		try {
+			searcher.highlightContent(luceneDocId, searcher.getMainContentsFieldName(), hits, startAtWord, endAtWord, ds.getWriter());
+		} catch (IOException e) {
+			throw new InternalServerError("Error writing document contents", 33, e);
+		}
 		return HTTP_OK;
 	}
 
+	/**
+	 * Find the hits for our pattern in a single document.
+	 *
+	 * The query is restricted to the document, so only the segment containing it is
+	 * searched. We don't use the job cache for this: it is fast, and a search for a
+	 * single document is unlikely to be reused by other requests.
+	 *
+	 * @param searcher our searcher
+	 * @param luceneDocId the document to find hits in
+	 * @return the hits in the document
+	 * @throws BlsException if the pattern is invalid or too broad
+	 */
+	private Hits findHitsInDocument(Searcher searcher, int luceneDocId) throws BlsException {
+		try {
+			Hits hits = searcher.find(searchParam.getPattern(), new SingleDocIdFilter(luceneDocId));
+			MaxSettings maxSettings = searchParam.getMaxSettings();
+			HitsSettings hitsSettings = hits.settings();
+			hitsSettings.setMaxHitsToRetrieve(maxSettings.maxRetrieve());
+			hitsSettings.setMaxHitsToCount(maxSettings.maxCount());
+			return hits;
+		} catch (RegexpTooLargeException e) {
+			throw new BadRequest("REGEXP_TOO_LARGE", "Regular expression too large.");
+		} catch (TooManyClauses e) {
+			throw new BadRequest("QUERY_TOO_BROAD", "Query too broad, too many matching terms. Please be more specific.");
+		}
+	}
+
 	@Override
 	protected boolean isDocsOperation() {
 		return true;
@@ -1,5 +1,10 @@
 package nl.inl.blacklab.server.requesthandlers;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.lucene.document.Document;
@@ -20,11 +25,14 @@ import nl.inl.blacklab.search.grouping.DocOrHitGroups;
 import nl.inl.blacklab.search.grouping.HitPropValue;
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.datastream.ExportWriter;
+import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.jobs.Job;
 import nl.inl.blacklab.server.jobs.JobDocsGrouped;
 import nl.inl.blacklab.server.jobs.JobDocsTotal;
 import nl.inl.blacklab.server.jobs.JobDocsWindow;
+import nl.inl.blacklab.server.jobs.JobWithDocs;
 import nl.inl.blacklab.server.jobs.User;
 
 /**
@@ -210,6 +218,72 @@ public class RequestHandlerDocs extends RequestHandler {
 		}
 	}
 
+	@Override
+	public boolean canExport() {
+		return true;
+	}
+
+	/**
+	 * Export all docs (or all docs in a group, if viewgroup was given).
+	 *
+	 * Columns are docPid, numberOfHits, the metadata fields and lengthInTokens.
+	 * Docs are retrieved, written and flushed in chunks, so the client
+	 * starts receiving results while we're still retrieving more.
+	 */
+	@Override
+	public void export(ExportWriter out) throws BlsException, IOException {
+		String groupBy = searchParam.getString("group");
+		String viewGroup = searchParam.getString("viewgroup");
+		Job search = null;
+		try {
+			DocResults docs;
+			if (groupBy != null && groupBy.length() > 0 && viewGroup != null && viewGroup.length() > 0) {
+				// Export the docs in a single group
+				JobDocsGrouped searchGrouped = (JobDocsGrouped) searchMan.search(user, searchParam.docsGrouped(), true);
+				search = searchGrouped;
+				checkFinishedForExport(search);
+				DocGroups groups = searchGrouped.getGroups();
+				HitPropValue viewGroupVal = HitPropValue.deserialize(groups.getOriginalDocResults().getOriginalHits(), viewGroup);
+				if (viewGroupVal == null)
+					throw new BadRequest("ERROR_IN_GROUP_VALUE", "Parameter 'viewgroup' has an illegal value: " + viewGroup);
+				DocGroup group = groups.getGroup(viewGroupVal);
+				if (group == null)
+					throw new BadRequest("GROUP_NOT_FOUND", "Group not found: " + viewGroup);
+				docs = group.getResults();
+				String sortBy = searchParam.getString("sort");
+				DocProperty sortProp = sortBy != null && sortBy.length() > 0 ? DocProperty.deserialize(sortBy) : null;
+				if (sortProp != null)
+					docs.sort(sortProp, false);
+			} else {
+				// Export all docs. Unless they need to be sorted, docs are only retrieved as we go through them.
+				JobWithDocs searchDocs = (JobWithDocs) searchMan.search(user, searchParam.docsSorted(), true);
+				search = searchDocs;
+				checkFinishedForExport(search);
+				docs = searchDocs.getDocResults();
+			}
+
+			Searcher searcher = search.getSearcher();
+			List<String> columns = new ArrayList<>(Arrays.asList("docPid", "numberOfHits"));
+			columns.addAll(documentInfoColumns(searcher.getIndexStructure()));
+			out.header(columns);
+			int i = 0;
+			for (DocResult result: docs) {
+				Document document = result.getDocument();
+				out	.value(getDocumentPid(searcher, result.getDocId(), document))
+					.value(result.getNumberOfHits());
+				exportDocumentInfo(out, searcher, document);
+				out.endRow();
+				i++;
+				if (i % EXPORT_CHUNK_SIZE == 0)
+					out.flush();
+			}
+			out.flush();
+		} finally {
+			if (search != null)
+				search.decrRef();
+		}
+	}
+
 	@Override
 	protected boolean isDocsOperation() {
 		return true;
@@ -6,11 +6,15 @@ import org.apache.lucene.search.BooleanQuery.TooManyClauses;
 
 import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
 import nl.inl.blacklab.queryParser.corpusql.ParseException;
+import nl.inl.blacklab.search.Hits;
 import nl.inl.blacklab.search.QueryExplanation;
+import nl.inl.blacklab.search.QueryProfile;
 import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.search.TextPattern;
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.jobs.MaxSettings;
 import nl.inl.blacklab.server.jobs.User;
 
 /**
@@ -32,13 +36,28 @@ public class RequestHandlerExplain extends RequestHandler {
 		Searcher searcher = getSearcher();
 		String patt = searchParam.getString("patt");
 		try {
-			QueryExplanation explanation = searcher.explain(CorpusQueryLanguageParser.parse(patt));
+			TextPattern pattern = CorpusQueryLanguageParser.parse(patt);
+			QueryExplanation explanation = searcher.explain(pattern);
 
 			// Assemble response
 			ds.startMap()
 				.entry("textPattern", patt)
 				.entry("originalQuery", explanation.getOriginalQuery())
 				.entry("rewrittenQuery", explanation.getRewrittenQuery());
+			if (searchParam.getBoolean("profile")) {
+				// Execute the query (up to the usual limits) to see where the time goes
+				QueryProfile profile = new QueryProfile();
+				Hits hits = searcher.find(searcher.createSpanQuery(pattern), profile);
+				MaxSettings maxSettings = searchParam.getMaxSettings();
+				hits.settings().setMaxHitsToRetrieve(maxSettings.maxRetrieve());
+				hits.settings().setMaxHitsToCount(maxSettings.maxCount());
+				hits.size();
+				ds	.entry("numberOfHits", hits.countSoFarHitsCounted())
+					.entry("stoppedCountingHits", hits.maxHitsCounted());
+				ds.startEntry("profile");
+				dataStreamQueryProfile(ds, profile);
+				ds.endEntry();
+			}
 			ds.endMap();
 		} catch (TooManyClauses e) {
 			return Response.badRequest(ds, "QUERY_TOO_BROAD", "Query too broad, too many matching terms. Please be more specific.");
@@ -1,10 +1,16 @@
 package nl.inl.blacklab.server.requesthandlers;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.document.Document;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
 import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
@@ -30,11 +36,14 @@ import nl.inl.blacklab.search.grouping.HitProperty;
 import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.datastream.ExportWriter;
+import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.jobs.Job;
 import nl.inl.blacklab.server.jobs.JobHitsGrouped;
 import nl.inl.blacklab.server.jobs.JobHitsTotal;
 import nl.inl.blacklab.server.jobs.JobHitsWindow;
+import nl.inl.blacklab.server.jobs.JobWithHits;
 import nl.inl.blacklab.server.jobs.User;
 import nl.inl.blacklab.server.search.BlsConfig;
 
@@ -246,6 +255,13 @@ public class RequestHandlerHits extends RequestHandler {
 				ds.endEntry();
 			}
 
+			// (at the end, so the time spent on the KWICs above is included)
+			if (searchParam.getBoolean("profile") && hits.getProfile() != null) {
+				ds.startEntry("profile");
+				dataStreamQueryProfile(ds, hits.getProfile());
+				ds.endEntry();
+			}
+
 			ds.endMap();
 
 			if (BlsConfig.traceRequestHandling) logger.debug("RequestHandlerHits.handle end");
@@ -262,6 +278,127 @@ public class RequestHandlerHits extends RequestHandler {
 		}
 	}
 
+	@Override
+	public boolean canExport() {
+		return true;
+	}
+
+	/**
+	 * Export all hits (or all hits in a group, if viewgroup was given).
+	 *
+	 * Columns are docPid, start and end, followed by the left context, match
+	 * and right context. For KWICs from the forward index, there's a column
+	 * per property except punctuation for each of those (e.g. left_word,
+	 * match_word, right_word), with the tokens separated by spaces; these are
+	 * determined from the first hit. For usecontent=orig, there are just three
+	 * columns with the original content (left, match, right).
+	 *
+	 * Hits are retrieved, written and flushed in chunks, so the client
+	 * starts receiving hits while we're still retrieving more.
+	 */
+	@Override
+	public void export(ExportWriter out) throws BlsException, IOException {
+		String groupBy = searchParam.getString("group");
+		String viewGroup = searchParam.getString("viewgroup");
+		Job search = null;
+		try {
+			Hits hits;
+			if (groupBy != null && groupBy.length() > 0 && viewGroup != null && viewGroup.length() > 0) {
+				// Export the hits in a single group
+				JobHitsGrouped searchGrouped = (JobHitsGrouped) searchMan.search(user, searchParam.hitsGrouped(), true);
+				search = searchGrouped;
+				checkFinishedForExport(search);
+				HitPropValue viewGroupVal = HitPropValue.deserialize(searchGrouped.getHits(), viewGroup);
+				if (viewGroupVal == null)
+					throw new BadRequest("ERROR_IN_GROUP_VALUE", "Cannot deserialize group value: " + viewGroup);
+				HitGroup group = searchGrouped.getGroups().getGroup(viewGroupVal);
+				if (group == null)
+					throw new BadRequest("GROUP_NOT_FOUND", "Group not found: " + viewGroup);
+				String sortBy = searchParam.getString("sort");
+				HitProperty sortProp = sortBy != null && sortBy.length() > 0 ? HitProperty.deserialize(group.getHits(), sortBy) : null;
+				hits = sortProp != null ? group.getHits().sortedBy(sortProp) : group.getHits();
+			} else {
+				// Export all hits. Unless they need to be sorted, the search finishes right away
+				// and hits are only retrieved as we go through them.
+				JobWithHits searchHits = (JobWithHits) searchMan.search(user, searchParam.hitsSample(), true);
+				search = searchHits;
+				checkFinishedForExport(search);
+				hits = searchHits.getHits();
+			}
+
+			Searcher searcher = search.getSearcher();
+			boolean useOrigContent = searchParam.getString("usecontent").equals("orig");
+			String punctProp = hits.settings().concPunctProp();
+			List<String> properties = null;
+			int lastDoc = -1;
+			String lastPid = null;
+			int first = 0;
+			while (hits.sizeAtLeast(first + 1)) {
+				HitsWindow window = hits.window(first, EXPORT_CHUNK_SIZE);
+				for (Hit hit: window) {
+					Kwic kwic = useOrigContent ? null : window.getKwic(hit);
+					if (properties == null) {
+						// Now we know what properties the KWICs have; write the header
+						properties = useOrigContent ? Collections.<String>emptyList() : kwic.getProperties();
+						out.header(hitsExportColumns(properties, punctProp, useOrigContent));
+					}
+					if (hit.doc != lastDoc) {
+						lastDoc = hit.doc;
+						lastPid = getDocumentPid(searcher, hit.doc, searcher.document(hit.doc));
+					}
+					out.value(lastPid).value(hit.start).value(hit.end);
+					if (useOrigContent) {
+						Concordance c = window.getConcordance(hit);
+						out.value(c.left()).value(c.match()).value(c.right());
+					} else {
+						for (String prop: properties) {
+							if (prop != null && !prop.equals(punctProp)) {
+								out	.value(StringUtils.join(kwic.getLeft(prop), " "))
+									.value(StringUtils.join(kwic.getMatch(prop), " "))
+									.value(StringUtils.join(kwic.getRight(prop), " "));
+							}
+						}
+					}
+					out.endRow();
+				}
+				out.flush();
+				first += window.size();
+			}
+			if (properties == null) {
+				// No hits; we don't know the KWIC properties, so just write the basic columns
+				out.header(hitsExportColumns(Collections.<String>emptyList(), punctProp, useOrigContent));
+				out.flush();
+			}
+		} finally {
+			if (search != null)
+				search.decrRef();
+		}
+	}
+
+	/**
+	 * Get the column names for exporting hits.
+	 *
+	 * @param properties the KWIC properties
+	 * @param punctProp the punctuation property (which we skip, because tokens are separated by spaces)
+	 * @param useOrigContent whether we export the original content instead of KWICs
+	 * @return the column names
+	 */
+	private static List<String> hitsExportColumns(List<String> properties, String punctProp, boolean useOrigContent) {
+		List<String> columns = new ArrayList<>(Arrays.asList("docPid", "start", "end"));
+		if (useOrigContent) {
+			columns.addAll(Arrays.asList("left", "match", "right"));
+		} else {
+			for (String prop: properties) {
+				if (prop != null && !prop.equals(punctProp)) {
+					columns.add("left_" + prop);
+					columns.add("match_" + prop);
+					columns.add("right_" + prop);
+				}
+			}
+		}
+		return columns;
+	}
+
 	private void dataStreamCollocations(DataStream ds, Hits originalHits) {
 		originalHits.settings().setContextSize(searchParam.getInteger("wordsaroundhit"));
 		ds.startMap().startEntry("tokenFrequencies").startMap();
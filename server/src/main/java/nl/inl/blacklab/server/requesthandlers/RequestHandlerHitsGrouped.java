@@ -1,5 +1,8 @@
 package nl.inl.blacklab.server.requesthandlers;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 import javax.servlet.http.HttpServletRequest;
 
 import nl.inl.blacklab.perdocument.DocResults;
@@ -9,6 +12,7 @@ import nl.inl.blacklab.search.grouping.HitGroup;
 import nl.inl.blacklab.search.grouping.HitGroups;
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.datastream.ExportWriter;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.jobs.JobHitsGrouped;
 import nl.inl.blacklab.server.jobs.User;
@@ -70,4 +74,34 @@ public class RequestHandlerHitsGrouped extends RequestHandler {
 		}
 	}
 
+	@Override
+	public boolean canExport() {
+		return true;
+	}
+
+	/**
+	 * Export all groups (identity, identityDisplay, size).
+	 */
+	@Override
+	public void export(ExportWriter out) throws BlsException, IOException {
+		JobHitsGrouped search = (JobHitsGrouped) searchMan.search(user, searchParam.hitsGrouped(), true);
+		try {
+			checkFinishedForExport(search);
+			out.header(Arrays.asList("identity", "identityDisplay", "size"));
+			int i = 0;
+			for (HitGroup group: search.getGroups()) {
+				out	.value(group.getIdentity().serialize())
+					.value(group.getIdentity().toString())
+					.value(group.size());
+				out.endRow();
+				i++;
+				if (i % EXPORT_CHUNK_SIZE == 0)
+					out.flush();
+			}
+			out.flush();
+		} finally {
+			search.decrRef();
+		}
+	}
+
 }
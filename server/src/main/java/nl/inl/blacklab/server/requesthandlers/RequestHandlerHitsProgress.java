@@ -0,0 +1,64 @@
+package nl.inl.blacklab.server.requesthandlers;
+
+import javax.servlet.http.HttpServletRequest;
+
+import nl.inl.blacklab.search.Hits;
+import nl.inl.blacklab.server.BlackLabServer;
+import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.jobs.JobHitsTotal;
+import nl.inl.blacklab.server.jobs.User;
+
+/**
+ * Request handler for monitoring the progress of counting hits.
+ *
+ * Instead of repeatedly requesting hits with number=0 to watch the
+ * total count, clients can long-poll this: pass the number of hits counted
+ * that you already know ("counted") and we'll wait until at least "threshold"
+ * more hits have been counted, counting is done, or "waitms" milliseconds have
+ * passed. The wait is woken up by the search thread, so no work is done while
+ * waiting.
+ */
+public class RequestHandlerHitsProgress extends RequestHandler {
+
+	/** Maximum value for the waitms parameter */
+	static final int MAX_WAIT_MS = 30000;
+
+	public RequestHandlerHitsProgress(BlackLabServer servlet, HttpServletRequest request, User user, String indexName, String urlResource, String urlPathPart) {
+		super(servlet, request, user, indexName, urlResource, urlPathPart);
+	}
+
+	@Override
+	public boolean isCacheAllowed() {
+		return false; // the count changes while we're counting
+	}
+
+	@Override
+	public int handle(DataStream ds) throws BlsException, InterruptedException {
+		int counted = searchParam.getInteger("counted");
+		int threshold = Math.max(1, searchParam.getInteger("threshold"));
+		int waitMs = searchParam.getInteger("waitms");
+		if (waitMs < 0 || waitMs > MAX_WAIT_MS)
+			waitMs = MAX_WAIT_MS;
+
+		JobHitsTotal total = (JobHitsTotal) searchMan.search(user, searchParam.hitsTotal(), false);
+		try {
+			if (counted >= 0)
+				total.waitForProgress(counted, threshold, waitMs);
+
+			Hits hits = total.getHits();
+			boolean countFailed = total.threwException();
+			ds.startMap();
+			ds.entry("countTime", countFailed ? -1 : (int)(total.userWaitTime() * 1000));
+			ds.entry("stillCounting", !total.finished() && (hits == null || !hits.doneFetchingHits()));
+			ds	.entry("numberOfHits", hits == null || countFailed ? -1 : hits.countSoFarHitsCounted())
+				.entry("numberOfDocs", hits == null || countFailed ? -1 : hits.countSoFarDocsCounted())
+				.entry("stoppedCountingHits", hits != null && hits.maxHitsCounted());
+			ds.endMap();
+			return HTTP_OK;
+		} finally {
+			total.decrRef();
+		}
+	}
+
+}
@@ -6,6 +6,7 @@ import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.jobs.User;
+import nl.inl.blacklab.server.search.IndexWarmUp;
 
 /**
  * Get information about the structure of an index.
@@ -29,8 +30,25 @@ public class RequestHandlerIndexStatus extends RequestHandler {
 		// Assemble response
 		ds.startMap()
 			.entry("indexName", indexName)
-			.entry("status", indexMan.getIndexStatus(indexName))
-		.endMap();
+			.entry("status", indexMan.getIndexStatus(indexName));
+		IndexWarmUp warmUp = indexMan.getWarmUp(indexName);
+		if (warmUp != null) {
+			long done = warmUp.getBytesDone(), total = warmUp.getBytesTotal();
+			ds.startEntry("warmUp").startMap()
+				.entry("status", warmUp.getStatus())
+				.entry("bytesDone", done)
+				.entry("bytesTotal", total)
+				.entry("percentage", total == 0 ? 100 : (int) (done * 100 / total));
+			if (!warmUp.getKeepResident().isEmpty()) {
+				ds.startEntry("keepResident").startList();
+				for (String prop: warmUp.getKeepResident()) {
+					ds.item("property", prop);
+				}
+				ds.endList().endEntry();
+			}
+			ds.endMap().endEntry();
+		}
+		ds.endMap();
 
 		return HTTP_OK;
 	}
@@ -0,0 +1,54 @@
+package nl.inl.blacklab.server.requesthandlers;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import nl.inl.blacklab.server.BlackLabServer;
+import nl.inl.blacklab.server.datastream.DataFormat;
+import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.jobs.User;
+import nl.inl.blacklab.server.util.Metrics;
+
+/**
+ * Write the server metrics (request and search latencies, cache and load
+ * management statistics, forward index and content store reads) in the
+ * Prometheus text format, for scraping by a monitoring system.
+ */
+public class RequestHandlerMetrics extends RequestHandler {
+	public RequestHandlerMetrics(BlackLabServer servlet, HttpServletRequest request, User user, String indexName, String urlResource, String urlPathPart) {
+		super(servlet, request, user, indexName, urlResource, urlPathPart);
+	}
+
+	@Override
+	public boolean isCacheAllowed() {
+		return false;
+	}
+
+	@Override
+	public DataFormat getOverrideType() {
+		return DataFormat.XML; // (no JSONP wrapper; without a root element, XML adds nothing)
+	}
+
+	@Override
+	public boolean omitBlackLabResponseRootElement() {
+		return true;
+	}
+
+	@Override
+	public String getOverrideContentType() {
+		return Metrics.CONTENT_TYPE;
+	}
+
+	@Override
+	public int handle(DataStream ds) throws BlsException {
+		try {
+			searchMan.getMetrics().writePrometheus(ds.getWriter());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return HTTP_OK;
+	}
+
+}
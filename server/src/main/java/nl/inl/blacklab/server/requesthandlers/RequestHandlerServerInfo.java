@@ -9,7 +9,9 @@ import nl.inl.blacklab.search.indexstructure.IndexStructure;
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.exceptions.IndexBeingOpened;
 import nl.inl.blacklab.server.jobs.User;
+import nl.inl.blacklab.server.search.IndexManager.IndexStatus;
 
 /**
  * Get information about this BlackLab server.
@@ -38,17 +40,29 @@ public class RequestHandlerServerInfo extends RequestHandler {
 		for (String indexName: indices) {
 			ds.startAttrEntry("index", "name", indexName);
 
-			Searcher searcher = indexMan.getSearcher(indexName);
-			IndexStructure struct = searcher.getIndexStructure();
+			Searcher searcher = null;
+			if (!indexMan.isBeingOpened(indexName)) {
+				try {
+					searcher = indexMan.getSearcher(indexName);
+				} catch (IndexBeingOpened e) {
+					// Don't wait for it; just report that it's being opened
+				}
+			}
 			ds.startMap();
-			ds.entry("displayName", struct.getDisplayName());
-			ds.entry("status", indexMan.getIndexStatus(indexName));
-			String documentFormat = struct.getDocumentFormat();
-			if (documentFormat != null && documentFormat.length() > 0)
-				ds.entry("documentFormat", documentFormat);
-			ds.entry("timeModified", struct.getTimeModified());
-			if (struct.getTokenCount() > 0)
-				ds.entry("tokenCount", struct.getTokenCount());
+			if (searcher == null) {
+				ds.entry("displayName", indexName);
+				ds.entry("status", IndexStatus.OPENING);
+			} else {
+				IndexStructure struct = searcher.getIndexStructure();
+				ds.entry("displayName", struct.getDisplayName());
+				ds.entry("status", indexMan.getIndexStatus(indexName));
+				String documentFormat = struct.getDocumentFormat();
+				if (documentFormat != null && documentFormat.length() > 0)
+					ds.entry("documentFormat", documentFormat);
+				ds.entry("timeModified", struct.getTimeModified());
+				if (struct.getTokenCount() > 0)
+					ds.entry("tokenCount", struct.getTokenCount());
+			}
 			ds.endMap();
 
 			ds.endAttrEntry();
@@ -145,6 +145,14 @@ public class RequestHandlerStaticResponse extends RequestHandler {
 		return error("INDEX_UNAVAILABLE", "The index '" + indexName + "' is not available right now. Status: " + status, HttpServletResponse.SC_CONFLICT);
 	}
 
+	public RequestHandlerStaticResponse indexBeingOpened(String indexName, int checkAgainMs) {
+		code = "INDEX_OPENING";
+		msg = "The index '" + indexName + "' is being opened. Please try again in " + checkAgainMs + " ms.";
+		checkAgainAdviceMs = checkAgainMs;
+		httpCode = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+		return this;
+	}
+
 	public RequestHandlerStaticResponse indexNotFound(String indexName) {
 		return error("CANNOT_OPEN_INDEX", "Could not open index '" + indexName + "'. Please check the name.", HttpServletResponse.SC_NOT_FOUND);
 	}
@@ -168,7 +176,7 @@ public class RequestHandlerStaticResponse extends RequestHandler {
 	public int handle(DataStream ds) throws BlsException, InterruptedException {
 		if (checkAgainAdviceMs != 0) {
 			ds.statusObject(code, msg, checkAgainAdviceMs);
-		} if (internalErrorCode != 0) {
+		} else if (internalErrorCode != 0) {
 			if (exception != null)
 				ds.internalError(exception, debugMode, internalErrorCode);
 			else if (msg != null)
@@ -7,6 +7,7 @@ import org.apache.logging.log4j.Logger;
 
 import nl.inl.blacklab.server.BlackLabServer;
 import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.exceptions.IndexBeingOpened;
 
 public class Response {
 	static final Logger logger = LogManager.getLogger(Response.class);
@@ -59,7 +60,7 @@ public class Response {
 		return httpCode;
 	}
 
-	// Highest internal error code so far: 32
+	// Highest internal error code so far: 33
 
 	public static int internalError(DataStream ds, Exception e, boolean debugMode, int code) {
 		logger.debug("INTERNAL ERROR " + code + ":");
@@ -117,6 +118,11 @@ public class Response {
 		return error(ds, "INDEX_UNAVAILABLE", "The index '" + indexName + "' is not available right now. Status: " + status, HttpServletResponse.SC_CONFLICT);
 	}
 
+	public static int indexBeingOpened(DataStream ds, IndexBeingOpened e) {
+		ds.statusObject(e.getBlsErrorCode(), e.getMessage(), e.getCheckAgainMs());
+		return e.getHttpStatusCode();
+	}
+
 	public static int indexNotFound(DataStream ds, String indexName) {
 		return error(ds, "CANNOT_OPEN_INDEX", "Could not open index '" + indexName + "'. Please check the name.", HttpServletResponse.SC_NOT_FOUND);
 	}
@@ -96,6 +96,9 @@ public class SearchParameters {
 		defaultParameterValues.put("calc", "");
 		defaultParameterValues.put("property", "word");
 		defaultParameterValues.put("waitfortotal", "no");
+		defaultParameterValues.put("counted", "-1");
+		defaultParameterValues.put("threshold", "1");
+		defaultParameterValues.put("waitms", "10000");
 		defaultParameterValues.put("number", "20");
 		defaultParameterValues.put("wordsaroundhit", "5");
 		defaultParameterValues.put("maxretrieve", "1000000");
@@ -104,6 +107,7 @@ public class SearchParameters {
 		defaultParameterValues.put("fimatch", "-1");
 		defaultParameterValues.put("usecache", "yes");
 		defaultParameterValues.put("explain", "no");
+		defaultParameterValues.put("profile", "no");
 		defaultParameterValues.put("subprops", "");
 	}
 
@@ -125,6 +129,7 @@ public class SearchParameters {
 			param.put(name, value);
 		}
 		param.setDebugMode(searchMan.config().isDebugMode(request.getRemoteAddr()));
+		param.setExport(ServletUtil.getExportFormat(request) != null);
 		return param;
 	}
 
@@ -139,6 +144,7 @@ public class SearchParameters {
 		// How to search
 		"fimatch",                           // [debug] set NFA FI matching threshold
 		"usecache",                          // [debug] use cache or bypass it?
+		"profile",                           // record where the time goes? (bypasses cache)
 
 		// How to present results
 		"sort",                         // sorting (grouped) hits/docs
@@ -161,7 +167,8 @@ public class SearchParameters {
 		"property", "sensitive",        // for term frequency
 
 		// How to execute request
-		"waitfortotal"                  // wait until total number of results known?
+		"waitfortotal",                 // wait until total number of results known?
+		"counted", "threshold", "waitms" // long-polling hit count progress (hits-progress)
 	);
 
 	/** The search manager, for querying default value for missing parameters */
@@ -169,6 +176,9 @@ public class SearchParameters {
 
 	private boolean debugMode;
 
+	/** Are we exporting all results? (uses a different limit for the number of hits) */
+	private boolean export;
+
 	private Map<String, String> map = new TreeMap<>();
 
 	/** The pattern, if parsed already */
@@ -190,6 +200,14 @@ public class SearchParameters {
 		this.debugMode = debugMode;
 	}
 
+	private void setExport(boolean export) {
+		this.export = export;
+	}
+
+	public boolean isExport() {
+		return export;
+	}
+
 	public String put(String key, String value) {
 		return map.put(key, value);
 	}
@@ -264,8 +282,10 @@ public class SearchParameters {
 
 	public SearchSettings getSearchSettings() {
 		int fiMatchNfaFactor = getInteger("fimatch");
-		boolean useCache = getBoolean("usecache");
-		return new SearchSettings(debugMode, fiMatchNfaFactor, useCache);
+		boolean profile = getBoolean("profile");
+		// A profile is only useful if we actually execute the query, so bypass the cache
+		boolean useCache = getBoolean("usecache") && !profile;
+		return new SearchSettings(debugMode, fiMatchNfaFactor, useCache, profile);
 	}
 
 	public boolean hasPattern() throws BlsException {
@@ -329,7 +349,16 @@ public class SearchParameters {
 		return new SampleSettings(samplePercentage, sampleNum, sampleSeed);
 	}
 
-	private MaxSettings getMaxSettings() {
+	MaxSettings getMaxSettings() {
+		if (export) {
+			// Exports are streamed, so they have their own limit instead of maxHitsToRetrieveAllowed.
+			// The user may still specify a lower maxretrieve. We don't need to count further than we export.
+			int maxExport = searchManager.config().maxHitsToExport();
+			int maxRetrieve = containsKey("maxretrieve") ? getInteger("maxretrieve") : maxExport;
+			if (maxExport >= 0 && (maxRetrieve < 0 || maxRetrieve > maxExport))
+				maxRetrieve = maxExport;
+			return new MaxSettings(maxRetrieve, maxRetrieve);
+		}
 		int maxRetrieve = getInteger("maxretrieve");
 		if (searchManager.config().maxHitsToRetrieveAllowed() >= 0 && maxRetrieve > searchManager.config().maxHitsToRetrieveAllowed()) {
 			maxRetrieve = searchManager.config().maxHitsToRetrieveAllowed();
@@ -487,21 +516,50 @@ public class SearchParameters {
 		WindowSettings windowSettings = getWindowSettings();
 		if (windowSettings == null)
 			return hitsSample();
-		return new JobDescHitsWindow(this, hitsSample(), getSearchSettings(), windowSettings);
-	}
-
+		JobDescription input;
+		if (getSampleSettings() == null) {
+			// We only need the hits up to the end of our window to be sorted
+			input = hitsSorted(windowSettings.first() + windowSettings.size());
+		} else {
+			input = hitsSample();
+		}
+		return new JobDescHitsWindow(this, input, getSearchSettings(), windowSettings);
+	}
+
+	/**
+	 * Get the description of the sample.
+	 *
+	 * If we don't have to sort or filter the hits first, the sample is taken
+	 * while executing the query, so we don't have to store all the hits.
+	 *
+	 * @return the job description
+	 * @throws BlsException on error
+	 */
 	public JobDescription hitsSample() throws BlsException {
 		SampleSettings sampleSettings = getSampleSettings();
 		if (sampleSettings == null)
 			return hitsSorted();
-		return new JobDescSampleHits(this, hitsSorted(), getSearchSettings(), sampleSettings);
+		if (hitsSortSettings() != null || getHitFilterSettings() != null)
+			return new JobDescSampleHits(this, hitsSorted(), getSearchSettings(), sampleSettings);
+		return new JobDescSampleHits(this, getSearchSettings(), getIndexName(), getPattern(), getFilterQuery(), getMaxSettings(), getContextSettings(), sampleSettings);
 	}
 
 	public JobDescription hitsSorted() throws BlsException {
+		return hitsSorted(-1);
+	}
+
+	/**
+	 * Get the description of the sorted hits.
+	 *
+	 * @param numberOfHitsNeeded how many hits we need in sorted order right away, or -1 for all
+	 * @return the job description
+	 * @throws BlsException on error
+	 */
+	private JobDescription hitsSorted(int numberOfHitsNeeded) throws BlsException {
 		HitSortSettings hitsSortSettings = hitsSortSettings();
 		if (hitsSortSettings == null)
 			return hitsFiltered();
-		return new JobDescHitsSorted(this, hitsFiltered(), getSearchSettings(), hitsSortSettings);
+		return new JobDescHitsSorted(this, hitsFiltered(), getSearchSettings(), hitsSortSettings, numberOfHitsNeeded);
 	}
 
 	public JobDescription hitsTotal() throws BlsException {
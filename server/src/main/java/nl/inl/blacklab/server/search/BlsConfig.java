@@ -61,6 +61,9 @@ public class BlsConfig {
 	/** Maximum allowed value for maxcount parameter (-1 = no limit). */
 	private int maxHitsToCountAllowed;
 
+	/** Maximum number of hits to export in one of the export formats (-1 = no limit). */
+	private int maxHitsToExport;
+
 	/**
 	 * Are we allowed to query the list of all document?
 	 * (might be slow for large corpora, seems ok though)
@@ -169,6 +172,8 @@ public class BlsConfig {
 					"maxHitsToRetrieveAllowed", 10000000);
 			maxHitsToCountAllowed = JsonUtil.getIntProp(reqProp,
 					"maxHitsToCountAllowed", -1);
+			maxHitsToExport = JsonUtil.getIntProp(reqProp,
+					"maxHitsToExport", 10000000);
 			JSONArray jsonOverrideUserIdIps = reqProp
 					.getJSONArray("overrideUserIdIps");
 			overrideUserIdIps = new HashSet<>();
@@ -187,6 +192,7 @@ public class BlsConfig {
 			defaultMaxHitsToCount = Searcher.DEFAULT_MAX_COUNT;
 			maxHitsToRetrieveAllowed = 10000000;
 			maxHitsToCountAllowed = -1;
+			maxHitsToExport = 10000000;
 			overrideUserIdIps = new HashSet<>();
 		}
 	}
@@ -270,6 +276,10 @@ public class BlsConfig {
 		return maxHitsToCountAllowed;
 	}
 
+	public int maxHitsToExport() {
+		return maxHitsToExport;
+	}
+
 	public boolean isDebugMode(String ip) {
 		return getDebugModeIps().contains(ip);
 	}
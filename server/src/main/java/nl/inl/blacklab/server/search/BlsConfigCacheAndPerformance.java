@@ -1,5 +1,7 @@
 package nl.inl.blacklab.server.search;
 
+import java.io.File;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.JSONObject;
@@ -26,6 +28,21 @@ public class BlsConfigCacheAndPerformance {
 	/** If we're below target mem, how many jobs should we get rid of each time we add something to the cache? */
 	private int numberOfJobsToPurgeWhenBelowTargetMem;
 
+	/** Directory to spill large finished results to instead of discarding them, or null if disabled. */
+	private File spillDir = null;
+
+	/** Maximum total size of the spilled results in MB. */
+	private long spillMaxSizeMegs = 1000;
+
+	/** Only spill results at least this large (in kB); smaller results are cheap to recreate. */
+	private int spillMinJobSizeKB = 256;
+
+	/** Should we keep spilled results between server restarts (as long as the index hasn't changed)? */
+	private boolean spillReuseAfterRestart = false;
+
+	/** Maximum size of each index's metadata filter cache in MB (0 to disable). */
+	private int filterCacheSizeMegs = 32;
+
 	private int maxConcurrentSearches = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
 
 	private boolean autoDetectMaxConcurrent = true;
@@ -102,6 +119,14 @@ public class BlsConfigCacheAndPerformance {
 			maxSizeMegs = JsonUtil.getIntProp(cacheSettings, "maxSizeMegs", -1);
 			minFreeMemTargetMegs = JsonUtil.getIntProp(cacheSettings, "targetFreeMemMegs", 100);
 			numberOfJobsToPurgeWhenBelowTargetMem = JsonUtil.getIntProp(cacheSettings, "numberOfJobsToPurgeWhenBelowTargetMem", 2);
+			filterCacheSizeMegs = JsonUtil.getIntProp(cacheSettings, "filterCacheSizeMegs", 32);
+			if (cacheSettings.has("spill")) {
+				JSONObject spillSettings = cacheSettings.getJSONObject("spill");
+				spillDir = JsonUtil.getFileProp(spillSettings, "dir", null);
+				spillMaxSizeMegs = JsonUtil.getIntProp(spillSettings, "maxSizeMegs", 1000);
+				spillMinJobSizeKB = JsonUtil.getIntProp(spillSettings, "minJobSizeKB", 256);
+				spillReuseAfterRestart = JsonUtil.getBooleanProp(spillSettings, "reuseAfterRestart", false);
+			}
 		}
 
 		JSONObject serverLoadSettings = null;
@@ -156,6 +181,26 @@ public class BlsConfigCacheAndPerformance {
 		return numberOfJobsToPurgeWhenBelowTargetMem;
 	}
 
+	public File getSpillDir() {
+		return spillDir;
+	}
+
+	public long getSpillMaxSizeMegs() {
+		return spillMaxSizeMegs;
+	}
+
+	public int getSpillMinJobSizeKB() {
+		return spillMinJobSizeKB;
+	}
+
+	public boolean shouldSpillReuseAfterRestart() {
+		return spillReuseAfterRestart;
+	}
+
+	public int getFilterCacheSizeMegs() {
+		return filterCacheSizeMegs;
+	}
+
 	public int getMaxConcurrentSearches() {
 		return maxConcurrentSearches;
 	}
@@ -12,6 +12,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -23,7 +31,9 @@ import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.exceptions.ConfigurationException;
 import nl.inl.blacklab.server.exceptions.IllegalIndexName;
+import nl.inl.blacklab.server.exceptions.IndexBeingOpened;
 import nl.inl.blacklab.server.exceptions.IndexNotFound;
+import nl.inl.blacklab.server.exceptions.IndexOpenException;
 import nl.inl.blacklab.server.exceptions.InternalServerError;
 import nl.inl.blacklab.server.exceptions.NotAuthorized;
 import nl.inl.blacklab.server.exceptions.ServiceUnavailable;
@@ -38,6 +48,15 @@ public class IndexManager {
 
 	private static final int MAX_USER_INDICES = 10;
 
+	/** How long a request waits for an index being opened before we tell the client to try again later */
+	private static final int WAIT_FOR_OPEN_MS = 1000;
+
+	/** When we tell the client to try again later, how long should it wait? */
+	public static final int CHECK_AGAIN_MS = 2000;
+
+	/** How often to check if the properties we should keep resident are still in memory */
+	private static final long KEEP_RESIDENT_CHECK_MS = 60000;
+
 	private SearchManager searchMan;
 
 	/** Our current set of indices (with dir and mayViewContent setting) */
@@ -58,12 +77,25 @@ public class IndexManager {
 	/**
 	 * The status of each index, i.e. "available" or "indexing". If no status is
 	 * stored here, the status is "available".
+	 *
+	 * (concurrent map because the status is updated from the threads that
+	 * open indices, which shouldn't lock this map)
 	 */
 	Map<String, IndexStatus> indexStatus;
 
-	/** The Searcher objects, one for each of the indices we can search. */
+	/** The Searcher objects, one for each of the indices we can search.
+	 *  Indices that are being opened have a SearcherIsBeingOpened placeholder. */
 	private Map<String, Searcher> searchers = new HashMap<>();
 
+	/** Threads that open indices in the background */
+	private ExecutorService openerPool;
+
+	/** Thread that warms up indices after opening them, and keeps them resident if configured */
+	private ScheduledExecutorService warmUpExecutor;
+
+	/** Warm-up status of indices for which warm-up is configured */
+	private Map<String, IndexWarmUp> warmUps = new ConcurrentHashMap<>();
+
 	/** Configured index collections directories */
 	private List<File> collectionsDirs;
 
@@ -79,7 +111,25 @@ public class IndexManager {
 		this.searchMan = searchMan;
 		this.cache = searchMan.getCache();
 		indexParam = new HashMap<>();
-		indexStatus = new HashMap<>();
+		indexStatus = new ConcurrentHashMap<>();
+		openerPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "IndexOpener");
+				t.setDaemon(true); // don't keep the JVM alive
+				return t;
+			}
+		});
+
+		warmUpExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "IndexWarmUp");
+				t.setDaemon(true); // don't keep the JVM alive
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
 
 		boolean indicesFound = false;
 		if (properties.has("indices")) {
@@ -112,18 +162,23 @@ public class IndexManager {
 				// Does the settings file indicate whether or not contents may
 				// be viewed?
 				boolean mayViewContentsSet = indexConfig.has("mayViewContent");
+				IndexParam par;
 				if (mayViewContentsSet) {
 					// Yes; store the setting.
 					boolean mayViewContent = indexConfig
 							.getBoolean("mayViewContent");
-					indexParam.put(indexName, new IndexParam(dir, pid,
-							mayViewContent));
+					par = new IndexParam(dir, pid, mayViewContent);
 				} else {
 					// No; record that we don't know (i.e. use the index
 					// metadata setting).
-					indexParam.put(indexName, new IndexParam(dir, pid));
+					par = new IndexParam(dir, pid);
 				}
 
+				// Should we warm up the index after opening it?
+				if (indexConfig.has("warmUp"))
+					readWarmUpSettings(indexName, indexConfig.get("warmUp"), par);
+				indexParam.put(indexName, par);
+
 				indicesFound = true;
 			}
 		}
@@ -174,6 +229,45 @@ public class IndexManager {
 
 	}
 
+	/**
+	 * Read the warm-up settings for an index.
+	 *
+	 * The setting is either true (warm up all properties with a forward index)
+	 * or an object with an optional list of "properties" to warm up and an
+	 * optional list of properties to "keepResident" after warming up.
+	 *
+	 * @param indexName the index
+	 * @param warmUp the warm-up setting
+	 * @param par the index parameters to store the settings in
+	 * @throws ConfigurationException if the setting is invalid
+	 */
+	private static void readWarmUpSettings(String indexName, Object warmUp, IndexParam par) throws ConfigurationException {
+		if (warmUp instanceof Boolean) {
+			if ((Boolean) warmUp)
+				par.setWarmUp(null, Collections.<String>emptyList());
+		} else if (warmUp instanceof JSONObject) {
+			JSONObject warmUpConfig = (JSONObject) warmUp;
+			List<String> properties = null;
+			if (warmUpConfig.has("properties"))
+				properties = stringList(warmUpConfig.getJSONArray("properties"));
+			List<String> keepResident = Collections.emptyList();
+			if (warmUpConfig.has("keepResident"))
+				keepResident = stringList(warmUpConfig.getJSONArray("keepResident"));
+			par.setWarmUp(properties, keepResident);
+		} else {
+			throw new ConfigurationException("Invalid warmUp setting for index '" + indexName
+					+ "': should be true/false or an object");
+		}
+	}
+
+	private static List<String> stringList(JSONArray array) {
+		List<String> result = new ArrayList<>();
+		for (int i = 0; i < array.length(); i++) {
+			result.add(array.getString(i));
+		}
+		return result;
+	}
+
 	/**
 	 * Return the specified user's collection dir.
 	 *
@@ -286,6 +380,7 @@ public class IndexManager {
 			if (searcher instanceof SearcherIsBeingOpened) {
 				throw new ServiceUnavailable("Cannot close index, it is still being opened.");
 			}
+			stopWarmUp(indexName);
 			searcher.close();
 			searchers.remove(indexName);
 			indexStatus.remove(indexName);
@@ -296,48 +391,155 @@ public class IndexManager {
 	/**
 	 * Get the Searcher object for the specified index.
 	 *
+	 * If the index hasn't been opened yet, it is opened in the background.
+	 * We wait a short while for it; if it's still being opened after that,
+	 * IndexBeingOpened is thrown, telling the client to try again later.
+	 * Requests for other indices are not blocked while an index is being opened.
+	 *
 	 * @param indexName
 	 *            the index we want to search
 	 * @return the Searcher object for that index
 	 * @throws BlsException
+	 *             if not found or open error, or if the index is still being opened
+	 */
+	public Searcher getSearcher(String indexName) throws BlsException {
+		Searcher searcher = getSearcher(indexName, WAIT_FOR_OPEN_MS);
+		if (searcher == null)
+			throw new IndexBeingOpened(indexName, CHECK_AGAIN_MS);
+		return searcher;
+	}
+
+	/**
+	 * Get the Searcher object for the specified index, opening it if necessary.
+	 *
+	 * @param indexName
+	 *            the index we want to search
+	 * @param maxWaitMs how long to wait if the index is being opened, or -1 to wait until it's open
+	 * @return the Searcher object for that index, or null if it's still being opened
+	 * @throws BlsException
 	 *             if not found or open error
 	 */
-	@SuppressWarnings("deprecation")  // for call to _setPidField() and _setContentViewable()
-	public synchronized Searcher getSearcher(String indexName)
-			throws BlsException {
-		if (!BlsUtils.isValidIndexName(indexName))
-			throw new IllegalIndexName(indexName);
+	private Searcher getSearcher(String indexName, long maxWaitMs) throws BlsException {
+		SearcherIsBeingOpened opening;
+		synchronized (this) {
+			if (!BlsUtils.isValidIndexName(indexName))
+				throw new IllegalIndexName(indexName);
 
-		if (searchers.containsKey(indexName)) {
 			Searcher searcher = searchers.get(indexName);
-			if (searcher.getIndexDirectory().canRead())
-				return searcher;
-			// Index was (re)moved; remove Searcher from cache.
-			searchers.remove(indexName);
-			indexStatus.remove(indexName);
-			cache.clearCacheForIndex(indexName);
-			// Maybe we can find an index with this name elsewhere?
+			if (searcher instanceof SearcherIsBeingOpened) {
+				opening = (SearcherIsBeingOpened)searcher;
+			} else {
+				if (searcher != null) {
+					if (searcher.getIndexDirectory().canRead())
+						return searcher;
+					// Index was (re)moved; remove Searcher from cache.
+					stopWarmUp(indexName);
+					searchers.remove(indexName);
+					indexStatus.remove(indexName);
+					cache.clearCacheForIndex(indexName);
+					// Maybe we can find an index with this name elsewhere?
+				}
+				opening = startOpening(indexName);
+			}
 		}
-		IndexParam par = getIndexParam(indexName);
+
+		// Wait for the index to be opened (without holding our lock,
+		// so requests for other indices are not blocked)
+		try {
+			return opening.waitUntilOpen(maxWaitMs);
+		} catch (ExecutionException e) {
+			throw new InternalServerError("Could not open index '" + indexName + "'", 27, e.getCause());
+		}
+	}
+
+	/**
+	 * Start opening an index in the background.
+	 *
+	 * Puts a SearcherIsBeingOpened placeholder in the searchers map, which will
+	 * be replaced by the real Searcher when it's been opened.
+	 *
+	 * @param indexName the index to open
+	 * @return the placeholder
+	 * @throws BlsException if the index was not found
+	 */
+	private synchronized SearcherIsBeingOpened startOpening(final String indexName) throws BlsException {
+		final IndexParam par = getIndexParam(indexName);
 		if (par == null) {
 			throw new IndexNotFound(indexName);
 		}
+		final SearcherIsBeingOpened placeholder = new SearcherIsBeingOpened(indexName, par.getDir());
+		searchers.put(indexName, placeholder);
+		indexStatus.put(indexName, IndexStatus.OPENING);
+		placeholder.startOpening(openerPool, new Callable<Searcher>() {
+			@Override
+			public Searcher call() throws Exception {
+				return openSearcher(indexName, par, placeholder);
+			}
+		});
+		return placeholder;
+	}
+
+	/**
+	 * Open an index and replace its placeholder with the Searcher.
+	 *
+	 * Called from a thread in our opener pool.
+	 *
+	 * @param indexName the index to open
+	 * @param par the index parameters
+	 * @param placeholder the placeholder to replace
+	 * @return the Searcher
+	 * @throws Exception if the index could not be opened
+	 */
+	private Searcher openSearcher(String indexName, IndexParam par, SearcherIsBeingOpened placeholder) throws Exception {
 		File indexDir = par.getDir();
-		Searcher searcher;
+		Searcher searcher = null;
 		try {
 			logger.debug("Opening index '" + indexName + "', dir = " + indexDir);
-			searchers.put(indexName, new SearcherIsBeingOpened(indexName, indexDir));
-			indexStatus.put(indexName, IndexStatus.OPENING);
 			searcher = Searcher.open(indexDir);
 			searcher.setDefaultSearchSensitive(searchMan.config().isDefaultCaseSensitive(), searchMan.config().isDefaultDiacriticsSensitive());
+			searcher.filterCache().setMaxSizeBytes(searchMan.config().getCacheConfig().getFilterCacheSizeMegs() * 1024L * 1024L);
+			configureSearcher(indexName, par, searcher);
+
+			synchronized (this) {
+				if (searchers.get(indexName) != placeholder) {
+					// Index was removed while we were opening it
+					throw new IndexOpenException("Index '" + indexName + "' was removed while being opened");
+				}
+				searchers.put(indexName, searcher);
+				indexStatus.put(indexName, searcher.isEmpty() ? IndexStatus.EMPTY : IndexStatus.AVAILABLE);
+			}
+			startWarmUp(indexName, par, searcher);
 		} catch (Exception e) {
-			searchers.remove(indexName); // remove SearcherIsBeingOpened placeholder
-			indexStatus.remove(indexName);
-			throw new InternalServerError("Could not open index '" + indexName + "'", 27, e);
+			logger.error("Could not open index '" + indexName + "'", e);
+			synchronized (this) {
+				Searcher current = searchers.get(indexName);
+				if (current == placeholder || current != null && current == searcher) {
+					// Remove SearcherIsBeingOpened placeholder (or the Searcher we registered)
+					stopWarmUp(indexName);
+					searchers.remove(indexName);
+					indexStatus.remove(indexName);
+				}
+			}
+			if (searcher != null)
+				searcher.close();
+			throw e;
 		}
-		searchers.put(indexName, searcher);
-		indexStatus.put(indexName, searcher.isEmpty() ? IndexStatus.EMPTY : IndexStatus.AVAILABLE);
 
+		logger.debug("  Finished opening index '" + indexName + "'.");
+
+		return searcher;
+	}
+
+	/**
+	 * Apply the pid and content view settings from the index metadata
+	 * and/or the BLS config to a Searcher we've just opened.
+	 *
+	 * @param indexName the index
+	 * @param par the index parameters
+	 * @param searcher the Searcher
+	 */
+	@SuppressWarnings("deprecation")  // for call to _setPidField() and _setContentViewable()
+	private void configureSearcher(String indexName, IndexParam par, Searcher searcher) {
 		// Figure out the pid from the index metadata and/or BLS config.
 		String indexPid = searcher.getIndexStructure().pidField();
 		if (indexPid == null)
@@ -374,10 +576,90 @@ public class IndexManager {
 			par.setMayViewContent(false);
 			searcher.getIndexStructure()._setContentViewable(false);
 		}
+	}
 
-		logger.debug("  Finished opening index '" + indexName + "'.");
+	/**
+	 * Start warming up a Searcher in the background, if configured.
+	 *
+	 * Cancels any warm-up of a previous Searcher for the same index.
+	 *
+	 * @param indexName the index
+	 * @param par the index parameters
+	 * @param searcher the Searcher to warm up
+	 */
+	private void startWarmUp(String indexName, IndexParam par, Searcher searcher) {
+		if (!par.warmUp())
+			return;
+		final IndexWarmUp warmUp = new IndexWarmUp(indexName, searcher, par.getWarmUpProperties(), par.getKeepResidentProperties());
+		stopWarmUp(indexName);
+		warmUps.put(indexName, warmUp);
+		warmUp.addFuture(warmUpExecutor.submit(warmUp));
+		if (warmUp.hasKeepResident()) {
+			warmUp.addFuture(warmUpExecutor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					warmUp.keepResident();
+				}
+			}, KEEP_RESIDENT_CHECK_MS, KEEP_RESIDENT_CHECK_MS, TimeUnit.MILLISECONDS));
+		}
+	}
 
-		return searcher;
+	/**
+	 * Stop warming up an index (and keeping it resident).
+	 *
+	 * @param indexName the index
+	 */
+	private void stopWarmUp(String indexName) {
+		IndexWarmUp warmUp = warmUps.remove(indexName);
+		if (warmUp != null)
+			warmUp.cancel();
+	}
+
+	/**
+	 * Get the warm-up status of an index.
+	 *
+	 * @param indexName the index
+	 * @return the warm-up status, or null if no warm-up was started for this index
+	 */
+	public IndexWarmUp getWarmUp(String indexName) {
+		return warmUps.get(indexName);
+	}
+
+	/**
+	 * Is the specified index currently being opened?
+	 *
+	 * @param indexName the index
+	 * @return true iff it is being opened
+	 */
+	public synchronized boolean isBeingOpened(String indexName) {
+		return searchers.get(indexName) instanceof SearcherIsBeingOpened;
+	}
+
+	/**
+	 * Start opening all public indices in the background, so they're
+	 * available when the first requests come in.
+	 */
+	public void openPublicIndices() {
+		for (String indexName: getAvailablePublicIndices()) {
+			try {
+				synchronized (this) {
+					if (!searchers.containsKey(indexName))
+						startOpening(indexName);
+				}
+			} catch (BlsException e) {
+				logger.error("Could not open index '" + indexName + "': " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Clean up resources.
+	 *
+	 * Stops the threads that open and warm up indices.
+	 */
+	public void cleanup() {
+		openerPool.shutdownNow();
+		warmUpExecutor.shutdownNow();
 	}
 
 	/**
@@ -493,10 +775,13 @@ public class IndexManager {
 
 		// Remove stuff from the cache, close Searcher
 		cache.clearCacheForIndex(indexName);
-		Searcher searcher = getSearcher(indexName);
+		Searcher searcher = getSearcher(indexName, -1);
 		if (searcher != null) {
-			searchers.remove(indexName);
-			indexStatus.remove(indexName);
+			synchronized (this) {
+				stopWarmUp(indexName);
+				searchers.remove(indexName);
+				indexStatus.remove(indexName);
+			}
 			searcher.close();
 		}
 
@@ -589,20 +874,17 @@ public class IndexManager {
 	 * @throws BlsException
 	 */
 	public IndexStatus getIndexStatus(String indexName) throws BlsException {
-		synchronized (indexStatus) {
-			IndexStatus status = indexStatus.get(indexName);
-			if (status == null) {
-				Searcher searcher = getSearcher(indexName);
-				if (searcher instanceof SearcherIsBeingOpened) {
-					status = IndexStatus.OPENING;
-				} else if (searcher.isEmpty()) {
-					status = IndexStatus.EMPTY;
-				} else {
-					status = IndexStatus.AVAILABLE;
-				}
-			}
-			return status;
+		IndexStatus status = indexStatus.get(indexName);
+		if (status == null || status == IndexStatus.OPENING) {
+			// Not opened yet, or being opened; give it a chance to finish opening
+			Searcher searcher = getSearcher(indexName, WAIT_FOR_OPEN_MS);
+			if (searcher == null)
+				return IndexStatus.OPENING;
+			status = indexStatus.get(indexName);
+			if (status == null)
+				status = searcher.isEmpty() ? IndexStatus.EMPTY : IndexStatus.AVAILABLE;
 		}
+		return status;
 	}
 
 	/**
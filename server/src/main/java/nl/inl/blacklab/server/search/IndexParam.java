@@ -1,6 +1,8 @@
 package nl.inl.blacklab.server.search;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 /** Index parameters */
 class IndexParam {
@@ -12,6 +14,12 @@ class IndexParam {
 
 	private boolean mayViewContentsSet;
 
+	private boolean warmUp;
+
+	private List<String> warmUpProperties;
+
+	private List<String> keepResidentProperties = Collections.emptyList();
+
 	public IndexParam(File dir, String pidField, boolean mayViewContents) {
 		super();
 		this.dir = dir;
@@ -51,6 +59,45 @@ class IndexParam {
 		this.pidField = pidField;
 	}
 
+	/**
+	 * Should the forward indices be warmed up after opening the index?
+	 *
+	 * @return true iff we should warm up
+	 */
+	public boolean warmUp() {
+		return warmUp;
+	}
+
+	/**
+	 * Which properties should be warmed up?
+	 *
+	 * @return the properties, or null for all properties with a forward index
+	 */
+	public List<String> getWarmUpProperties() {
+		return warmUpProperties;
+	}
+
+	/**
+	 * Which properties should be kept resident after warming up?
+	 *
+	 * @return the properties (may be empty)
+	 */
+	public List<String> getKeepResidentProperties() {
+		return keepResidentProperties;
+	}
+
+	/**
+	 * Set the warm-up settings.
+	 *
+	 * @param properties properties to warm up, or null for all properties with a forward index
+	 * @param keepResidentProperties properties to keep resident after warming up
+	 */
+	public void setWarmUp(List<String> properties, List<String> keepResidentProperties) {
+		warmUp = true;
+		warmUpProperties = properties;
+		this.keepResidentProperties = keepResidentProperties;
+	}
+
 	public void setMayViewContent(boolean b) {
 		mayViewContents = false;
 		mayViewContentsSet = true;
@@ -0,0 +1,160 @@
+package nl.inl.blacklab.server.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import nl.inl.blacklab.forwardindex.ForwardIndex;
+import nl.inl.blacklab.index.complex.ComplexFieldUtil;
+import nl.inl.blacklab.search.Searcher;
+
+/**
+ * Warms up the forward indices of a Searcher we've just opened.
+ *
+ * The forward indices are memory-mapped, so right after opening an index,
+ * the first searches have to wait for the operating system to load them
+ * page by page. Instead, we read them sequentially in the background, so
+ * they're in memory by the time they're needed (for KWICs, sorting,
+ * grouping and NFA matching).
+ *
+ * Optionally, some of the forward indices can be kept resident: they are
+ * checked regularly and read again if (part of) them was evicted from
+ * memory. Java can't lock pages in memory, so this is the best we can do.
+ */
+public class IndexWarmUp implements Runnable {
+	private static final Logger logger = LogManager.getLogger(IndexWarmUp.class);
+
+	public enum WarmUpStatus {
+		WAITING,     // warm-up hasn't started yet
+		RUNNING,     // forward indices are being read
+		FINISHED,    // all forward indices have been read
+		CANCELLED;   // index was closed or refreshed before we were done
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	/** The index we're warming up */
+	private String indexName;
+
+	/** The forward indices to warm up */
+	private List<ForwardIndex> forwardIndices = new ArrayList<>();
+
+	/** The forward indices to keep resident after the warm-up */
+	private List<ForwardIndex> keepResident = new ArrayList<>();
+
+	/** Names of the properties to keep resident (for reporting) */
+	private List<String> keepResidentNames = new ArrayList<>();
+
+	/** Total number of bytes to read */
+	private long bytesTotal;
+
+	/** Number of bytes read so far */
+	private AtomicLong bytesDone = new AtomicLong();
+
+	/** Our status */
+	private volatile WarmUpStatus status = WarmUpStatus.WAITING;
+
+	/** The warm-up task and the keep resident task, so we can cancel them */
+	private List<Future<?>> futures = new ArrayList<>();
+
+	/**
+	 * Prepare warming up an index.
+	 *
+	 * Properties may be specified by property name (e.g. "word") or by
+	 * full field property name (e.g. "contents%word").
+	 *
+	 * @param indexName the index
+	 * @param searcher the Searcher whose forward indices to warm up
+	 * @param properties properties to warm up, or null for all properties
+	 *   with a forward index
+	 * @param keepResidentProperties properties to keep resident
+	 */
+	IndexWarmUp(String indexName, Searcher searcher, Collection<String> properties, Collection<String> keepResidentProperties) {
+		this.indexName = indexName;
+		for (Map.Entry<String, ForwardIndex> e: searcher.getForwardIndices().entrySet()) {
+			String fieldPropName = e.getKey();
+			String propName = ComplexFieldUtil.getNameComponents(fieldPropName)[1];
+			ForwardIndex fi = e.getValue();
+			if (properties == null || properties.contains(propName) || properties.contains(fieldPropName)) {
+				forwardIndices.add(fi);
+				bytesTotal += fi.getMappedSize();
+			}
+			if (keepResidentProperties.contains(propName) || keepResidentProperties.contains(fieldPropName)) {
+				keepResident.add(fi);
+				keepResidentNames.add(fieldPropName);
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		status = WarmUpStatus.RUNNING;
+		logger.debug("Warming up index '" + indexName + "' (" + bytesTotal + " bytes)");
+		for (ForwardIndex fi: forwardIndices) {
+			if (!fi.warmUp(bytesDone)) {
+				status = WarmUpStatus.CANCELLED;
+				return;
+			}
+		}
+		status = WarmUpStatus.FINISHED;
+		logger.debug("  Finished warming up index '" + indexName + "'.");
+	}
+
+	/**
+	 * Read the forward indices we should keep resident again, if (part of)
+	 * them is no longer in memory.
+	 */
+	void keepResident() {
+		for (ForwardIndex fi: keepResident) {
+			if (Thread.currentThread().isInterrupted())
+				return;
+			if (!fi.isResident())
+				fi.warmUp(null);
+		}
+	}
+
+	boolean hasKeepResident() {
+		return !keepResident.isEmpty();
+	}
+
+	synchronized void addFuture(Future<?> future) {
+		futures.add(future);
+	}
+
+	/**
+	 * Stop warming up and keeping resident.
+	 */
+	synchronized void cancel() {
+		for (Future<?> future: futures) {
+			future.cancel(true);
+		}
+		if (status != WarmUpStatus.FINISHED)
+			status = WarmUpStatus.CANCELLED;
+	}
+
+	public WarmUpStatus getStatus() {
+		return status;
+	}
+
+	public long getBytesDone() {
+		return bytesDone.get();
+	}
+
+	public long getBytesTotal() {
+		return bytesTotal;
+	}
+
+	public List<String> getKeepResident() {
+		return keepResidentNames;
+	}
+
+}
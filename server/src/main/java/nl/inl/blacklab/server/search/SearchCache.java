@@ -24,6 +24,7 @@ import nl.inl.blacklab.server.jobs.JobDocsTotal;
 import nl.inl.blacklab.server.jobs.JobHitsTotal;
 import nl.inl.blacklab.server.jobs.User;
 import nl.inl.blacklab.server.util.MemoryUtil;
+import nl.inl.blacklab.server.util.Metrics;
 import nl.inl.util.ThreadPriority;
 import nl.inl.util.ThreadPriority.Level;
 
@@ -66,6 +67,24 @@ public class SearchCache {
 
 	private SearchManager searchMan;
 
+	/** Where finished jobs are spilled to when evicted, or null if disabled */
+	private SpillStore spillStore;
+
+	/** Number of searches found in the cache (or restored from the spill store) */
+	private Metrics.Counter cacheHits;
+
+	/** Number of searches not found in the cache */
+	private Metrics.Counter cacheMisses;
+
+	/** Number of finished searches removed because of cache size, age or free memory */
+	private Metrics.Counter cacheEvictions;
+
+	/** Number of searches aborted by load management */
+	private Metrics.Counter jobsAborted;
+
+	/** Number of searches running, paused and waiting for another search (as of the last load management) */
+	private volatile int jobsRunning, jobsPaused, jobsWaiting;
+
 	/**
 	 * Initialize the cache.
 	 *
@@ -83,11 +102,49 @@ public class SearchCache {
 
 		cachedSearches = new HashMap<>();
 
+		if (cacheConfig.getSpillDir() != null)
+			spillStore = new SpillStore(cacheConfig);
+
+		registerMetrics(searchMan.getMetrics());
+
 		loadManagerThread = new LoadManagerThread(this);
 		loadManagerThread.start();
 
 	}
 
+	private void registerMetrics(Metrics metrics) {
+		cacheHits = metrics.counter("blacklab_cache_hits_total", "Searches found in the cache");
+		cacheMisses = metrics.counter("blacklab_cache_misses_total", "Searches not found in the cache");
+		cacheEvictions = metrics.counter("blacklab_cache_evictions_total", "Finished searches removed from the cache because of size, age or memory");
+		jobsAborted = metrics.counter("blacklab_jobs_aborted_total", "Searches aborted by load management");
+		metrics.gaugeFunction("blacklab_cache_searches", "Searches in the cache", new Metrics.Function() {
+			@Override
+			public double getValue() {
+				synchronized (SearchCache.this) {
+					return cachedSearches.size();
+				}
+			}
+		});
+		metrics.gaugeFunction("blacklab_jobs_running", "Searches running", new Metrics.Function() {
+			@Override
+			public double getValue() {
+				return jobsRunning;
+			}
+		});
+		metrics.gaugeFunction("blacklab_jobs_paused", "Searches paused by load management (waiting for a core)", new Metrics.Function() {
+			@Override
+			public double getValue() {
+				return jobsPaused;
+			}
+		});
+		metrics.gaugeFunction("blacklab_jobs_waiting", "Searches waiting for another search to finish", new Metrics.Function() {
+			@Override
+			public double getValue() {
+				return jobsWaiting;
+			}
+		});
+	}
+
 	/**
 	 * Remove all cache entries for the specified index.
 	 *
@@ -103,6 +160,8 @@ public class SearchCache {
 				it.remove();
 			}
 		}
+		if (spillStore != null)
+			spillStore.clearForIndex(indexName);
 	}
 
 	/**
@@ -110,6 +169,8 @@ public class SearchCache {
 	 */
 	public void clearCache() {
 		clearCache(false);
+		if (spillStore != null)
+			spillStore.clear();
 	}
 
 	public void cleanup() {
@@ -118,6 +179,8 @@ public class SearchCache {
 		loadManagerThread = null;
 
 		clearCache(true);
+		if (spillStore != null)
+			spillStore.close();
 
 		searchMan = null;
 	}
@@ -130,8 +193,13 @@ public class SearchCache {
 			.entry("maxNumberOfSearches", cacheConfig.getMaxNumberOfJobs())
 			.entry("maxSearchAgeSec", cacheConfig.getMaxJobAgeSec())
 			.entry("sizeBytes", calculateSizeBytes(cachedSearches.values()))
-			.entry("numberOfSearches", cachedSearches.size())
-		.endMap();
+			.entry("numberOfSearches", cachedSearches.size());
+		if (spillStore != null) {
+			ds.startEntry("spilled");
+			spillStore.dataStreamStatus(ds);
+			ds.endEntry();
+		}
+		ds.endMap();
 	}
 
 	public void dataStreamContents(DataStream ds, boolean debugInfo) {
@@ -160,10 +228,36 @@ public class SearchCache {
 	public Job search(User user, JobDescription jobDesc, boolean block) throws BlsException {
 		// Search the cache / running jobs for this search, create new if not found.
 		boolean performSearch = false;
+		boolean useCache = jobDesc.getSearchSettings().isUseCache();
+		Job restoredJob = null;
+		if (useCache && spillStore != null) {
+			boolean inMemory;
+			synchronized (this) {
+				inMemory = get(jobDesc) != null;
+			}
+			if (!inMemory) {
+				// Not in memory; maybe we spilled it to disk earlier?
+				// (read outside our lock, so other requests aren't blocked)
+				restoredJob = spillStore.restore(searchMan, user, jobDesc);
+			}
+		}
 		Job job;
 		synchronized (this) {
-			boolean useCache = jobDesc.getSearchSettings().isUseCache();
 			job = useCache ? get(jobDesc) : null;
+			if (job == null && restoredJob != null) {
+				// (if another request put the job in the cache meanwhile, we use that instead)
+				job = restoredJob;
+				job.incrRef();
+				put(job);
+			} else if (job != null) {
+				job.incrRef();
+			}
+			if (useCache) {
+				if (job == null)
+					cacheMisses.inc();
+				else
+					cacheHits.inc();
+			}
 			if (job == null) {
 				// Not found in cache
 
@@ -188,8 +282,6 @@ public class SearchCache {
 					runningJobs.add(job);
 				}
 				performSearch = true;
-			} else {
-				job.incrRef();
 			}
 		}
 
@@ -372,8 +464,11 @@ public class SearchCache {
 							logger.debug("Searchjob too old (age " + (int)search1.cacheAge() + "s > max age " + cacheConfig.getMaxJobAgeSec() + "s)");
 						logger.debug("  Removing searchjob: " + search1);
 					}
+					if (spillStore != null)
+						spillStore.spillLater(search1);
 					removeFromCache(search1);
 					removed.add(search1);
+					cacheEvictions.inc();
 
 					minSearchesToRemove--;
 				} else {
@@ -397,6 +492,7 @@ public class SearchCache {
 
 		int coresLeft = cacheConfig.getMaxConcurrentSearches();
 		int pauseSlotsLeft = cacheConfig.getMaxPausedSearches();
+		int running = 0, paused = 0, waiting = 0;
 		for (Job search: searches) {
 			if (search.finished()) {
 				// Finished search. Keep in cache?
@@ -406,6 +502,7 @@ public class SearchCache {
 			} else if (search.isWaitingForOtherJob()) {
 				// Waiting, not taking up any CPU. Can run normally, but doesn't take a core.
 				applyAction(search, ServerLoadQueryAction.RUN_NORMALLY, "waiting for other job");
+				waiting++;
 			} else {
 				// Running search. Run, pause or abort?
 				boolean isCount = search instanceof JobHitsTotal || search instanceof JobDocsTotal;
@@ -416,6 +513,7 @@ public class SearchCache {
 					if (search.timeSinceLastAccess() <= cacheConfig.getAbandonedCountAbortTimeSec()) {
 						pauseSlotsLeft--;
 						applyAction(search, ServerLoadQueryAction.PAUSE, "abandoned count");
+						paused++;
 					} else {
 						applyAction(search, ServerLoadQueryAction.ABORT, "abandoned count");
 					}
@@ -423,16 +521,21 @@ public class SearchCache {
 					// A core is available. Run the search.
 					coresLeft--;
 					applyAction(search, ServerLoadQueryAction.RUN_NORMALLY, "core available");
+					running++;
 				} else if (pauseSlotsLeft > 0) {
 					// No cores, but a pause slot is left. Pause it.
 					pauseSlotsLeft--;
 					applyAction(search, ServerLoadQueryAction.PAUSE, "no cores left");
+					paused++;
 				} else {
 					// No cores or pause slots. Abort the search.
 					applyAction(search, ServerLoadQueryAction.ABORT, "no cores or pause slots left");
 				}
 			}
 		}
+		jobsRunning = running;
+		jobsPaused = paused;
+		jobsWaiting = waiting;
 	}
 
 	/**
@@ -483,6 +586,7 @@ public class SearchCache {
 	}
 
 	private void abortSearch(Job search) {
+		jobsAborted.inc();
 		search.cancelJob();
 		removeFromCache(search);
 	}
@@ -5,12 +5,15 @@ import org.apache.logging.log4j.Logger;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import nl.inl.blacklab.externalstorage.ContentStore;
+import nl.inl.blacklab.forwardindex.ForwardIndex;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.exceptions.ConfigurationException;
 import nl.inl.blacklab.server.jobs.Job;
 import nl.inl.blacklab.server.jobs.JobDescription;
 import nl.inl.blacklab.server.jobs.User;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
+import nl.inl.blacklab.server.util.Metrics;
 
 public class SearchManager {
 
@@ -28,9 +31,14 @@ public class SearchManager {
 	/** Manages all the indices we have available and/or open */
 	private IndexManager indexMan;
 
+	/** Server metrics (see RequestHandlerMetrics) */
+	private Metrics metrics = new Metrics();
+
 	public SearchManager(JSONObject properties) throws ConfigurationException {
 		logger.debug("SearchManager created");
 
+		registerReadMetrics();
+
 		try {
 			// The main config object
 			config = new BlsConfig(properties);
@@ -44,6 +52,9 @@ public class SearchManager {
 
 			// Init auth system
 			authSystem = new AuthManager(config.getAuthClass(), config.getAuthParam());
+
+			// Start opening the public indices in the background
+			indexMan.openPublicIndices();
 		} catch (JSONException e) {
 			e.printStackTrace();
 			throw new ConfigurationException("Invalid JSON in blacklab-server.json; please validate: " + e.getMessage());
@@ -60,13 +71,16 @@ public class SearchManager {
 	/**
 	 * Clean up resources.
 	 *
-	 * In particular, stops the load manager thread and
-	 * cancels any running searches.
+	 * In particular, stops the load manager thread,
+	 * cancels any running searches and stops opening indices.
 	 */
 	public synchronized void cleanup() {
 		// Stop any running searches
 		cache.cleanup();
 
+		// Stop opening indices
+		indexMan.cleanup();
+
 		// Set variables to null in case it helps GC
 		cache = null;
 		config = null;
@@ -90,8 +104,42 @@ public class SearchManager {
 		return indexMan;
 	}
 
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
 	public Job search(User user, JobDescription jobDesc, boolean block) throws BlsException {
 		return cache.search(user, jobDesc, block);
 	}
 
+	/**
+	 * Expose the time and bytes spent reading from forward indices and content stores.
+	 */
+	private void registerReadMetrics() {
+		metrics.counterFunction("blacklab_forward_index_read_bytes_total", "Bytes read from forward indices", new Metrics.Function() {
+			@Override
+			public double getValue() {
+				return ForwardIndex.getBytesRead();
+			}
+		});
+		metrics.counterFunction("blacklab_forward_index_read_seconds_total", "Time spent reading from forward indices", new Metrics.Function() {
+			@Override
+			public double getValue() {
+				return ForwardIndex.getReadNanos() / 1e9;
+			}
+		});
+		metrics.counterFunction("blacklab_content_store_read_bytes_total", "Bytes read from content stores", new Metrics.Function() {
+			@Override
+			public double getValue() {
+				return ContentStore.getBytesRead();
+			}
+		});
+		metrics.counterFunction("blacklab_content_store_read_seconds_total", "Time spent reading from content stores", new Metrics.Function() {
+			@Override
+			public double getValue() {
+				return ContentStore.getReadNanos() / 1e9;
+			}
+		});
+	}
+
 }
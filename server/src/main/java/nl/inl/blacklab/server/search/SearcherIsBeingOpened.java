@@ -3,6 +3,12 @@ package nl.inl.blacklab.server.search;
 import java.io.File;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
@@ -16,19 +22,57 @@ import nl.inl.blacklab.forwardindex.ForwardIndex;
 import nl.inl.blacklab.search.QueryExecutionContext;
 import nl.inl.blacklab.search.Searcher;
 
-/** A dummy Searcher placeholder while Searcher is being opened. */
+/**
+ * A dummy Searcher placeholder while Searcher is being opened.
+ *
+ * Keeps track of the background task opening the real Searcher,
+ * so we can wait for it.
+ */
 public class SearcherIsBeingOpened extends Searcher {
 
 	private String indexName;
 
 	private File indexDir;
 
+	/** The task opening the real Searcher */
+	private Future<Searcher> future;
+
 	public SearcherIsBeingOpened(String indexName, File indexDir) {
 		super();
 		this.indexName = indexName;
 		this.indexDir = indexDir;
 	}
 
+	/**
+	 * Start opening the real Searcher.
+	 *
+	 * @param executor where to run the task
+	 * @param opener task that opens the Searcher
+	 */
+	void startOpening(ExecutorService executor, Callable<Searcher> opener) {
+		future = executor.submit(opener);
+	}
+
+	/**
+	 * Wait for the real Searcher to be opened.
+	 *
+	 * @param maxWaitMs maximum time to wait, or -1 to wait until it's done
+	 * @return the Searcher, or null if it's not done yet (or we were interrupted)
+	 * @throws ExecutionException if opening the Searcher failed
+	 */
+	Searcher waitUntilOpen(long maxWaitMs) throws ExecutionException {
+		try {
+			if (maxWaitMs < 0)
+				return future.get();
+			return future.get(maxWaitMs, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
 	@Override
 	public boolean isEmpty() {
 		throw new UnsupportedOperationException();
@@ -39,6 +83,11 @@ public class SearcherIsBeingOpened extends Searcher {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public Searcher reopenIfChanged() {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public Document document(int doc) {
 		throw new UnsupportedOperationException();
@@ -0,0 +1,403 @@
+package nl.inl.blacklab.server.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import nl.inl.blacklab.search.HitsSerializeUtil;
+import nl.inl.blacklab.search.Searcher;
+import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.exceptions.BlsException;
+import nl.inl.blacklab.server.exceptions.IndexBeingOpened;
+import nl.inl.blacklab.server.jobs.Job;
+import nl.inl.blacklab.server.jobs.JobDescription;
+import nl.inl.blacklab.server.jobs.User;
+
+/**
+ * Second cache tier: finished jobs that are evicted from the SearchCache
+ * are written to a memory-mapped file in the spill directory instead of
+ * being discarded, so expensive searches (sorting, grouping) don't have to
+ * be redone when they are requested again.
+ *
+ * Spilled jobs are only read back (remapped) when they are requested.
+ * The least recently used spilled jobs are deleted when the store grows
+ * too large.
+ *
+ * Writing a job (which may need to finish sorting it) happens on a background
+ * thread, and reading it back happens on the requesting thread, so neither
+ * holds the SearchCache lock. Our own lock only protects the administration.
+ *
+ * Each spill file starts with a header containing the job's unique identifier,
+ * the index name and the index modification time, so we can check if the
+ * results are still valid, and optionally reuse them after a server restart.
+ */
+public class SpillStore {
+
+	private static final Logger logger = LogManager.getLogger(SpillStore.class);
+
+	/** Identifies our spill files */
+	private static final int MAGIC_NUMBER = 0x424c5331; // "BLS1"
+
+	/** Extension for our spill files */
+	private static final String SPILL_FILE_EXT = ".spill";
+
+	/** Information about a job spilled to disk */
+	private static class SpilledJob {
+
+		File file;
+
+		String indexName;
+
+		String indexTimeModified;
+
+		long sizeBytes;
+
+		public SpilledJob(File file, String indexName, String indexTimeModified, long sizeBytes) {
+			this.file = file;
+			this.indexName = indexName;
+			this.indexTimeModified = indexTimeModified;
+			this.sizeBytes = sizeBytes;
+		}
+
+	}
+
+	/** Where our spill files are stored */
+	private File dir;
+
+	/** Maximum total size of our spill files */
+	private long maxSizeBytes;
+
+	/** Minimum size of a job's results to be worth spilling */
+	private long minJobSizeBytes;
+
+	/** Keep our spill files when the server is shut down? */
+	private boolean reuseAfterRestart;
+
+	/** The spilled jobs by unique identifier, in least recently used order */
+	private Map<String, SpilledJob> spilledJobs = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Total size of our spill files (including space reserved for files being written) */
+	private long sizeBytes = 0;
+
+	/** Writes spill files in the background (see spillLater()) */
+	private ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "SpillStoreWriter");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Open the spill store.
+	 *
+	 * If we should reuse spill files after restart, the existing files are
+	 * registered; otherwise they are deleted.
+	 *
+	 * @param config our config
+	 */
+	public SpillStore(BlsConfigCacheAndPerformance config) {
+		dir = config.getSpillDir();
+		maxSizeBytes = config.getSpillMaxSizeMegs() * 1000 * 1000;
+		minJobSizeBytes = config.getSpillMinJobSizeKB() * 1000L;
+		reuseAfterRestart = config.shouldSpillReuseAfterRestart();
+		if (!dir.exists() && !dir.mkdirs())
+			throw new RuntimeException("Could not create spill dir: " + dir);
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file: files) {
+				if (!file.getName().endsWith(SPILL_FILE_EXT))
+					continue;
+				if (reuseAfterRestart)
+					registerExistingFile(file);
+				else
+					deleteFile(file);
+			}
+		}
+		logger.debug("Spill store in " + dir + ": " + spilledJobs.size() + " jobs (" + sizeBytes + " bytes) reused");
+	}
+
+	/**
+	 * Read the header of an existing spill file and register it.
+	 *
+	 * @param file the spill file
+	 */
+	private void registerExistingFile(File file) {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			try (FileChannel ch = raf.getChannel()) {
+				MappedByteBuffer buf = ch.map(MapMode.READ_ONLY, 0, ch.size());
+				if (buf.getInt() != MAGIC_NUMBER)
+					throw new IOException("Not a spill file");
+				String uniqueIdentifier = HitsSerializeUtil.getString(buf);
+				String indexName = HitsSerializeUtil.getString(buf);
+				String indexTimeModified = HitsSerializeUtil.getString(buf);
+				SpilledJob spilledJob = new SpilledJob(file, indexName, indexTimeModified, ch.size());
+				spilledJobs.put(uniqueIdentifier, spilledJob);
+				sizeBytes += spilledJob.sizeBytes;
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Could not read spill file " + file + ", deleting it: " + e.getMessage());
+			deleteFile(file);
+		}
+	}
+
+	/**
+	 * Spill a finished job's results to disk in the background, if possible and worthwhile.
+	 *
+	 * Called while evicting the job from the cache; we keep a reference to the
+	 * job until it has been written.
+	 *
+	 * @param job the job to spill
+	 */
+	public void spillLater(final Job job) {
+		job.incrRef();
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					spill(job);
+				} finally {
+					job.decrRef();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Spill a finished job's results to disk, if possible and worthwhile.
+	 *
+	 * @param job the job to spill
+	 */
+	void spill(Job job) {
+		String uniqueIdentifier = job.getDescription().uniqueIdentifier();
+		synchronized (this) {
+			if (spilledJobs.containsKey(uniqueIdentifier))
+				return; // was restored from the spill store earlier, still there
+		}
+		long payloadBytes = job.spillSizeBytes();
+		if (payloadBytes < 0 || payloadBytes < minJobSizeBytes)
+			return; // can't spill, or cheap to recreate
+		String indexName = job.getDescription().getIndexName();
+		String indexTimeModified = job.getSearcher().getIndexStructure().getTimeModified();
+		int headerBytes = (Integer.SIZE / Byte.SIZE) + HitsSerializeUtil.sizeBytes(uniqueIdentifier) +
+				HitsSerializeUtil.sizeBytes(indexName) + HitsSerializeUtil.sizeBytes(indexTimeModified);
+		long totalBytes = headerBytes + payloadBytes;
+		if (totalBytes > maxSizeBytes || totalBytes > Integer.MAX_VALUE)
+			return; // would never fit, or too large to map
+		synchronized (this) {
+			// Reserve the space now, so concurrent writes can't exceed our maximum size
+			makeRoom(totalBytes);
+			sizeBytes += totalBytes;
+		}
+
+		File file = null;
+		boolean success = false;
+		try {
+			file = File.createTempFile("job", SPILL_FILE_EXT, dir);
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(totalBytes);
+				try (FileChannel ch = raf.getChannel()) {
+					MappedByteBuffer buf = ch.map(MapMode.READ_WRITE, 0, totalBytes);
+					buf.putInt(MAGIC_NUMBER);
+					HitsSerializeUtil.putString(buf, uniqueIdentifier);
+					HitsSerializeUtil.putString(buf, indexName);
+					HitsSerializeUtil.putString(buf, indexTimeModified);
+					if (!job.spill(buf))
+						throw new IOException("Job can't be spilled");
+					buf.force();
+				}
+			}
+			success = true;
+			logger.debug("Spilled job to disk (" + totalBytes + " bytes): " + job);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Could not spill job " + job + ": " + e.getMessage());
+		} finally {
+			synchronized (this) {
+				if (success && !spilledJobs.containsKey(uniqueIdentifier)) {
+					spilledJobs.put(uniqueIdentifier, new SpilledJob(file, indexName, indexTimeModified, totalBytes));
+				} else {
+					sizeBytes -= totalBytes;
+					if (file != null)
+						deleteFile(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Restore a spilled job, if we have it and it is still valid.
+	 *
+	 * The spill file is read on the calling thread, without holding our lock.
+	 *
+	 * @param searchMan search manager, for creating the job
+	 * @param user the user requesting the job
+	 * @param jobDesc description of the job
+	 * @return the finished job, or null if not available
+	 */
+	public Job restore(SearchManager searchMan, User user, JobDescription jobDesc) {
+		String uniqueIdentifier = jobDesc.uniqueIdentifier();
+		SpilledJob spilledJob;
+		synchronized (this) {
+			spilledJob = spilledJobs.get(uniqueIdentifier);
+		}
+		if (spilledJob == null)
+			return null;
+		Searcher searcher;
+		try {
+			searcher = searchMan.getIndexManager().getSearcher(jobDesc.getIndexName());
+		} catch (IndexBeingOpened e) {
+			// Index not available yet (e.g. right after startup); try again later
+			return null;
+		} catch (BlsException | RuntimeException e) {
+			logger.warn("Could not restore spilled job " + uniqueIdentifier + ": " + e.getMessage());
+			remove(spilledJob, uniqueIdentifier);
+			return null;
+		}
+		try {
+			String indexTimeModified = searcher.getIndexStructure().getTimeModified();
+			if (indexTimeModified == null || !indexTimeModified.equals(spilledJob.indexTimeModified)) {
+				// Index has changed since we spilled this job; results are no longer valid
+				remove(spilledJob, uniqueIdentifier);
+				return null;
+			}
+			Job job = jobDesc.createJob(searchMan, user);
+			try (RandomAccessFile raf = new RandomAccessFile(spilledJob.file, "r")) {
+				try (FileChannel ch = raf.getChannel()) {
+					ByteBuffer buf = ch.map(MapMode.READ_ONLY, 0, ch.size());
+					if (buf.getInt() != MAGIC_NUMBER || !uniqueIdentifier.equals(HitsSerializeUtil.getString(buf)))
+						throw new IOException("Spill file doesn't match job");
+					HitsSerializeUtil.getString(buf); // index name
+					HitsSerializeUtil.getString(buf); // index time modified
+					if (!job.restoreSpilledResults(buf)) {
+						logger.warn("Spilled job " + uniqueIdentifier + " is not valid for the current index; discarding it");
+						remove(spilledJob, uniqueIdentifier);
+						return null;
+					}
+				}
+			}
+			logger.debug("Restored job from disk: " + job);
+			return job;
+		} catch (IOException | BlsException | RuntimeException e) {
+			logger.warn("Could not restore spilled job " + uniqueIdentifier + ": " + e.getMessage());
+			remove(spilledJob, uniqueIdentifier);
+			return null;
+		}
+	}
+
+	/**
+	 * Remove all spilled jobs for the specified index.
+	 *
+	 * @param indexName the index
+	 */
+	public synchronized void clearForIndex(String indexName) {
+		Iterator<Map.Entry<String, SpilledJob>> it = spilledJobs.entrySet().iterator();
+		while (it.hasNext()) {
+			SpilledJob spilledJob = it.next().getValue();
+			if (spilledJob.indexName.equals(indexName)) {
+				deleteFile(spilledJob.file);
+				sizeBytes -= spilledJob.sizeBytes;
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove all spilled jobs.
+	 */
+	public synchronized void clear() {
+		for (SpilledJob spilledJob: spilledJobs.values()) {
+			deleteFile(spilledJob.file);
+		}
+		spilledJobs.clear();
+		sizeBytes = 0;
+	}
+
+	/**
+	 * Close the spill store.
+	 *
+	 * Finishes writing pending spill files, then deletes the spill files
+	 * unless we want to reuse them after restart.
+	 */
+	public void close() {
+		writer.shutdown();
+		try {
+			if (!writer.awaitTermination(10, TimeUnit.SECONDS))
+				logger.warn("Spill store writer didn't finish in time");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			if (!reuseAfterRestart)
+				clear();
+		}
+	}
+
+	public synchronized void dataStreamStatus(DataStream ds) {
+		ds.startMap()
+			.entry("maxSizeBytes", maxSizeBytes)
+			.entry("sizeBytes", sizeBytes)
+			.entry("numberOfSearches", spilledJobs.size())
+		.endMap();
+	}
+
+	/**
+	 * Delete least recently used spilled jobs until the specified number of bytes fits.
+	 *
+	 * @param bytesNeeded how many bytes we need
+	 */
+	private void makeRoom(long bytesNeeded) {
+		List<String> toRemove = new ArrayList<>();
+		long newSize = sizeBytes;
+		for (Map.Entry<String, SpilledJob> e: spilledJobs.entrySet()) {
+			if (newSize + bytesNeeded <= maxSizeBytes)
+				break;
+			toRemove.add(e.getKey());
+			newSize -= e.getValue().sizeBytes;
+		}
+		for (String uniqueIdentifier: toRemove) {
+			remove(uniqueIdentifier);
+		}
+	}
+
+	/**
+	 * Remove a spilled job, if it is still the one registered under this identifier.
+	 *
+	 * @param spilledJob the spilled job we found earlier
+	 * @param uniqueIdentifier its identifier
+	 */
+	private synchronized void remove(SpilledJob spilledJob, String uniqueIdentifier) {
+		if (spilledJobs.get(uniqueIdentifier) == spilledJob)
+			remove(uniqueIdentifier);
+	}
+
+	private void remove(String uniqueIdentifier) {
+		SpilledJob spilledJob = spilledJobs.remove(uniqueIdentifier);
+		if (spilledJob != null) {
+			deleteFile(spilledJob.file);
+			sizeBytes -= spilledJob.sizeBytes;
+		}
+	}
+
+	private static void deleteFile(File file) {
+		if (file.exists() && !file.delete())
+			logger.warn("Could not delete spill file " + file);
+	}
+
+}
@@ -0,0 +1,266 @@
+package nl.inl.blacklab.server.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps track of server metrics and writes them in the Prometheus text format.
+ *
+ * A metric is identified by its name and, optionally, the value of a single
+ * label (e.g. the request handler). Counters and histograms are updated as
+ * things happen; "functions" are only evaluated when the metrics are written,
+ * which is useful for values that are kept elsewhere (e.g. the number of
+ * running jobs).
+ */
+public class Metrics {
+
+	/** Upper bounds of the latency histogram buckets, in seconds */
+	static final double[] LATENCY_BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+	/** Content type of the Prometheus text format */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+	/** The metric types we support */
+	private static enum Type {
+		COUNTER,
+		GAUGE,
+		HISTOGRAM;
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * A value that is determined when the metrics are written.
+	 */
+	public interface Function {
+		double getValue();
+	}
+
+	/**
+	 * A value that only goes up.
+	 */
+	public static class Counter {
+		private AtomicLong value = new AtomicLong();
+
+		public void inc() {
+			value.incrementAndGet();
+		}
+
+		public void inc(long n) {
+			value.addAndGet(n);
+		}
+
+		public long get() {
+			return value.get();
+		}
+	}
+
+	/**
+	 * Counts durations in buckets, and keeps track of their count and sum.
+	 */
+	public static class Histogram {
+		private double[] buckets;
+
+		/** Number of observations per bucket (not cumulative); last one is +Inf */
+		private AtomicLongArray bucketCounts;
+
+		private AtomicLong count = new AtomicLong();
+
+		private AtomicLong sumNanos = new AtomicLong();
+
+		Histogram(double[] buckets) {
+			this.buckets = buckets;
+			bucketCounts = new AtomicLongArray(buckets.length + 1);
+		}
+
+		/**
+		 * Record a duration.
+		 *
+		 * @param nanos the duration in nanoseconds
+		 */
+		public void observeNanos(long nanos) {
+			double seconds = nanos / 1e9;
+			int i = 0;
+			while (i < buckets.length && seconds > buckets[i])
+				i++;
+			bucketCounts.incrementAndGet(i);
+			sumNanos.addAndGet(nanos);
+			count.incrementAndGet();
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+	}
+
+	/** A metric name with its help text, type and values (per label value) */
+	private static class Family {
+		String help;
+
+		Type type;
+
+		/** Name of the label, or null if this metric has no label */
+		String labelName;
+
+		/** Counter, Histogram or Function per label value ("" if no label) */
+		Map<String, Object> children = new TreeMap<>();
+
+		Family(String help, Type type, String labelName) {
+			this.help = help;
+			this.type = type;
+			this.labelName = labelName;
+		}
+	}
+
+	/** Our metrics by name, in the order they were first registered */
+	private Map<String, Family> families = new LinkedHashMap<>();
+
+	private Family family(String name, String help, Type type, String labelName) {
+		Family family = families.get(name);
+		if (family == null) {
+			family = new Family(help, type, labelName);
+			families.put(name, family);
+		} else if (family.type != type || (labelName == null ? family.labelName != null : !labelName.equals(family.labelName))) {
+			throw new IllegalArgumentException("Metric " + name + " already registered with a different type or label");
+		}
+		return family;
+	}
+
+	/**
+	 * Get (or create) a counter.
+	 *
+	 * @param name metric name, e.g. "blacklab_cache_hits_total"
+	 * @param help description of the metric
+	 * @return the counter
+	 */
+	public Counter counter(String name, String help) {
+		return counter(name, help, null, "");
+	}
+
+	/**
+	 * Get (or create) a labeled counter.
+	 *
+	 * @param name metric name
+	 * @param help description of the metric
+	 * @param labelName name of the label, or null for none
+	 * @param labelValue value of the label
+	 * @return the counter
+	 */
+	public synchronized Counter counter(String name, String help, String labelName, String labelValue) {
+		Family family = family(name, help, Type.COUNTER, labelName);
+		Counter counter = (Counter) family.children.get(labelValue);
+		if (counter == null) {
+			counter = new Counter();
+			family.children.put(labelValue, counter);
+		}
+		return counter;
+	}
+
+	/**
+	 * Get (or create) a labeled latency histogram.
+	 *
+	 * @param name metric name, e.g. "blacklab_request_duration_seconds"
+	 * @param help description of the metric
+	 * @param labelName name of the label, or null for none
+	 * @param labelValue value of the label
+	 * @return the histogram
+	 */
+	public synchronized Histogram histogram(String name, String help, String labelName, String labelValue) {
+		Family family = family(name, help, Type.HISTOGRAM, labelName);
+		Histogram histogram = (Histogram) family.children.get(labelValue);
+		if (histogram == null) {
+			histogram = new Histogram(LATENCY_BUCKETS);
+			family.children.put(labelValue, histogram);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Register a counter whose value is kept elsewhere.
+	 *
+	 * @param name metric name
+	 * @param help description of the metric
+	 * @param function determines the (ever-increasing) value when writing the metrics
+	 */
+	public synchronized void counterFunction(String name, String help, Function function) {
+		family(name, help, Type.COUNTER, null).children.put("", function);
+	}
+
+	/**
+	 * Register a gauge (a value that can go up and down).
+	 *
+	 * @param name metric name
+	 * @param help description of the metric
+	 * @param function determines the value when writing the metrics
+	 */
+	public synchronized void gaugeFunction(String name, String help, Function function) {
+		family(name, help, Type.GAUGE, null).children.put("", function);
+	}
+
+	/**
+	 * Write all metrics in the Prometheus text format (version 0.0.4).
+	 *
+	 * @param out where to write
+	 * @throws IOException on write error
+	 */
+	public synchronized void writePrometheus(Writer out) throws IOException {
+		for (Entry<String, Family> e: families.entrySet()) {
+			String name = e.getKey();
+			Family family = e.getValue();
+			out.write("# HELP " + name + " " + family.help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+			out.write("# TYPE " + name + " " + family.type + "\n");
+			for (Entry<String, Object> child: family.children.entrySet()) {
+				String label = family.labelName == null ? "" : family.labelName + "=\"" + escapeLabelValue(child.getKey()) + "\"";
+				Object metric = child.getValue();
+				if (metric instanceof Histogram) {
+					Histogram histogram = (Histogram) metric;
+					String prefix = label.isEmpty() ? "" : label + ",";
+					long cumulative = 0;
+					for (int i = 0; i <= histogram.buckets.length; i++) {
+						cumulative += histogram.bucketCounts.get(i);
+						String le = i < histogram.buckets.length ? formatValue(histogram.buckets[i]) : "+Inf";
+						writeSample(out, name + "_bucket", prefix + "le=\"" + le + "\"", Long.toString(cumulative));
+					}
+					writeSample(out, name + "_sum", label, formatValue(histogram.sumNanos.get() / 1e9));
+					writeSample(out, name + "_count", label, Long.toString(histogram.count.get()));
+				} else if (metric instanceof Counter) {
+					writeSample(out, name, label, Long.toString(((Counter) metric).get()));
+				} else {
+					writeSample(out, name, label, formatValue(((Function) metric).getValue()));
+				}
+			}
+		}
+		out.flush();
+	}
+
+	private static void writeSample(Writer out, String name, String labels, String value) throws IOException {
+		out.write(name);
+		if (!labels.isEmpty())
+			out.write("{" + labels + "}");
+		out.write(" " + value + "\n");
+	}
+
+	static String escapeLabelValue(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	static String formatValue(double value) {
+		if (Double.isNaN(value))
+			return "NaN";
+		if (Double.isInfinite(value))
+			return value > 0 ? "+Inf" : "-Inf";
+		if (value == Math.rint(value) && Math.abs(value) < 1e15)
+			return Long.toString((long) value);
+		return Double.toString(value);
+	}
+
+}
@@ -16,6 +16,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import nl.inl.blacklab.server.datastream.DataFormat;
+import nl.inl.blacklab.server.datastream.ExportFormat;
 import nl.inl.blacklab.server.exceptions.InternalServerError;
 import nl.inl.util.ExUtil;
 
@@ -113,8 +114,9 @@ public class ServletUtil {
 		}
 
 		// See if there was an explicit outputformat parameter. If so, use that.
+		// (export formats are handled separately; see getExportFormat())
 		String outputTypeString = getParameter(request, "outputformat", "").toLowerCase();
-		if (outputTypeString.length() > 0) {
+		if (outputTypeString.length() > 0 && ExportFormat.fromString(outputTypeString) == null) {
 			return getOutputTypeFromString(outputTypeString, defaultFormat);
 		}
 
@@ -134,6 +136,21 @@ public class ServletUtil {
 		return defaultFormat;
 	}
 
+	/**
+	 * Returns the requested export format, if any.
+	 *
+	 * This is based on the "outputformat" parameter. JSONP requests
+	 * are never exported.
+	 *
+	 * @param request the request object
+	 * @return the export format, or null if a regular response was requested
+	 */
+	public static ExportFormat getExportFormat(HttpServletRequest request) {
+		if (getParameter(request, "jsonp", "").length() > 0)
+			return null;
+		return ExportFormat.fromString(getParameter(request, "outputformat", ""));
+	}
+
 	/**
 	 * Returns the desired content type for the output.
 	 * This is based on the "outputformat" parameter.
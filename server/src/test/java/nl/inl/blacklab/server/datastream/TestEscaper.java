@@ -0,0 +1,55 @@
+package nl.inl.blacklab.server.datastream;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestEscaper {
+
+	private static final String[] strings = {
+		"", "hond", "\"quoted\" <b>&amp;</b> 'a/b'\\", "tab\tnew\nline\r\u0000\u001f", "café \u0085\u0080\u009f ",
+		"𝒜 bc", "unpaired \ud835 high", "unpaired \udc9c low", "end \ud835", "￾￿�",
+	};
+
+	private static String write(Escaper escaper, String str) {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		escaper.write(pw, str);
+		pw.flush();
+		return sw.toString();
+	}
+
+	@Test
+	public void testSameAsStringEscapeUtils() {
+		for (String str: strings) {
+			Assert.assertEquals(str, StringEscapeUtils.escapeJson(str), write(Escaper.JSON, str));
+			Assert.assertEquals(str, StringEscapeUtils.escapeXml10(str), write(Escaper.XML, str));
+			Assert.assertEquals(str, StringEscapeUtils.escapeJson(str), Escaper.JSON.escape(str));
+			Assert.assertEquals(str, StringEscapeUtils.escapeXml10(str), Escaper.XML.escape(str));
+		}
+		for (int i = 0; i <= Character.MAX_VALUE; i++) {
+			String str = "a" + (char) i + "b";
+			Assert.assertEquals(Integer.toString(i), StringEscapeUtils.escapeJson(str), write(Escaper.JSON, str));
+			Assert.assertEquals(Integer.toString(i), StringEscapeUtils.escapeXml10(str), write(Escaper.XML, str));
+		}
+	}
+
+	@Test
+	public void testContextList() {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		DataStream ds = new DataStreamJson(pw, false, null);
+		// Twice, so the second time we use the cached escaped strings
+		for (int i = 0; i < 2; i++) {
+			ds.contextList(Arrays.asList("punct", "word"), Arrays.asList(" ", "café", " \"", "<b>"));
+		}
+		pw.flush();
+		String expected = "{\"punct\":[\" \",\" \\\"\"],\"word\":[\"caf\\u00E9\",\"<b>\"]}";
+		Assert.assertEquals(expected + expected, sw.toString());
+	}
+
+}
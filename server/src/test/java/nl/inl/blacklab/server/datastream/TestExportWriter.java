@@ -0,0 +1,120 @@
+package nl.inl.blacklab.server.datastream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestExportWriter {
+
+	private static byte[] write(ExportFormat format) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ExportWriter out = ExportWriter.create(format, bytes);
+		out.header(Arrays.asList("docPid", "start", "match"));
+		out.value("doc1").value(3).value("de \"grote\", hond");
+		out.endRow();
+		out.value("doc2").value(-1).value("tab\there\\new\nline café");
+		out.endRow();
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void testTsv() throws IOException {
+		String expected = "docPid\tstart\tmatch\n" +
+				"doc1\t3\tde \"grote\", hond\n" +
+				"doc2\t-1\ttab\\there\\\\new\\nline café\n";
+		Assert.assertEquals(expected, new String(write(ExportFormat.TSV), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testCsv() throws IOException {
+		String expected = "docPid,start,match\r\n" +
+				"doc1,3,\"de \"\"grote\"\", hond\"\r\n" +
+				"doc2,-1,\"tab\there\\new\nline café\"\r\n";
+		Assert.assertEquals(expected, new String(write(ExportFormat.CSV), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testBinary() throws IOException {
+		byte[] bin = write(ExportFormat.BINARY);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(new byte[] { 'B', 'L', 'X', '1', 3 });
+		for (String name: Arrays.asList("docPid", "start", "match")) {
+			expected.write(name.length() * 2);
+			expected.write(name.getBytes(StandardCharsets.UTF_8));
+		}
+		expected.write(8);
+		expected.write("doc1".getBytes(StandardCharsets.UTF_8));
+		expected.write(3 * 2 * 2 + 1);              // zigzag(3) = 6
+		byte[] match = "de \"grote\", hond".getBytes(StandardCharsets.UTF_8);
+		expected.write(match.length * 2);
+		expected.write(match);
+		expected.write(8);
+		expected.write("doc2".getBytes(StandardCharsets.UTF_8));
+		expected.write(1 * 2 + 1);                  // zigzag(-1) = 1
+		match = "tab\there\\new\nline café".getBytes(StandardCharsets.UTF_8);
+		expected.write(match.length * 2);
+		expected.write(match);
+		Assert.assertArrayEquals(expected.toByteArray(), bin);
+	}
+
+	@Test
+	public void testBinaryVarInt() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ExportWriter out = ExportWriter.create(ExportFormat.BINARY, bytes);
+		out.header(Arrays.asList("n"));
+		out.value(100); // zigzag 200, cell 401 = 0b1_1001_0001
+		out.endRow();
+		out.flush();
+		byte[] bin = bytes.toByteArray();
+		Assert.assertEquals(9, bin.length);
+		Assert.assertEquals((byte)0x91, bin[7]);
+		Assert.assertEquals(0x03, bin[8]);
+	}
+
+	@Test
+	public void testBinaryLongRange() throws IOException {
+		long[] values = { Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE + 1, -64, 63, 64, 0 };
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ExportWriter out = ExportWriter.create(ExportFormat.BINARY, bytes);
+		out.header(Arrays.asList("n"));
+		for (long value: values) {
+			out.value(value);
+			out.endRow();
+		}
+		out.flush();
+		byte[] bin = bytes.toByteArray();
+
+		// Decode the cells as unsigned varints of arbitrary size
+		int pos = 7; // magic, column count, column name
+		for (long value: values) {
+			BigInteger n = BigInteger.ZERO;
+			int shift = 0;
+			int b;
+			do {
+				b = bin[pos++] & 0xFF;
+				n = n.or(BigInteger.valueOf(b & 0x7F).shiftLeft(shift));
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			Assert.assertTrue("integer cell", n.testBit(0));
+			long zigzag = n.shiftRight(1).longValue();
+			Assert.assertEquals(value, (zigzag >>> 1) ^ -(zigzag & 1));
+		}
+		Assert.assertEquals(bin.length, pos);
+	}
+
+	@Test
+	public void testFromString() {
+		Assert.assertEquals(ExportFormat.TSV, ExportFormat.fromString("tsv"));
+		Assert.assertEquals(ExportFormat.CSV, ExportFormat.fromString("CSV"));
+		Assert.assertEquals(ExportFormat.BINARY, ExportFormat.fromString("bin"));
+		Assert.assertNull(ExportFormat.fromString("json"));
+		Assert.assertNull(ExportFormat.fromString(""));
+	}
+
+}
@@ -46,6 +46,11 @@ public class MockSearcher extends Searcher {
 
 	}
 
+	@Override
+	public Searcher reopenIfChanged() {
+		return null;
+	}
+
 	@Override
 	public Document document(int doc) {
 		//
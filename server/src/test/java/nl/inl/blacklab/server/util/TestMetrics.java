@@ -0,0 +1,66 @@
+package nl.inl.blacklab.server.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMetrics {
+
+	private static String write(Metrics metrics) throws IOException {
+		StringWriter out = new StringWriter();
+		metrics.writePrometheus(out);
+		return out.toString();
+	}
+
+	@Test
+	public void testCounterAndGauge() throws IOException {
+		Metrics metrics = new Metrics();
+		metrics.counter("test_hits_total", "Hits").inc(3);
+		metrics.counter("test_hits_total", "Hits").inc();
+		metrics.gaugeFunction("test_running", "Running\njobs", new Metrics.Function() {
+			@Override
+			public double getValue() {
+				return 2.5;
+			}
+		});
+		Assert.assertEquals(
+				"# HELP test_hits_total Hits\n" +
+				"# TYPE test_hits_total counter\n" +
+				"test_hits_total 4\n" +
+				"# HELP test_running Running\\njobs\n" +
+				"# TYPE test_running gauge\n" +
+				"test_running 2.5\n", write(metrics));
+	}
+
+	@Test
+	public void testLabeledHistogram() throws IOException {
+		Metrics metrics = new Metrics();
+		metrics.histogram("test_seconds", "Latency", "handler", "b\"").observeNanos(20000000L); // 0.02s
+		Metrics.Histogram a = metrics.histogram("test_seconds", "Latency", "handler", "a");
+		a.observeNanos(1000000L); // 0.001s
+		a.observeNanos(120000000000L); // 120s, beyond the last bucket
+		Assert.assertEquals(2, a.getCount());
+
+		String text = write(metrics);
+		Assert.assertTrue(text.startsWith("# HELP test_seconds Latency\n# TYPE test_seconds histogram\n"));
+		// Buckets are cumulative; label values are sorted and escaped
+		Assert.assertTrue(text.contains("test_seconds_bucket{handler=\"a\",le=\"0.005\"} 1\n"));
+		Assert.assertTrue(text.contains("test_seconds_bucket{handler=\"a\",le=\"60\"} 1\n"));
+		Assert.assertTrue(text.contains("test_seconds_bucket{handler=\"a\",le=\"+Inf\"} 2\n"));
+		Assert.assertTrue(text.contains("test_seconds_sum{handler=\"a\"} 120.001\n"));
+		Assert.assertTrue(text.contains("test_seconds_count{handler=\"a\"} 2\n"));
+		Assert.assertTrue(text.contains("test_seconds_bucket{handler=\"b\\\"\",le=\"0.01\"} 0\n"));
+		Assert.assertTrue(text.contains("test_seconds_bucket{handler=\"b\\\"\",le=\"0.025\"} 1\n"));
+		Assert.assertTrue(text.indexOf("handler=\"a\"") < text.indexOf("handler=\"b"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTypeMismatch() {
+		Metrics metrics = new Metrics();
+		metrics.counter("test_total", "Test");
+		metrics.histogram("test_total", "Test", null, "");
+	}
+
+}